@@ -0,0 +1,227 @@
+package uk.ac.umist.co.brailletrans;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Translates short texts submitted by many threads by gathering them into
+ * batches, each translated in turn by one worker thread with one session of a
+ * <CODE>Language</CODE>.
+ *
+ * <p>A batch is started by the first text to arrive and closed when it holds
+ * the maximum number of texts or the batch window after that first text has
+ * passed, whichever comes first.  The futures of a batch are completed
+ * together once all of its texts are translated, so a text waits at most the
+ * window plus the time to translate one batch.  Actions depending on the
+ * futures that are not run asynchronously run on the worker thread, and
+ * should be short.
+ *
+ * <p>Each text is translated on its own, starting in the state given, as
+ * <CODE>setState(state)</CODE> followed by <CODE>translate(text)</CODE> would.
+ * The language must not be altered while the translator is open.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class BatchingTranslator
+{
+  /**
+   * The largest batch, if none is given.
+   */
+  public static final int DEFAULT_BATCH_SIZE = 256;
+  /**
+   * The batch window in milliseconds, if none is given.
+   */
+  public static final long DEFAULT_WINDOW_MILLIS = 2;
+
+  private SessionPool sessions;
+  // sessions of the language, for checking states
+  private int batchSize;
+  // the most texts translated in one batch
+  private long windowNanos;
+  // how long a batch waits for more texts after its first
+  private LinkedBlockingQueue<Request> requests = new LinkedBlockingQueue<Request>();
+  // texts waiting to be put into a batch
+  private volatile boolean closed;
+  private Thread worker;
+
+  /**
+   * Creates a <CODE>BatchingTranslator</CODE> with the default batch size and
+   * window, and starts its worker.
+   *
+   * @param language  A <CODE>Language256</CODE>, <CODE>LanguageInteger</CODE>
+   * or <CODE>LanguageUnicode</CODE> to translate with.
+   */
+  public BatchingTranslator(Language language)
+  {
+    this(language, DEFAULT_BATCH_SIZE, DEFAULT_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Creates a <CODE>BatchingTranslator</CODE> and starts its worker.
+   *
+   * @param language  A <CODE>Language256</CODE>, <CODE>LanguageInteger</CODE>
+   * or <CODE>LanguageUnicode</CODE> to translate with.
+   * @param batchSize  The most texts to translate in one batch.
+   * @param window  How long a batch waits for more texts after its first.
+   * @param unit  The unit of window.
+   */
+  public BatchingTranslator(Language language, int batchSize, long window,
+    TimeUnit unit)
+  {
+    if (batchSize < 1)
+      throw new IllegalArgumentException("Batch size must be positive, not " + batchSize);
+    sessions = new SessionPool(language);
+    this.batchSize = batchSize;
+    windowNanos = unit.toNanos(window);
+    worker = new Thread(new Worker(sessions.get()), "BatchingTranslator");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  /**
+   * Submits a text for translation.
+   *
+   * @param text  <CODE>String</CODE> holding characters to translate.
+   * @param state  The state to translate in.
+   * @return A future completed with the translated text, or exceptionally if
+   * translation fails or the translator is closed first.
+   * @throws IllegalArgumentException if the state is not permitted.
+   */
+  public CompletableFuture<String> translate(String text, int state)
+  {
+    sessions.checkState(state);
+    Request request = new Request(text, state);
+    if (closed)
+      request.result.completeExceptionally(new RejectedExecutionException(
+        "Translator is closed"));
+    else
+    {
+      requests.add(request);
+      if (closed)
+      // ASSERTION: closed while adding, so the worker may have gone
+        failWaiting();
+    }
+    return request.result;
+  }
+
+  /**
+   * Stops the worker once the batch it is translating is done.  Texts still
+   * waiting for a batch are failed with a
+   * <CODE>RejectedExecutionException</CODE>.
+   */
+  public void close()
+  {
+    closed = true;
+    worker.interrupt();
+    failWaiting();
+  }
+
+  private void failWaiting()
+  // Fails every request not yet taken into a batch.
+  {
+    Request request;
+    while ((request = requests.poll()) != null)
+      request.result.completeExceptionally(new RejectedExecutionException(
+        "Translator is closed"));
+  }
+
+  private static class Request
+  // A text waiting to be translated
+  {
+    private String text;
+    private int state;
+    private CompletableFuture<String> result = new CompletableFuture<String>();
+
+    private Request(String text, int state)
+    {
+      this.text = text;
+      this.state = state;
+    }
+  } // end of Request class
+
+  private class Worker implements Runnable
+  // Gathers and translates batches with one session until closed
+  {
+    private RangeTranslator session;
+    private ArrayList<Request> batch = new ArrayList<Request>();
+    private String[] output = new String[batchSize];
+
+    private Worker(RangeTranslator session)
+    {
+      this.session = session;
+    }
+
+    public void run()
+    {
+      try
+      {
+        while (!closed)
+        {
+          batch.add(requests.take());
+          long deadline = System.nanoTime() + windowNanos;
+          while (batch.size() < batchSize)
+          {
+            if (requests.drainTo(batch, batchSize - batch.size()) > 0)
+              continue;
+            long wait = deadline - System.nanoTime();
+            if (wait <= 0)
+              break;
+            Request request = requests.poll(wait, TimeUnit.NANOSECONDS);
+            if (request == null)
+              break;
+            batch.add(request);
+          }
+          translateBatch();
+        }
+      }
+      catch (InterruptedException e)
+      {
+        // ASSERTION: closed
+      }
+      finally
+      // ASSERTION: closed, or an Error escaped, so take no more requests
+      {
+        closed = true;
+        for (int i = 0; i < batch.size(); i++)
+          batch.get(i).result.completeExceptionally(
+            new RejectedExecutionException("Translator is closed"));
+        batch.clear();
+        failWaiting();
+      }
+    }
+
+    private void translateBatch()
+    // Translates the batch one request after another through the buffers of
+    // the session, then completes all its futures.
+    {
+      Throwable[] failed = null;
+      for (int i = 0; i < batch.size(); i++)
+      {
+        Request request = batch.get(i);
+        try
+        {
+          output[i] = session.translate(request.text, request.state);
+        }
+        catch (RuntimeException e)
+        {
+          if (failed == null)
+            failed = new Throwable[batch.size()];
+          failed[i] = e;
+        }
+      }
+      for (int i = 0; i < batch.size(); i++)
+      {
+        Request request = batch.get(i);
+        if ((failed != null) && (failed[i] != null))
+          request.result.completeExceptionally(failed[i]);
+        else
+          request.result.complete(output[i]);
+        output[i] = null;
+      }
+      batch.clear();
+    }
+  } // end of Worker class
+}
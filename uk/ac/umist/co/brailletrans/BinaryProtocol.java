@@ -0,0 +1,196 @@
+package uk.ac.umist.co.brailletrans;
+import java.nio.*;
+import java.nio.charset.*;
+
+/**
+ * The frames of the binary translation protocol, shared by
+ * <CODE>BinaryTranslationServer</CODE> and <CODE>BinaryTranslationClient</CODE>.
+ * All numbers are big-endian.
+ *
+ * <pre>
+ * request:  int length, int id, short state, byte encoding,
+ *           byte nameLength, nameLength bytes of language name (US-ASCII),
+ *           text in encoding
+ * response: int length, int id, byte status, byte encoding,
+ *           text in encoding, or if status is ERROR a message in UTF-8
+ * </pre>
+ *
+ * <p>The length of each frame counts the bytes after the length itself.  A
+ * client may send any number of requests without waiting, and the responses
+ * come back as each translation finishes, matched to requests by id.
+ *
+ * <p>A request whose encoding has the <CODE>RANGE</CODE> flag set asks for
+ * part of a text to be translated as <CODE>RangeTranslator.translateRange</CODE>
+ * does, so that pieces of one document translated by different servers can
+ * be joined exactly.  Its state is the default state, and its text is
+ * preceded by the range and the states to start in:
+ *
+ * <pre>
+ * range request:  ... byte encoding | RANGE, ... language name,
+ *                 int from, int to, short numberStates,
+ *                 numberStates shorts of entry state, text in encoding
+ * range response: int length, int id, byte status, byte encoding,
+ *                 short numberStates, int reachFrom, int reachTo, and for
+ *                 each entry state
+ *                 int end, short exitState, int textLength, text in encoding
+ * </pre>
+ *
+ * <p>From, to and each end are indices in the text, not mapped positions.  A
+ * range request with no entry states is translated from every state the
+ * language permits, in order.  ReachFrom and reachTo are the first and last
+ * indices in the text the translations looked at, -1 and the length of the
+ * text standing for before and after it, so a client that sent only part of
+ * a document can tell whether the rules wanted more of it.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+final class BinaryProtocol
+{
+  static final int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+  // longer frames close the connection
+  static final int BUFFER_SIZE = 64 * 1024;
+  // the size of the buffers of each connection
+  static final int REQUEST_HEADER = 8;
+  // bytes of a request after its length and before its language name
+  static final int RESPONSE_HEADER = 6;
+  // bytes of a response after its length and before its text
+
+  static final byte UTF8 = 0;
+  static final byte LATIN1 = 1;
+  // encodings
+  static final byte RANGE = 0x10;
+  // set in the encoding of a range request
+  static final byte OK = 0;
+  static final byte ERROR = 1;
+  // statuses
+
+  private BinaryProtocol()
+  {
+  }
+
+  static Charset charset(byte encoding)
+  // Returns the character set of an encoding.
+  {
+    if (encoding == LATIN1)
+      return StandardCharsets.ISO_8859_1;
+    else if (encoding == UTF8)
+      return StandardCharsets.UTF_8;
+    else
+      throw new IllegalArgumentException("Unknown encoding " + encoding);
+  }
+
+  static boolean isLatin1(String text)
+  // Returns whether text can be sent as Latin-1.
+  {
+    for (int i = 0; i < text.length(); i++)
+      if (text.charAt(i) > 0xFF)
+        return false;
+    return true;
+  }
+
+  static ByteBuffer request(int id, String language, int state, String text,
+    byte encoding)
+  // Returns a request frame ready to be written.
+  {
+    return request(id, language, state, encoding, new byte[0],
+      text.getBytes(charset(encoding)));
+  }
+
+  static ByteBuffer rangeRequest(int id, String language, int state, String text,
+    byte encoding, int from, int to, int[] entryStates)
+  // Returns a range request frame ready to be written.
+  {
+    ByteBuffer range = ByteBuffer.allocate(10 + 2 * entryStates.length);
+    range.putInt(from).putInt(to).putShort((short) entryStates.length);
+    for (int i = 0; i < entryStates.length; i++)
+    {
+      checkState(entryStates[i]);
+      range.putShort((short) entryStates[i]);
+    }
+    return request(id, language, state, (byte) (encoding | RANGE), range.array(),
+      text.getBytes(charset(encoding)));
+  }
+
+  static ByteBuffer response(int id, byte status, String text, byte encoding)
+  // Returns a response frame ready to be written.
+  {
+    byte[] payload = text.getBytes(charset(encoding));
+    ByteBuffer frame = ByteBuffer.allocate(4 + RESPONSE_HEADER + payload.length);
+    frame.putInt(RESPONSE_HEADER + payload.length).putInt(id).put(status)
+      .put(encoding).put(payload);
+    frame.flip();
+    return frame;
+  }
+
+  static ByteBuffer rangeResponse(int id, TranslatedRange translated, byte encoding)
+  // Returns a range response frame ready to be written.  The ends and reach
+  // of translated must already be indices in the text.
+  {
+    byte[][] outputs = new byte[translated.output.length][];
+    int length = RESPONSE_HEADER + 10;
+    for (int i = 0; i < outputs.length; i++)
+    {
+      outputs[i] = translated.output[i].getBytes(charset(encoding));
+      length += 10 + outputs[i].length;
+    }
+    ByteBuffer frame = ByteBuffer.allocate(4 + length);
+    frame.putInt(length).putInt(id).put(OK).put(encoding).putShort((short) outputs.length)
+      .putInt(translated.reachFrom).putInt(translated.reachTo);
+    for (int i = 0; i < outputs.length; i++)
+      frame.putInt(translated.end[i]).putShort((short) translated.exitState[i])
+        .putInt(outputs[i].length).put(outputs[i]);
+    frame.flip();
+    return frame;
+  }
+
+  static TranslatedRange readRange(byte[] payload, byte encoding)
+  // Returns the translations held in the text of a range response.
+  {
+    ByteBuffer in = ByteBuffer.wrap(payload);
+    int numberStates = in.getShort();
+    int reachFrom = in.getInt();
+    int reachTo = in.getInt();
+    String[] output = new String[numberStates];
+    int[] end = new int[numberStates];
+    int[] exitState = new int[numberStates];
+    for (int i = 0; i < numberStates; i++)
+    {
+      end[i] = in.getInt();
+      exitState[i] = in.getShort();
+      int length = in.getInt();
+      output[i] = new String(payload, in.position(), length, charset(encoding));
+      in.position(in.position() + length);
+    }
+    return new TranslatedRange(output, end, exitState, reachFrom, reachTo);
+  }
+
+  //***** PRIVATE METHODS ***********************************************
+  private static ByteBuffer request(int id, String language, int state, byte encoding,
+    byte[] range, byte[] payload)
+  // Returns a request frame, with range between the name and the text.
+  {
+    byte[] name = language.getBytes(StandardCharsets.US_ASCII);
+    if (name.length > 0xFF)
+      throw new IllegalArgumentException("Language name too long: " + language);
+    checkState(state);
+    int length = REQUEST_HEADER + name.length + range.length + payload.length;
+    if ((length > MAX_FRAME_LENGTH) || (length < 0))
+      throw new IllegalArgumentException("Text too long to send");
+    ByteBuffer frame = ByteBuffer.allocate(4 + length);
+    frame.putInt(length).putInt(id).putShort((short) state).put(encoding)
+      .put((byte) name.length).put(name).put(range).put(payload);
+    frame.flip();
+    return frame;
+  }
+
+  private static void checkState(int state)
+  // Throws an exception if a state will not fit in a frame.
+  {
+    if ((state < 0) || (state > Short.MAX_VALUE))
+      throw new IllegalArgumentException("State " + state + " is out of range");
+  }
+}
@@ -0,0 +1,375 @@
+package uk.ac.umist.co.brailletrans;
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A client of a <CODE>BinaryTranslationServer</CODE>.  Requests are sent as
+ * soon as they are made, without waiting for earlier ones to be answered, and
+ * each returns a future completed when its response arrives, in whatever
+ * order the server finishes them.
+ *
+ * <p>Requests are put in a buffer that a writer thread sends whenever it has
+ * anything in it, so requests made while it is sending are sent together in
+ * one write when it is done.  A request that finds the buffer full waits for
+ * the writer, which is how a server that is behind slows its clients.
+ *
+ * <p>A <CODE>BinaryTranslationClient</CODE> can be used by several threads at
+ * once.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class BinaryTranslationClient
+{
+  private SocketChannel channel;
+  private Object sending = new Object();
+  // guards out, and is waited on for out to have something or room in it
+  private ByteBuffer out = ByteBuffer.allocateDirect(BinaryProtocol.BUFFER_SIZE);
+  // requests waiting to be written, in write mode
+  private ByteBuffer spare = ByteBuffer.allocateDirect(BinaryProtocol.BUFFER_SIZE);
+  // the buffer the writer is sending, swapped with out when it is done
+  private AtomicInteger nextId = new AtomicInteger();
+  private ConcurrentHashMap<Integer, CompletableFuture<String>> waiting =
+    new ConcurrentHashMap<Integer, CompletableFuture<String>>();
+  // id -> the future of each request not yet answered
+  private ConcurrentHashMap<Integer, CompletableFuture<TranslatedRange>> ranges =
+    new ConcurrentHashMap<Integer, CompletableFuture<TranslatedRange>>();
+  // id -> the future of each range request not yet answered
+  private volatile IOException failure;
+  // why the connection closed, once it has
+  private Thread reader;
+  private Thread writer;
+
+  /**
+   * Connects to a server.
+   *
+   * @param address  The address of the server.
+   * @throws IOException if the server cannot be reached.
+   */
+  public BinaryTranslationClient(InetSocketAddress address) throws IOException
+  {
+    channel = SocketChannel.open(address);
+    channel.socket().setTcpNoDelay(true);
+    reader = new Thread(new Runnable()
+    {
+      public void run()
+      {
+        read();
+      }
+    }, "BinaryTranslationClient");
+    reader.setDaemon(true);
+    reader.start();
+    writer = new Thread(new Runnable()
+    {
+      public void run()
+      {
+        write();
+      }
+    }, "BinaryTranslationClient writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Sends text to be translated as UTF-8.
+   *
+   * @param language  The name of the language in the server's registry.
+   * @param state  The state to translate in.
+   * @param text  The text to translate.
+   * @return A future completed with the translated text, or exceptionally
+   * with an <CODE>IOException</CODE> if the server could not translate it.
+   */
+  public CompletableFuture<String> translate(String language, int state, String text)
+  {
+    return translate(language, state, text, BinaryProtocol.UTF8);
+  }
+
+  /**
+   * Sends text to be translated as Latin-1, which is half the size of UTF-8
+   * for text that is not ASCII.  Text holding other characters is sent as
+   * UTF-8.
+   *
+   * @param language  The name of the language in the server's registry.
+   * @param state  The state to translate in.
+   * @param text  The text to translate.
+   * @return A future completed with the translated text, or exceptionally
+   * with an <CODE>IOException</CODE> if the server could not translate it.
+   */
+  public CompletableFuture<String> translateLatin1(String language, int state, String text)
+  {
+    return translate(language, state, text,
+      BinaryProtocol.isLatin1(text) ? BinaryProtocol.LATIN1 : BinaryProtocol.UTF8);
+  }
+
+  /**
+   * Sends part of a text to be translated from one or more states, for
+   * joining with the translations of the rest.  The text is sent as Latin-1
+   * if it can be.  Only the text given is sent, which may be just part of a
+   * document around the range: the reach of the translations shows whether
+   * their rules looked beyond it.
+   *
+   * @param language  The name of the language in the server's registry.
+   * @param state  The state to return to when no rule matches.
+   * @param text  The text holding the range.
+   * @param from  The index in text to start translating at.
+   * @param to  The index in text to stop translating at.
+   * @param entryStates  The state each translation starts in, or none to
+   * start in every state.
+   * @return A future completed with the translations, whose ends and reach
+   * are indices in text, or exceptionally with an <CODE>IOException</CODE> if the server
+   * could not translate them.
+   */
+  CompletableFuture<TranslatedRange> translateRange(String language, int state,
+    String text, int from, int to, int[] entryStates)
+  {
+    CompletableFuture<TranslatedRange> result = new CompletableFuture<TranslatedRange>();
+    int id = nextId.getAndIncrement();
+    ByteBuffer frame = BinaryProtocol.rangeRequest(id, language, state, text,
+      BinaryProtocol.isLatin1(text) ? BinaryProtocol.LATIN1 : BinaryProtocol.UTF8,
+      from, to, entryStates);
+    ranges.put(Integer.valueOf(id), result);
+    send(id, frame, result);
+    return result;
+  }
+
+  /**
+   * Returns whether the connection is still open.  Requests that fail while
+   * it is were refused by the server; requests that fail once it is not were
+   * lost with the connection.
+   *
+   * @return true until the connection closes or breaks.
+   */
+  public boolean isOpen()
+  {
+    return (failure == null) && channel.isOpen();
+  }
+
+  /**
+   * Closes the connection.  Requests not yet answered fail.
+   */
+  public void close()
+  {
+    try
+    {
+      channel.close();
+    }
+    catch (IOException e)
+    {
+    }
+    synchronized (sending)
+    {
+      sending.notifyAll();
+    }
+  }
+
+  //***** PRIVATE METHODS ***********************************************
+  private CompletableFuture<String> translate(String language, int state, String text,
+    byte encoding)
+  {
+    CompletableFuture<String> result = new CompletableFuture<String>();
+    int id = nextId.getAndIncrement();
+    ByteBuffer frame = BinaryProtocol.request(id, language, state, text, encoding);
+    waiting.put(Integer.valueOf(id), result);
+    send(id, frame, result);
+    return result;
+  }
+
+  private void send(int id, ByteBuffer frame, CompletableFuture<?> result)
+  // Buffers a request frame for the writer, or writes it if it is too large
+  // to buffer.  The future of the request must already be waiting.
+  {
+    try
+    {
+      synchronized (sending)
+      {
+        while (isOpen() && (frame.remaining() > out.remaining()) && (out.position() > 0))
+          sending.wait();
+        if (!isOpen())
+          throw new ClosedChannelException();
+        if (frame.remaining() > out.capacity())
+        // ASSERTION: out is empty and too small, so write the frame itself
+        {
+          synchronized (channel)
+          {
+            writeFully(frame);
+          }
+        }
+        else
+        {
+          out.put(frame);
+          sending.notifyAll();
+        }
+      }
+    }
+    catch (IOException e)
+    // ASSERTION: the connection is broken
+    {
+      if (failure == null)
+        failure = e;
+      close();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      if ((waiting.remove(Integer.valueOf(id)) != null)
+        || (ranges.remove(Integer.valueOf(id)) != null))
+        result.completeExceptionally(new InterruptedIOException(
+          "Interrupted while waiting to send"));
+    }
+    if (failure != null)
+      fail(failure);
+  }
+
+  private void write()
+  // Writes whatever requests are buffered, all at once, until the connection
+  // closes.
+  {
+    try
+    {
+      while (true)
+      {
+        ByteBuffer buffer;
+        synchronized (sending)
+        {
+          while (isOpen() && (out.position() == 0))
+            sending.wait();
+          if (!isOpen())
+            return;
+          buffer = out;
+          out = spare;
+          spare = buffer;
+          sending.notifyAll();
+        }
+        buffer.flip();
+        synchronized (channel)
+        {
+          writeFully(buffer);
+        }
+        buffer.clear();
+      }
+    }
+    catch (IOException e)
+    {
+      if (failure == null)
+        failure = e;
+      fail(e);
+      close();
+    }
+    catch (InterruptedException e)
+    {
+      close();
+    }
+  }
+
+  private void writeFully(ByteBuffer buffer) throws IOException
+  {
+    while (buffer.hasRemaining())
+      channel.write(buffer);
+  }
+
+  private void read()
+  // Reads responses until the connection closes, completing their futures.
+  {
+    ByteBuffer in = ByteBuffer.allocateDirect(BinaryProtocol.BUFFER_SIZE);
+    try
+    {
+      while (channel.read(in) != -1)
+      {
+        in.flip();
+        while (in.remaining() >= 4)
+        {
+          int length = in.getInt(in.position());
+          if ((length < BinaryProtocol.RESPONSE_HEADER)
+            || (length > BinaryProtocol.MAX_FRAME_LENGTH))
+            throw new IOException("Bad frame length " + length);
+          if (in.remaining() < 4 + length)
+          {
+            if (in.capacity() < 4 + length)
+            {
+              ByteBuffer larger = ByteBuffer.allocateDirect(4 + length);
+              larger.put(in);
+              in = larger;
+              in.flip();
+            }
+            break;
+          }
+          in.getInt();
+          int id = in.getInt();
+          byte status = in.get();
+          byte encoding = in.get();
+          byte[] payload = new byte[length - BinaryProtocol.RESPONSE_HEADER];
+          in.get(payload);
+          CompletableFuture<String> result = waiting.remove(Integer.valueOf(id));
+          CompletableFuture<TranslatedRange> range = ranges.remove(Integer.valueOf(id));
+          if (status != BinaryProtocol.OK)
+          {
+            IOException refused = new IOException(new String(payload,
+              BinaryProtocol.charset(encoding)));
+            if (result != null)
+              result.completeExceptionally(refused);
+            if (range != null)
+              range.completeExceptionally(refused);
+          }
+          else if (result != null)
+            result.complete(new String(payload, BinaryProtocol.charset(encoding)));
+          else if (range != null)
+          {
+            try
+            {
+              range.complete(BinaryProtocol.readRange(payload, encoding));
+            }
+            catch (RuntimeException e)
+            {
+              throw new IOException("Bad range response: " + e);
+            }
+          }
+        }
+        in.compact();
+        if ((in.capacity() > BinaryProtocol.BUFFER_SIZE)
+          && (in.position() <= BinaryProtocol.BUFFER_SIZE)
+          && ((in.position() < 4) || (4 + in.getInt(0) <= BinaryProtocol.BUFFER_SIZE)))
+        // ASSERTION: the large frame it grew for is gone, so give back the memory
+        {
+          ByteBuffer smaller = ByteBuffer.allocateDirect(BinaryProtocol.BUFFER_SIZE);
+          in.flip();
+          smaller.put(in);
+          in = smaller;
+        }
+      }
+      throw new EOFException("Server closed the connection");
+    }
+    catch (IOException e)
+    {
+      failure = e;
+      fail(e);
+      close();
+    }
+  }
+
+  private void fail(IOException e)
+  // Fails every request not yet answered.
+  {
+    Iterator<Integer> ids = waiting.keySet().iterator();
+    while (ids.hasNext())
+    {
+      CompletableFuture<String> result = waiting.remove(ids.next());
+      if (result != null)
+        result.completeExceptionally(e);
+    }
+    ids = ranges.keySet().iterator();
+    while (ids.hasNext())
+    {
+      CompletableFuture<TranslatedRange> result = ranges.remove(ids.next());
+      if (result != null)
+        result.completeExceptionally(e);
+    }
+  }
+}
@@ -0,0 +1,639 @@
+package uk.ac.umist.co.brailletrans;
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A server translating text over a compact binary protocol, for clients that
+ * send many requests.  Each request names a language of a
+ * <CODE>LanguageRegistry</CODE>, the state to start in and the text, in UTF-8
+ * or Latin-1; see <CODE>BinaryTranslationClient</CODE>.  A request may
+ * instead ask for part of a text to be translated from several states, which
+ * <CODE>TranslationCluster</CODE> uses to join the pieces of a document
+ * translated by different servers; see <CODE>BinaryProtocol</CODE>.
+ *
+ * <p>One thread reads and writes every connection without blocking, through
+ * direct buffers.  Requests are translated by a pool of worker threads with
+ * pooled sessions of each language, so a client may send many requests on one
+ * connection without waiting, and each response is sent as soon as its
+ * translation is done, whatever order that is in.  Responses waiting for a
+ * connection are written together.  A connection with
+ * <CODE>MAX_OUTSTANDING</CODE> requests, or <CODE>MAX_OUTSTANDING_BYTES</CODE>
+ * bytes of them, not yet answered is not read from again until half of them
+ * have been, so a client sending faster than the server translates is slowed
+ * by TCP rather than filling the server's memory.
+ *
+ * <p>Languages are loaded from the registry when first asked for.  A server
+ * can be told to unload languages it has not been asked for in a while, so a
+ * server that is sent only some languages, as by a
+ * <CODE>LanguageRouter</CODE>, keeps only those in memory.
+ *
+ * <p>The server asks for no credentials, so when run with <CODE>main</CODE>
+ * it listens only on the loopback address unless another address to listen
+ * on is given.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class BinaryTranslationServer
+{
+  /**
+   * The most requests of one connection being translated or waiting to be
+   * written before the server stops reading it.
+   */
+  public static final int MAX_OUTSTANDING = 1024;
+  /**
+   * The most bytes of requests of one connection being translated or waiting
+   * to be written before the server stops reading it.
+   */
+  public static final int MAX_OUTSTANDING_BYTES = 4 * 1024 * 1024;
+
+  private LanguageRegistry registry;
+  // the languages to translate with
+  private ConcurrentHashMap<String, SessionPool> sessions =
+    new ConcurrentHashMap<String, SessionPool>();
+  // language name -> its sessions
+  private ConcurrentHashMap<String, Long> lastUsed = new ConcurrentHashMap<String, Long>();
+  // language name -> time in milliseconds it was last asked for
+  private volatile long unloadAfter;
+  // milliseconds a language is kept unused, or 0 to keep every language
+  private ExecutorService workers;
+  // translates requests
+  private Selector selector;
+  private ServerSocketChannel listener;
+  private ConcurrentLinkedQueue<Connection> writable = new ConcurrentLinkedQueue<Connection>();
+  // connections with responses queued since the selector last looked
+  private volatile boolean running;
+  private Thread selectorThread;
+
+  /**
+   * Creates a <CODE>BinaryTranslationServer</CODE> with one worker per
+   * processor.
+   *
+   * @param registry  The languages to translate with.
+   * @param address  The address to listen on.
+   * @throws IOException if the address cannot be listened on.
+   */
+  public BinaryTranslationServer(LanguageRegistry registry, InetSocketAddress address)
+    throws IOException
+  {
+    this(registry, address, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a <CODE>BinaryTranslationServer</CODE>.
+   *
+   * @param registry  The languages to translate with.
+   * @param address  The address to listen on.
+   * @param numberWorkers  The number of threads translating requests.
+   * @throws IOException if the address cannot be listened on.
+   */
+  public BinaryTranslationServer(LanguageRegistry registry, InetSocketAddress address,
+    int numberWorkers) throws IOException
+  {
+    this.registry = registry;
+    workers = Executors.newFixedThreadPool(numberWorkers, new ThreadFactory()
+    {
+      public Thread newThread(Runnable task)
+      {
+        Thread thread = new Thread(task, "BinaryTranslationServer worker");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    selector = Selector.open();
+    listener = ServerSocketChannel.open();
+    listener.bind(address);
+    listener.configureBlocking(false);
+    listener.register(selector, SelectionKey.OP_ACCEPT);
+  }
+
+  /**
+   * Starts answering requests.
+   */
+  public void start()
+  {
+    running = true;
+    selectorThread = new Thread(new Runnable()
+    {
+      public void run()
+      {
+        select();
+      }
+    }, "BinaryTranslationServer");
+    selectorThread.start();
+  }
+
+  /**
+   * Stops answering requests and closes every connection.
+   */
+  public void stop()
+  {
+    running = false;
+    selector.wakeup();
+    try
+    {
+      selectorThread.join();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+    workers.shutdownNow();
+  }
+
+  /**
+   * Unloads languages from the server and its registry once they have not
+   * been asked for in a time.  A language unloaded is loaded again when next
+   * asked for.
+   *
+   * @param milliseconds  The time a language is kept without being asked
+   * for, or 0 to keep every language, which is the default.
+   */
+  public void setUnloadAfter(long milliseconds)
+  {
+    if (milliseconds < 0)
+      throw new IllegalArgumentException("Negative time " + milliseconds);
+    unloadAfter = milliseconds;
+    selector.wakeup();
+  }
+
+  /**
+   * Returns the address the server listens on.
+   *
+   * @return The address.
+   */
+  public InetSocketAddress getAddress() throws IOException
+  {
+    return (InetSocketAddress) listener.getLocalAddress();
+  }
+
+  /**
+   * Runs the server on the command line.
+   *
+   * @param args  The directory holding the language files, then the port to
+   * listen on, then optionally the address to listen on, the loopback address
+   * if none is given.
+   */
+  public static void main(String[] args) throws IOException
+  {
+    if ((args.length < 2) || (args.length > 3))
+    {
+      System.out.println("Usage: java uk.ac.umist.co.brailletrans.BinaryTranslationServer "
+        + "languageDirectory port [address]");
+      return;
+    }
+    // Only listen beyond this machine when asked to
+    InetAddress address = (args.length > 2) ? InetAddress.getByName(args[2])
+      : InetAddress.getLoopbackAddress();
+    BinaryTranslationServer server = new BinaryTranslationServer(
+      new LanguageRegistry(new File(args[0])),
+      new InetSocketAddress(address, Integer.parseInt(args[1])));
+    server.start();
+    System.out.println("Translating on port " + server.getAddress().getPort());
+  }
+
+  //***** PRIVATE METHODS ***********************************************
+  private void select()
+  // Runs the selector until stopped.
+  {
+    try
+    {
+      long nextUnload = 0;
+      while (running)
+      {
+        long keep = unloadAfter;
+        selector.select((keep == 0) ? 0 : Math.max(1, keep / 2));
+        if ((keep != 0) && (System.currentTimeMillis() >= nextUnload))
+        {
+          unloadUnused(keep);
+          nextUnload = System.currentTimeMillis() + Math.max(1, keep / 2);
+        }
+        Connection connection;
+        while ((connection = writable.poll()) != null)
+          if (connection.key.isValid())
+            connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext())
+        {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid())
+            continue;
+          if (key.isAcceptable())
+            accept();
+          else
+          {
+            connection = (Connection) key.attachment();
+            try
+            {
+              if (key.isReadable())
+                connection.read();
+              if (key.isValid() && key.isWritable())
+                connection.write();
+            }
+            catch (IOException e)
+            // ASSERTION: the client has gone or broken the protocol
+            {
+              connection.close();
+            }
+            catch (RuntimeException e)
+            // ASSERTION: a frame broke the server, so drop only its client
+            {
+              System.err.println("BinaryTranslationServer dropped a connection: " + e);
+              connection.close();
+            }
+          }
+        }
+      }
+    }
+    catch (IOException e)
+    {
+      System.err.println("BinaryTranslationServer stopped: " + e);
+    }
+    finally
+    {
+      Iterator<SelectionKey> keys = selector.keys().iterator();
+      while (keys.hasNext())
+      {
+        try
+        {
+          keys.next().channel().close();
+        }
+        catch (IOException e)
+        {
+        }
+      }
+      try
+      {
+        selector.close();
+      }
+      catch (IOException e)
+      {
+      }
+    }
+  }
+
+  private void accept() throws IOException
+  {
+    SocketChannel channel = listener.accept();
+    if (channel == null)
+      return;
+    channel.configureBlocking(false);
+    channel.socket().setTcpNoDelay(true);
+    Connection connection = new Connection(channel);
+    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+  }
+
+  private void unloadUnused(long keep)
+  // Unloads the languages not asked for in keep milliseconds.
+  {
+    long now = System.currentTimeMillis();
+    Iterator<Map.Entry<String, Long>> names = lastUsed.entrySet().iterator();
+    while (names.hasNext())
+    {
+      Map.Entry<String, Long> entry = names.next();
+      if ((now - entry.getValue().longValue() > keep)
+        && lastUsed.remove(entry.getKey(), entry.getValue()))
+      {
+        sessions.remove(entry.getKey());
+        registry.unload(entry.getKey());
+      }
+    }
+  }
+
+  private SessionPool getSessions(String name) throws IOException
+  // Returns the sessions of a language, loading it if it is new.
+  {
+    SessionPool pool = sessions.get(name);
+    if (pool == null)
+    {
+      SessionPool made = new SessionPool(registry.getLanguage(name));
+      pool = sessions.putIfAbsent(name, made);
+      if (pool == null)
+        pool = made;
+    }
+    lastUsed.put(name, Long.valueOf(System.currentTimeMillis()));
+    return pool;
+  }
+
+  private ByteBuffer translate(int id, String name, int state, byte encoding,
+    byte[] payload)
+  // Translates a request and returns its response frame.
+  {
+    try
+    {
+      SessionPool pool = getSessions(name);
+      pool.checkState(state);
+      String text = new String(payload, BinaryProtocol.charset(encoding));
+      RangeTranslator session = pool.get();
+      String translated;
+      try
+      {
+        translated = session.translate(text, state);
+      }
+      finally
+      {
+        pool.release(session);
+      }
+      if ((encoding == BinaryProtocol.LATIN1) && !BinaryProtocol.isLatin1(translated))
+        encoding = BinaryProtocol.UTF8;
+      return BinaryProtocol.response(id, BinaryProtocol.OK, translated, encoding);
+    }
+    catch (Exception e)
+    {
+      String message = (e.getMessage() == null) ? e.toString() : e.getMessage();
+      return BinaryProtocol.response(id, BinaryProtocol.ERROR, message,
+        BinaryProtocol.UTF8);
+    }
+  }
+
+  private ByteBuffer translateRange(int id, String name, int state, byte encoding,
+    byte[] payload)
+  // Translates a range request and returns its response frame.
+  {
+    try
+    {
+      SessionPool pool = getSessions(name);
+      pool.checkState(state);
+      ByteBuffer request = ByteBuffer.wrap(payload);
+      int from = request.getInt();
+      int to = request.getInt();
+      int[] entryStates = new int[request.getShort()];
+      for (int i = 0; i < entryStates.length; i++)
+      {
+        entryStates[i] = request.getShort();
+        pool.checkState(entryStates[i]);
+      }
+      if (entryStates.length == 0)
+      // ASSERTION: every state is wanted
+      {
+        entryStates = new int[pool.getPermittedStates()];
+        for (int i = 0; i < entryStates.length; i++)
+          entryStates[i] = i + 1;
+      }
+      int[] defaultStates = new int[entryStates.length];
+      Arrays.fill(defaultStates, state);
+      String text = new String(payload, request.position(), request.remaining(),
+        BinaryProtocol.charset(encoding));
+      if ((from < 0) || (from > to) || (to > text.length()))
+        throw new IllegalArgumentException("Bad range " + from + " to " + to);
+
+      RangeTranslator session = pool.get();
+      TranslatedRange translated;
+      try
+      {
+        Object mapped = session.mapText(text);
+        translated = session.translateRange(mapped, mappedPosition(session, text, mapped, from),
+          mappedPosition(session, text, mapped, to), entryStates, defaultStates);
+        for (int i = 0; i < entryStates.length; i++)
+          translated.end[i] = session.textIndex(text, translated.end[i]);
+        int reachFrom = (translated.reachFrom < 0) ? -1
+          : session.textIndex(text, translated.reachFrom);
+        int reachTo = (translated.reachTo >= session.mappedLength(mapped)) ? text.length()
+          : session.textIndex(text, translated.reachTo);
+        translated = new TranslatedRange(translated.output, translated.end,
+          translated.exitState, reachFrom, reachTo);
+      }
+      finally
+      {
+        pool.release(session);
+      }
+      if (encoding == BinaryProtocol.LATIN1)
+        for (int i = 0; i < entryStates.length; i++)
+          if (!BinaryProtocol.isLatin1(translated.output[i]))
+            encoding = BinaryProtocol.UTF8;
+      return BinaryProtocol.rangeResponse(id, translated, encoding);
+    }
+    catch (Exception e)
+    {
+      String message = (e.getMessage() == null) ? e.toString() : e.getMessage();
+      return BinaryProtocol.response(id, BinaryProtocol.ERROR, message,
+        BinaryProtocol.UTF8);
+    }
+  }
+
+  private static int mappedPosition(RangeTranslator session, String text, Object mapped,
+    int index)
+  // Returns the mapped position of the character at an index in text.
+  {
+    int low = 0;
+    int high = session.mappedLength(mapped);
+    while (low < high)
+    {
+      int middle = (low + high) >>> 1;
+      if (session.textIndex(text, middle) < index)
+        low = middle + 1;
+      else
+        high = middle;
+    }
+    if (session.textIndex(text, low) != index)
+      throw new IllegalArgumentException("Index " + index + " is inside a character");
+    return low;
+  }
+
+  private class Connection
+  // A client connection, read and written only by the selector thread except
+  // for its queue of responses
+  {
+    private SocketChannel channel;
+    private SelectionKey key;
+    private ByteBuffer in = ByteBuffer.allocateDirect(BinaryProtocol.BUFFER_SIZE);
+    // bytes read and not yet made into requests, in write mode
+    private ByteBuffer out = ByteBuffer.allocateDirect(BinaryProtocol.BUFFER_SIZE);
+    // bytes of responses not yet written, in write mode
+    private ConcurrentLinkedQueue<Response> responses = new ConcurrentLinkedQueue<Response>();
+    // responses waiting to go into out
+    private Response response;
+    // the response partly copied into out
+    private int outstanding;
+    // requests handed to workers and not yet copied into out
+    private long outstandingBytes;
+    // the bytes of those requests
+    private boolean paused;
+    // true if reading is stopped until fewer requests are outstanding
+
+    private Connection(SocketChannel channel)
+    {
+      this.channel = channel;
+    }
+
+    private void read() throws IOException
+    // Reads what has arrived and hands each whole request to a worker.
+    {
+      if (channel.read(in) == -1)
+      {
+        close();
+        return;
+      }
+      parse();
+    }
+
+    private void parse() throws IOException
+    // Hands each whole request in to a worker, until too many are outstanding.
+    {
+      in.flip();
+      while (in.remaining() >= 4)
+      {
+        if ((outstanding >= MAX_OUTSTANDING) || (outstandingBytes >= MAX_OUTSTANDING_BYTES))
+        // ASSERTION: the client is ahead of the workers, so stop reading it
+        {
+          paused = true;
+          key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+          break;
+        }
+        final int length = in.getInt(in.position());
+        if ((length < BinaryProtocol.REQUEST_HEADER)
+          || (length > BinaryProtocol.MAX_FRAME_LENGTH))
+          throw new IOException("Bad frame length " + length);
+        if (in.remaining() < 4 + length)
+        {
+          if (in.capacity() < 4 + length)
+          // ASSERTION: the frame will not fit, so make room for it
+          {
+            ByteBuffer larger = ByteBuffer.allocateDirect(4 + length);
+            larger.put(in);
+            in = larger;
+            return;
+          }
+          break;
+        }
+        in.getInt();
+        final int id = in.getInt();
+        final int state = in.getShort();
+        final byte encoding = in.get();
+        int nameLength = in.get() & 0xFF;
+        if (nameLength > length - BinaryProtocol.REQUEST_HEADER)
+          throw new IOException("Bad language name length " + nameLength);
+        byte[] name = new byte[nameLength];
+        in.get(name);
+        final byte[] payload = new byte[length - BinaryProtocol.REQUEST_HEADER - nameLength];
+        in.get(payload);
+        final String language = new String(name, StandardCharsets.US_ASCII);
+        outstanding++;
+        outstandingBytes += 4 + length;
+        workers.execute(new Runnable()
+        {
+          public void run()
+          {
+            ByteBuffer frame = ((encoding & BinaryProtocol.RANGE) == 0)
+              ? translate(id, language, state, encoding, payload)
+              : translateRange(id, language, state,
+                (byte) (encoding & ~BinaryProtocol.RANGE), payload);
+            send(new Response(frame, 4 + length));
+          }
+        });
+      }
+      in.compact();
+      if ((in.capacity() > BinaryProtocol.BUFFER_SIZE)
+        && (in.position() <= BinaryProtocol.BUFFER_SIZE)
+        && ((in.position() < 4) || (4 + in.getInt(0) <= BinaryProtocol.BUFFER_SIZE)))
+      // ASSERTION: the large frame it grew for is gone, so give back the memory
+      {
+        ByteBuffer smaller = ByteBuffer.allocateDirect(BinaryProtocol.BUFFER_SIZE);
+        in.flip();
+        smaller.put(in);
+        in = smaller;
+      }
+    }
+
+    private void send(Response response)
+    // Queues a response from a worker and asks the selector to write it.
+    {
+      responses.add(response);
+      writable.add(this);
+      selector.wakeup();
+    }
+
+    private void resume() throws IOException
+    // Reads again once half the outstanding requests have been answered.
+    {
+      if (paused && (outstanding <= MAX_OUTSTANDING / 2)
+        && (outstandingBytes <= MAX_OUTSTANDING_BYTES / 2))
+      {
+        paused = false;
+        parse();
+        if (!paused)
+          key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+      }
+    }
+
+    private void write() throws IOException
+    // Writes as many queued responses as the connection will take.
+    {
+      while (true)
+      {
+        while (out.hasRemaining())
+        {
+          if (response == null)
+            response = responses.poll();
+          if (response == null)
+            break;
+          ByteBuffer frame = response.frame;
+          if (frame.remaining() <= out.remaining())
+          {
+            out.put(frame);
+            outstanding--;
+            outstandingBytes -= response.requestLength;
+            response = null;
+          }
+          else
+          {
+            int limit = frame.limit();
+            frame.limit(frame.position() + out.remaining());
+            out.put(frame);
+            frame.limit(limit);
+          }
+        }
+        resume();
+        out.flip();
+        channel.write(out);
+        boolean written = !out.hasRemaining();
+        out.compact();
+        if (!written)
+          return;
+        // ASSERTION: the connection will take more
+        if ((response == null) && responses.isEmpty())
+        {
+          key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+          if (responses.isEmpty())
+            return;
+          key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+      }
+    }
+
+    private void close()
+    {
+      key.cancel();
+      try
+      {
+        channel.close();
+      }
+      catch (IOException e)
+      {
+      }
+    }
+  } // end of Connection class
+
+  private static class Response
+  // A response frame and the length of the request it answers
+  {
+    private ByteBuffer frame;
+    private int requestLength;
+
+    private Response(ByteBuffer frame, int requestLength)
+    {
+      this.frame = frame;
+      this.requestLength = requestLength;
+    }
+  } // end of Response class
+}
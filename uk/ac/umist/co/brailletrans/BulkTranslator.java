@@ -0,0 +1,426 @@
+package uk.ac.umist.co.brailletrans;
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+
+/**
+ * Translates many files at once from the command line, loading the language
+ * once and translating the files on several threads.
+ *
+ * <pre>
+ * java uk.ac.umist.co.brailletrans.BulkTranslator [options] languageDirectory
+ *   language state file...
+ *
+ * -threads n         translate n files at a time, one per processor if not given
+ * -in charset        the encoding of the input files, UTF-8 if not given
+ * -out charset       the encoding of the output files, UTF-8 if not given
+ * -output directory  write the output files here, not beside the input files;
+ *                    input files must then have different names
+ * -suffix suffix     add this to each input filename for its output file,
+ *                    ".brl" if not given
+ * </pre>
+ *
+ * <p>A file may be a pattern such as <CODE>texts/*.txt</CODE> or
+ * <CODE>texts/**.txt</CODE>, for shells that do not expand them.  Each file
+ * is read and written through buffers and translated a batch at a time with
+ * a <CODE>ChunkTranslator</CODE>, so files of any size are translated in
+ * little memory; files of 16MB or more are mapped into memory with a
+ * <CODE>MappedFileTranslator</CODE> instead of being read.  Output that
+ * cannot be written in the output encoding fails the file rather than being
+ * replaced.  A summary of the files, bytes and characters translated per
+ * second is printed at the end, and the exit code is the number of files
+ * that failed, or 255 if more than 255 failed.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class BulkTranslator
+{
+  /**
+   * The suffix added to input filenames for output files unless another is
+   * given.
+   */
+  public static final String DEFAULT_SUFFIX = ".brl";
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // characters read at a time
+  private static final long MAPPED_SIZE = 16 * 1024 * 1024;
+  // files at least this large are mapped rather than read
+  private static final String GLOB_CHARACTERS = "*?[{";
+
+  private SessionPool sessions;
+  // sessions of the language to translate with
+  private MappedFileTranslator mapped;
+  // translates large files, sharing the sessions
+  private int state;
+  private Charset inputEncoding = StandardCharsets.UTF_8;
+  private Charset outputEncoding = StandardCharsets.UTF_8;
+  private File outputDirectory;
+  // where output files go, or null for beside the input files
+  private String suffix = DEFAULT_SUFFIX;
+
+  private AtomicLong bytesRead = new AtomicLong();
+  private AtomicLong charactersRead = new AtomicLong();
+
+  /**
+   * Creates a <CODE>BulkTranslator</CODE> that translates with language.
+   *
+   * @param language  A <CODE>Language256</CODE>, <CODE>LanguageInteger</CODE>
+   * or <CODE>LanguageUnicode</CODE> to translate with.
+   * @param state  The state to translate each file in.
+   * @throws IllegalArgumentException if the state is not permitted.
+   */
+  public BulkTranslator(Language language, int state)
+  {
+    sessions = new SessionPool(language);
+    sessions.checkState(state);
+    this.state = state;
+    mapped = new MappedFileTranslator(sessions, state);
+  }
+
+  /**
+   * Sets the encodings of the files.
+   *
+   * @param input  The encoding of the files read.
+   * @param output  The encoding of the files written.
+   */
+  public void setEncodings(Charset input, Charset output)
+  {
+    inputEncoding = input;
+    outputEncoding = output;
+    mapped.setEncodings(input, output);
+  }
+
+  /**
+   * Sets where output files are written.
+   *
+   * @param directory  The directory to write output files to, or null to
+   * write each beside its input file.
+   * @param suffix  The suffix to add to each input filename for its output
+   * file.
+   */
+  public void setOutput(File directory, String suffix)
+  {
+    outputDirectory = directory;
+    this.suffix = suffix;
+  }
+
+  /**
+   * Returns the output file of an input file.
+   *
+   * @param input  The input file.
+   * @return The file its translation is written to.
+   */
+  public File getOutputFile(File input)
+  {
+    File directory = (outputDirectory == null) ? input.getAbsoluteFile().getParentFile()
+      : outputDirectory;
+    return new File(directory, input.getName() + suffix);
+  }
+
+  /**
+   * Checks that no two input files would be translated into the same output
+   * file, as two files of the same name in different directories would be
+   * when the output files are all written to one directory.
+   *
+   * @param inputs  The files to translate.
+   * @throws IllegalArgumentException naming the first two files found that
+   * share an output file.
+   */
+  public void checkOutputs(File[] inputs)
+  {
+    File[] outputs = new File[inputs.length];
+    for (int file = 0; file < inputs.length; file++)
+      outputs[file] = getOutputFile(inputs[file]);
+    checkOutputs(inputs, outputs);
+  }
+
+  /**
+   * Translates one file into its output file.
+   *
+   * @param input  The file to translate.
+   * @throws IOException if the file cannot be read, or its translation
+   * written in the output encoding, in which case no output file is left.
+   */
+  public void translate(File input) throws IOException
+  {
+    long size = input.length();
+    if (size >= MAPPED_SIZE)
+    {
+      charactersRead.addAndGet(mapped.translate(input, getOutputFile(input)));
+      bytesRead.addAndGet(size);
+      return;
+    }
+    CharsetDecoder decoder = inputEncoding.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPORT)
+      .onUnmappableCharacter(CodingErrorAction.REPORT);
+    CharsetEncoder encoder = outputEncoding.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPORT)
+      .onUnmappableCharacter(CodingErrorAction.REPORT);
+    ChunkTranslator translator = new ChunkTranslator(sessions, state);
+    Reader in = new InputStreamReader(new FileInputStream(input), decoder);
+    File output = getOutputFile(input);
+    boolean written = false;
+    try
+    {
+      Writer out = new BufferedWriter(new OutputStreamWriter(
+        new FileOutputStream(output), encoder), BUFFER_SIZE);
+      try
+      {
+        char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        long characters = 0;
+        while ((read = in.read(buffer)) != -1)
+        {
+          out.write(translator.translate(buffer, 0, read));
+          characters += read;
+        }
+        out.write(translator.finish());
+        out.close();
+        written = true;
+        charactersRead.addAndGet(characters);
+        bytesRead.addAndGet(input.length());
+      }
+      finally
+      {
+        if (!written)
+        // ASSERTION: failed, so leave no partial output
+        {
+          try
+          {
+            out.close();
+          }
+          catch (IOException e)
+          {
+          }
+          output.delete();
+        }
+      }
+    }
+    finally
+    {
+      translator.abandon();
+      in.close();
+    }
+  }
+
+  /**
+   * Returns the number of bytes of input translated so far.
+   *
+   * @return The total size of the files translated.
+   */
+  public long getBytesTranslated()
+  {
+    return bytesRead.get();
+  }
+
+  /**
+   * Returns the number of characters of input translated so far.
+   *
+   * @return The total length of the files translated.
+   */
+  public long getCharactersTranslated()
+  {
+    return charactersRead.get();
+  }
+
+  /**
+   * Expands the files named on a command line, where a name holding any of
+   * the characters <CODE>*?[{</CODE> is a glob pattern.
+   *
+   * @param names  The names of files, or patterns.
+   * @return The files named and the files matching the patterns, in the
+   * order given, each pattern's files in alphabetical order, and each file
+   * once.
+   * @throws IOException if a directory cannot be searched.
+   */
+  public static File[] expand(String[] names) throws IOException
+  {
+    LinkedHashSet<File> files = new LinkedHashSet<File>();
+    for (int i = 0; i < names.length; i++)
+    {
+      int glob = firstGlobCharacter(names[i]);
+      if (glob == -1)
+      {
+        files.add(new File(names[i]));
+        continue;
+      }
+      // Search from the directory before the first glob character
+      int slash = Math.max(names[i].lastIndexOf('/', glob),
+        names[i].lastIndexOf(File.separatorChar, glob));
+      Path base = Paths.get((slash == -1) ? "." : names[i].substring(0, slash + 1));
+      String pattern = (slash == -1) ? base.resolve(names[i]).toString() : names[i];
+      final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+      int depth = Integer.MAX_VALUE;
+      if (names[i].indexOf("**") == -1)
+      {
+        depth = 1;
+        for (int c = slash + 1; c < names[i].length(); c++)
+          if ((names[i].charAt(c) == '/') || (names[i].charAt(c) == File.separatorChar))
+            depth++;
+      }
+      TreeSet<File> matched = new TreeSet<File>();
+      Stream<Path> walk = Files.walk(base, depth);
+      try
+      {
+        Iterator<Path> paths = walk.iterator();
+        while (paths.hasNext())
+        {
+          Path path = paths.next();
+          if (matcher.matches(path) && Files.isRegularFile(path))
+            matched.add(path.toFile());
+        }
+      }
+      finally
+      {
+        walk.close();
+      }
+      files.addAll(matched);
+    }
+    return files.toArray(new File[files.size()]);
+  }
+
+  /**
+   * Runs the translator on the command line.
+   *
+   * @param args  Options, the directory holding the language files, the
+   * language, the state and the files to translate.
+   */
+  public static void main(String[] args) throws IOException, InterruptedException
+  {
+    int numberThreads = Runtime.getRuntime().availableProcessors();
+    Charset inputEncoding = StandardCharsets.UTF_8;
+    Charset outputEncoding = StandardCharsets.UTF_8;
+    File outputDirectory = null;
+    String suffix = DEFAULT_SUFFIX;
+    int arg = 0;
+    try
+    {
+      for (; (arg < args.length) && args[arg].startsWith("-"); arg += 2)
+      {
+        if (arg + 1 >= args.length)
+          throw new IllegalArgumentException("No value for " + args[arg]);
+        if (args[arg].equals("-threads"))
+          numberThreads = Integer.parseInt(args[arg + 1]);
+        else if (args[arg].equals("-in"))
+          inputEncoding = Charset.forName(args[arg + 1]);
+        else if (args[arg].equals("-out"))
+          outputEncoding = Charset.forName(args[arg + 1]);
+        else if (args[arg].equals("-output"))
+          outputDirectory = new File(args[arg + 1]);
+        else if (args[arg].equals("-suffix"))
+          suffix = args[arg + 1];
+        else
+          throw new IllegalArgumentException("Unknown option " + args[arg]);
+      }
+      if (args.length - arg < 4)
+        throw new IllegalArgumentException("Too few arguments");
+    }
+    catch (IllegalArgumentException e)
+    {
+      System.out.println(e.getMessage());
+      System.out.println("Usage: java uk.ac.umist.co.brailletrans.BulkTranslator "
+        + "[-threads n] [-in charset] [-out charset] [-output directory] [-suffix suffix] "
+        + "languageDirectory language state file...");
+      System.exit(1);
+    }
+
+    long started = System.nanoTime();
+    Language language = new LanguageRegistry(new File(args[arg])).getLanguage(args[arg + 1]);
+    final BulkTranslator translator = new BulkTranslator(language,
+      Integer.parseInt(args[arg + 2]));
+    translator.setEncodings(inputEncoding, outputEncoding);
+    if (outputDirectory != null)
+      outputDirectory.mkdirs();
+    translator.setOutput(outputDirectory, suffix);
+    File[] files = expand(Arrays.copyOfRange(args, arg + 3, args.length));
+    try
+    {
+      translator.checkOutputs(files);
+    }
+    catch (IllegalArgumentException e)
+    {
+      System.out.println(e.getMessage());
+      System.exit(1);
+    }
+    long loaded = System.nanoTime();
+
+    ExecutorService threads = Executors.newFixedThreadPool(Math.max(1, numberThreads));
+    Future<?>[] done = new Future<?>[files.length];
+    for (int file = 0; file < files.length; file++)
+    {
+      final File input = files[file];
+      done[file] = threads.submit(new Callable<Void>()
+      {
+        public Void call() throws IOException
+        {
+          translator.translate(input);
+          return null;
+        }
+      });
+    }
+    int failed = 0;
+    for (int file = 0; file < files.length; file++)
+    {
+      try
+      {
+        done[file].get();
+      }
+      catch (ExecutionException e)
+      {
+        System.err.println(files[file] + ": " + e.getCause());
+        failed++;
+      }
+    }
+    threads.shutdown();
+
+    double seconds = (System.nanoTime() - loaded) / 1e9;
+    int translated = files.length - failed;
+    System.err.println(translated + " files, "
+      + (translator.getBytesTranslated() / 1024 / 1024) + "MB, "
+      + translator.getCharactersTranslated() + " characters in "
+      + (int) (seconds * 1000) + "ms after " + (int) ((loaded - started) / 1000000)
+      + "ms loading: " + (int) (translated / seconds) + " files/s, "
+      + (int) (translator.getBytesTranslated() / seconds / 1024 / 1024) + "MB/s, "
+      + (int) (translator.getCharactersTranslated() / seconds) + " chars/s"
+      + ((failed == 0) ? "" : ", " + failed + " failed"));
+    // exit codes are taken modulo 256, so 256 failures must not look like none
+    System.exit(Math.min(failed, 255));
+  }
+
+  static void checkOutputs(File[] inputs, File[] outputs)
+  // Throws IllegalArgumentException if two inputs have the same output, which
+  // they would write at once, each overwriting the other.
+  {
+    HashMap<Path, File> written = new HashMap<Path, File>();
+    for (int file = 0; file < inputs.length; file++)
+    {
+      File other = written.put(outputs[file].getAbsoluteFile().toPath().normalize(),
+        inputs[file]);
+      if (other != null)
+        throw new IllegalArgumentException(other + " and " + inputs[file]
+          + " would both be translated into " + outputs[file]);
+    }
+  }
+
+  //***** PRIVATE METHODS ***********************************************
+  private static int firstGlobCharacter(String name)
+  // Returns the index of the first glob character in name, or -1 if it has
+  // none.
+  {
+    int toReturn = -1;
+    for (int i = 0; i < GLOB_CHARACTERS.length(); i++)
+    {
+      int at = name.indexOf(GLOB_CHARACTERS.charAt(i));
+      if ((at != -1) && ((toReturn == -1) || (at < toReturn)))
+        toReturn = at;
+    }
+    return toReturn;
+  }
+}
@@ -0,0 +1,369 @@
+package uk.ac.umist.co.brailletrans;
+import java.io.*;
+import java.nio.charset.*;
+
+/**
+ * Translates a text given in chunks with a <CODE>Language</CODE>, returning
+ * the translation in chunks as it becomes ready.
+ *
+ * <p>The chunks are translated as one text: the state of the machine carries
+ * from one to the next, and rules see the text either side of a chunk
+ * boundary.  Small chunks are gathered until <CODE>BATCH_SIZE</CODE>
+ * characters are waiting.  A translation is cut just after a space at least
+ * <CODE>CONTEXT_SIZE</CODE> characters before the end of what has been
+ * given, but is not kept if its rules looked as far as that end: more text is
+ * waited for instead.  The translated text that any left context could still
+ * look back into is kept, however long a run of wildcard characters it goes
+ * through, so the output is exactly that of translating the whole text at
+ * once with any language.  A context running through a long stretch of text
+ * holds that much text until it ends.
+ *
+ * <p>A translation under way can be moved to another process: a snapshot
+ * records the language, the state of the machine and the text kept for
+ * context or not yet translated, and <CODE>resume</CODE> carries on from it
+ * with the same language loaded from a <CODE>LanguageRegistry</CODE>, giving
+ * the rest of the translation exactly as if it had not moved.
+ *
+ * <p>A <CODE>ChunkTranslator</CODE> translates one text on one thread at a
+ * time.  The language must not be altered while it is in use.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class ChunkTranslator
+{
+  /**
+   * The number of characters before the end of the text given at which a
+   * translation is cut, so that rules seldom look as far as the end and have
+   * to wait for more.
+   */
+  public static final int CONTEXT_SIZE = 64;
+  /**
+   * The number of characters to gather before translating them.
+   */
+  public static final int BATCH_SIZE = 4096;
+  /**
+   * The version of the snapshot format written by <CODE>snapshot</CODE>.
+   * Snapshots of this version or earlier can be resumed.
+   */
+  public static final int SNAPSHOT_VERSION = 1;
+  private static final int SNAPSHOT_MAGIC = 0x42545353;
+  // "BTSS", the first bytes of every snapshot
+  private static final int MAX_UNCUT = 16 * BATCH_SIZE;
+  // translate this much text without a space by cutting it anywhere
+
+  private SessionPool sessions;
+  // the pool the session came from
+  private RangeTranslator session;
+  // the session of the language translating the text, or null when finished
+  private int state;
+  // the state of the machine at the end of the text translated so far
+  private int defaultState;
+  // the state the machine returns to when no rule matches
+  private int permittedStates;
+  private int version;
+  // of the language, recorded in snapshots
+
+  private StringBuilder text = new StringBuilder();
+  // the text kept for context followed by the text not yet translated
+  private int contextLength;
+  // the number of characters of text already translated
+  private int contextPositions;
+  // the same as mapped positions
+  private int untranslatedWanted = BATCH_SIZE;
+  // the number of untranslated characters to wait for before translating
+
+  /**
+   * Creates a <CODE>ChunkTranslator</CODE> that translates with language
+   * starting in state.
+   *
+   * @param language  A <CODE>Language256</CODE>, <CODE>LanguageInteger</CODE>
+   * or <CODE>LanguageUnicode</CODE> to translate with.
+   * @param state  The state to start in and return to when no rule matches.
+   * @throws IllegalArgumentException if the state is not permitted.
+   */
+  public ChunkTranslator(Language language, int state)
+  {
+    this(new SessionPool(language), state);
+  }
+
+  ChunkTranslator(SessionPool sessions, int state)
+  // Creates a ChunkTranslator with a session from a pool, to which it is
+  // returned by finish.
+  {
+    sessions.checkState(state);
+    this.sessions = sessions;
+    session = sessions.get();
+    this.state = state;
+    defaultState = state;
+    permittedStates = sessions.getPermittedStates();
+    version = sessions.getVersion();
+  }
+
+  /**
+   * Adds a chunk to the text and translates as much as is ready.
+   *
+   * @param chunk  The next characters of the text.
+   * @return The next characters of the translation, which may be none.
+   * @throws IllegalStateException if the text is finished.
+   */
+  public String translate(String chunk)
+  {
+    if (session == null)
+      throw new IllegalStateException("Translation is finished");
+    text.append(chunk);
+    return translateReady();
+  }
+
+  String translate(char[] chunk, int offset, int length)
+  // Adds characters to the text straight from a buffer, as translate(String)
+  // does, so a caller decoding into a reused buffer makes no String of them.
+  {
+    if (session == null)
+      throw new IllegalStateException("Translation is finished");
+    text.append(chunk, offset, length);
+    return translateReady();
+  }
+
+  /**
+   * Translates the rest of the text.  The <CODE>ChunkTranslator</CODE> cannot
+   * be used after this.
+   *
+   * @return The last characters of the translation, which may be none.
+   * @throws IllegalStateException if the text is already finished.
+   */
+  public String finish()
+  {
+    if (session == null)
+      throw new IllegalStateException("Translation is finished");
+    try
+    {
+      return translate(true);
+    }
+    finally
+    {
+      sessions.release(session);
+      session = null;
+      text = null;
+    }
+  }
+
+  /**
+   * Stops translating without translating the rest of the text, as when it
+   * has been moved elsewhere with a snapshot.  The
+   * <CODE>ChunkTranslator</CODE> cannot be used after this.
+   */
+  public void abandon()
+  {
+    if (session != null)
+    {
+      sessions.release(session);
+      session = null;
+      text = null;
+    }
+  }
+
+  /**
+   * Returns a snapshot of the translation so far, from which
+   * <CODE>resume</CODE> can carry on.  The snapshot holds the name and
+   * version of the language, the current and default states, and the text
+   * kept for context or not yet translated, which is usually a few batches.
+   * This <CODE>ChunkTranslator</CODE> can still be used afterwards.
+   *
+   * @param languageName  The name of the language in the registry the
+   * translation will be resumed with.
+   * @return The snapshot.
+   * @throws IllegalStateException if the text is finished.
+   */
+  public byte[] snapshot(String languageName)
+  {
+    if (session == null)
+      throw new IllegalStateException("Translation is finished");
+    byte[] pending = text.toString().getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(pending.length + 64);
+    DataOutputStream out = new DataOutputStream(bytes);
+    try
+    {
+      out.writeInt(SNAPSHOT_MAGIC);
+      out.writeShort(SNAPSHOT_VERSION);
+      out.writeUTF(languageName);
+      out.writeInt(version);
+      out.writeShort(permittedStates);
+      out.writeShort(state);
+      out.writeShort(defaultState);
+      out.writeInt(contextLength);
+      out.writeInt(contextPositions);
+      out.writeInt(pending.length);
+      out.write(pending);
+      out.close();
+    }
+    catch (IOException e)
+    // ASSERTION: cannot happen writing to memory
+    {
+      throw new IllegalStateException(e.toString());
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Returns the name of the language a snapshot was taken with, so that it
+   * can be sent where the language is loaded.
+   *
+   * @param snapshot  A snapshot returned by <CODE>snapshot</CODE>.
+   * @return The name of the language.
+   * @throws IOException if the snapshot is not one.
+   */
+  public static String getLanguageName(byte[] snapshot) throws IOException
+  {
+    DataInputStream in = openSnapshot(snapshot);
+    return in.readUTF();
+  }
+
+  /**
+   * Carries on a translation from a snapshot, perhaps taken in another
+   * process.
+   *
+   * @param snapshot  A snapshot returned by <CODE>snapshot</CODE>.
+   * @param registry  The registry to find the language in by name.
+   * @return A <CODE>ChunkTranslator</CODE> that gives the rest of the
+   * translation.
+   * @throws FileNotFoundException if the registry has no language of that
+   * name.
+   * @throws IOException if the snapshot is not one, or is of another version
+   * of the language.
+   */
+  public static ChunkTranslator resume(byte[] snapshot, LanguageRegistry registry)
+    throws IOException
+  {
+    return resume(snapshot, new SessionPool(registry.getLanguage(getLanguageName(snapshot))));
+  }
+
+  static ChunkTranslator resume(byte[] snapshot, SessionPool sessions) throws IOException
+  // Carries on a translation from a snapshot with sessions of its language.
+  {
+    DataInputStream in = openSnapshot(snapshot);
+    String languageName = in.readUTF();
+    int languageVersion = in.readInt();
+    int languageStates = in.readUnsignedShort();
+    if ((languageVersion != sessions.getVersion())
+      || (languageStates != sessions.getPermittedStates()))
+      throw new IOException("Snapshot is of version " + languageVersion
+        + " of language " + languageName + ", not version " + sessions.getVersion());
+    int state = in.readUnsignedShort();
+    int defaultState = in.readUnsignedShort();
+    int contextLength = in.readInt();
+    int contextPositions = in.readInt();
+    byte[] pending = new byte[in.readInt()];
+    in.readFully(pending);
+    String text = new String(pending, StandardCharsets.UTF_8);
+    if ((contextLength < 0) || (contextLength > text.length())
+      || (contextPositions < 0) || (contextPositions > contextLength)
+      || (state < 1) || (state > languageStates))
+      throw new IOException("Snapshot is corrupt");
+
+    ChunkTranslator toReturn;
+    try
+    {
+      toReturn = new ChunkTranslator(sessions, defaultState);
+    }
+    catch (IllegalArgumentException e)
+    {
+      throw new IOException("Snapshot is corrupt: " + e.getMessage());
+    }
+    toReturn.state = state;
+    toReturn.text.append(text);
+    toReturn.contextLength = contextLength;
+    toReturn.contextPositions = contextPositions;
+    return toReturn;
+  }
+
+  /**
+   * Returns the state of the machine at the end of the text translated so
+   * far.
+   *
+   * @return The state.
+   */
+  public int getState()
+  {
+    return state;
+  }
+
+  private static DataInputStream openSnapshot(byte[] snapshot) throws IOException
+  // Returns a stream positioned at the language name of a snapshot, having
+  // checked that it is one of a version that can be read.
+  {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+    try
+    {
+      if (in.readInt() != SNAPSHOT_MAGIC)
+        throw new IOException("Not a translation snapshot");
+    }
+    catch (EOFException e)
+    {
+      throw new IOException("Not a translation snapshot");
+    }
+    int snapshotVersion = in.readUnsignedShort();
+    if ((snapshotVersion < 1) || (snapshotVersion > SNAPSHOT_VERSION))
+      throw new IOException("Cannot read snapshot version " + snapshotVersion);
+    return in;
+  }
+
+  private String translateReady()
+  // Translates as much as is ready once a chunk has been added.
+  {
+    if (text.length() - contextLength < untranslatedWanted)
+      return "";
+    return translate(false);
+  }
+
+  private String translate(boolean last)
+  // Translates the text given up to a space CONTEXT_SIZE characters before
+  // its end, or all of it if it is the last, unless the rules looked as far
+  // as its end, and keeps the translated text left contexts may look back
+  // into.
+  {
+    Object mapped = session.mapText(text);
+    int length = session.mappedLength(mapped);
+    int cut = length;
+    if (!last)
+    {
+      cut = length - CONTEXT_SIZE;
+      while ((cut > contextPositions) && !session.isMappedSpace(mapped, cut - 1))
+        cut--;
+      if (cut <= contextPositions)
+      // ASSERTION: no space to cut just after
+      {
+        if (text.length() - contextLength < MAX_UNCUT)
+        {
+          untranslatedWanted = text.length() - contextLength + BATCH_SIZE;
+          return "";
+        }
+        cut = length - CONTEXT_SIZE;
+      }
+    }
+    untranslatedWanted = BATCH_SIZE;
+    if (cut <= contextPositions)
+      return "";
+
+    TranslatedRange range = session.translateRange(mapped, contextPositions, cut,
+      new int[] {state}, new int[] {defaultState});
+    if (!last && (range.reachTo >= length))
+    // ASSERTION: a rule looked as far as the end of the text given, so may
+    // match differently once more is given
+    {
+      untranslatedWanted = text.length() - contextLength + BATCH_SIZE;
+      return "";
+    }
+    state = range.exitState[0];
+    int end = range.end[0];
+    int keep = Math.max(0, session.leftContextStart(mapped, end));
+    int keepIndex = session.textIndex(text, keep);
+    contextLength = session.textIndex(text, end) - keepIndex;
+    text.delete(0, keepIndex);
+    contextPositions = end - keep;
+    return range.output[0];
+  }
+}
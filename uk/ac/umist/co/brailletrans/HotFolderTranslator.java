@@ -0,0 +1,496 @@
+package uk.ac.umist.co.brailletrans;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Watches a directory and translates every text file that appears in it into
+ * another directory, for translating many files without starting a Java
+ * virtual machine and loading a language for each.
+ *
+ * <p>A file is taken once it has stopped changing for
+ * <CODE>SETTLE_TIME</CODE> milliseconds, so files still being copied in are
+ * left until they are complete.  Files are translated by a pool of threads
+ * with sessions of one loaded language, and each translation is written to a
+ * temporary file in the output directory, forced to disk and then renamed to
+ * the name of the input file, so that whatever reads the output directory
+ * never sees a file half written.  The input file is then deleted, so a crash
+ * leaves at least one of the two.  A file that cannot be
+ * translated is moved into a subdirectory "failed" of the input directory.
+ * Files whose names start with "." and directories are ignored.  Files are
+ * read and written as UTF-8.  With a <CODE>TranslationCache</CODE>,
+ * paragraphs translated before are read from the cache instead.
+ *
+ * <p>The number of files waiting and the number translated so far can be read
+ * while it runs, and the command line daemon prints them at intervals.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class HotFolderTranslator
+{
+  /**
+   * The milliseconds a file must go unchanged before it is translated.
+   */
+  public static final int SETTLE_TIME = 500;
+  /**
+   * The name of the subdirectory of the input directory that files that
+   * cannot be translated are moved to.
+   */
+  public static final String FAILED_DIRECTORY = "failed";
+  private static final int POLL_TIME = 100;
+  // milliseconds between looks at files waiting to settle
+  private static final int REPORT_TIME = 10000;
+  // milliseconds between reports from the command line daemon
+
+  private SessionPool sessions;
+  // sessions of the language to translate with
+  private int state;
+  private TranslationCache cache;
+  // paragraphs already translated, or null to translate every file whole
+  private long table;
+  // the content hash of the language's file, for the cache
+  private Path input;
+  private Path output;
+  private ExecutorService workers;
+  // translates files
+  private WatchService watcher;
+  private Thread watcherThread;
+  private volatile boolean running;
+
+  private HashMap<Path, Settling> settling = new HashMap<Path, Settling>();
+  // files seen and not yet sent to the workers; used only by the watcher
+  // thread
+  private Set<Path> taken = ConcurrentHashMap.newKeySet();
+  // files sent to the workers and not yet finished with
+  private AtomicInteger waiting = new AtomicInteger();
+  // files sent to the workers and not yet started
+  private AtomicLong filesTranslated = new AtomicLong();
+  private AtomicLong filesFailed = new AtomicLong();
+  private AtomicLong charactersTranslated = new AtomicLong();
+  private long started;
+  // when start was called, in milliseconds
+
+  /**
+   * Creates a <CODE>HotFolderTranslator</CODE> with one worker per processor.
+   *
+   * @param language  A <CODE>Language256</CODE>, <CODE>LanguageInteger</CODE>
+   * or <CODE>LanguageUnicode</CODE> to translate with.
+   * @param state  The state to translate each file in.
+   * @param input  The directory to watch.
+   * @param output  The directory to write translations to.
+   * @throws IOException if the directories cannot be watched or written.
+   * @throws IllegalArgumentException if the state is not permitted.
+   */
+  public HotFolderTranslator(Language language, int state, File input, File output)
+    throws IOException
+  {
+    this(language, state, input, output, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a <CODE>HotFolderTranslator</CODE>.
+   *
+   * @param language  A <CODE>Language256</CODE>, <CODE>LanguageInteger</CODE>
+   * or <CODE>LanguageUnicode</CODE> to translate with.
+   * @param state  The state to translate each file in.
+   * @param input  The directory to watch.
+   * @param output  The directory to write translations to.
+   * @param numberWorkers  The number of threads translating files.
+   * @throws IOException if the directories cannot be watched or written.
+   * @throws IllegalArgumentException if the state is not permitted.
+   */
+  public HotFolderTranslator(Language language, int state, File input, File output,
+    int numberWorkers) throws IOException
+  {
+    sessions = new SessionPool(language);
+    sessions.checkState(state);
+    this.state = state;
+    this.input = input.toPath();
+    this.output = output.toPath();
+    Files.createDirectories(this.output);
+    Files.createDirectories(this.input.resolve(FAILED_DIRECTORY));
+    watcher = this.input.getFileSystem().newWatchService();
+    this.input.register(watcher, new WatchEvent.Kind<?>[] {
+      StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY});
+    workers = Executors.newFixedThreadPool(numberWorkers, new ThreadFactory()
+    {
+      public Thread newThread(Runnable task)
+      {
+        Thread thread = new Thread(task, "HotFolderTranslator worker");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Translates files through a cache of translated paragraphs, so that
+   * paragraphs seen before, by this or any other process using the cache,
+   * are not translated again.  Each file is then translated a paragraph at
+   * a time as <CODE>TranslationCache.translate</CODE> describes.  Call
+   * before <CODE>start</CODE>.
+   *
+   * @param cache  The cache, or null to translate each file whole.
+   * @param table  A hash of the contents of the language's file, as
+   * <CODE>LanguageRegistry.getContentHash</CODE> gives.
+   */
+  public void setCache(TranslationCache cache, long table)
+  {
+    this.cache = cache;
+    this.table = table;
+  }
+
+  /**
+   * Starts translating the files already in the input directory and those
+   * that appear in it.
+   */
+  public void start()
+  {
+    started = System.currentTimeMillis();
+    running = true;
+    watcherThread = new Thread(new Runnable()
+    {
+      public void run()
+      {
+        watch();
+      }
+    }, "HotFolderTranslator");
+    watcherThread.start();
+  }
+
+  /**
+   * Stops watching, and waits for the files already taken to be translated.
+   * Files not yet settled are left in the input directory.
+   */
+  public void stop()
+  {
+    running = false;
+    try
+    {
+      watcher.close();
+      watcherThread.join();
+      workers.shutdown();
+      workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+    catch (IOException e)
+    {
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Returns the number of files waiting for a worker to translate them.
+   *
+   * @return The depth of the queue of files.
+   */
+  public int getQueueDepth()
+  {
+    return waiting.get();
+  }
+
+  /**
+   * Returns the number of files translated so far.
+   *
+   * @return The number of files written to the output directory.
+   */
+  public long getFilesTranslated()
+  {
+    return filesTranslated.get();
+  }
+
+  /**
+   * Returns the number of files that could not be translated.
+   *
+   * @return The number of files moved to the failed directory.
+   */
+  public long getFilesFailed()
+  {
+    return filesFailed.get();
+  }
+
+  /**
+   * Returns the number of characters translated so far.
+   *
+   * @return The total length of the files translated.
+   */
+  public long getCharactersTranslated()
+  {
+    return charactersTranslated.get();
+  }
+
+  /**
+   * Returns the number of files translated per second since starting.
+   *
+   * @return The throughput in files per second.
+   */
+  public double getFilesPerSecond()
+  {
+    long elapsed = System.currentTimeMillis() - started;
+    return (elapsed <= 0) ? 0 : filesTranslated.get() * 1000.0 / elapsed;
+  }
+
+  /**
+   * Runs the daemon on the command line until it is killed, printing its
+   * statistics every ten seconds that it has work.
+   *
+   * @param args  The directory holding the language files, the language, the
+   * state, the input directory, the output directory, optionally the
+   * number of workers and optionally a cache file.
+   */
+  public static void main(String[] args) throws IOException, InterruptedException
+  {
+    if ((args.length < 5) || (args.length > 7))
+    {
+      System.out.println("Usage: java uk.ac.umist.co.brailletrans.HotFolderTranslator "
+        + "languageDirectory language state inputDirectory outputDirectory [workers [cacheFile]]");
+      return;
+    }
+    LanguageRegistry registry = new LanguageRegistry(new File(args[0]));
+    Language language = registry.getLanguage(args[1]);
+    int state = Integer.parseInt(args[2]);
+    int numberWorkers = (args.length > 5) ? Integer.parseInt(args[5])
+      : Runtime.getRuntime().availableProcessors();
+    HotFolderTranslator daemon = new HotFolderTranslator(language, state,
+      new File(args[3]), new File(args[4]), numberWorkers);
+    if (args.length > 6)
+      daemon.setCache(new TranslationCache(new File(args[6])),
+        registry.getContentHash(args[1]));
+    daemon.start();
+    System.out.println("Watching " + args[3]);
+    long lastTranslated = -1;
+    while (true)
+    {
+      Thread.sleep(REPORT_TIME);
+      long translated = daemon.getFilesTranslated() + daemon.getFilesFailed();
+      if ((translated != lastTranslated) || (daemon.getQueueDepth() > 0))
+        System.out.println(daemon.getQueueDepth() + " waiting, "
+          + daemon.getFilesTranslated() + " translated, " + daemon.getFilesFailed()
+          + " failed, " + (daemon.getCharactersTranslated() / 1024) + "K characters, "
+          + (int) daemon.getFilesPerSecond() + " files/s");
+      lastTranslated = translated;
+    }
+  }
+
+  //***** PRIVATE METHODS ***********************************************
+  private void watch()
+  // Collects files as they appear and sends them to the workers once they
+  // have settled, until stopped.
+  {
+    scan();
+    try
+    {
+      while (running)
+      {
+        WatchKey key = watcher.poll(POLL_TIME, TimeUnit.MILLISECONDS);
+        if (key != null)
+        {
+          Iterator<WatchEvent<?>> events = key.pollEvents().iterator();
+          while (events.hasNext())
+          {
+            WatchEvent<?> event = events.next();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+              scan();
+            else
+              see(input.resolve((Path) event.context()));
+          }
+          if (!key.reset())
+          {
+            System.err.println("HotFolderTranslator: " + input + " can no longer be watched");
+            return;
+          }
+        }
+        sendSettled();
+      }
+    }
+    catch (ClosedWatchServiceException e)
+    // ASSERTION: stopped
+    {
+    }
+    catch (InterruptedException e)
+    {
+    }
+  }
+
+  private void scan()
+  // Looks at every file in the input directory, as when starting or when
+  // events have been lost.
+  {
+    try
+    {
+      DirectoryStream<Path> files = Files.newDirectoryStream(input);
+      try
+      {
+        Iterator<Path> paths = files.iterator();
+        while (paths.hasNext())
+          see(paths.next());
+      }
+      finally
+      {
+        files.close();
+      }
+    }
+    catch (IOException e)
+    {
+      System.err.println("HotFolderTranslator: cannot read " + input + ": " + e);
+    }
+  }
+
+  private void see(Path file)
+  // Notes that a file has appeared or changed.
+  {
+    if (file.getFileName().toString().startsWith("."))
+      return;
+    if (!settling.containsKey(file))
+      settling.put(file, new Settling());
+  }
+
+  private void sendSettled()
+  // Sends the files that have not changed for SETTLE_TIME to the workers.
+  {
+    long now = System.currentTimeMillis();
+    Iterator<Map.Entry<Path, Settling>> files = settling.entrySet().iterator();
+    while (files.hasNext())
+    {
+      Map.Entry<Path, Settling> entry = files.next();
+      final Path file = entry.getKey();
+      Settling seen = entry.getValue();
+      long size;
+      long modified;
+      try
+      {
+        if (!Files.isRegularFile(file))
+        // ASSERTION: gone, or a directory
+        {
+          files.remove();
+          continue;
+        }
+        size = Files.size(file);
+        modified = Files.getLastModifiedTime(file).toMillis();
+      }
+      catch (IOException e)
+      // ASSERTION: gone since it was looked at
+      {
+        files.remove();
+        continue;
+      }
+      if ((size != seen.size) || (modified != seen.modified))
+      {
+        seen.size = size;
+        seen.modified = modified;
+        seen.since = now;
+      }
+      else if ((now - seen.since >= SETTLE_TIME) && !taken.contains(file))
+      // ASSERTION: settled, and not a new file of the name of one still being
+      //  translated
+      {
+        files.remove();
+        taken.add(file);
+        waiting.incrementAndGet();
+        workers.execute(new Runnable()
+        {
+          public void run()
+          {
+            waiting.decrementAndGet();
+            translate(file);
+          }
+        });
+      }
+    }
+  }
+
+  private void translate(Path file)
+  // Translates a file into the output directory and deletes it, or moves it
+  // to the failed directory if it cannot be translated.
+  {
+    Path temporary = null;
+    try
+    {
+      String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+      String translated;
+      if (cache != null)
+        translated = cache.translate(sessions, table, state, text);
+      else
+      {
+        RangeTranslator session = sessions.get();
+        try
+        {
+          translated = session.translate(text, state);
+        }
+        finally
+        {
+          sessions.release(session);
+        }
+      }
+      temporary = Files.createTempFile(output, ".", ".tmp");
+      FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE);
+      try
+      {
+        ByteBuffer bytes = ByteBuffer.wrap(translated.getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining())
+          out.write(bytes);
+        out.force(true);
+      }
+      finally
+      {
+        out.close();
+      }
+      // ASSERTION: the translation is on disk, so a crash after the input is
+      //  deleted cannot lose both
+      Path target = output.resolve(file.getFileName());
+      try
+      {
+        Files.move(temporary, target, new CopyOption[] {StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING});
+      }
+      catch (AtomicMoveNotSupportedException e)
+      {
+        Files.move(temporary, target, new CopyOption[] {StandardCopyOption.REPLACE_EXISTING});
+      }
+      temporary = null;
+      Files.delete(file);
+      filesTranslated.incrementAndGet();
+      charactersTranslated.addAndGet(text.length());
+    }
+    catch (Exception e)
+    {
+      System.err.println("HotFolderTranslator: cannot translate " + file + ": " + e);
+      filesFailed.incrementAndGet();
+      try
+      {
+        if (temporary != null)
+          Files.deleteIfExists(temporary);
+        if (Files.exists(file))
+          Files.move(file, input.resolve(FAILED_DIRECTORY).resolve(file.getFileName()),
+            new CopyOption[] {StandardCopyOption.REPLACE_EXISTING});
+      }
+      catch (IOException moveFailed)
+      {
+        System.err.println("HotFolderTranslator: cannot move " + file + ": " + moveFailed);
+      }
+    }
+    finally
+    {
+      taken.remove(file);
+    }
+  }
+
+  private static class Settling
+  // The size and time of a file when last seen to change
+  {
+    private long size = -1;
+    private long modified = -1;
+    private long since;
+  } // end of Settling class
+}
@@ -129,6 +129,23 @@ public interface Language
    */
   int getState();
 
+  /**
+   * Returns the state the next translation starts in.  For a language that
+   * starts each translation in the state last given to <CODE>setState</CODE>,
+   * this is that state rather than the state the last translation ended in.
+   * <P>This default returns <CODE>getState()</CODE>, which is only right for
+   * a language that carries its state on from one translation to the next.
+   * The languages of this package all start each translation in the state
+   * last set, and override it.
+   *
+   * @return The <CODE>int</CODE> state the next translation starts in, in the
+   * range 1 to <CODE>numberStates</CODE>.
+   */
+  default int getDefaultState()
+  {
+    return getState();
+  }
+
   /**
    * Performs translation from text to Braille or from Braille to text, depending
    * on language and state.
@@ -138,6 +155,46 @@ public interface Language
    */
   String translate(String toConvert);
 
+  /**
+   * Performs translation of the same text once for each of several states in
+   * a single pass, for example to produce Grade 1 and Grade 2 Braille
+   * together.  Each translation runs as if <CODE>setState</CODE> had been
+   * called with its state first.  The state the next translation starts in
+   * is not changed.
+   * <P>This default translates the text once for each state.  The languages
+   * of this package override it so that the character mapping and the rule
+   * matching the states have in common are only done once.
+   *
+   * @param toConvert  <CODE>String</CODE> holding characters to translate.
+   * @param states  The states to translate in, each from 1 to
+   *        <CODE>getPermittedStates()</CODE>.
+   * @return A <CODE>String</CODE> holding the translated text for each state,
+   *         in the order of <CODE>states</CODE>.
+   * @throws IllegalArgumentException if a state is not permitted.
+   */
+  default String[] translate(String toConvert, int[] states)
+  {
+    for (int i = 0; i < states.length; i++)
+      if ((states[i] < 1) || (states[i] > getPermittedStates()))
+        throw new IllegalArgumentException("State " + states[i]
+          + " is not between 1 and " + getPermittedStates());
+    int savedState = getDefaultState();
+    String[] translated = new String[states.length];
+    try
+    {
+      for (int i = 0; i < states.length; i++)
+      {
+        setState(states[i]);
+        translated[i] = translate(toConvert);
+      }
+    }
+    finally
+    {
+      setState(savedState);
+    }
+    return translated;
+  }
+
    /**
    * Performs translation from text to Braille or from Braille to text, depending
    * on language and state.
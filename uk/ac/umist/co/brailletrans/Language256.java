@@ -29,35 +29,81 @@ public class Language256 implements Language, Serializable
   private transient int defaultState;
     // state of machine when first instantiated, or 1 if not specified.
 
-  private TranslationRule256[] translationRule;
-  //The array of translation rules for the language.
+  private final LegacyTable image;
+  // The parsed language file the rules come from, shared with other languages.
+  // The arrays below are the table's own, read and never written.
+
+  private final int[][] ruleLeftContext;
+  private final int[][] ruleRightContext;
+  private final int[][] ruleFocus;
+  private final int[][] ruleOutput;
+  private final int[] ruleInputClass;
+  private final int[] ruleNewState;
+  //The translation rules for the language, one part of every rule in each
+  //array, indexed by rule number.
+  private final int[] ruleLeftContextId;
+  private final int[] ruleRightContextId;
+  //The interned id of each rule's left and right contexts.
   private transient int transRuleIndex;
-  //Index to the translationRules array to show the current rule being examined.
-  //The alternative, using a Rule currentRule object, will degrade performance.
-  private int numberTranslationRules;
+  //Index to the translation rules to show the current rule being examined.
+  private final int numberTranslationRules;
   //Total number of translation rules.
 
-  private int version;
+  private final int version;
   //The version number of the table: indicates it is appropriate for use
 
-  private boolean[][] stateTable;
+  private final int[] decisionTable;
   //The matrix cross-referencing machine state with input class to see whether
-  //confirm that a rule can be used.  stateTable[state][inputclass].
-  private int numberInputClasses;
-  private int numberStates;
-  // Size of the stateTable
-
-  private CharacterRule256[] characterRule;
-  //The array of character mapping rules.
+  //confirm that a rule can be used, non-zero if it can.
+  //decisionTable[state * numberInputClasses + inputclass].
+  private final int numberInputClasses;
+  private final int numberStates;
+  // Size of the decisionTable
+
+  private final int[] characterMapping;
+  private final int[] characterFlags;
+  //The character mapping rules: what each character maps to, and its flags.
+  private final int[] firstRule;
+  private final int[] lastRule;
+  //The first and last translation rules whose focus starts with each character.
   private final int NUMBER_CHARACTER_RULES = 256;
   // 256-character rule tables supported
-  private final int MAX_NUMBER_TRANSLATION_RULES = 2000;
-  // maximum number of translation rules for the language
 
-  private Wildcard256[] wildcards;
-  // Represents the wildcards for the language
-  private int numberWildcards;
+  private final int[] wildcardTable;
+  // Represents the wildcards for the language, each as its character, the
+  // number it matches and the flags of the characters it matches
+  private final int numberWildcards;
   // Like, the number of wildcards
+  private static final int WILDCARD_DATA = 3;
+  private static final int WILDCARD_MATCH = 1;
+  private static final int WILDCARD_FLAGS = 2;
+  // Size of a wildcard in wildcardTable, and where its parts are in it
+
+  private final int numberLeftContexts;
+  private final int numberRightContexts;
+  // Number of distinct left and right contexts across all the translation
+  // rules, interned to ids when the language file is loaded
+  private transient char[] mapped;
+  // the mapped characters of the text being translated, reused between calls
+  private transient int mappedLength;
+  private transient char[] converted;
+  // the translated characters, reused between calls
+  private transient int convertedLength;
+
+  private transient int[] leftContextPosition;
+  private transient boolean[] leftContextMatched;
+  private transient int[] rightContextPosition;
+  private transient boolean[] rightContextMatched;
+  // Context match memo for the current translate call, indexed by context id:
+  // the input position a context was last evaluated at and the result.  Many
+  // rules in a focus category share the same context, so each distinct
+  // context is evaluated at most once per input position.
+  private transient int reachFrom;
+  private transient int reachTo;
+  // The first and last input positions the current convertMachines call has
+  // looked at, -1 and mappedLength standing for the start and end of input,
+  // so that a TranslationCache knows how much of the text a translation
+  // depends on.
 
   /**
    * Indicates language rules tables (data files) on disk, suitable for
@@ -81,466 +127,351 @@ public class Language256 implements Language, Serializable
   public Language256(String filename)
     throws IOException, FileNotFoundException
   {
+    this(load(filename));
+  } // end of Language256 constructor
+
+ /**
+  * Creates a Language256 object using a legacy language rules table already
+  * loaded from disk.  The table, its rules and its indexes are shared, not
+  * copied, so a table can serve any number of <CODE>Language256</CODE> and
+  * <CODE>LanguageInteger</CODE> objects, each costing only its own state and
+  * buffers.
+  *
+  * @param image The language rules table to use.
+  */
+  public Language256(LegacyTable image)
+  {
+    this.image = image;
     state = defaultState = 1;
       // Always set state to 1 on instantiation
-    BufferedInputStream inFile = null;
-		  // Used for File input
     transRuleIndex = 0;
       // Tracks the current rule under examination
-    filename = filename + FILE_EXTENSION_DELIMITER + FILENAME_EXTENSION;
-      // try to find the right language file type
-
-    // open file for reading
-    try
-    {
-      inFile = new BufferedInputStream(new FileInputStream(filename));
-    }
-    catch (FileNotFoundException e)
-    {
-      throw new FileNotFoundException("File not found: " + filename + " Reported"
-       + " error: " + e);
-    }
-    catch (IOException e)
-    {
-      throw new IOException("Could not read from local file: " + filename
-       + " Error reported: " + e);
-    }
-
-    // Read data from file and parse it into the language structures
-    // ASSERTION: Next inFile.read() will get first byte of inFile file
-
-    // LANGUAGE VERSION
-    try
-    {
-      inFile.skip(3);  // first 3x undocumented header code - 17, 12, 8
-      version = inFile.read();  // this byte is language version
-    }
-    catch (IOException e)
-	  {
-      throw new IOException("Unable to process: " + filename + " while " +
-        "attempting to skip header and read version.  Error: " + e);
-    }
-    // ASSERTION: Next inFile.read() will get first byte of character rules
+    version = image.version;
 
     // CHARACTER RULES
-    // Instantiate the character rule table
-    characterRule = new CharacterRule256[NUMBER_CHARACTER_RULES];
-    // this is for the legacy 256-character sets, so NUMBER... should be 256
-
-    // Import the rules
-    for (int charRuleIndex = 0; charRuleIndex < NUMBER_CHARACTER_RULES; charRuleIndex++)
-    {
-      try
-      {
-         // ASSERTION: inFile.read() will get first byte of three-byte character rule
-         int mapped = inFile.read();
-           // first byte is "from" character
-         int upper = inFile.read();
-           // next is "to" character
-         int flags = inFile.read();
-           // third and final is flags for character
-         // ASSERTION: three bytes have been read, character rules are three bytes
-         //  -> next byte will be first byte of next three-byte character rule
-         characterRule[charRuleIndex] = new CharacterRule256(mapped, upper, flags);
-      }
-      catch (IOException e)
-  	  {
-        throw new IOException("Unable to process: " + filename + " while " +
-          "attempting to read character rule.  Error: " + e);
-      }
-    }
-    // ASSERTION: all NUMBER_CHARACTER_RULES three-byte rules have been read.
-    //  -> Next inFile.read() will get number of wildcards.
+    // the table has already built the hashtable into the translation rules
+    characterMapping = image.input_trans;
+    characterFlags = image.data;
+    firstRule = image.first_rule;
+    lastRule = image.last_rule;
 
     // WILDCARDS
-    numberWildcards = 0;  // required by compiler
-    try
-    {
-      numberWildcards = inFile.read();
-    }
-    catch (IOException e)
-    {
-        throw new IOException("Unable to process: " + filename + " while " +
-          "attempting to read wildcards.  Error: " + e);
-    }
-    // ASSERTION: next inFile.read() will get first byte of wildcard table
-
-    // Declare the wildcard array
-    wildcards = new Wildcard256[numberWildcards];
-
-    for (int wildcard = 0; wildcard < numberWildcards; wildcard++)
-    {
-      try
-      {
-        // ASSERTION: inFile.read() will get first byte of three-byte wildcard
-        int wildcardChar = inFile.read();
-          // first byte is wildcard character character
-        int number = inFile.read();
-          // next is number of wildcard match, 1, 1+ or 0+
-        int flags = inFile.read();
-          // third and final is flags for wildcard
-        // ASSERTION: three bytes have been read -> next inFile.read() will get
-        //  first byte of next three-byte wildcard
-//System.err.println("Wildcard=" + (char) wildcardChar + " flags=" + flags);
-        wildcards[wildcard] = new Wildcard256(wildcardChar, number, flags);
-      }
-      catch (IOException e)
-  	  {
-        throw new IOException("Unable to process: " + filename + " while " +
-          "attempting to read wildcards.  Error: " + e);
-      }
-    }
-    // ASSERTION: next inFile.read() will get number of states in decision table
+    numberWildcards = image.no_wilds;
+    wildcardTable = image.wild_tab;
 
     // DECISION TABLE
-    // First, get dimensions of table, inputClasses * numberStates
-    numberStates = 0;  // required by compiler
-    numberInputClasses = 0;  // required by compiler
-    try
-    {
-      numberStates = inFile.read();
-      numberInputClasses = inFile.read();
-    }
-    catch (IOException e)
-    {
-        throw new IOException("Unable to process: " + filename + " while " +
-          "attempting to read state and input class numbers.  Error: " + e);
-    }
-    // ASSERTION: next inFile.read() will get first byte of decision table
-
-    // declare table of correct dimensions
-    stateTable = new boolean[numberStates][numberInputClasses];
-
-    // populate table
-    for (int state = 0; state < numberStates; state++)
-    {
-      for (int inputclass = 0; inputclass < numberInputClasses; inputclass++)
-      {
-        try
-        {
-          int tableValue = inFile.read();
-          if (tableValue == 0)
-            stateTable[state][inputclass] = false; // zero value = false
-          else
-            stateTable[state][inputclass] = true; // non-zero value == true
-        }
-        catch (IOException e)
-        {
-          throw new IOException("Unable to process: " + filename + " while " +
-            "attempting to read state table information.  Error: " + e);
-        }
-      }
-    }
+    numberStates = image.no_states;
+    numberInputClasses = image.no_input_classes;
+    decisionTable = image.decision_table;
+
+    // TRANSLATION RULES
+    numberTranslationRules = image.no_rules;
+    ruleLeftContext = image.rule_left;
+    ruleRightContext = image.rule_right;
+    ruleFocus = image.rule_focus;
+    ruleOutput = image.rule_output;
+    ruleInputClass = image.rule_class;
+    ruleNewState = image.rule_new_state;
+    ruleLeftContextId = image.rule_left_id;
+    ruleRightContextId = image.rule_right_id;
+    numberLeftContexts = image.no_left_contexts;
+    numberRightContexts = image.no_right_contexts;
+  } // end of Language256 constructor
 
-    // TRANSLATION RULES + HASHTABLE
 
-    // Declare translationRule with maximum size
-    translationRule = new TranslationRule256[MAX_NUMBER_TRANSLATION_RULES];
+  // METHODS *******************************************************************
 
-    // Now import the translation rules and build the hashtable
-    // ASSERTION: pointing at inputClass
-    int lastgot = 0; // use to track last rule focus category for hashtable
-    int got = 0;
+  private static LegacyTable load(String filename)
+    throws IOException, FileNotFoundException
+  // Loads the legacy language rules table for the constructor, reporting a
+  // badly-formed file as an IOException.
+  {
     try
     {
-      got = inFile.read();
+      return new LegacyTable(filename);
     }
-    catch (IOException e)
+    catch (LanguageLegacyDatafileFormatException e)
     {
-          throw new IOException("Unable to process: " + filename + " while " +
-            "attempting to read translation rules.  Error: " + e);
+      throw new IOException("Unable to process: " + filename + " while "
+        + "attempting to read language file.  Error: " + e.getMessage());
     }
-    // ASSERTION: got = inputClass, pointing at size of rule
-    int ruleCount = 0;
-    while (got != TABLE_DELIMITER)
-    // ASSERTION: inputClass != '#' => there is another rule
-    {
-      try
-      {
-        int inputClass = got;  // got is inputClass
-        // ASSERTION: now pointing at size-of-rule
-        got = inFile.read(); // got size-of-rule
-        // ASSERTION: now pointing at beginning of rule content = left context
-        int[] rule = new int[RULE_BUFFER];
-        int ruleIndex = 0;
-        got = inFile.read(); // got first character of rule content
-        while (got != LEFT_FOCUS_DELIMITER)
-        {
-          rule[ruleIndex++] = got;  // one character added to left, increment size by one.
-          got = inFile.read();
-        }
-        int leftLength = ruleIndex; // end of left is here
-        // ASSERTION: now pointing at beginning of focus and got == '['
-        got = inFile.read(); // got first character of focus
-        // Add entry to hashtable if new character encountered
-        if (lastgot != got)
-        {
+  }
 
-          characterRule[lastgot].lastTranslationRuleIndex = ruleCount - 1;
-          lastgot = got;
-          characterRule[lastgot].translationRuleIndex = ruleCount;
+  /**
+   * Gets the language rules table this Language256 translates with, to
+   * create more Language256 or LanguageInteger objects sharing it.
+   *
+   * @return The language rules table.
+   */
+  public LegacyTable getTable()
+  {
+    return image;
+  }
 
-        }
-        rule[ruleIndex++] = got; // the focus must have at least one char
-        got = inFile.read();              // in it, even ']'.  First char to focus.
-        while (got != RIGHT_FOCUS_DELIMITER)
-        {
-          rule[ruleIndex++] = got;  // added one character to focus, so increment size by one
-          got = inFile.read();
-        }
-        int focusLength = ruleIndex - leftLength;
-        // ASSERTION: now pointing at beginning of right context and got == ']'
-        got = inFile.read(); // got first character of right context
-        while (got != RULE_OUTPUT_DELIMITER)
-        {
-          rule[ruleIndex++] = got;  // added one character to right, so increment size by one.
-          got = inFile.read();
-        }
-        int rightLength = ruleIndex - leftLength - focusLength;
-        // ASSERTION: now pointing at beginning of output and got == '='
-        got = inFile.read(); // got first character of output
-        while (got != RULE_CONTENT_DELIMITER)
-        {
-          rule[ruleIndex++] = got; // added one character to output, so increment size by one
-          got = inFile.read();
-        }
-        int outputLength = ruleIndex - leftLength - focusLength - rightLength;
-
-        // ASSERTION: now pointing at output state and got == 0
-        int newState = inFile.read(); // got output state
-        // ASSERTION: now pointing at first character of next rule = input OR '#'
-
-        // Trim the excess int[]s
-        int[] left = new int[leftLength];
-        int[] focus = new int[focusLength];
-        int[] right = new int[rightLength];
-        int[] output = new int[outputLength];
-        System.arraycopy(rule, 0, left, 0, leftLength);
-        System.arraycopy(rule, leftLength, focus, 0, focusLength);
-        System.arraycopy(rule, leftLength + focusLength, right, 0, rightLength);
-        System.arraycopy(rule, leftLength + focusLength + rightLength, output, 0, outputLength);
-
-        // Build the rule
-        translationRule[ruleCount++] = new TranslationRule256(left,
-          right, focus, inputClass,
-          newState, output);
-
-        got = inFile.read();
-        // get either the first character of next rule OR '#' to indicate end
-      }
-      catch (IOException e)
-      {
-        throw new IOException("Unable to process: " + filename + " while " +
-          "attempting to read translation rules.  Error: " + e);
-      }
+  private void resetContextMemo()
+  //Forgets the context matches of the previous translate call.
+  {
+    if (leftContextPosition == null)
+    {
+      leftContextPosition = new int[numberLeftContexts];
+      leftContextMatched = new boolean[numberLeftContexts];
+      rightContextPosition = new int[numberRightContexts];
+      rightContextMatched = new boolean[numberRightContexts];
     }
-    // Mark the end of the last focus category
-    characterRule[lastgot].lastTranslationRuleIndex = ruleCount - 1;
+    Arrays.fill(leftContextPosition, -1);
+    Arrays.fill(rightContextPosition, -1);
+  }
 
-    // Close the language file after use
-    try
+  private boolean compareLeftContext(char[] input, int position)
+  //Returns true if the sequence of characters to the left of position in input
+  //matches the left context of the current rule, false otherwise.  The result
+  //is memoized per context id for this position.
+  {
+    int contextId = ruleLeftContextId[transRuleIndex];
+    if (leftContextPosition[contextId] != position)
     {
-      inFile.close();
+      leftContextMatched[contextId] = matchLeftContext(input, position);
+      leftContextPosition[contextId] = position;
     }
-    catch (IOException e)
+    return leftContextMatched[contextId];
+  }
+
+  private boolean compareRightContext(char[] input, int position)
+  //Returns true if the sequence of characters to the right of (position + the
+  //focusLength of the current rule) in input matches the right context of the
+  //current rule, false otherwise.  The result is memoized per context id for
+  //the position the right context starts at.
+  {
+    int contextId = ruleRightContextId[transRuleIndex];
+    int contextPosition = position + ruleFocus[transRuleIndex].length;
+    if (rightContextPosition[contextId] != contextPosition)
     {
-        throw new IOException("Unable to process: " + filename + " while " +
-          "attempting to close language file after reading.  Error: " + e);
+      rightContextMatched[contextId] = matchRightContext(input, position);
+      rightContextPosition[contextId] = contextPosition;
     }
-  } // end of Language256 constructor
-
-
-  // METHODS *******************************************************************
+    return rightContextMatched[contextId];
+  }
 
-  private boolean compareLeftContext(int[] input, int position)
-  //Returns true if the sequence of characters to the left of position in input
-  //matches the left context of the current rule, false otherwise.
+  private boolean matchLeftContext(char[] input, int position)
+  //Evaluates the left context of the current rule against input at position.
   {
+    int[] leftContext = ruleLeftContext[transRuleIndex];
+    if (leftContext.length == 0)
+      return true;
     int inputIndex = position - 1;
-    int[] leftContext = translationRule[transRuleIndex].leftContext;
     int contextIndex = leftContext.length - 1;
-    while (contextIndex >= 0)
+    try
     {
-      int leftContextChar = leftContext[contextIndex];
-      int leftContextFlags = characterRule[leftContextChar].flags;
+      while (contextIndex >= 0)
+      {
+        int leftContextChar = leftContext[contextIndex];
+        int leftContextFlags = characterFlags[leftContextChar];
 //System.err.println("leftContChar=" + (char) leftContextChar + " flags=" + leftContextFlags);
 
-      if ((WILDCARD_FLAG & leftContextFlags) == WILDCARD_FLAG)
-      // ASSERTION: Wildcard found
-      {
-        // Search through wildcard array for matching wildcard
-        for (int thisWildcard = 0; thisWildcard < numberWildcards; thisWildcard++)
+        if ((WILDCARD_FLAG & leftContextFlags) == WILDCARD_FLAG)
+        // ASSERTION: Wildcard found
         {
-          if (wildcards[thisWildcard].character == leftContextChar)
-          // ASSERTION: this wildcard is the matching one
+          // Search through wildcard array for matching wildcard
+          for (int thisWildcard = 0; thisWildcard < numberWildcards; thisWildcard++)
           {
-            // WILDCARD_NONE
-            if (wildcards[thisWildcard].number == WILDCARD_NONE)
+            int wildcard = thisWildcard * WILDCARD_DATA;
+            if (wildcardTable[wildcard] == leftContextChar)
+            // ASSERTION: this wildcard is the matching one
             {
-              contextIndex--;
-              while ((inputIndex >= 0) && (flagsEqual(wildcards[thisWildcard].flags, input[inputIndex])))
-                inputIndex--;
-            } // end of WILDCARD_NONE
+              int wildcardNumber = wildcardTable[wildcard + WILDCARD_MATCH];
+              int wildcardFlags = wildcardTable[wildcard + WILDCARD_FLAGS];
+              // WILDCARD_NONE
+              if (wildcardNumber == WILDCARD_NONE)
+              {
+                contextIndex--;
+                while ((inputIndex >= 0) && (flagsEqual(wildcardFlags, input[inputIndex])))
+                  inputIndex--;
+              } // end of WILDCARD_NONE
 
-            // WILDCARD_ONE
-            if (wildcards[thisWildcard].number == WILDCARD_ONE)
-            {
-              if (inputIndex < 0)
-              // ASSERTION: checking has progressed beyond end of input - only
-              // permissable is wildcard indicates a SPACE character
+              // WILDCARD_ONE
+              if (wildcardNumber == WILDCARD_ONE)
               {
-                if (flagsEqual(wildcards[thisWildcard].flags, SPACE))
-                  return true; // SPACE wildcard, so okay to match against outside input
-                else
-                  return false; // there should be at least one
-              }
-              if (!flagsEqual(wildcards[thisWildcard].flags, input[inputIndex]))
-                return false;
-              inputIndex--;
-              contextIndex--;
-            } // end of WILDCARD_ONE
-
-            // WILDCARD_SEVERAL
-            if (wildcards[thisWildcard].number == WILDCARD_SEVERAL)
-            {
-              if (inputIndex < 0)
-              // ASSERTION: checking has progressed beyond end of input - only
-              // permissable is wildcard indicates a SPACE character
+                if (inputIndex < 0)
+                // ASSERTION: checking has progressed beyond end of input - only
+                // permissable is wildcard indicates a SPACE character
+                {
+                  if (flagsEqual(wildcardFlags, SPACE))
+                    return true; // SPACE wildcard, so okay to match against outside input
+                  else
+                    return false; // there should be at least one
+                }
+                if (!flagsEqual(wildcardFlags, input[inputIndex]))
+                  return false;
+                inputIndex--;
+                contextIndex--;
+              } // end of WILDCARD_ONE
+
+              // WILDCARD_SEVERAL
+              if (wildcardNumber == WILDCARD_SEVERAL)
               {
-                if (flagsEqual(wildcards[thisWildcard].flags, SPACE))
-                  return true; // SPACE wildcard, so okay to match against outside input
-                else
-                  return false; // there should be at least one
-              }
-              if (!flagsEqual(wildcards[thisWildcard].flags, input[inputIndex]))
-                return false;
-              inputIndex--;
-              while ((inputIndex >= 0) && (flagsEqual(wildcards[thisWildcard].flags, input[inputIndex])))
+                if (inputIndex < 0)
+                // ASSERTION: checking has progressed beyond end of input - only
+                // permissable is wildcard indicates a SPACE character
+                {
+                  if (flagsEqual(wildcardFlags, SPACE))
+                    return true; // SPACE wildcard, so okay to match against outside input
+                  else
+                    return false; // there should be at least one
+                }
+                if (!flagsEqual(wildcardFlags, input[inputIndex]))
+                  return false;
                 inputIndex--;
-              contextIndex--;
-            } // end of WILDCARD_SEVERAL
-          } // end of search for wildcard
-        } // end Wildcard found
+                while ((inputIndex >= 0) && (flagsEqual(wildcardFlags, input[inputIndex])))
+                  inputIndex--;
+                contextIndex--;
+              } // end of WILDCARD_SEVERAL
+            } // end of search for wildcard
+          } // end Wildcard found
 
 
-      } // end of wildcard found
-      else
-      // ASSERTION: not a wildcard
-      {
-        if (inputIndex < 0)
-          return false;
-        if (input[inputIndex] != leftContextChar)
-          return false;
-        inputIndex--;
-        contextIndex--;
-      }
-    }  // end of while contextIndex > 0
-    return true;
+        } // end of wildcard found
+        else
+        // ASSERTION: not a wildcard
+        {
+          if (inputIndex < 0)
+            return false;
+          if (input[inputIndex] != leftContextChar)
+            return false;
+          inputIndex--;
+          contextIndex--;
+        }
+      }  // end of while contextIndex > 0
+      return true;
+    }
+    finally
+    // ASSERTION: inputIndex is the last position looked at, or one past it
+    {
+      reached(inputIndex);
+    }
   }
 
-  private boolean compareRightContext(int[] input, int position)
-  //Returns true if the sequence of characters to the right of (position + the
-  //focusLength of the current rule) in input matches the right context of the
-  //current rule, false otherwise.
+  private boolean matchRightContext(char[] input, int position)
+  //Evaluates the right context of the current rule against input at
+  //(position + the focusLength of the current rule).
   {
-    int inputIndex = position + translationRule[transRuleIndex].focus.length;
-    int[] rightContext = translationRule[transRuleIndex].rightContext;
+    int[] rightContext = ruleRightContext[transRuleIndex];
+    if (rightContext.length == 0)
+      return true;
+    int inputIndex = position + ruleFocus[transRuleIndex].length;
     int contextIndex = 0;
-    while (contextIndex < rightContext.length)
+    try
     {
-      int rightContextChar = rightContext[contextIndex];
-      int rightContextFlags = characterRule[rightContextChar].flags;
-
-      if ((WILDCARD_FLAG & rightContextFlags) == WILDCARD_FLAG)
-      // ASSERTION: Wildcard found
+      while (contextIndex < rightContext.length)
       {
-        // Search through wildcard array for matching wildcard
-        for (int thisWildcard = 0; thisWildcard < numberWildcards; thisWildcard++)
+        int rightContextChar = rightContext[contextIndex];
+        int rightContextFlags = characterFlags[rightContextChar];
+
+        if ((WILDCARD_FLAG & rightContextFlags) == WILDCARD_FLAG)
+        // ASSERTION: Wildcard found
         {
-          if (wildcards[thisWildcard].character == rightContextChar)
-          // ASSERTION: this wildcard is the matching one
+          // Search through wildcard array for matching wildcard
+          for (int thisWildcard = 0; thisWildcard < numberWildcards; thisWildcard++)
           {
-            // WILDCARD_NONE
-            if (wildcards[thisWildcard].number == WILDCARD_NONE)
+            int wildcard = thisWildcard * WILDCARD_DATA;
+            if (wildcardTable[wildcard] == rightContextChar)
+            // ASSERTION: this wildcard is the matching one
             {
-              contextIndex++;
-              while ((inputIndex < input.length) && (flagsEqual(wildcards[thisWildcard].flags, input[inputIndex])))
-                inputIndex++;
-            } // end of WILDCARD_NONE
+              int wildcardNumber = wildcardTable[wildcard + WILDCARD_MATCH];
+              int wildcardFlags = wildcardTable[wildcard + WILDCARD_FLAGS];
+              // WILDCARD_NONE
+              if (wildcardNumber == WILDCARD_NONE)
+              {
+                contextIndex++;
+                while ((inputIndex < mappedLength) && (flagsEqual(wildcardFlags, input[inputIndex])))
+                  inputIndex++;
+              } // end of WILDCARD_NONE
 
-            // WILDCARD_ONE
-            if (wildcards[thisWildcard].number == WILDCARD_ONE)
-            {
-              if (inputIndex >= input.length)
-              // ASSERTION: checking has progressed beyond end of input - only
-              // permissable is wildcard indicates a SPACE character
+              // WILDCARD_ONE
+              if (wildcardNumber == WILDCARD_ONE)
               {
-                if (flagsEqual(wildcards[thisWildcard].flags, SPACE))
-                  return true; // SPACE wildcard, so okay to match against outside input
-                else
-                  return false; // there should be at least one
-              }
-              if (!flagsEqual(wildcards[thisWildcard].flags, input[inputIndex]))
-                return false;
-              inputIndex++;
-              contextIndex++;
-            } // end of WILDCARD_ONE
-
-            // WILDCARD_SEVERAL
-            if (wildcards[thisWildcard].number == WILDCARD_SEVERAL)
-            {
-              if (inputIndex >= input.length)
-              // ASSERTION: checking has progressed beyond end of input - only
-              // permissable is wildcard indicates a SPACE character
+                if (inputIndex >= mappedLength)
+                // ASSERTION: checking has progressed beyond end of input - only
+                // permissable is wildcard indicates a SPACE character
+                {
+                  if (flagsEqual(wildcardFlags, SPACE))
+                    return true; // SPACE wildcard, so okay to match against outside input
+                  else
+                    return false; // there should be at least one
+                }
+                if (!flagsEqual(wildcardFlags, input[inputIndex]))
+                  return false;
+                inputIndex++;
+                contextIndex++;
+              } // end of WILDCARD_ONE
+
+              // WILDCARD_SEVERAL
+              if (wildcardNumber == WILDCARD_SEVERAL)
               {
-                if (flagsEqual(wildcards[thisWildcard].flags, SPACE))
-                  return true; // SPACE wildcard, so okay to match against outside input
-                else
-                  return false; // there should be at least one
-              }
-              if (!flagsEqual(wildcards[thisWildcard].flags, input[inputIndex]))
-                return false;
-              inputIndex++;
-              while ((inputIndex < input.length) && (flagsEqual(wildcards[thisWildcard].flags, input[inputIndex])))
+                if (inputIndex >= mappedLength)
+                // ASSERTION: checking has progressed beyond end of input - only
+                // permissable is wildcard indicates a SPACE character
+                {
+                  if (flagsEqual(wildcardFlags, SPACE))
+                    return true; // SPACE wildcard, so okay to match against outside input
+                  else
+                    return false; // there should be at least one
+                }
+                if (!flagsEqual(wildcardFlags, input[inputIndex]))
+                  return false;
                 inputIndex++;
-              contextIndex++;
-            } // end of WILDCARD_SEVERAL
-          } // end of search for wildcard
-        } // end Wildcard found
+                while ((inputIndex < mappedLength) && (flagsEqual(wildcardFlags, input[inputIndex])))
+                  inputIndex++;
+                contextIndex++;
+              } // end of WILDCARD_SEVERAL
+            } // end of search for wildcard
+          } // end Wildcard found
 
 
-      } // end of wildcard found
-      else
-      // ASSERTION: not a wildcard
-      {
-        if (inputIndex >= input.length)
-          return false;
-        if (input[inputIndex] != rightContextChar)
-          return false;
-        inputIndex++;
-        contextIndex++;
-      }
-    }  // end of while contextIndex < input.length
-    return true;
+        } // end of wildcard found
+        else
+        // ASSERTION: not a wildcard
+        {
+          if (inputIndex >= mappedLength)
+            return false;
+          if (input[inputIndex] != rightContextChar)
+            return false;
+          inputIndex++;
+          contextIndex++;
+        }
+      }  // end of while contextIndex < input.length
+      return true;
+    }
+    finally
+    // ASSERTION: inputIndex is the last position looked at, or one past it
+    {
+      reached(inputIndex);
+    }
   }
 
-  private boolean compareFocus(int[] input, int position)
+  private boolean compareFocus(char[] input, int position)
   //Returns true if the sequence of characters from position in input matches
   //the focus of the current rule, false otherwise.
   /*
     Preconditions
-      position + ruleFocusLength <= input.length
+      position + ruleFocusLength <= mappedLength
   */
   {
-    if (position + translationRule[transRuleIndex].focus.length > input.length)
+    if (position + ruleFocus[transRuleIndex].length > mappedLength)
+    {
+      reached(mappedLength);
       return false;
+    }
 
-    int focusLength = translationRule[transRuleIndex].focus.length;
+    int focusLength = ruleFocus[transRuleIndex].length;
     for (int i = 0; i < focusLength; i++)
     {
-      if (input[position + i] != translationRule[transRuleIndex].focus[i])
+      if (input[position + i] != ruleFocus[transRuleIndex][i])
+      {
+        reached(position + i);
         return false;
+      }
     }
+    reached(position + focusLength - 1);
 //System.err.print("Matched: ");
 //for (int i = position; i < position + focusL; i++)
 //  System.err.print((char) input[i]);
@@ -548,10 +479,26 @@ public class Language256 implements Language, Serializable
     return true;
   }
 
+  private void reached(int position)
+  //Widens the reach of the current convertMachines call to take in position.
+  {
+    if (position < reachFrom)
+      reachFrom = position;
+    if (position > reachTo)
+      reachTo = position;
+  }
+
+  private boolean compareRule(char[] input, int position)
+  //Returns true if the current rule can be applied at position in input.
+  {
+    return compareFocus(input, position) && checkState()
+      && compareLeftContext(input, position) && compareRightContext(input, position);
+  }
+
   private boolean checkState()
-  //Returns the value of the stateTable for the state of the machine and the
+  //Returns the value of the decisionTable for the state of the machine and the
   //inputClass of the current rule. This is true if the rule can be applied, and
-  //false otherwise. It is equal to stateTable[inputClass][state].
+  //false otherwise.
   /*
     Input and initial conditions
       state
@@ -564,23 +511,23 @@ public class Language256 implements Language, Serializable
         0 <= inputClass' <= numberInputClasses
     Output and final conditions
       boolean
-        true iff stateTable[state][current rule input class] == true, else false
+        true iff decisionTable[state][current rule input class] != 0, else false
   */
   {
 
     int indexState = this.state - 1;
 //System.err.print("indexState=" + indexState);
-    int ruleInputClassIndex = translationRule[transRuleIndex].inputClass - 1;
+    int ruleInputClassIndex = ruleInputClass[transRuleIndex] - 1;
 //System.err.print(" inputClassIndex=" + ruleInputClassIndex);
     // try to return result
-    return stateTable[indexState][ruleInputClassIndex];
+    return decisionTable[indexState * numberInputClasses + ruleInputClassIndex] != 0;
 //System.err.println(" result=" + result);
   }
 
   private int[] getOutput()
   //Returns the output value of the current rule.
   {
-    return translationRule[transRuleIndex].output;
+    return ruleOutput[transRuleIndex];
   }
 
   public int getState()
@@ -589,12 +536,18 @@ public class Language256 implements Language, Serializable
     return state;
   }
 
+  public int getDefaultState()
+  // returns the state each translation starts in
+  {
+    return defaultState;
+  }
+
   private void getNewState()
   //Returns the newState value of the current rule, or zero if there is no new value.
   // Input and initial conditions
   //  0 <= newMachineState <= numberStates
   {
-    int newMachineState = translationRule[transRuleIndex].newState;
+    int newMachineState = ruleNewState[transRuleIndex];
     if (newMachineState != 0)
 //    {
 //System.err.println("Changed state from " + state + " to " + newMachineState);
@@ -605,8 +558,7 @@ public class Language256 implements Language, Serializable
   private int mapCharacter(int characterToMap)
   /*
     This takes the integer value of an input character and uses this as an
-    index into the characterRule array to find the mapped attribute of the
-    character rule.
+    index into the characterMapping array to find the character it maps to.
   */
   {
     if (characterToMap < 0)
@@ -621,7 +573,7 @@ public class Language256 implements Language, Serializable
         "value to match > " + NUMBER_CHARACTER_RULES + " : " + characterToMap);
       return SPACE;
     }
-    return characterRule[characterToMap].mapped;
+    return characterMapping[characterToMap];
   } // end of MapCharacter
 
   private boolean flagsEqual(int flags, int inputChar)
@@ -632,7 +584,7 @@ public class Language256 implements Language, Serializable
     Output: true if flags match, false otherwise
   */
   {
-    return ((flags & characterRule[inputChar].flags) != 0);
+    return ((flags & characterFlags[inputChar]) != 0);
   } // end of FlagsEqual
 
   public int getPermittedStates()
@@ -641,145 +593,248 @@ public class Language256 implements Language, Serializable
     return numberStates;
   } // end of GetPermittedStates
 
+  /**
+   * Returns the version of the language
+   *
+   * @return version   Version of the language.
+   */
+  public int getVersionNumber()
+  {
+    return version;
+  }
+
 
 
   public int[] translate(int[] toConvert)
   // Takes an array of characters as integers and translates them according
   // to the language and state defined in the constructor and SetState
   {
-//for (int i = 0; i < toConvert.length; i++)
-//System.err.println("i=" + i + " toConvert=" + toConvert[i]);
     int finish = toConvert.length;
+    prepareInput(finish);
+
+    // Convert the input string by mapping it using MapCharacter
+    for (int inputChar = 0; inputChar < finish; inputChar++)
+      mapped[inputChar] = (char) mapCharacter(toConvert[inputChar]);
+    convert();
+
+    int[] toReturn = new int[convertedLength];
+    for (int i = 0; i < convertedLength; i++)
+      toReturn[i] = converted[i];
+    return toReturn;
+  } // end of int[] translate
+
+  public String translate(String toConvert)
+  // Maps the characters of the string straight into the input buffer, with
+  // no intermediate int[], and builds the result from the output buffer.
+  {
+    int finish = toConvert.length();
+    prepareInput(finish);
+    toConvert.getChars(0, finish, mapped, 0);
+    for (int inputChar = 0; inputChar < finish; inputChar++)
+      mapped[inputChar] = (char) mapCharacter(mapped[inputChar]);
+    convert();
+    return new String(converted, 0, convertedLength);
+  } // end of Translate(String)
+
+  /**
+   * Performs translation of part of a <CODE>char[]</CODE>, which is not
+   * altered.
+   *
+   * @param toConvert  <CODE>char[]</CODE> holding the characters to translate.
+   * @param offset  Index of the first character to translate.
+   * @param length  Number of characters to translate.
+   * @return A <CODE>String</CODE> holding the translated characters.
+   */
+  public String translate(char[] toConvert, int offset, int length)
+  {
+    prepareInput(length);
+    for (int inputChar = 0; inputChar < length; inputChar++)
+      mapped[inputChar] = (char) mapCharacter(toConvert[offset + inputChar]);
+    convert();
+    return new String(converted, 0, convertedLength);
+  } // end of Translate(char[], int, int)
+
+  public String[] translate(String toConvert, int[] states)
+  // Translates toConvert once for each entry state in states, in one pass.
+  // The state and default state are left as they were.
+  {
+    for (int machine = 0; machine < states.length; machine++)
+      if ((states[machine] < 1) || (states[machine] > numberStates))
+        throw new IllegalArgumentException("State " + states[machine]
+          + " is not between 1 and " + numberStates);
+    int finish = toConvert.length();
+    prepareInput(finish);
+    toConvert.getChars(0, finish, mapped, 0);
+    for (int inputChar = 0; inputChar < finish; inputChar++)
+      mapped[inputChar] = (char) mapCharacter(mapped[inputChar]);
+    return convertMachines(0, finish, states, states).output;
+  } // end of Translate(String, int[])
+
+  private TranslatedRange convertMachines(int from, int to, int[] entryStates,
+    int[] defaultStates)
+  // Translates mapped from from to to once for each entry state: a machine
+  // for each works along the input, the one furthest behind going next, so
+  // that all of them find the context matches each other have just memoized.
+  // The state, default state and output buffer are left as they were.
+  {
+    int machines = entryStates.length;
+    int[] machineStart = new int[machines];
+    int[] machineState = new int[machines];
+    char[][] machineConverted = new char[machines][];
+    int[] machineConvertedLength = new int[machines];
+    for (int machine = 0; machine < machines; machine++)
+    {
+      machineStart[machine] = from;
+      machineState[machine] = entryStates[machine];
+      machineConverted[machine] = new char[(int) ((to - from) * MAX_COMPRESS) + 1];
+    }
+    int savedState = state;
+    int savedDefaultState = defaultState;
+    char[] savedConverted = converted;
+    int savedConvertedLength = convertedLength;
+    resetContextMemo();
+    reachFrom = reachTo = from;
+
+    while (true)
+    {
+      int next = -1;
+        // the machine furthest behind, if any has input left
+      for (int machine = 0; machine < machines; machine++)
+        if ((machineStart[machine] < to)
+          && ((next == -1) || (machineStart[machine] < machineStart[next])))
+          next = machine;
+      if (next == -1)
+        break;
+      state = machineState[next];
+      defaultState = defaultStates[next];
+      converted = machineConverted[next];
+      convertedLength = machineConvertedLength[next];
+      machineStart[next] = convertAt(machineStart[next]);
+      machineState[next] = state;
+      machineConverted[next] = converted;
+      machineConvertedLength[next] = convertedLength;
+    }
+
+    state = savedState;
+    defaultState = savedDefaultState;
+    converted = savedConverted;
+    convertedLength = savedConvertedLength;
+    String[] output = new String[machines];
+    for (int machine = 0; machine < machines; machine++)
+      output[machine] = new String(machineConverted[machine], 0,
+        machineConvertedLength[machine]);
+    return new TranslatedRange(output, machineStart, machineState, reachFrom, reachTo);
+  } // end of convertMachines
+
+  RangeTranslator rangeTranslator()
+  // Returns this language as a RangeTranslator, for ParallelTranslator.
+  {
+    return new Ranges();
+  }
+
+  private void prepareInput(int length)
+  // Makes sure the input buffer can hold length characters, which the caller
+  // then fills with mapped characters.
+  {
+    if ((mapped == null) || (mapped.length < length))
+      mapped = new char[length];
+    mappedLength = length;
+  }
+
+  private void convert()
+  // Translates the mappedLength characters in mapped into converted.
+  {
+    int finish = mappedLength;
       // counter of where we try to go to
       // INV1: 0 <= start < finish
-    int[] converted = new int[(int) (finish * MAX_COMPRESS)];
-      // to return
     int start = 0;
       // counter of where we start looking in the word string
-    int outputUpTo = 0;
+    if ((converted == null) || (converted.length < (int) (finish * MAX_COMPRESS)))
+      converted = new char[(int) (finish * MAX_COMPRESS) + 1];
+    convertedLength = 0;
       // where we've output to so far
     state = defaultState;
-
-    // Convert the input string by mapping it using MapCharacter
-    int[] mappedToConvert = new int[finish];
-    for (int inputChar = 0; inputChar < finish; inputChar++)
-      mappedToConvert[inputChar] = mapCharacter(toConvert[inputChar]);
-    toConvert = mappedToConvert;
+    resetContextMemo();
 
     while (start < finish)
     // assertion: start does not yet indicate the end of the toConvert array
     // assertion: not all of word is converted
+      start = convertAt(start);
+  } // end of convert
+
+  private int convertAt(int start)
+  // Translates the characters in mapped from start that the next rule covers,
+  // or the character at start if no rule matches, into converted.  Returns
+  // where to continue from.
+  {
+    int finish = mappedLength;
+    char[] toConvert = mapped;
+    boolean matchFound = false;
+      // indicates whether we've got a match
+
+    // set language to first rule with matching focus
+    int focusChar = toConvert[start];
+    int[][] bigramRules = image.bigram_rules[focusChar];
+    if (bigramRules != null)
+    // assertion: big focus category, so only try the rules that can match
+    // the next character, which the table has listed in priority order
     {
-      boolean matchFound = false;
-        // indicates whether we've got a match
-
-      // set language to first rule with matching focus
-      int focusChar = toConvert[start];
-//System.err.print(" focus=" + (char) focusChar);
-      transRuleIndex = characterRule[focusChar].translationRuleIndex;
-//System.err.print(" start tRule=" + transRuleIndex);
-//System.err.print(" output = " + (char) translationRule[transRuleIndex].output[0]);
-//System.err.print(" previous= " + (char) translationRule[transRuleIndex - 1].output[0]);
-      int lastFocusIndex = characterRule[focusChar].lastTranslationRuleIndex;
-      if (matchFound = compareFocus(toConvert, start))
-        if (matchFound = checkState())
-          if (matchFound = compareLeftContext(toConvert, start))
-            matchFound = compareRightContext(toConvert, start);
+      int[] candidates = (start + 1 < finish)
+        ? bigramRules[toConvert[start + 1]] : image.bigram_any[focusChar];
+      reached(Math.min(start + 1, finish));
+      for (int candidate = 0; !matchFound && (candidate < candidates.length); candidate++)
+      {
+        transRuleIndex = candidates[candidate];
+        matchFound = compareRule(toConvert, start);
+      }
+    }
+    else
+    {
+      transRuleIndex = firstRule[focusChar];
+      int lastFocusIndex = lastRule[focusChar];
+      matchFound = compareRule(toConvert, start);
       while (!matchFound &&  (transRuleIndex < lastFocusIndex))
       // assertion: no match has yet been found
       // assertion: there are still rules with the same focus initial that might match
       {
         transRuleIndex++;
-//System.err.print(" rule=" + transRuleIndex);
-
-        if (matchFound = compareFocus(toConvert, start))
-          if (matchFound = checkState())
-            if (matchFound = compareLeftContext(toConvert, start))
-              matchFound = compareRightContext(toConvert, start);
-      }
-      // assertion: matchFound OR no more rules
-
-      if (matchFound)
-      {
-        int[] outputGot = getOutput();  // result of rule
-        int numberCharsInOutput = outputGot.length;  // size of result of rule
-        int i = 0;
-        try
-        {
-//System.err.println("numberCharsInOutput=" + numberCharsInOutput);
-          for (i = 0; i < numberCharsInOutput; i++)
-          {
-            converted[outputUpTo] = outputGot[i];
-            outputUpTo++; // one character from focus transferred to output
-          }
-        }
-        catch (ArrayIndexOutOfBoundsException e)
-        {
-//System.err.println("Error thrown");
-          converted = resizeConverted(i, outputGot, converted, finish - start);
-          outputUpTo += numberCharsInOutput - i;
-//System.err.println("new converted=" + converted.length);
-        }
-        getNewState();  // get new state
-        start = start + translationRule[transRuleIndex].focus.length;
-//System.err.println(translationRule[transRuleIndex].focusLength + " " + start);
-          // move along input by size of focus
-      }
-      else
-      // assertion: !matchFound, no match found for focus
-      {
-        converted[outputUpTo] = toConvert[start];
-//System.err.println("failed at " + start + " which is character " +
-//  (new Character((char) toConvert[start]).toString()) + ", value " + toConvert[start]);
-          // if nothing matched, leave character untranslated
-        start++;  // try matching next character
-        outputUpTo++;  // output to next position
-        state = defaultState;  // set state to default
+        matchFound = compareRule(toConvert, start);
       }
     }
+    // assertion: matchFound OR no more rules
 
-
-    // chop off redundant spaces at end of output array
-    int[] toReturn = new int[outputUpTo];
-    System.arraycopy(converted, 0, toReturn, 0, outputUpTo);
-
-    return toReturn;
-  } // end of int[] translate
-
-  public String translate(String toConvert)
-  // Simply converts input string into array of integers and calls
-  // Translate(int[])
-  {
-    int length = toConvert.length();
-    int[] toConvertArray = new int[length];
-    for (int i = 0; i < length; i++)
-      toConvertArray[i] = (int) toConvert.charAt(i);
-
-    int[] resultArray = translate(toConvertArray);
-
-    length = resultArray.length;
-    StringBuffer result = new StringBuffer("");
-    for (int i = 0; i < length; i++)
-      result.append((char) resultArray[i]);
-    return result.toString();
-  } // end of Translate(String)
-
-  private int[] resizeConverted
-    (int outputIndex, int[] outputContent, int[] converted, int remainderToTranslate)
-  {
-//System.err.println("remainder=" + remainderToTranslate);
-    int[] resizedConverted = new int[(int) (converted.length + remainderToTranslate * MAX_COMPRESS)];
-//System.err.println("new size=" + resizedConverted.length);
-    if (resizedConverted.length < (converted.length + outputContent.length -
-      outputIndex))
+    if (matchFound)
+    {
+      int[] outputGot = getOutput();  // result of rule
+      int numberCharsInOutput = outputGot.length;  // size of result of rule
+      if (convertedLength + numberCharsInOutput > converted.length)
+        resizeConverted(numberCharsInOutput + (int) ((finish - start) * MAX_COMPRESS));
+      for (int i = 0; i < numberCharsInOutput; i++)
+        converted[convertedLength++] = (char) outputGot[i];
+          // one character from focus transferred to output
+      getNewState();  // get new state
+      start = start + ruleFocus[transRuleIndex].length;
+        // move along input by size of focus
+    }
+    else
+    // assertion: !matchFound, no match found for focus
     {
-      resizedConverted = resizeConverted(outputIndex, outputContent,
-        resizedConverted, remainderToTranslate * 2);
+      if (convertedLength == converted.length)
+        resizeConverted(1 + (int) ((finish - start) * MAX_COMPRESS));
+      converted[convertedLength++] = toConvert[start];
+        // if nothing matched, leave character untranslated
+      start++;  // try matching next character
+      state = defaultState;  // set state to default
     }
-    System.arraycopy(converted, 0, resizedConverted, 0, converted.length);
-    System.arraycopy(outputContent, outputIndex, resizedConverted,
-      converted.length, (outputContent.length - outputIndex));
-    return resizedConverted;
+    return start;
+  } // end of convertAt
+
+  private void resizeConverted(int extra)
+  // Grows the output buffer by extra characters, keeping its content.
+  {
+    char[] resizedConverted = new char[converted.length + extra];
+    System.arraycopy(converted, 0, resizedConverted, 0, convertedLength);
+    converted = resizedConverted;
   }
 
   public boolean setState(int newState)
@@ -810,70 +865,73 @@ public class Language256 implements Language, Serializable
   } // end of viewTranslationRule
 */
 
-  private class TranslationRule256 implements Serializable
-  // holds one rule of the translation table
+  private class Ranges implements RangeTranslator
+  // Translates ranges of mapped text, held as char[], with this language
   {
-    private int[] leftContext;
-    private int[] rightContext;
-    private int[] focus;
-    private int inputClass;
-    private int newState;
-    private int[] output;
+    public Object mapText(CharSequence text)
+    {
+      char[] toReturn = new char[text.length()];
+      for (int inputChar = 0; inputChar < toReturn.length; inputChar++)
+        toReturn[inputChar] = (char) mapCharacter(text.charAt(inputChar));
+      return toReturn;
+    }
 
-    private TranslationRule256(int[] newLeftContext, int[] newRightContext, int[] newFocus,
-      int newInputClass, int newNewState, int[] newOutput)
-    // Constructor for a full rule
+    public String translate(String text, int state)
     {
-  	  leftContext = newLeftContext;
-  	  rightContext = newRightContext;
-  	  focus = newFocus;
-  	  inputClass = newInputClass;
-  	  newState = newNewState;
-  	  output = newOutput;
+      if (!setState(state))
+        throw new IllegalArgumentException("State " + state
+          + " is not between 1 and " + numberStates);
+      return Language256.this.translate(text);
     }
 
-    private TranslationRule256(TranslationRule256 oldRule)
+    public int mappedLength(Object text)
     {
-  	  leftContext = oldRule.leftContext;
-  	  rightContext = oldRule.rightContext;
-  	  focus = oldRule.focus;
-  	  inputClass = oldRule.inputClass;
-  	  newState = oldRule.newState;
-  	  output = oldRule.output;
+      return ((char[]) text).length;
     }
-  } // end of TranslationRule256 class
 
-  private class Wildcard256 implements Serializable
-  // ADT that implements a single wildcard
-  {
-    private int character; // the character in the translation rules for this wildcard
-    private int number;  // whether the wildcard matches 1, 1+ or 0+ characters
-    private int flags; // the character properties this wildcard should match
+    public int textIndex(CharSequence text, int position)
+    {
+      return position;
+    }
 
-    private Wildcard256(int character, int number, int flags)
+    public boolean isMappedSpace(Object text, int position)
     {
-      this.character = character;
-      this.number = number;
-      this.flags = flags;
+      return ((char[]) text)[position] == SPACE;
     }
-  } // end of Wildcard256 class
 
-  private class CharacterRule256 implements Serializable
-  // A character rule
-  {
-    private int mapped; // the character in the text
-    private int upper; // the character to which it maps
-    private int flags; // used for legacy systems
-    private int translationRuleIndex; // used to hash into the translation rules
-    private int lastTranslationRuleIndex;
+    public int leftContextStart(Object text, int position)
+    {
+      return image.context_start((char[]) text, position);
+    }
+
+    public int getPermittedStates()
+    {
+      return numberStates;
+    }
+
+    public RangeTranslator newSession()
+    {
+      return new Language256(image).rangeTranslator();
+    }
 
-    private CharacterRule256(int mapped, int upper, int flags)
+    public TranslatedRange translateRange(Object text, int from, int to,
+      int[] entryStates, int[] defaultStates)
     {
-      this.mapped = mapped;
-  	  this.upper = upper;
-  	  this.flags = flags;
+      char[] savedMapped = mapped;
+      int savedMappedLength = mappedLength;
+      mapped = (char[]) text;
+      mappedLength = mapped.length;
+      try
+      {
+        return convertMachines(from, to, entryStates, defaultStates);
+      }
+      finally
+      {
+        mapped = savedMapped;
+        mappedLength = savedMappedLength;
+      }
     }
-  } // end of CharacterRule256 class
+  } // end of Ranges class
 
 
 } // END OF Language256 class
@@ -23,35 +23,47 @@ public class LanguageInteger implements Language
    */
   static final double MAX_COMPRESS = 2;
   private static final int STR_SIZE             =32000;      /* number of characters in strings */
-  private static final int TAB_SIZE             =25000;      /* size of tables */
   private static final int NUL                    ='\0';
   private static final int TRUE                    = 1;      /* logical constants */
   private static final int FALSE                    =0;
   private static final int NO_MOVE                  =0;
   private static final int NOT_DEFINED              =0;
   private static final int NUMBER_OF_CHARACTERS   =256;
-  private static final int VERSION_FAULT           =16;      /* error conditions */
-  private static final int CHAR_FAULT              =17;
-  private static final int WILD_FAULT              =18;
-  private static final int DECISION_FAULT          =19;
-  private static final int SIZE_FAULT              =20;
   private static final int WILD_MATCH               =1;
   private static final int WILD_BIT_PATTERN         =2;
   private static final int WILD_DATA                =3;
-  private static final int EOF = -1;
   private static final int INTERNAL_ERROR = 3;
 
-  private int[] table = new int[TAB_SIZE];     /* area to hold exceptions table */
+  private final LegacyTable image;             /* the shared, parsed language file */
+  private final int[] table;                   /* area to hold exceptions table */
   private int current_state = 1;               /* the current state */
-  private int[] wild_tab = new int[200];       /* wildcard table */
-  private int[] decision_table = new int[200]; /* state table */
-  private int no_wilds;                        /* number of wildcards */
-  private int no_input_classes;                /* number of input classes */
-  private int no_states;                       /* number of states */
-  private ChInfo[] ch_info = new ChInfo[NUMBER_OF_CHARACTERS]; // ADT for a character rule
+  private final int[] wild_tab;                /* wildcard table */
+  private final int[] decision_table;          /* state table */
+  private final int no_wilds;                  /* number of wildcards */
+  private final int no_input_classes;          /* number of input classes */
+  private final int no_states;                 /* number of states */
+  private final int[] ch_input_trans;          /* character mapping */
+  private final int[] ch_data;                 /* character flags */
+  private final int[] ch_hash;                 /* first table entry for character */
+  private final int[] hash_rule;               /* rule number of first table entry */
+  private final int[] rule_left_id;            /* interned id of left context of rule */
+  private final int[] rule_right_id;           /* interned id of right context of rule */
+  private final int[] rule_entry;              /* pointer to length of rule in table */
+  private final int[][][] bigram_rules;        /* rules of big categories by next character */
+  private final int[][] bigram_any;            /* rules of big categories at end of input */
+  private int[] left_position;               /* input position left context last checked at */
+  private int[] left_matched;                /* whether it matched there */
+  private int[] right_position;              /* input position right context last checked at */
+  private int[] right_matched;               /* whether it matched there */
+  private int reach_from;                    /* first input position looked at, -1 for before it */
+  private int reach_to;                      /* last input position looked at, input_length for after it */
   private int InstallOK;
   private int defaultState;
   private int looking;                       /* pointer for search through tables */
+  private char[] input_buffer;               /* mapped input, reused between calls */
+  private int input_length;                  /* number of characters in input_buffer */
+  private Output output_buffer;              /* translated output, reused between calls */
+  private Output caller_output;              /* wraps output arrays given by callers */
 
   /**
    * Indicates language rules tables (data files) on disk, suitable for
@@ -76,37 +88,49 @@ public class LanguageInteger implements Language
   public LanguageInteger(String filename)
     throws IOException, FileNotFoundException, LanguageLegacyDatafileFormatException
   {
-    BufferedInputStream inFile = null;
-  		// Used for File input
+    this(new LegacyTable(filename));
+  }
+
+ /**
+  * Creates a LanguageInteger object using a language rules table already
+  * loaded from disk.  The table is shared, not copied, so any number of
+  * LanguageInteger objects can translate with one table at no extra cost
+  * beyond their own state.  A LanguageInteger object is not thread-safe, but
+  * objects sharing a table can be used on different threads.
+  *
+  * @param image The language rules table to use.
+  */
+  public LanguageInteger(LegacyTable image)
+  {
+    this.image = image;
+    table = image.table;
+    wild_tab = image.wild_tab;
+    decision_table = image.decision_table;
+    no_wilds = image.no_wilds;
+    no_input_classes = image.no_input_classes;
+    no_states = image.no_states;
+    ch_input_trans = image.input_trans;
+    ch_data = image.data;
+    ch_hash = image.hash;
+    hash_rule = image.hash_rule;
+    rule_left_id = image.rule_left_id;
+    rule_right_id = image.rule_right_id;
+    rule_entry = image.rule_entry;
+    bigram_rules = image.bigram_rules;
+    bigram_any = image.bigram_any;
     defaultState = current_state = 1;
       // default state unless told otherwise
-    filename = filename + FILE_EXTENSION_DELIMITER + FILENAME_EXTENSION;
-
-    // 1 Open file "filename" to read
-    try
-    {
-      inFile = new BufferedInputStream(new FileInputStream(filename));
-    }
-  	catch (FileNotFoundException e)
-  	{ throw new FileNotFoundException("Unable to find language file " + filename); }
-
-    // 2 Read in the data
-    read_version_number(inFile);
-    read_character_data(inFile);
-    read_wildcards(inFile);
-    read_decision(inFile);
-    read_main_tables(inFile);
+  }
 
-    // Close the language file
-    try
-    {
-      inFile.close();
-    }
-    catch (IOException e)
-    {
-      throw new IOException("Unable to close language file after reading " +
-       filename);
-    }
+  /**
+   * Gets the language rules table this LanguageInteger translates with, to
+   * create more LanguageInteger objects sharing it.
+   *
+   * @return The language rules table.
+   */
+  public LegacyTable getTable()
+  {
+    return image;
   }
 
 
@@ -119,28 +143,150 @@ public class LanguageInteger implements Language
      Returns:
           number of characters converted
   */
-  private int convert(int[] input_dat, Output output_dat)
+  private int convert(char[] input_dat, Output output_dat)
   {
     int up_to = 0;                /* position in input buffer */
+    output_dat.upTo = output_dat.start;
+    initialise();
+    reset_context_memo();
+    while (up_to < input_length)
+      up_to = convert_step(up_to, input_dat, output_dat);
+    return up_to;
+  }
+
+
+  /* Function: convert_step
+     Translate the characters at one position in the buffer input_dat.
+     Parameters:
+          up_to is position in input buffer
+          input_dat is the input data
+          output_dat is the output text
+     Returns:
+          position in input buffer to carry on from
+  */
+  private int convert_step(int up_to, char[] input_dat, Output output_dat)
+  {
     int step;                     /* amount to step along input buffer */
-    do
-    {
-       /* check the table, return how far to move along input buffer
-       if no match then move 1 char along the input buffer. */
-
-      if ((step = find_match(up_to,input_dat, output_dat)) != FALSE)
-        up_to += step;
-      else { /* output input character and change state to default */
-  	    add_to_output(input_dat[up_to], output_dat);
-  	    current_state = defaultState;
+
+     /* check the table, return how far to move along input buffer
+     if no match then move 1 char along the input buffer. */
+
+    if ((step = find_match(up_to,input_dat, output_dat)) != FALSE)
+      up_to += step;
+    else { /* output input character and change state to default */
+      add_to_output(input_dat[up_to], output_dat);
+      current_state = defaultState;
 //System.err.println("Failed to match at " + up_to);
-  	    up_to++;
-      }
-    } while (up_to < input_dat.length);
+      up_to++;
+    }
     return up_to;
   }
 
 
+  /* Function: convert_machines
+     Translate the text in input_buffer from one position to another once for
+     each of several entry states.  A translation for each state works along
+     the input, the one furthest behind going next, so all of them find the
+     context matches the others have just memoized.  The current and default
+     states are left as they were.
+     Parameters:
+          from is position in input buffer to start at
+          to is position in input buffer to stop at
+          entry_states is the state each translation starts in
+          default_states is the state each returns to when nothing matches
+     Returns:
+          the output, end position and exit state of each translation
+  */
+  private TranslatedRange convert_machines(int from, int to, int[] entry_states,
+    int[] default_states)
+  {
+     int machine, next;
+     int machines = entry_states.length;
+     int saved_state = current_state;
+     int saved_default = defaultState;
+     int[] machine_up_to = new int[machines];
+     int[] machine_state = new int[machines];
+     Output[] machine_output = new Output[machines];
+     String[] output = new String[machines];
+
+     reset_context_memo();
+     reach_from = reach_to = from;
+     for (machine = 0; machine < machines; machine++)
+     {
+       machine_up_to[machine] = from;
+       machine_state[machine] = entry_states[machine];
+       machine_output[machine] = new Output((int) ((to - from) * MAX_COMPRESS) + 1);
+     }
+
+     do
+     {
+       /* step the translation furthest behind */
+       next = -1;
+       for (machine = 0; machine < machines; machine++)
+         if ((machine_up_to[machine] < to)
+           && ((next == -1) || (machine_up_to[machine] < machine_up_to[next])))
+           next = machine;
+       if (next != -1)
+       {
+         current_state = machine_state[next];
+         defaultState = default_states[next];
+         machine_up_to[next] = convert_step(machine_up_to[next], input_buffer,
+           machine_output[next]);
+         machine_state[next] = current_state;
+       }
+     } while (next != -1);
+
+     current_state = saved_state;
+     defaultState = saved_default;
+     for (machine = 0; machine < machines; machine++)
+       output[machine] = new String(machine_output[machine].output, 0,
+         machine_output[machine].upTo);
+     return new TranslatedRange(output, machine_up_to, machine_state,
+       reach_from, reach_to);
+  }
+
+
+  /* Function: reset_context_memo
+     Forget which contexts matched where in the last text converted.  Rules
+     with identical contexts share a context id, and each context is checked
+     at most once for each input position.
+     Parameters:
+          none
+     Returns:
+          void
+  */
+  private void reset_context_memo()
+  {
+    if (left_position == null)
+    {
+      left_position = new int[image.no_left_contexts];
+      left_matched = new int[image.no_left_contexts];
+      right_position = new int[image.no_right_contexts];
+      right_matched = new int[image.no_right_contexts];
+    }
+    Arrays.fill(left_position, -1);
+    Arrays.fill(right_position, -1);
+  }
+
+
+  /* Function: note_reach
+     Widen the part of the input the current convert_machines call has looked
+     at to take in a position, so a TranslationCache knows how much of the
+     text a translation depends on.
+     Parameters:
+          position is the input position looked at
+     Returns:
+          void
+  */
+  private void note_reach(int position)
+  {
+    if (position < reach_from)
+      reach_from = position;
+    if (position > reach_to)
+      reach_to = position;
+  }
+
+
   /* Function: initialise
      Initialise for each group of characters to convert.
      Parameters:
@@ -164,8 +310,12 @@ public class LanguageInteger implements Language
   private void add_to_output(int chr, Output output_buffer)
   // added outUpTo to track where on the output array we've got to
   {
-    if (output_buffer.upTo < output_buffer.output.length)
-      output_buffer.output[output_buffer.upTo++] = chr;
+    if (output_buffer.upTo == output_buffer.limit)
+      output_buffer.grow();
+    if (output_buffer.int_output != null)
+      output_buffer.int_output[output_buffer.upTo++] = chr;
+    else
+      output_buffer.output[output_buffer.upTo++] = (char) chr;
   }
 
 /********************************* find match ******************************/
@@ -181,15 +331,39 @@ public class LanguageInteger implements Language
    Returns:
         number of characters converted - NO_MOVE (0) if none
 */
-  private int find_match(int up_to, int[] input_dat, Output output_dat)
+  private int find_match(int up_to, char[] input_dat, Output output_dat)
   {
     int move_no;           /* how far to move along input buffer */
     int this_table_entry;  /* pointer to input class of current table entry */
+    int rule;              /* rule number of current table entry */
+    int[] candidates;      /* rules of a big category that can match */
+    int i;
+
+    if (bigram_rules[input_dat[up_to]] != null)
+    { /* big category: only go through the entries that can match the next
+         character, in table order */
+      if (up_to + 1 < input_length)
+        candidates = bigram_rules[input_dat[up_to]][input_dat[up_to + 1]];
+      else
+        candidates = bigram_any[input_dat[up_to]];
+      note_reach(Math.min(up_to + 1, input_length));
+      for (i = 0; i < candidates.length; i++)
+      {
+        rule = candidates[i];
+        this_table_entry = looking = rule_entry[rule];
+        while (table[looking++] != LEFT_FOCUS_DELIMITER)
+          ; /* get to character after '[' */
+        if ((move_no = match_entry(rule, this_table_entry, up_to, input_dat, output_dat)) != NO_MOVE)
+          return(move_no);
+      }
+      return(NO_MOVE);
+    }
 
     /* quick hash into the contraction table from first character in buffer.
         *looking == 0 if no entry found.
     */
-    this_table_entry = looking = ch_info[input_dat[up_to]].hash;
+    this_table_entry = looking = ch_hash[input_dat[up_to]];
+    rule = hash_rule[input_dat[up_to]];
 
 
       /* if hash character then check rules */
@@ -205,22 +379,47 @@ public class LanguageInteger implements Language
         if (table[looking] != input_dat[up_to]) /* run out of table entries for this letter? */
           return(NO_MOVE);
 
-        if ((move_no = words_match(up_to,input_dat)) != FALSE)
-          if (check_state(table[(this_table_entry-1)]) != FALSE)
-            if (right_context(up_to+move_no,input_dat) != FALSE)
-              if (left_context(up_to,input_dat) != FALSE)
-              {
-                match_found(output_dat);
-                return(move_no);
-              }
+        if ((move_no = match_entry(rule, this_table_entry, up_to, input_dat, output_dat)) != NO_MOVE)
+          return(move_no);
 
       /* go to next entry in the table */
         looking = (this_table_entry += table[this_table_entry]);
+        rule++;
       } while (true);
     } /* *looking */
   }
 
 
+/* Function: match_entry
+   Try to match one table entry at the current position in input buffer, and
+   output it if it matches.
+   Parameters:
+        rule is the rule number of the entry
+        this_table_entry is pointer to length of the entry; looking points
+          to the first character of its focus
+        up_to is position in input buffer
+        input_dat is the input data
+        output_dat is the output text
+   Returns:
+        number of characters converted - NO_MOVE (0) if none
+*/
+  private int match_entry(int rule, int this_table_entry, int up_to, char[] input_dat,
+    Output output_dat)
+  {
+    int move_no;           /* how far to move along input buffer */
+
+    if ((move_no = words_match(up_to,input_dat)) != FALSE)
+      if (check_state(table[(this_table_entry-1)]) != FALSE)
+        if (right_context(rule,up_to+move_no,input_dat) != FALSE)
+          if (left_context(rule,up_to,input_dat) != FALSE)
+          {
+            match_found(output_dat);
+            return(move_no);
+          }
+    return(NO_MOVE);
+  }
+
+
 /* Function: check_state
    check the input class against the current state in the state table
    Parameters:
@@ -249,31 +448,45 @@ public class LanguageInteger implements Language
 /* Function: left_context
    Check to see if the left context of the match string is valid.
    Parameters:
+        rule is the rule number of the table entry
         up_to is end of match string in input data
         input_dat is the input text
    Returns:
         whether left context is satisfied
 */
-  private int left_context(int up_to, int[] input_dat)
+  private int left_context(int rule, int up_to, char[] input_dat)
   {
-      while (table[looking--] != LEFT_FOCUS_DELIMITER)
-         ;
-      return (wild_match(-1, --up_to, input_dat));
+      int id = rule_left_id[rule];
+      if (left_position[id] != up_to)
+      {
+        while (table[looking--] != LEFT_FOCUS_DELIMITER)
+           ;
+        left_matched[id] = wild_match(-1, up_to - 1, input_dat);
+        left_position[id] = up_to;
+      }
+      return (left_matched[id]);
   }
 
 
 /* Function: right_context
    Check to see if the right context of the match string is valid.
    Parameters:
+        rule is the rule number of the table entry
         up_to is end of match string in input data
         input_dat is the input text
    Returns:
         whether right context is satisfied
 */
-  private int right_context(int up_to, int[] input_dat)
+  private int right_context(int rule, int up_to, char[] input_dat)
   {
-      looking++;
-      return (wild_match(+1, up_to, input_dat));
+      int id = rule_right_id[rule];
+      if (right_position[id] != up_to)
+      {
+        looking++;
+        right_matched[id] = wild_match(+1, up_to, input_dat);
+        right_position[id] = up_to;
+      }
+      return (right_matched[id]);
   }
 
 
@@ -287,102 +500,111 @@ public class LanguageInteger implements Language
    Returns:
         whether match is successful
 */
-  private int wild_match(int step, int up_to, int[] input_dat)
+  private int wild_match(int step, int up_to, char[] input_dat)
   {
 //System.err.println("up_to=" + up_to + " table[looking]=" + (char) table[looking] + " step=" + step);
 
     int i;
     int bits;
-    while (table[looking] >= ' ')
-    { /* work through the entries */
-      if (table[looking] == RULE_OUTPUT_DELIMITER && step == 1)
-        break;
-      if ((ch_info[table[looking]].data & WILDCARD_FLAG) != FALSE)
-      { // got wildcard in rule
-        for (i = 0; i < no_wilds; i++)
-          if (table[looking] == wild_tab[i*WILD_DATA])
-          { // identified which wild card
-            bits = wild_tab[i*WILD_DATA+WILD_BIT_PATTERN];
-            switch (wild_tab[i*WILD_DATA+WILD_MATCH])
-            {
-              case WILDCARD_ONE :
-                if (up_to < 0)
-                // ASSERTION: checking has progressed beyond end of input - only
-                // permissable is wildcard indicates a SPACE character
-                  if ((SPACE_FLAG & bits) == 0)
-                    return(FALSE); // not a space character, not permitted outside
-                  else
-                    return(TRUE); // SPACE wildcard, so okay to match against outside input
-                if (up_to >= input_dat.length)
-                // ASSERTION: checking has progressed beyond end of input - only
-                // permissable is wildcard indicates a SPACE character
-                  if ((SPACE_FLAG & bits) == 0)
-                    return(FALSE); // not a space character, not permitted outside
-                  else
-                    return(TRUE); // SPACE wildcard, so okay to match against outside input
-                if ( (ch_info[input_dat[up_to]].data & bits) == 0) //!= bits
-                  return(FALSE);
-                up_to += step;
-                break;
-              case WILDCARD_SEVERAL :
-                if (up_to < 0)
-                // ASSERTION: checking has progressed beyond end of input - only
-                // permissable is wildcard indicates a SPACE character
-                  if ((SPACE_FLAG & bits) == 0)
-                    return(FALSE); // not a space character, not permitted outside
-                  else
-                    return(TRUE); // SPACE wildcard, so okay to match against outside input
-                if (up_to >= input_dat.length)
-                // ASSERTION: checking has progressed beyond end of input - only
-                // permissable is wildcard indicates a SPACE character
-                  if ((SPACE_FLAG & bits) == 0)
-                    return(FALSE); // not a space character, not permitted outside
-                  else
-                    return(TRUE); // SPACE wildcard, so okay to match against outside input
-                if ( (ch_info[input_dat[up_to]].data & bits) == 0) // != bits )
-                  return(FALSE);
-                do
-                {
-                  up_to += step;
+    if ((table[looking] < ' ') || ((table[looking] == RULE_OUTPUT_DELIMITER) && (step == 1)))
+      return(TRUE); /* empty context */
+    try
+    {
+      while (table[looking] >= ' ')
+      { /* work through the entries */
+        if (table[looking] == RULE_OUTPUT_DELIMITER && step == 1)
+          break;
+        if ((ch_data[table[looking]] & WILDCARD_FLAG) != FALSE)
+        { // got wildcard in rule
+          for (i = 0; i < no_wilds; i++)
+            if (table[looking] == wild_tab[i*WILD_DATA])
+            { // identified which wild card
+              bits = wild_tab[i*WILD_DATA+WILD_BIT_PATTERN];
+              switch (wild_tab[i*WILD_DATA+WILD_MATCH])
+              {
+                case WILDCARD_ONE :
                   if (up_to < 0)
-                    break;
-                  if (up_to >= input_dat.length)
-                    break;
-                } while ( (ch_info[input_dat[up_to]].data & bits) > 0);// == bits);
-                break;
-              case WILDCARD_NONE :
-                if (up_to < 0)
+                  // ASSERTION: checking has progressed beyond end of input - only
+                  // permissable is wildcard indicates a SPACE character
+                    if ((SPACE_FLAG & bits) == 0)
+                      return(FALSE); // not a space character, not permitted outside
+                    else
+                      return(TRUE); // SPACE wildcard, so okay to match against outside input
+                  if (up_to >= input_length)
+                  // ASSERTION: checking has progressed beyond end of input - only
+                  // permissable is wildcard indicates a SPACE character
+                    if ((SPACE_FLAG & bits) == 0)
+                      return(FALSE); // not a space character, not permitted outside
+                    else
+                      return(TRUE); // SPACE wildcard, so okay to match against outside input
+                  if ( (ch_data[input_dat[up_to]] & bits) == 0) //!= bits
+                    return(FALSE);
+                  up_to += step;
                   break;
-                if (up_to >= input_dat.length)
+                case WILDCARD_SEVERAL :
+                  if (up_to < 0)
+                  // ASSERTION: checking has progressed beyond end of input - only
+                  // permissable is wildcard indicates a SPACE character
+                    if ((SPACE_FLAG & bits) == 0)
+                      return(FALSE); // not a space character, not permitted outside
+                    else
+                      return(TRUE); // SPACE wildcard, so okay to match against outside input
+                  if (up_to >= input_length)
+                  // ASSERTION: checking has progressed beyond end of input - only
+                  // permissable is wildcard indicates a SPACE character
+                    if ((SPACE_FLAG & bits) == 0)
+                      return(FALSE); // not a space character, not permitted outside
+                    else
+                      return(TRUE); // SPACE wildcard, so okay to match against outside input
+                  if ( (ch_data[input_dat[up_to]] & bits) == 0) // != bits )
+                    return(FALSE);
+                  do
+                  {
+                    up_to += step;
+                    if (up_to < 0)
+                      break;
+                    if (up_to >= input_length)
+                      break;
+                  } while ( (ch_data[input_dat[up_to]] & bits) > 0);// == bits);
                   break;
-                while ( (ch_info[input_dat[up_to]].data & bits) > 0)//== bits)
-                {
-                  up_to += step;
+                case WILDCARD_NONE :
                   if (up_to < 0)
                     break;
-                  if (up_to >= input_dat.length)
+                  if (up_to >= input_length)
                     break;
-                }
-                break;
-            } // end of switch
+                  while ( (ch_data[input_dat[up_to]] & bits) > 0)//== bits)
+                  {
+                    up_to += step;
+                    if (up_to < 0)
+                      break;
+                    if (up_to >= input_length)
+                      break;
+                  }
+                  break;
+              } // end of switch
 //            break;    Don't think this is required
-          } // end of (if) found wild card
-      } // end of got wildcard
-      else
-      { /* not wildcard */
-        if (up_to < 0)
-          return(FALSE);
-        if (up_to >= input_dat.length)
-          return (FALSE);
-
-        if (table[looking] != input_dat[up_to])
-          return(FALSE);
-        up_to += step;
-      }
+            } // end of (if) found wild card
+        } // end of got wildcard
+        else
+        { /* not wildcard */
+          if (up_to < 0)
+            return(FALSE);
+          if (up_to >= input_length)
+            return (FALSE);
+
+          if (table[looking] != input_dat[up_to])
+            return(FALSE);
+          up_to += step;
+        }
 //      up_to += step;  // can't go here!  May not happen (ie match 0+ wcard)
-  	  looking += step;
-    } /* end of while work through the entries */
-    return (TRUE);
+    	  looking += step;
+      } /* end of while work through the entries */
+      return (TRUE);
+    }
+    finally
+    { /* up_to is the last position looked at, or one past it */
+      note_reach(up_to);
+    }
   }
 
 
@@ -394,15 +616,21 @@ public class LanguageInteger implements Language
    Returns:
         whether words do match
 */
-  private int words_match(int up_to, int[] input_txt)
+  private int words_match(int up_to, char[] input_txt)
   {
     int start = up_to;
     do
     {
-      if (up_to == input_txt.length)
+      if (up_to == input_length)
+      {
+        note_reach(up_to);
         return(FALSE);
+      }
       if (table[looking++] != input_txt[up_to++])
+      {
+        note_reach(up_to - 1);
         return(FALSE);
+      }
 //      up_to++;  // did up_to++ in input_txt[] two lines up instead, for speed
 //System.out.print("\tup=" + up_to);
     } while (table[looking] != ']');
@@ -414,6 +642,7 @@ System.err.print(">");
 System.err.println();
 */
 
+    note_reach(up_to - 1);
     return(up_to-start);
   }
 
@@ -440,256 +669,194 @@ System.err.println();
   }
 /****************************** end find match ******************************/
 
-/********************************* read tables ******************************/
-
-
-
+  /**
+   * Performs translation from text to Braille or from Braille to text,
+   * depending on language and state.  The array passed in is not altered.
+   *
+   * @param input_txt  <CODE>int[]</CODE> holding characters to translate.
+   * @return <CODE>int[]</CODE> holding the output text, characters now translated.
+   */
+  public int[] translate(int[] input_txt)
+  {
+    prepare_input(input_txt.length);
+    for (int i = 0; i < input_txt.length; i++)
+      input_buffer[i] = map_character(input_txt[i]);
+    convert(input_buffer, own_output());
+    int[] toReturn = new int[output_buffer.upTo];
+    for (int i = 0; i < output_buffer.upTo; i++)
+      toReturn[i] = output_buffer.output[i];
+    return toReturn;
+  }
 
-/* Function: table_fault
-   fault occured in reading table.  Report fault and exit.
-   Parameters:
-        fault_no the fault to be reported
-   Returns:
-        whether left context is satisfied
-*//*
-  private void table_fault(int fault_no)
+  /**
+   * Performs translation of part of an <CODE>int[]</CODE> straight into an
+   * <CODE>int[]</CODE> supplied by the caller, allocating nothing.  The input
+   * array is not altered, and nor is any of the output array outside the
+   * characters written.
+   *
+   * @param input_txt  <CODE>int[]</CODE> holding the characters to translate.
+   * @param offset  Index of the first character to translate.
+   * @param length  Number of characters to translate.
+   * @param output  <CODE>int[]</CODE> to write the translated characters to.
+   * @param output_offset  Index in output to write the first character to.
+   * @return The number of characters written to output.
+   * @throws ArrayIndexOutOfBoundsException if the translation does not fit in
+   * output.  Up to <CODE>MAX_COMPRESS</CODE> characters per input character
+   * leaves room for any usual translation.
+   */
+  public int translate(int[] input_txt, int offset, int length, int[] output, int output_offset)
   {
-  	InstallOK = fault_no;
-  } */
+    prepare_input(length);
+    for (int i = 0; i < length; i++)
+      input_buffer[i] = map_character(input_txt[offset + i]);
+    convert(input_buffer, caller_output().wrap(output, output_offset));
+    return caller_output.upTo - output_offset;
+  }
 
+  /**
+   * Performs translation of part of a <CODE>char[]</CODE> straight into a
+   * <CODE>char[]</CODE> supplied by the caller, allocating nothing.  The input
+   * array is not altered, and nor is any of the output array outside the
+   * characters written.
+   *
+   * @param toConvert  <CODE>char[]</CODE> holding the characters to translate.
+   * @param offset  Index of the first character to translate.
+   * @param length  Number of characters to translate.
+   * @param output  <CODE>char[]</CODE> to write the translated characters to.
+   * @param output_offset  Index in output to write the first character to.
+   * @return The number of characters written to output.
+   * @throws ArrayIndexOutOfBoundsException if the translation does not fit in
+   * output.
+   */
+  public int translate(char[] toConvert, int offset, int length, char[] output, int output_offset)
+  {
+    prepare_input(length);
+    for (int i = 0; i < length; i++)
+      input_buffer[i] = map_character(toConvert[offset + i]);
+    convert(input_buffer, caller_output().wrap(output, output_offset));
+    return caller_output.upTo - output_offset;
+  }
 
-/* Function: read_version_number
-   read and verify version number from program data file
-   Parameters:
-        fp handle for file
-   Returns:
-        void
-*/
-  private void read_version_number(BufferedInputStream inFile)
-    throws IOException, LanguageLegacyDatafileFormatException
+  public String translate(String toConvert)
   {
-    int version_number;
+     int toConvertL = toConvert.length();
+     prepare_input(toConvertL);
+     toConvert.getChars(0, toConvertL, input_buffer, 0);
+     for (int i = 0; i < toConvertL; i++)
+       input_buffer[i] = map_character(input_buffer[i]);
+     convert(input_buffer, own_output());
+     return new String(output_buffer.output, 0, output_buffer.upTo);
+  }
 
-    try
-    {
-      if (inFile.read() != 17)
-        throw new LanguageLegacyDatafileFormatException("Language file format" +
-        " error, code " + VERSION_FAULT);
-      if (inFile.read() != 12)
-        throw new LanguageLegacyDatafileFormatException("Language file format" +
-        " error, code " + VERSION_FAULT);
-      if (inFile.read() != 8)
-        throw new LanguageLegacyDatafileFormatException("Language file format" +
-        " error, code " + VERSION_FAULT);
-      version_number = inFile.read();
-    }
-    catch (IOException e)
-    {
-      throw new IOException("Error reading version number: " + e);
-    }
+  /**
+   * Performs translation of the same text once for each of several states in
+   * a single pass.  A translation for each state works along the mapped input,
+   * the one furthest behind going next, so all of them find the context
+   * matches the others have just memoized.  The current state is not changed.
+   *
+   * @param toConvert  <CODE>String</CODE> holding characters to translate.
+   * @param states  The states to translate in.
+   * @return A <CODE>String</CODE> holding the translated text for each state.
+   * @throws IllegalArgumentException if a state is not permitted.
+   */
+  public String[] translate(String toConvert, int[] states)
+  {
+     for (int machine = 0; machine < states.length; machine++)
+       if ((states[machine] < 1) || (states[machine] > no_states))
+         throw new IllegalArgumentException("State " + states[machine]
+           + " is not between 1 and " + no_states);
+     int toConvertL = toConvert.length();
+     prepare_input(toConvertL);
+     toConvert.getChars(0, toConvertL, input_buffer, 0);
+     for (int i = 0; i < toConvertL; i++)
+       input_buffer[i] = map_character(input_buffer[i]);
+     return convert_machines(0, toConvertL, states, states).output;
   }
 
+  /**
+   * Performs translation of part of a <CODE>char[]</CODE>, which is not
+   * altered.
+   *
+   * @param toConvert  <CODE>char[]</CODE> holding the characters to translate.
+   * @param offset  Index of the first character to translate.
+   * @param length  Number of characters to translate.
+   * @return A <CODE>String</CODE> holding the translated characters.
+   */
+  public String translate(char[] toConvert, int offset, int length)
+  {
+     prepare_input(length);
+     for (int i = 0; i < length; i++)
+       input_buffer[i] = map_character(toConvert[offset + i]);
+     convert(input_buffer, own_output());
+     return new String(output_buffer.output, 0, output_buffer.upTo);
+  }
 
-  /* Function: read_character_data
-     read and verify data for 256 characters.
+  /* Function: prepare_input
+     Make sure the reused input buffer is big enough for the next translation.
      Parameters:
-          inFile handle for file
+          length is the number of characters to translate
      Returns:
           void
   */
-  private void read_character_data(BufferedInputStream inFile)
-    throws IOException, LanguageLegacyDatafileFormatException
+  private void prepare_input(int length)
   {
-    int chr;
-    for (int i = 0; i < NUMBER_OF_CHARACTERS; i++)
-    {
-      try
-      {
-        ch_info[i] = new ChInfo();
-        if ((chr = inFile.read()) == EOF)
-          throw new LanguageLegacyDatafileFormatException("Language file format" +
-          " error, code " + CHAR_FAULT);
-        else
-          ch_info[i].input_trans = chr;
-        if ((chr = inFile.read()) == EOF)
-          throw new LanguageLegacyDatafileFormatException("Language file format" +
-          " error, code " + CHAR_FAULT);
-        else
-          ch_info[i].to_up = chr;
-        if ((chr = inFile.read()) == EOF)
-          throw new LanguageLegacyDatafileFormatException("Language file format" +
-          " error, code " + CHAR_FAULT);
-        else
-          ch_info[i].data = chr;
-      }
-      catch (IOException e)
-      {
-        throw new IOException("Error reading character table: " + e);
-      }
-    }
-}
-
+    if ((input_buffer == null) || (input_buffer.length < length))
+      input_buffer = new char[length];
+    input_length = length;
+  }
 
-  /* Function: read_wildcards
-     read and verify number of wildcards from program data file.
-     Allocate memory and read and verify wildcard data.
+  /* Function: own_output
+     Make sure the reused output buffer is big enough to translate the
+     characters in the input buffer.
      Parameters:
-          fp handle for file
+          none
      Returns:
-          void
+          the output buffer
   */
-  private void read_wildcards(BufferedInputStream inFile)
-    throws IOException, LanguageLegacyDatafileFormatException
+  private Output own_output()
   {
-    int i;
-    int chr;
-
-    try
-    {
-      if ( (no_wilds = inFile.read()) == EOF)
-        throw new LanguageLegacyDatafileFormatException("Language file format" +
-        " error, code " + WILD_FAULT);
-      //   wild_tab = (char *) malloc(no_wilds*WILD_DATA);
-      for (i = 0; i < no_wilds*WILD_DATA; i++)
-      {
-        if ( (chr = inFile.read()) == EOF)
-          throw new LanguageLegacyDatafileFormatException("Language file format" +
-          " error, code " + WILD_FAULT);
-        wild_tab[i] = chr;
-      }
-    }
-    catch (IOException e)
-    {
-      throw new IOException("Error reading wildcard table: " + e);
-    }
+    int size = (int) (input_length * MAX_COMPRESS) + 1;
+    if ((output_buffer == null) || (output_buffer.output.length < size))
+      output_buffer = new Output(size);
+    return output_buffer;
   }
 
-  /* Function: read_decision table
-     read and verify number of states and input classes from program data file.
-     Allocate memory and read and verify decision table data.
+  /* Function: caller_output
+     Get the reused Output that wraps arrays supplied by callers.
      Parameters:
-          fp handle for file
+          none
      Returns:
-          void
+          the caller output
   */
-  private void read_decision(BufferedInputStream inFile)
-    throws IOException, LanguageLegacyDatafileFormatException
+  private Output caller_output()
   {
-    int i, j, chr;
-
-    try
-    {
-    if ( (no_states = inFile.read()) == EOF)
-      throw new LanguageLegacyDatafileFormatException("Language file format" +
-      " error, code " + DECISION_FAULT);
-    if ( (no_input_classes = inFile.read()) == EOF)
-      throw new LanguageLegacyDatafileFormatException("Language file format" +
-      " error, code " + DECISION_FAULT);
-    //   decision_table = (char *) malloc(no_input_classes*no_states);
-    for (i = 0; i < no_states; i++)
-    {
-      for (j = 0; j < no_input_classes; j++)
-      {
-        if ( (chr = inFile.read()) == EOF)
-          throw new LanguageLegacyDatafileFormatException("Language file format" +
-          " error, code " + DECISION_FAULT);
-          decision_table[i*no_input_classes+j] = chr;
-      }
-    }
-    }
-    catch (IOException e)
-    {
-      throw new IOException("Error reading decision table: " + e);
-    }
+    if (caller_output == null)
+      caller_output = new Output(0);
+    return caller_output;
   }
 
-
-  /* Function: read_main tables
-     read into table[] and verify exceptions from program data file.
-     Build hash into table[] based on first character of focus [in brackets].
+  /* Function: map_character
+     Map an input character through the character table.
      Parameters:
-          fp handle for file
+          chr is the character to map
      Returns:
-          void
+          the mapped character, or a space for characters outside the table
   */
-  private void read_main_tables(BufferedInputStream inFile)
-    throws IOException, LanguageLegacyDatafileFormatException
-  {
-    int i;
-    int chr;
-    int start;
-
-    for (i = 0; i < 256; i++)             /* initialise hash table */
-          ch_info[i].hash = NOT_DEFINED;
-
-    i = 0;
-    table[i++] = 0;       /* at start of table have dummy NUL and new state */
-    table[i++] = 1;       /* to ensure that algorithms work */
-
-    try
-    {
-      while (table[i - 1] != EOF)
-      {
-        table[i++] = inFile.read();                         /* input class */
-        start = i;
-        table[i++] = inFile.read();                   /* length of entry */
-        if (table[i - 1] == EOF)
-          break;
-        while ( (table[i++] = inFile.read()) != LEFT_FOCUS_DELIMITER ) /* skip over left context and '[' */
-          ;
-        table[i++] = chr = inFile.read();             /* first character of focus */
-        if (ch_info[chr].hash == NOT_DEFINED)
-        {
-          ch_info[chr].hash = start;
-        }
-
-        /* read to the end of the line */
-        while ((table[i++] = inFile.read()) != FALSE)
-          if (table [i - 1] == EOF)
-            break;
-        table[i++] = inFile.read();                   /* new state */
-        if (i >= TAB_SIZE)
-          throw new LanguageLegacyDatafileFormatException("Language file format" +
-            " error, code " + SIZE_FAULT);
-      }
-    }
-    catch (IOException e)
-    {
-      throw new IOException("Error reading translation rules: " + e);
-    }
-  } // end of function read_main_tables
-
-
-  public int[] translate(int[] input_txt)
+  private char map_character(int chr)
   {
-    Output output_txt = new Output((int) (input_txt.length * MAX_COMPRESS));
-//    int[] output_txt = new int[(int) (input_txt.length * MAX_COMPRESS)]; // for output
-
-    for (int i = 0; i < input_txt.length; i++)
-      input_txt[i] = ch_info[input_txt[i]].input_trans;
-    convert(input_txt, output_txt);
-    int[] toReturn = new int[output_txt.upTo];
-    System.arraycopy(output_txt.output, 0, toReturn, 0, output_txt.upTo);
-    return toReturn;
+    if ((chr < 0) || (chr >= NUMBER_OF_CHARACTERS))
+      return ' ';
+    return (char) ch_input_trans[chr];
   }
 
-  public String translate(String toConvert)
+  public int getState()
   {
-     int toConvertL = toConvert.length();
-     int[] inputAsArray = new int[toConvertL];
-     for (int i = 0; i < toConvertL; i++)
-       inputAsArray[i] = (int) toConvert.charAt(i);
-     int[] converted = translate(inputAsArray);
-     StringBuffer output = null;
-     for (int i = 0; i < converted.length; i++)
-       output = output.append((char) converted[i]);
-     String outputAsString = new String(output);
-     return outputAsString;
+    return current_state;
   }
 
-  public int getState()
+  public int getDefaultState()
   {
-    return current_state;
+    return defaultState;
   }
 
   public int getPermittedStates()
@@ -716,40 +883,136 @@ System.err.println();
 /*
   public int getHashValue(int index)
   {
-    return ch_info[index].hash;
+    return ch_hash[index];
   }
 */
 
-  // ADTs for Language256Array
-  private class ChInfo
+  /* Function: range_translator
+     Get this language as a RangeTranslator, for ParallelTranslator.
+     Parameters:
+          none
+     Returns:
+          the range translator
+  */
+  RangeTranslator range_translator()
+  {
+    return new Ranges();
+  }
+
+  // Translates ranges of mapped text, held as char[], with this language
+  private class Ranges implements RangeTranslator
   {
-    private int input_trans;
-    private int to_up;
-    private int data;
-    private int hash;
+    public Object mapText(CharSequence text)
+    {
+      char[] mapped = new char[text.length()];
+      for (int i = 0; i < mapped.length; i++)
+        mapped[i] = map_character(text.charAt(i));
+      return mapped;
+    }
 
-    ChInfo()
+    public String translate(String text, int state)
     {
+      if (!setState(state))
+        throw new IllegalArgumentException("State " + state
+          + " is not between 1 and " + no_states);
+      return LanguageInteger.this.translate(text);
     }
 
-    ChInfo (int input_trans, int to_up, int data, int hash)
+    public int mappedLength(Object mapped)
     {
-      this.input_trans = input_trans;
-      this.to_up = to_up;
-      this.data = data;
-      this.hash = hash;
+      return ((char[]) mapped).length;
+    }
+
+    public int textIndex(CharSequence text, int position)
+    {
+      return position;
+    }
+
+    public boolean isMappedSpace(Object mapped, int position)
+    {
+      return ((char[]) mapped)[position] == ' ';
+    }
+
+    public int leftContextStart(Object mapped, int position)
+    {
+      return image.context_start((char[]) mapped, position);
+    }
+
+    public int getPermittedStates()
+    {
+      return no_states;
+    }
+
+    public RangeTranslator newSession()
+    {
+      return new LanguageInteger(image).range_translator();
+    }
+
+    public TranslatedRange translateRange(Object mapped, int from, int to,
+      int[] entry_states, int[] default_states)
+    {
+      char[] saved_input = input_buffer;
+      int saved_length = input_length;
+      input_buffer = (char[]) mapped;
+      input_length = input_buffer.length;
+      try
+      {
+        return convert_machines(from, to, entry_states, default_states);
+      }
+      finally
+      {
+        input_buffer = saved_input;
+        input_length = saved_length;
+      }
     }
   }
 
   private class Output
   {
-    private int[] output;
+    private char[] output;      // own buffer, or a caller's char[]
+    private int[] int_output;   // a caller's int[], if writing to one
+    private int start;          // index of the first character of output
     private int upTo;
+    private int limit;          // length of the array being written to
+    private boolean fixed;      // true for caller arrays, which cannot grow
 
     private Output(int size)
     {
       upTo = 0;
-      output = new int[size];
+      output = new char[size];
+      limit = size;
+    }
+
+    private Output wrap(char[] callers, int offset)
+    {
+      output = callers;
+      int_output = null;
+      start = upTo = offset;
+      limit = callers.length;
+      fixed = true;
+      return this;
+    }
+
+    private Output wrap(int[] callers, int offset)
+    {
+      output = null;
+      int_output = callers;
+      start = upTo = offset;
+      limit = callers.length;
+      fixed = true;
+      return this;
+    }
+
+    private void grow()
+    {
+      if (fixed)
+        throw new ArrayIndexOutOfBoundsException("Translation does not fit in"
+          + " the output array, " + (upTo - start) + " characters written from index "
+          + start);
+      char[] grown = new char[(int) (output.length * MAX_COMPRESS) + 1];
+      System.arraycopy(output, 0, grown, 0, upTo);
+      output = grown;
+      limit = output.length;
     }
   }
 
@@ -0,0 +1,222 @@
+package uk.ac.umist.co.brailletrans;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The languages in a directory, loaded by name when first asked for and kept
+ * until unloaded.  A language file "english.ulf" is loaded as a
+ * <CODE>LanguageUnicode</CODE> called "english"; a legacy file
+ * "english.dat", where there is no ".ulf" file of the same name, is loaded as
+ * a <CODE>LanguageInteger</CODE>.
+ *
+ * <p>A <CODE>LanguageRegistry</CODE> can be used by several threads at once.
+ * The languages it returns are shared, so should be translated with through
+ * classes such as <CODE>TranslationExecutor</CODE> rather than directly.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class LanguageRegistry
+{
+  private File directory;
+  // where the language files are
+  private ConcurrentHashMap<String, Language> loaded = new ConcurrentHashMap<String, Language>();
+  // the languages loaded or registered so far
+  private ConcurrentHashMap<String, Boolean> registered = new ConcurrentHashMap<String, Boolean>();
+  // Boolean.TRUE for the languages given to register, which are never
+  // unloaded
+  private ConcurrentHashMap<String, Long> hashes = new ConcurrentHashMap<String, Long>();
+  // the content hash of each language file loaded
+
+  /**
+   * Creates a <CODE>LanguageRegistry</CODE> of the languages in a directory.
+   *
+   * @param directory  The directory holding the language files, or null for
+   * a registry of only the languages given to <CODE>register</CODE>.
+   */
+  public LanguageRegistry(File directory)
+  {
+    this.directory = directory;
+  }
+
+  /**
+   * Adds a language to the registry, replacing any of the same name.
+   *
+   * @param name  The name to find the language by.
+   * @param language  The language.
+   */
+  public void register(String name, Language language)
+  {
+    registered.put(name, Boolean.TRUE);
+    hashes.remove(name);
+    loaded.put(name, language);
+  }
+
+  /**
+   * Returns the names of all the languages in the registry, whether loaded
+   * yet or not, in alphabetical order.
+   *
+   * @return The names.
+   */
+  public String[] getNames()
+  {
+    TreeSet<String> names = new TreeSet<String>(loaded.keySet());
+    String[] files = (directory == null) ? null : directory.list();
+    if (files != null)
+      for (int i = 0; i < files.length; i++)
+      {
+        String name = nameOf(files[i], LanguageUnicode.FILENAME_EXTENSION);
+        if (name == null)
+          name = nameOf(files[i], LanguageInteger.FILENAME_EXTENSION);
+        if ((name != null) && isName(name))
+          names.add(name);
+      }
+    return names.toArray(new String[names.size()]);
+  }
+
+  /**
+   * Returns a language, loading it if it is not loaded yet.
+   *
+   * @param name  The name of the language, its filename without extension.
+   * @return The language.
+   * @throws FileNotFoundException if there is no language of that name.
+   * @throws IOException if the language file cannot be read.
+   */
+  public Language getLanguage(String name) throws IOException
+  {
+    Language language = loaded.get(name);
+    if (language != null)
+      return language;
+    if ((directory == null) || !isName(name))
+      throw new FileNotFoundException("No language called " + name);
+    synchronized (this)
+    // ASSERTION: loads are rare and slow, so one at a time
+    {
+      language = loaded.get(name);
+      if (language == null)
+      {
+        language = load(new File(directory, name).getPath());
+        hashes.put(name, Long.valueOf(hashFile(name)));
+        loaded.put(name, language);
+      }
+    }
+    return language;
+  }
+
+  /**
+   * Returns a hash of the contents of a language's file, which changes when
+   * the file does, for keying a <CODE>TranslationCache</CODE>.  Once the
+   * language is loaded this is the hash of the file it was loaded from.
+   *
+   * @param name  The name of the language, its filename without extension.
+   * @return The hash.
+   * @throws FileNotFoundException if there is no language file of that name,
+   * as for languages given to <CODE>register</CODE>.
+   * @throws IOException if the language file cannot be read.
+   */
+  public long getContentHash(String name) throws IOException
+  {
+    Long hash = hashes.get(name);
+    if (hash != null)
+      return hash.longValue();
+    if ((directory == null) || !isName(name) || registered.containsKey(name))
+      throw new FileNotFoundException("No language file for " + name);
+    return hashFile(name);
+  }
+
+  /**
+   * Returns the names of the languages loaded or registered so far, in
+   * alphabetical order.
+   *
+   * @return The names.
+   */
+  public String[] getLoadedNames()
+  {
+    TreeSet<String> names = new TreeSet<String>(loaded.keySet());
+    return names.toArray(new String[names.size()]);
+  }
+
+  /**
+   * Forgets a language loaded from the directory so its memory can be
+   * reclaimed.  It is loaded again when next asked for.  Languages given to
+   * <CODE>register</CODE> are kept.
+   *
+   * @param name  The name of the language.
+   */
+  public void unload(String name)
+  {
+    if (!registered.containsKey(name))
+    {
+      loaded.remove(name);
+      hashes.remove(name);
+    }
+  }
+
+  private static Language load(String filename) throws IOException
+  // Loads a language from a file, trying a LanguageUnicode file first.
+  {
+    if (new File(filename + Language.FILE_EXTENSION_DELIMITER
+      + LanguageUnicode.FILENAME_EXTENSION).isFile())
+    {
+      try
+      {
+        return new LanguageUnicode(filename);
+      }
+      catch (ClassNotFoundException e)
+      {
+        throw new IOException(e.getMessage());
+      }
+    }
+    try
+    {
+      return new LanguageInteger(new LegacyTable(filename));
+    }
+    catch (LanguageLegacyDatafileFormatException e)
+    {
+      throw new IOException(e.getMessage());
+    }
+  }
+
+  private long hashFile(String name) throws IOException
+  // Returns the content hash of the file a language is loaded from.
+  {
+    String filename = new File(directory, name).getPath() + Language.FILE_EXTENSION_DELIMITER;
+    File file = new File(filename + LanguageUnicode.FILENAME_EXTENSION);
+    if (!file.isFile())
+      file = new File(filename + LanguageInteger.FILENAME_EXTENSION);
+    if (!file.isFile())
+      throw new FileNotFoundException("No language file for " + name);
+    return TranslationCache.hash(Files.readAllBytes(file.toPath()));
+  }
+
+  private static String nameOf(String filename, String extension)
+  // Returns the name of a language file with an extension, or null if it
+  // does not have it.
+  {
+    String suffix = Language.FILE_EXTENSION_DELIMITER + extension;
+    if (filename.endsWith(suffix) && (filename.length() > suffix.length()))
+      return filename.substring(0, filename.length() - suffix.length());
+    else
+      return null;
+  }
+
+  private static boolean isName(String name)
+  // Returns whether a name can be a language name, which it cannot if it
+  // could reach outside the directory.
+  {
+    if ((name.length() == 0) || (name.charAt(0) == '.'))
+      return false;
+    for (int i = 0; i < name.length(); i++)
+    {
+      char c = name.charAt(i);
+      if (!Character.isLetterOrDigit(c) && (c != '-') && (c != '_') && (c != '.'))
+        return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,194 @@
+package uk.ac.umist.co.brailletrans;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Sends each request to the one node of several that owns its language, so
+ * that each node need load only its share of the languages.  The nodes run
+ * <CODE>BinaryTranslationServer</CODE>s and are reached over its protocol.
+ *
+ * <p>Languages are shared among nodes by consistent hashing: each node is
+ * given many points on a ring of hash values, and a language belongs to the
+ * node with the first point at or after the hash of its name.  When a node
+ * joins, it takes over only the languages that now hash to it, and when a
+ * node leaves, only its own languages move, so the other nodes keep the
+ * languages they have loaded.  A node whose connection breaks is removed, and
+ * requests it had not answered are sent to the new owner of their language.
+ *
+ * <p>A <CODE>LanguageRouter</CODE> can be used by several threads at once.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class LanguageRouter
+{
+  /**
+   * The number of points each node is given on the ring, which evens out the
+   * number of languages each node owns.
+   */
+  public static final int POINTS_PER_NODE = 128;
+
+  private ConcurrentSkipListMap<Integer, InetSocketAddress> ring =
+    new ConcurrentSkipListMap<Integer, InetSocketAddress>();
+  // hash value -> the node with that point
+  private ConcurrentHashMap<InetSocketAddress, BinaryTranslationClient> nodes =
+    new ConcurrentHashMap<InetSocketAddress, BinaryTranslationClient>();
+  // node -> the client connected to it
+
+  /**
+   * Creates a <CODE>LanguageRouter</CODE> with no nodes.
+   */
+  public LanguageRouter()
+  {
+  }
+
+  /**
+   * Connects to a node and gives it its share of the languages.
+   *
+   * @param address  The address of the node.
+   * @throws IOException if the node cannot be reached.
+   */
+  public synchronized void addNode(InetSocketAddress address) throws IOException
+  {
+    if (nodes.containsKey(address))
+      return;
+    nodes.put(address, new BinaryTranslationClient(address));
+    for (int point = 0; point < POINTS_PER_NODE; point++)
+      ring.put(Integer.valueOf(hash(address.toString() + "#" + point)), address);
+  }
+
+  /**
+   * Disconnects from a node, sharing its languages among the others.
+   * Requests it has not answered are sent to the new owners of their
+   * languages.
+   *
+   * @param address  The address of the node.
+   */
+  public synchronized void removeNode(InetSocketAddress address)
+  {
+    Iterator<InetSocketAddress> points = ring.values().iterator();
+    while (points.hasNext())
+      if (address.equals(points.next()))
+        points.remove();
+    BinaryTranslationClient node = nodes.remove(address);
+    if (node != null)
+      node.close();
+  }
+
+  /**
+   * Returns the nodes the router sends to.
+   *
+   * @return The address of each node.
+   */
+  public InetSocketAddress[] getNodes()
+  {
+    Set<InetSocketAddress> addresses = nodes.keySet();
+    return addresses.toArray(new InetSocketAddress[0]);
+  }
+
+  /**
+   * Returns the node that owns a language.
+   *
+   * @param language  The name of the language.
+   * @return The address of the node, or null if there are no nodes.
+   */
+  public InetSocketAddress getNode(String language)
+  {
+    Map.Entry<Integer, InetSocketAddress> point = ring.ceilingEntry(Integer.valueOf(hash(language)));
+    if (point == null)
+      point = ring.firstEntry();
+    return (point == null) ? null : point.getValue();
+  }
+
+  /**
+   * Sends text to be translated to the node that owns its language.
+   *
+   * @param language  The name of the language in the nodes' registries.
+   * @param state  The state to translate in.
+   * @param text  The text to translate.
+   * @return A future completed with the translated text, or exceptionally
+   * with an <CODE>IOException</CODE> if the node could not translate it or
+   * there are no nodes left.
+   */
+  public CompletableFuture<String> translate(String language, int state, String text)
+  {
+    CompletableFuture<String> result = new CompletableFuture<String>();
+    send(language, state, text, result);
+    return result;
+  }
+
+  /**
+   * Disconnects from every node.
+   */
+  public synchronized void close()
+  {
+    InetSocketAddress[] addresses = getNodes();
+    for (int node = 0; node < addresses.length; node++)
+      removeNode(addresses[node]);
+  }
+
+  //***** PRIVATE METHODS ***********************************************
+  private void send(final String language, final int state, final String text,
+    final CompletableFuture<String> result)
+  // Sends a request to the owner of its language, and again to the next
+  // owner if the node's connection breaks before it answers.
+  {
+    final InetSocketAddress address = getNode(language);
+    final BinaryTranslationClient node = (address == null) ? null
+      : nodes.get(address);
+    if (node == null)
+    {
+      if (address == null)
+        result.completeExceptionally(new IOException("No nodes to translate "
+          + language));
+      else
+      // ASSERTION: the node was removed since it was looked up
+        send(language, state, text, result);
+      return;
+    }
+    node.translate(language, state, text).whenComplete(new BiConsumer<String, Throwable>()
+    {
+      public void accept(String translated, Throwable failure)
+      {
+        if (failure == null)
+          result.complete(translated);
+        else if (node.isOpen())
+        // ASSERTION: the node refused the request
+          result.completeExceptionally(failure);
+        else
+        // ASSERTION: the node has gone, so its languages move on
+        {
+          removeNode(address, node);
+          send(language, state, text, result);
+        }
+      }
+    });
+  }
+
+  private synchronized void removeNode(InetSocketAddress address,
+    BinaryTranslationClient node)
+  // Removes a node whose connection broke, unless it has already been
+  // removed and perhaps added again.
+  {
+    if (nodes.get(address) == node)
+      removeNode(address);
+  }
+
+  private static int hash(String key)
+  // Returns a hash of key spread evenly over every int value.
+  {
+    int h = key.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+}
@@ -1,11 +1,14 @@
 package uk.ac.umist.co.brailletrans;
 import java.util.*;
+import java.util.stream.IntStream;
 import java.io.*;
 import java.net.*;
 
 /**
  * An implementation of <CODE>Language</CODE> that works with Unicode strings and
- * Unicode language tables.  
+ * Unicode language tables.  Translation works on Unicode code points, so
+ * characters outside the Basic Multilingual Plane can be mapped and translated
+ * too.
  *
  * <p><small>Copyright 1999, 2004 Alasdair King. This program is free software 
  * under the terms of the GNU General Public License. </small>
@@ -46,6 +49,16 @@ public class LanguageUnicode implements Language, Serializable
   private final static int HASHTABLE_SIZE_OPTIMIZER_OFFSET = 1;
   private final static int UNDEFINED = -1;
   private final static char SPACE=' ';
+  private final static long serialVersionUID = -403200012486870763L;
+    // pinned to the value computed for the original class so that language
+    // files written before the code-point engine was added still load
+  private final static int MAX_CODE_POINT = 0x10FFFF;
+  private final static int OUTPUT_SIZE_OPTIMIZER_PRODUCT = 2;
+  /**
+   * The most rules a focus category may have before its rules are also
+   * indexed by the character after the first of the focus.
+   */
+  public final static int BIGRAM_CATEGORY_SIZE = 16;
   // private instance variables (there are no public instance variables)
   private int state;
     // current state of finite state machine
@@ -68,23 +81,74 @@ public class LanguageUnicode implements Language, Serializable
   private String[] stateDescriptions;
   private String[] inputClassDescriptions;
 
-  private Hashtable characterMapper;
+  private Hashtable<Character, Character> characterMapper;
   // maps characters in input to translation characters
-  private Hashtable charFlagGetter;
+  private Hashtable<Character, Integer> charFlagGetter;
   // gets flags for a given character
-  private Hashtable tRuleGetter;
+  private Hashtable<Character, TranslationRuleUnicode> tRuleGetter;
   // gets foci groups for a given character
   private int numberCharacters;
+  private Hashtable<Integer, Integer> codePointMapper;
+  // maps supplementary-plane code points in input to translation code points
+  private Hashtable<Integer, Integer> codePointFlagGetter;
+  // gets flags for a supplementary-plane code point
 
   private TranslationRuleUnicode currentRule;
 
   private WildcardUnicode[] wildcards;
   // Represents the wildcards for the language
-  private Hashtable wildcardGetter;
+  private Hashtable<Character, WildcardUnicode> wildcardGetter;
   // gets a wildcard for a character, if any
   private int numberWildcards;
   // number of wildcards for language
 
+  private transient CodePointTable mappedGetter;
+  // code point -> mapped code point, or UNDEFINED to map to a space
+  private transient CodePointTable flagsGetter;
+  // mapped code point -> character flags
+  private transient volatile CodePointTable categoryGetter;
+  // first code point of focus -> focus category number, or UNDEFINED; set
+  // last by compileRules, so a thread that sees it set sees every table
+  private transient TranslationRuleUnicode[] categoryRules;
+  // all translation rules, grouped by focus category in priority order
+  private transient int[] categoryFirst;
+  private transient int[] categoryLast;
+  // bounds of each focus category in categoryRules, last exclusive
+  private transient CodePointTable[] categoryBigrams;
+  // for focus categories of more than BIGRAM_CATEGORY_SIZE rules, next input
+  // code point -> index in bigramRules of the rules that can match; null for
+  // smaller categories
+  private transient int[] categoryAny;
+  // index in bigramRules of the rules of a big category that can match
+  // whatever comes next, and so also at the end of the input
+  private transient int[][] bigramRules;
+  // lists of indexes into categoryRules, each in priority order
+  private transient WildcardUnicode[] wildcardList;
+  // wildcards by index; compiled contexts hold wildcard i as -(i + 1)
+  // These are built from the serialized tables by compileRules, and are null
+  // until then.
+
+  private transient int[] mapped;
+  // the mapped code points of the text being translated
+  private transient int mappedLength;
+  private transient int[] converted;
+  // the translated code points
+  private transient int convertedLength;
+
+  private transient int[] leftContextPosition;
+  private transient boolean[] leftContextMatched;
+  private transient int[] rightContextPosition;
+  private transient boolean[] rightContextMatched;
+  // Context match memo for the current translate call, indexed by the context
+  // ids interned by compileRules: the input position a context was last
+  // evaluated at and the result.
+  private transient int reachFrom;
+  private transient int reachTo;
+  // The first and last input positions the current convertMachines call has
+  // looked at, -1 and mappedLength standing for the start and end of input,
+  // so that a TranslationCache knows how much of the text a translation
+  // depends on.
+
   //***** CONSTRUCTORS ***************************************************
   /**
    * Constructs a LanguageUnicode object without data ready to be filled with
@@ -150,15 +214,56 @@ public class LanguageUnicode implements Language, Serializable
     this.charFlagGetter = fromDisk.charFlagGetter;
     this.tRuleGetter = fromDisk.tRuleGetter;
     this.numberCharacters = fromDisk.numberCharacters;
+    this.codePointMapper = fromDisk.codePointMapper;
+    this.codePointFlagGetter = fromDisk.codePointFlagGetter;
     this.wildcards = fromDisk.wildcards;
     this.wildcardGetter = fromDisk.wildcardGetter;
     this.numberWildcards = fromDisk.numberWildcards;
     defaultState = state = 1;
     currentRule = null;
+    compileRules();
     return;
 
   }
 
+  private LanguageUnicode(LanguageUnicode original)
+  // Constructs a session of original, which shares its rules, compiled or
+  // not, but has its own state, buffers and context memo.
+  {
+    this.version = original.version;
+    this.name = original.name;
+    this.description = original.description;
+    this.stateTable = original.stateTable;
+    this.numberInputClasses = original.numberInputClasses;
+    this.numberStates = original.numberStates;
+    this.inputClassDescriptions = original.inputClassDescriptions;
+    this.stateDescriptions = original.stateDescriptions;
+    this.characterMapper = original.characterMapper;
+    this.charFlagGetter = original.charFlagGetter;
+    this.tRuleGetter = original.tRuleGetter;
+    this.numberCharacters = original.numberCharacters;
+    this.codePointMapper = original.codePointMapper;
+    this.codePointFlagGetter = original.codePointFlagGetter;
+    this.wildcards = original.wildcards;
+    this.wildcardGetter = original.wildcardGetter;
+    this.numberWildcards = original.numberWildcards;
+    this.mappedGetter = original.mappedGetter;
+    this.flagsGetter = original.flagsGetter;
+    this.categoryGetter = original.categoryGetter;
+    this.categoryRules = original.categoryRules;
+    this.categoryFirst = original.categoryFirst;
+    this.categoryLast = original.categoryLast;
+    this.categoryBigrams = original.categoryBigrams;
+    this.categoryAny = original.categoryAny;
+    this.bigramRules = original.bigramRules;
+    this.wildcardList = original.wildcardList;
+    leftContextPosition = new int[original.leftContextPosition.length];
+    leftContextMatched = new boolean[original.leftContextPosition.length];
+    rightContextPosition = new int[original.rightContextPosition.length];
+    rightContextMatched = new boolean[original.rightContextPosition.length];
+    defaultState = state = original.defaultState;
+  }
+
   //***** PUBLIC METHODS - UTILITY *********************************
   /**
    * Loads a LanguageUnicode object from disk
@@ -223,134 +328,301 @@ public class LanguageUnicode implements Language, Serializable
     return state;
   }
 
+  public int getDefaultState()
+  {
+    return defaultState;
+  }
+
+  /**
+   * Returns whether the language defines a character, rather than
+   * translating it as a space.
+   *
+   * @param codePoint  The Unicode code point of the character.
+   * @return true if the character is defined by the language.
+   */
+  public boolean isCharacterDefined(int codePoint)
+  {
+    compile();
+    return mappedGetter.get(codePoint) != UNDEFINED;
+  }
+
+  int[] getDefinedCodePoints()
+  // Returns the code points isCharacterDefined is true for, in order, so a
+  // ScriptRouter can look them up without calling it for each character.
+  {
+    compile();
+    IntStream.Builder defined = IntStream.builder();
+    for (int page = 0; page < mappedGetter.pages.length; page++)
+      if (mappedGetter.pages[page] != null)
+        for (int i = 0; i < CodePointTable.PAGE_SIZE; i++)
+          if (mappedGetter.pages[page][i] != UNDEFINED)
+            defined.add((page << CodePointTable.PAGE_BITS) + i);
+    return defined.build().toArray();
+  }
+
+  /**
+   * Performs translation from text to Braille or from Braille to text,
+   * depending on language and state.  Characters outside the Basic
+   * Multilingual Plane, held in <CODE>toConvert</CODE> as surrogate pairs, are
+   * translated as single code points.
+   *
+   * @param toConvert  <CODE>String</CODE> holding characters to translate.
+   * @return A <CODE>String</CODE> holding the output text, characters now translated.
+   */
   public String translate(String toConvert)
   {
-//System.out.println("toConvert=" + toConvert);
-    int finishIndex = toConvert.length();
-      // counter of where we try to go to
-      // INV1: 0 <= start < finish
-    StringBuffer converted = new StringBuffer("");
-      // to return
+    mapInput(toConvert);
+    convert();
+    return new String(converted, 0, convertedLength);
+  }
+
+  /**
+   * Performs translation of the same text once for each of several states in
+   * a single pass.  A translation for each state works along the mapped input,
+   * the one furthest behind going next, so all of them find the context
+   * matches the others have just memoized.  The current state is not changed.
+   *
+   * @param toConvert  <CODE>String</CODE> holding characters to translate.
+   * @param states  The states to translate in.
+   * @return A <CODE>String</CODE> holding the translated text for each state.
+   * @throws IllegalArgumentException if a state is not permitted.
+   */
+  public String[] translate(String toConvert, int[] states)
+  {
+    for (int machine = 0; machine < states.length; machine++)
+      if ((states[machine] < 1) || (states[machine] > numberStates))
+        throw new IllegalArgumentException("State " + states[machine]
+          + " is not between 1 and " + numberStates);
+    mapInput(toConvert);
+    return convertMachines(0, mappedLength, states, states).output;
+  }
+
+  /**
+   * Performs translation of an array of Unicode code points, which may lie
+   * anywhere in the range 0 to 0x10FFFF, without building any
+   * <CODE>String</CODE>.  The array passed in is not altered.
+   *
+   * @param toConvert  <CODE>int[]</CODE> holding code points to translate.
+   * @return <CODE>int[]</CODE> holding the translated code points.
+   */
+  public int[] translate(int[] toConvert)
+  {
+    prepareInput(toConvert.length);
+    for (int i = 0; i < toConvert.length; i++)
+      mapped[mappedLength++] = mapCharacter(toConvert[i]);
+    convert();
+    int[] toReturn = new int[convertedLength];
+    System.arraycopy(converted, 0, toReturn, 0, convertedLength);
+    return toReturn;
+  }
+
+  /**
+   * Performs translation of a stream of Unicode code points, such as that
+   * returned by <CODE>String.codePoints()</CODE>.
+   *
+   * @param toConvert  <CODE>IntStream</CODE> of code points to translate.
+   * @return <CODE>int[]</CODE> holding the translated code points.
+   */
+  public int[] translate(IntStream toConvert)
+  {
+    return translate(toConvert.toArray());
+  }
+
+  //***** PRIVATE METHODS - TRANSLATION *********************************
+  private void mapInput(String toConvert)
+  // Maps the characters of toConvert into the input buffer, taking each
+  // surrogate pair as one code point.
+  {
+    int length = toConvert.length();
+    prepareInput(length);
+    for (int i = 0; i < length; i++)
+    {
+      int codePoint = toConvert.charAt(i);
+      if (Character.isHighSurrogate((char) codePoint) && (i + 1 < length)
+        && Character.isLowSurrogate(toConvert.charAt(i + 1)))
+        codePoint = Character.toCodePoint((char) codePoint, toConvert.charAt(++i));
+      mapped[mappedLength++] = mapCharacter(codePoint);
+    }
+  }
+
+  private void prepareInput(int length)
+  // Makes sure the rules are compiled and the input buffer can hold length
+  // code points, and empties it.
+  {
+    compile();
+    if ((mapped == null) || (mapped.length < length))
+      mapped = new int[length];
+    mappedLength = 0;
+  }
+
+  private void convert()
+  // Translates the mappedLength code points in mapped into converted.
+  {
     int startIndex = 0;
-      // counter of where we start looking in the word string
-    int convertedIndex = 0;
-      // where we've output to so far
+      // counter of where we start looking in the input
+    if ((converted == null) || (converted.length < mappedLength * OUTPUT_SIZE_OPTIMIZER_PRODUCT))
+      converted = new int[mappedLength * OUTPUT_SIZE_OPTIMIZER_PRODUCT + 1];
+    convertedLength = 0;
     state = defaultState;
       // reset to default
+    Arrays.fill(leftContextPosition, -1);
+    Arrays.fill(rightContextPosition, -1);
 
-    // Convert the input string
-    StringBuffer mappedToConvert = new StringBuffer("");
-    for (int i = 0; i < finishIndex; i++)
-      mappedToConvert.append(mapCharacter(toConvert.charAt(i)));
-    toConvert = mappedToConvert.toString();
-
-//System.err.println("Hashtable tRuleGetter size = " + tRuleGetter.size());
+    while (startIndex < mappedLength)
+    // assertion: start does not yet indicate the end of the input
+    // assertion: not all of input is converted
+      startIndex = convertAt(startIndex);
+  }
 
-    while (startIndex < finishIndex)
-    // assertion: start does not yet indicate the end of the toConvert array
-    // assertion: not all of word is converted
+  private TranslatedRange convertMachines(int from, int to, int[] entryStates,
+    int[] defaultStates)
+  // Translates mapped from from to to once for each entry state: a machine
+  // for each works along the input, the one furthest behind going next, so
+  // that all of them find the context matches each other have just memoized.
+  // The state, default state and output buffer are left as they were.
+  {
+    int machines = entryStates.length;
+    int[] machineStart = new int[machines];
+    int[] machineState = new int[machines];
+    int[][] machineConverted = new int[machines][];
+    int[] machineConvertedLength = new int[machines];
+    for (int machine = 0; machine < machines; machine++)
     {
-//stem.err.println("startIndex=" + startIndex + " finishIndex=" + finishIndex);
-      boolean matchFound = false;  // indicates whether we've got a match
-      char first = toConvert.charAt(startIndex);
-//System.err.println(first);
-      currentRule = (TranslationRuleUnicode) tRuleGetter.get(new Character(first));
-        // set language to first rule with matching focus
-      if (currentRule == null)
-      {
-        converted.append(toConvert.charAt(startIndex));
-          // if no character found to matched, leave character untranslated
-        startIndex++;  // try matching next character
-        state = defaultState;  // set state to default
-        continue;
-      }
-
-      if (matchFound = compareFocus(toConvert, startIndex))
-      {
-//if (startIndex < 2)
-//System.err.println("Matched focus");
-        if (matchFound = compareState())
-          if (matchFound = compareLeftContext(toConvert, startIndex))
-            matchFound = compareRightContext(toConvert, startIndex);
-      }
+      machineStart[machine] = from;
+      machineState[machine] = entryStates[machine];
+      machineConverted[machine] = new int[(to - from) * OUTPUT_SIZE_OPTIMIZER_PRODUCT + 1];
+    }
+    int savedState = state;
+    int savedDefaultState = defaultState;
+    int[] savedConverted = converted;
+    int savedConvertedLength = convertedLength;
+    Arrays.fill(leftContextPosition, -1);
+    Arrays.fill(rightContextPosition, -1);
+    reachFrom = reachTo = from;
+
+    while (true)
+    {
+      int next = -1;
+        // the machine furthest behind, if any has input left
+      for (int machine = 0; machine < machines; machine++)
+        if ((machineStart[machine] < to)
+          && ((next == -1) || (machineStart[machine] < machineStart[next])))
+          next = machine;
+      if (next == -1)
+        break;
+      state = machineState[next];
+      defaultState = defaultStates[next];
+      converted = machineConverted[next];
+      convertedLength = machineConvertedLength[next];
+      machineStart[next] = convertAt(machineStart[next]);
+      machineState[next] = state;
+      machineConverted[next] = converted;
+      machineConvertedLength[next] = convertedLength;
+    }
 
-      while (!matchFound &&  (!currentRule.lastInCategory))
-      // assertion: no match has yet been found
-      // assertion: there are still rules with the same focus initial that might match
-      {
-        currentRule = currentRule.nextRule;
-//if (currentRule.focus.equals("?"))
-//  System.err.println("index=" + startIndex + " output=" + currentRule.output);
+    state = savedState;
+    defaultState = savedDefaultState;
+    converted = savedConverted;
+    convertedLength = savedConvertedLength;
+    String[] output = new String[machines];
+    for (int machine = 0; machine < machines; machine++)
+      output[machine] = new String(machineConverted[machine], 0,
+        machineConvertedLength[machine]);
+    return new TranslatedRange(output, machineStart, machineState, reachFrom, reachTo);
+  }
 
-//if (startIndex < 2)
-//System.err.println("index=" + startIndex + " rule=" + translationRules.PrintCurrentRule());
-        if (matchFound = compareFocus(toConvert, startIndex))
-        {
-//if (startIndex < 2)
-//System.err.println("Matched focus");
-          if (matchFound = compareState())
-          {
-//if (startIndex < 2)
-//System.err.println("Matched state");
-            if (matchFound = compareLeftContext(toConvert, startIndex))
-            {
-//if (startIndex < 2)
-//System.err.println("Matched left");
-
-              matchFound = compareRightContext(toConvert, startIndex);
-//if (startIndex < 2 && matchFound)
-//System.err.println("Matched right");
-
-            }
-          }
-        }
-      }
-      // assertion: matchFound OR no more rules
+  RangeTranslator rangeTranslator()
+  // Returns this language as a RangeTranslator, for ParallelTranslator.
+  {
+    return new Ranges();
+  }
 
-      if (matchFound)
+  private int convertAt(int startIndex)
+  // Translates the code points in mapped from startIndex that the next rule
+  // covers, or the code point at startIndex if no rule matches, into
+  // converted.  Returns where to continue from.
+  {
+    boolean matchFound = false;  // indicates whether we've got a match
+    int category = categoryGetter.get(mapped[startIndex]);
+    if (category == UNDEFINED)
+    {
+      // no rules for this code point
+    }
+    else if (categoryBigrams[category] != null)
+    // assertion: big focus category, so only try the rules that can match
+    // the next code point
+    {
+      int[] candidates = bigramRules[(startIndex + 1 < mappedLength)
+        ? categoryBigrams[category].get(mapped[startIndex + 1])
+        : categoryAny[category]];
+      reached(Math.min(startIndex + 1, mappedLength));
+      for (int i = 0; !matchFound && (i < candidates.length); i++)
       {
-//System.err.println("Matched " + first + " with " + currentRule.output);
-        converted.append(currentRule.output);
-        state = getNewState();
-        startIndex += currentRule.focusLength;
+        currentRule = categoryRules[candidates[i]];
+        matchFound = compareRule(startIndex);
       }
-      else
-      // assertion: !matchFound, no match found for focus
+    }
+    else
+    {
+      int last = categoryLast[category];
+      for (int rule = categoryFirst[category]; !matchFound && (rule < last); rule++)
+      // assertion: there are still rules with the same focus initial that might match
       {
-        converted.append(toConvert.charAt(startIndex));
-          // if no character found to matched, leave character untranslated
-        startIndex++;  // try matching next character
-        state = defaultState;  // set state to default
+        currentRule = categoryRules[rule];
+        matchFound = compareRule(startIndex);
       }
     }
-//System.out.println("result=" + converted.toString());
-    return converted.toString();
-   }
+    // assertion: matchFound OR no more rules
 
-  public int[] translate(int[] toConvert)
+    if (matchFound)
+    {
+      appendOutput(currentRule.outputCodePoints);
+      state = getNewState();
+      startIndex += currentRule.focusCodePoints.length;
+    }
+    else
+    // assertion: !matchFound, no match found for focus
+    {
+      appendOutput(mapped[startIndex]);
+        // if no character found to matched, leave character untranslated
+      startIndex++;  // try matching next character
+      state = defaultState;  // set state to default
+    }
+    return startIndex;
+  }
+
+  private void appendOutput(int[] codePoints)
   {
-    StringBuffer toConvertS = null;
-    for (int i = 0; i < toConvert.length; i++)
-      toConvertS.append((char) toConvert[i]);
-    String toReturnS = new String(translate(toConvertS.toString()));
-    int toReturnSL = toReturnS.length();
-    int[] toReturn = new int[toReturnSL];
-    for (int i = 0; i < toReturnSL; i++)
-      toReturn[i] = toReturnS.charAt(i);
-    return toReturn;
+    if (convertedLength + codePoints.length > converted.length)
+      growConverted(codePoints.length);
+    System.arraycopy(codePoints, 0, converted, convertedLength, codePoints.length);
+    convertedLength += codePoints.length;
   }
 
-  //***** PRIVATE METHODS - TRANSLATION *********************************
-  private char mapCharacter(char toMap)
-  // returns the character to which an input char should be transformed,
-  // the input char back if no transformation is found.
+  private void appendOutput(int codePoint)
   {
-    Character mapped = (Character) characterMapper.get(new Character (toMap));
-    if (mapped == null)
+    if (convertedLength == converted.length)
+      growConverted(1);
+    converted[convertedLength++] = codePoint;
+  }
+
+  private void growConverted(int needed)
+  {
+    int[] resized = new int[(converted.length + needed) * OUTPUT_SIZE_OPTIMIZER_PRODUCT];
+    System.arraycopy(converted, 0, resized, 0, convertedLength);
+    converted = resized;
+  }
+
+  private int mapCharacter(int toMap)
+  // returns the code point to which an input code point should be
+  // transformed, or a space if no transformation is found.
+  {
+    int mappedTo = mappedGetter.get(toMap);
+    if (mappedTo == UNDEFINED)
       return SPACE;
     else
-      return mapped.charValue();
-  } // end of MapCharacter(char)
+      return mappedTo;
+  } // end of MapCharacter(int)
 
   //***** PUBLIC METHODS - LANGUAGE CONSTRUCTION *************************
 
@@ -365,7 +637,7 @@ public class LanguageUnicode implements Language, Serializable
     if (this.numberWildcards != UNDEFINED)
       throw new LanguageDefinitionException("Number of wildcards already set, can only be set once.");
     this.numberWildcards = numberWildcards;
-    wildcardGetter = new Hashtable(numberWildcards);
+    wildcardGetter = new Hashtable<Character, WildcardUnicode>(numberWildcards);
   }
 
   /**
@@ -408,6 +680,46 @@ public class LanguageUnicode implements Language, Serializable
         + " character rules has been met.  No more character rules may be added");
     characterMapper.put(from, to);
     charFlagGetter.put(to, flagValue);
+    categoryGetter = null; // rules must be compiled again
+  }
+
+  /**
+   * Adds the information for one Unicode code point to the language.  Unlike
+   * <CODE>addCharacterInformation(Character, Character, Integer)</CODE> this
+   * accepts code points outside the Basic Multilingual Plane, such as emoji
+   * and mathematical alphanumeric symbols.
+   *
+   * @param from    The code point that will be mapped from in normalising the
+   *                input text.
+   * @param to      The code point that is produced when mapping the input text.
+   * @param flagValue   The distinctive flags for the code point in to.
+   */
+  public void addCharacterInformation(int from, int to, int flagValue) throws LanguageDefinitionException
+  {
+    if ((from < 0) || (from > MAX_CODE_POINT) || (to < 0) || (to > MAX_CODE_POINT))
+      throw new LanguageDefinitionException("Character information provided for"
+        + " an invalid code point: " + from + " to " + to);
+    if ((from <= Character.MAX_VALUE) && (to <= Character.MAX_VALUE))
+    {
+      addCharacterInformation(Character.valueOf((char) from), Character.valueOf((char) to),
+        Integer.valueOf(flagValue));
+      return;
+    }
+    if (numberCharacters == UNDEFINED)
+      throw new LanguageDefinitionException("Number of characters must be set before"
+        + " character information can be added.  Use setNumberCharacters");
+    if (codePointMapper == null)
+    {
+      codePointMapper = new Hashtable<Integer, Integer>();
+      codePointFlagGetter = new Hashtable<Integer, Integer>();
+    }
+    if (characterMapper.size() + codePointMapper.size() == numberCharacters)
+      throw new LanguageDefinitionException("The number of characters for this"
+        + " language has been set to " + numberCharacters + ".  This limit in"
+        + " character rules has been met.  No more character rules may be added");
+    codePointMapper.put(Integer.valueOf(from), Integer.valueOf(to));
+    codePointFlagGetter.put(Integer.valueOf(to), Integer.valueOf(flagValue));
+    categoryGetter = null; // rules must be compiled again
   }
 
   /**
@@ -428,6 +740,7 @@ public class LanguageUnicode implements Language, Serializable
         + "wildcard information can be added.  Use setNumberWildcards.");
     WildcardUnicode newWildcard = new WildcardUnicode(wildcardNumber, wildcardFlags);
     wildcardGetter.put(wildcardChar, newWildcard);
+    categoryGetter = null; // rules must be compiled again
   }
 
   /**
@@ -444,15 +757,231 @@ public class LanguageUnicode implements Language, Serializable
   {
     TranslationRuleUnicode newRule = parseTranslationRule(toProcess);
     char focusCategory = newRule.firstCharOfFocus;
-    if (tRuleGetter.containsKey(new Character(focusCategory)))
+    if (tRuleGetter.containsKey(Character.valueOf(focusCategory)))
       addToExistingFocusCategory(focusCategory, newRule);
     else
       addToNewFocusCategory(focusCategory, newRule);
+    categoryGetter = null; // rules must be compiled again
+  }
+
+  private void compile()
+  // Compiles the rules if they have not been compiled since they last
+  // changed.  Every path that uses the compiled tables calls this first, so
+  // a language shared by sessions or a ScriptRouter is compiled once.
+  {
+    if (categoryGetter == null)
+    {
+      synchronized (this)
+      {
+        if (categoryGetter == null)
+          compileRules();
+      }
+    }
+  }
+
+  private void compileRules()
+  // Builds the code point tables used for translation from the serialized
+  // Hashtables, and compiles every translation rule into code point arrays.
+  // Rules are grouped into focus categories by the first code point of their
+  // focus, keeping their priority order, and every distinct left and right
+  // context is given an id for the context match memo.  The tables are built
+  // in locals and categoryGetter is set last, so compile can check it without
+  // locking.
+  {
+    CodePointTable newMappedGetter = new CodePointTable(UNDEFINED);
+    CodePointTable newFlagsGetter = new CodePointTable(0);
+    CodePointTable newCategoryGetter = new CodePointTable(UNDEFINED);
+    putAll(newMappedGetter, characterMapper);
+    putAll(newMappedGetter, codePointMapper);
+    putAll(newFlagsGetter, charFlagGetter);
+    putAll(newFlagsGetter, codePointFlagGetter);
+
+    Hashtable<Integer, Integer> wildcardIndex = new Hashtable<Integer, Integer>();
+    wildcardList = new WildcardUnicode[wildcardGetter.size()];
+    Enumeration<Character> wildcardChars = wildcardGetter.keys();
+    while (wildcardChars.hasMoreElements())
+    {
+      Character wildcardChar = wildcardChars.nextElement();
+      wildcardList[wildcardIndex.size()] = wildcardGetter.get(wildcardChar);
+      wildcardIndex.put(Integer.valueOf(wildcardChar.charValue()),
+        Integer.valueOf(wildcardIndex.size()));
+    }
+
+    // Split the character-keyed focus groups by first code point
+    Vector<Vector<TranslationRuleUnicode>> categories = new Vector<Vector<TranslationRuleUnicode>>();
+    Hashtable<String, Integer> leftIds = new Hashtable<String, Integer>();
+    Hashtable<String, Integer> rightIds = new Hashtable<String, Integer>();
+    int numberRules = 0;
+    Enumeration<TranslationRuleUnicode> groups = tRuleGetter.elements();
+    while (groups.hasMoreElements())
+    {
+      TranslationRuleUnicode rule = groups.nextElement();
+      while (true)
+      {
+        rule.focusCodePoints = rule.focus.codePoints().toArray();
+        rule.leftCodePoints = compileContext(rule.leftContext, wildcardIndex);
+        rule.rightCodePoints = compileContext(rule.rightContext, wildcardIndex);
+        rule.outputCodePoints = rule.output.codePoints().toArray();
+        rule.leftContextId = internContext(leftIds, rule.leftContext);
+        rule.rightContextId = internContext(rightIds, rule.rightContext);
+        int category = newCategoryGetter.get(rule.focusCodePoints[0]);
+        if (category == UNDEFINED)
+        {
+          category = categories.size();
+          newCategoryGetter.put(rule.focusCodePoints[0], category);
+          categories.addElement(new Vector<TranslationRuleUnicode>());
+        }
+        categories.elementAt(category).addElement(rule);
+        numberRules++;
+        if (rule.lastInCategory)
+          break;
+        rule = rule.nextRule;
+      }
+    }
+    categoryRules = new TranslationRuleUnicode[numberRules];
+    categoryFirst = new int[categories.size()];
+    categoryLast = new int[categories.size()];
+    numberRules = 0;
+    for (int category = 0; category < categories.size(); category++)
+    {
+      Vector<TranslationRuleUnicode> rules = categories.elementAt(category);
+      categoryFirst[category] = numberRules;
+      for (int i = 0; i < rules.size(); i++)
+        categoryRules[numberRules++] = rules.elementAt(i);
+      categoryLast[category] = numberRules;
+    }
+
+    indexBigrams();
+
+    leftContextPosition = new int[leftIds.size()];
+    leftContextMatched = new boolean[leftIds.size()];
+    rightContextPosition = new int[rightIds.size()];
+    rightContextMatched = new boolean[rightIds.size()];
+    mappedGetter = newMappedGetter;
+    flagsGetter = newFlagsGetter;
+    categoryGetter = newCategoryGetter;
+  }
+
+  private void indexBigrams()
+  // Gives each focus category of more than BIGRAM_CATEGORY_SIZE rules a
+  // secondary index on the next input code point.  A rule with a focus of two
+  // or more code points can only match when the next code point is the second
+  // of its focus; a rule with a one code point focus can only match when the
+  // next code point is the first of its right context, unless that is a
+  // wildcard.  Any other rule may match whatever follows, so is in every list.
+  {
+    Vector<Vector<Integer>> lists = new Vector<Vector<Integer>>();
+    categoryBigrams = new CodePointTable[categoryFirst.length];
+    categoryAny = new int[categoryFirst.length];
+    for (int category = 0; category < categoryFirst.length; category++)
+    {
+      if (categoryLast[category] - categoryFirst[category] <= BIGRAM_CATEGORY_SIZE)
+        continue;
+      Vector<Integer> any = new Vector<Integer>();
+      Hashtable<Integer, Vector<Integer>> keyed = new Hashtable<Integer, Vector<Integer>>();
+      // next code point -> rules
+      for (int rule = categoryFirst[category]; rule < categoryLast[category]; rule++)
+      {
+        int key = bigramKey(categoryRules[rule]);
+        if (key == UNDEFINED)
+        {
+          any.addElement(Integer.valueOf(rule));
+          Enumeration<Vector<Integer>> keyedLists = keyed.elements();
+          while (keyedLists.hasMoreElements())
+            keyedLists.nextElement().addElement(Integer.valueOf(rule));
+        }
+        else
+        {
+          Vector<Integer> list = keyed.get(Integer.valueOf(key));
+          if (list == null)
+          {
+            list = new Vector<Integer>(any); // starts with the rules for anything so far
+            keyed.put(Integer.valueOf(key), list);
+          }
+          list.addElement(Integer.valueOf(rule));
+        }
+      }
+      categoryAny[category] = lists.size();
+      lists.addElement(any);
+      categoryBigrams[category] = new CodePointTable(categoryAny[category]);
+      Enumeration<Integer> keys = keyed.keys();
+      while (keys.hasMoreElements())
+      {
+        Integer key = keys.nextElement();
+        categoryBigrams[category].put(key.intValue(), lists.size());
+        lists.addElement(keyed.get(key));
+      }
+    }
+    bigramRules = new int[lists.size()][];
+    for (int list = 0; list < lists.size(); list++)
+    {
+      Vector<Integer> rules = lists.elementAt(list);
+      bigramRules[list] = new int[rules.size()];
+      for (int i = 0; i < rules.size(); i++)
+        bigramRules[list][i] = rules.elementAt(i).intValue();
+    }
+  }
+
+  private static int bigramKey(TranslationRuleUnicode rule)
+  // Returns the next input code point rule needs to match, or UNDEFINED if it
+  // may match whatever follows.
+  {
+    if (rule.focusCodePoints.length > 1)
+      return rule.focusCodePoints[1];
+    if ((rule.rightCodePoints.length > 0) && (rule.rightCodePoints[0] >= 0))
+      return rule.rightCodePoints[0];
+    return UNDEFINED;
+  }
+
+  private static void putAll(CodePointTable table, Hashtable<?, ?> values)
+  // Copies a Hashtable of Character or Integer keys and values into table.
+  {
+    if (values == null)
+      return;
+    Enumeration<?> keys = values.keys();
+    while (keys.hasMoreElements())
+    {
+      Object key = keys.nextElement();
+      table.put(codePointOf(key), codePointOf(values.get(key)));
+    }
+  }
+
+  private static int codePointOf(Object value)
+  {
+    if (value instanceof Character)
+      return ((Character) value).charValue();
+    else
+      return ((Integer) value).intValue();
+  }
+
+  private static int[] compileContext(String context, Hashtable<Integer, Integer> wildcardIndex)
+  // Returns the code points of context, with wildcard i stored as -(i + 1).
+  {
+    int[] compiled = context.codePoints().toArray();
+    for (int i = 0; i < compiled.length; i++)
+    {
+      Integer wildcard = wildcardIndex.get(Integer.valueOf(compiled[i]));
+      if (wildcard != null)
+        compiled[i] = -(wildcard.intValue() + 1);
+    }
+    return compiled;
+  }
+
+  private static int internContext(Hashtable<String, Integer> ids, String context)
+  // Returns the id for context in ids, adding it as the next id if new.
+  {
+    Integer id = ids.get(context);
+    if (id == null)
+    {
+      id = Integer.valueOf(ids.size());
+      ids.put(context, id);
+    }
+    return id.intValue();
   }
 
   private void addToExistingFocusCategory(char focusCategory, TranslationRuleUnicode newRule)
   {
-    TranslationRuleUnicode ruleToAddTo = (TranslationRuleUnicode) tRuleGetter.get(new Character(focusCategory));
+    TranslationRuleUnicode ruleToAddTo = tRuleGetter.get(Character.valueOf(focusCategory));
     while (!ruleToAddTo.lastInCategory)
       ruleToAddTo = ruleToAddTo.nextRule;
     // ASSERTION: ruleToAddTo is now last rule in category.
@@ -464,7 +993,14 @@ public class LanguageUnicode implements Language, Serializable
   private void addToNewFocusCategory(char focusCategory, TranslationRuleUnicode newRule)
   {
     newRule.lastInCategory = true;
-    tRuleGetter.put(new Character(focusCategory), newRule);
+    tRuleGetter.put(Character.valueOf(focusCategory), newRule);
+  }
+
+  private boolean compareRule(int startIndex)
+  // Returns true if currentRule can be applied at startIndex.
+  {
+    return compareFocus(startIndex) && compareState()
+      && compareLeftContext(startIndex) && compareRightContext(startIndex);
   }
 
   private boolean compareState()
@@ -472,208 +1008,322 @@ public class LanguageUnicode implements Language, Serializable
     return (stateTable[state-1][currentRule.inputClass-1]);
   }
 
-  private boolean compareFocus(String toCompare, int index)
+  private boolean compareFocus(int index)
   {
+    int[] focus = currentRule.focusCodePoints;
     // check that there is enough input text left to match this focus
-    if ((index + currentRule.focusLength) > toCompare.length())
+    if ((index + focus.length) > mappedLength)
+    {
+      reached(mappedLength);
       return false;
-    else
-  // it does, so test to see if focus matches input text
-      return currentRule.focus.equals(
-        toCompare.substring(index, index + currentRule.focusLength));
+    }
+    // it does, so test to see if focus matches input text
+    for (int i = 0; i < focus.length; i++)
+      if (focus[i] != mapped[index + i])
+      {
+        reached(index + i);
+        return false;
+      }
+    reached(index + focus.length - 1);
+    return true;
+  }
+
+  private void reached(int index)
+  // Widens the reach of the current convertMachines call to take in index.
+  {
+    if (index < reachFrom)
+      reachFrom = index;
+    if (index > reachTo)
+      reachTo = index;
+  }
+
+  private boolean compareLeftContext(int startIndex)
+  // Memoized by context id for this position: rules sharing a left context
+  // evaluate it once.
+  {
+    int contextId = currentRule.leftContextId;
+    if (leftContextPosition[contextId] != startIndex)
+    {
+      leftContextMatched[contextId] = matchLeftContext(startIndex);
+      leftContextPosition[contextId] = startIndex;
+    }
+    return leftContextMatched[contextId];
+  }
+
+  private boolean compareRightContext(int startIndex)
+  // Memoized by context id for the position the right context starts at.
+  {
+    int contextId = currentRule.rightContextId;
+    int contextIndex = startIndex + currentRule.focusCodePoints.length;
+    if (rightContextPosition[contextId] != contextIndex)
+    {
+      rightContextMatched[contextId] = matchRightContext(startIndex);
+      rightContextPosition[contextId] = contextIndex;
+    }
+    return rightContextMatched[contextId];
+  }
+
+  private int contextStart(int[] text, int position)
+  // Returns the first position any left context could look at when matched
+  // at position or after it, or -1 if one could look before the text.  A
+  // context matched further on may come back as far as position at any of
+  // its entries, part way through the run of a wildcard, so each is followed
+  // back from every entry.
+  {
+    int start = position;
+    for (int rule = 0; rule < categoryRules.length; rule++)
+    {
+      int[] leftContext = categoryRules[rule].leftCodePoints;
+      for (int entry = leftContext.length - 1; entry >= 0; entry--)
+      {
+        int looked = leftReach(leftContext, entry, text, position - 1);
+        if (looked < 0)
+          return -1;
+        if (looked < start)
+          start = looked;
+      }
+    }
+    return start;
   }
 
-  private boolean compareLeftContext(String toConvert, int startIndex)
+  private int leftReach(int[] leftContext, int first, int[] text, int inputIndex)
+  // Follows a left context back from entry first as matchLeftContext does,
+  // a run at the first entry matching none or more.  Returns the last
+  // position looked at, or -1 if the context went on before the text.
   {
-//System.err.println("LeftContext=<" + leftContext + "> where startIndex=" + startIndex + ", <" + toConvert.charAt(startIndex) + ">");
-    int leftContextLength = currentRule.leftContext.length();
+    int looked = inputIndex + 1;
+    for (int contextIndex = first; contextIndex >= 0; contextIndex--)
+    {
+      if (inputIndex < 0)
+        return -1;
+      looked = inputIndex;
+      int contextChar = leftContext[contextIndex];
+      if (contextChar >= 0)
+      {
+        if (contextChar != text[inputIndex])
+          return looked;
+        inputIndex--;
+        continue;
+      }
+      WildcardUnicode wildcard = wildcardList[-contextChar - 1];
+      if (!wildcardMatches(wildcard, text[inputIndex]))
+      {
+        if ((wildcard.number == Language.WILDCARD_NONE)
+          || ((wildcard.number == Language.WILDCARD_SEVERAL) && (contextIndex == first)))
+          continue;
+        return looked;
+      }
+      inputIndex--;
+      if (wildcard.number == Language.WILDCARD_ONE)
+        continue;
+      while ((inputIndex >= 0) && wildcardMatches(wildcard, text[inputIndex]))
+        inputIndex--;
+      looked = Math.max(inputIndex, 0);
+    }
+    return looked;
+  }
+
+  private boolean matchLeftContext(int startIndex)
+  {
+    int[] leftContext = currentRule.leftCodePoints;
+    int leftContextLength = leftContext.length;
     if (leftContextLength == 0)
       return true; // always match an empty left context
     int inputIndex = startIndex - 1; // where to start looking for left con
-    for (int contextIndex = leftContextLength -1 ; contextIndex >= 0; contextIndex--)
-      // ie until we get to the end of the left context
+    try
     {
-      char contextChar = currentRule.leftContext.charAt(contextIndex);
-      // first, check right context character isn't a wildcard
-      WildcardUnicode wildcard = (WildcardUnicode) wildcardGetter.get(new Character(contextChar));
-      if (wildcard != null)
-      // assertion: wildcard found.
+      for (int contextIndex = leftContextLength -1 ; contextIndex >= 0; contextIndex--)
+        // ie until we get to the end of the left context
       {
-//System.err.println("Wildcard found=<" + contextChar + "> char=<" + toConvert.charAt(inputIndex) + ">");
-        boolean wildMatched = false;
-        switch (wildcard.number)
+        int contextChar = leftContext[contextIndex];
+        // first, check left context character isn't a wildcard
+        if (contextChar < 0)
+        // assertion: wildcard found.
         {
-          case (Language.WILDCARD_NONE):
-            wildMatched = true;  // always matched none!
-            if (inputIndex < 0)
-              break; // ie matched 0, check the rest of the context
-            while (wildcardMatches(wildcard, toConvert.charAt(inputIndex)))
-            {
-              inputIndex--;
+          WildcardUnicode wildcard = wildcardList[-contextChar - 1];
+          boolean wildMatched = false;
+          switch (wildcard.number)
+          {
+            case (Language.WILDCARD_NONE):
+              wildMatched = true;  // always matched none!
               if (inputIndex < 0)
-                break; // ie matched at least one, check the rest of the context
-            }
-            break; // ie matched some, check rest of context
-          case (Language.WILDCARD_ONE):
-//System.err.print("Checking WILDCARD_ONE");
-            if (inputIndex < 0)
-            // ASSERTION: at the very left of the input text.  This can match only
-            // if the wildcard indicates a space
-              if (wildcardMatches(wildcard, SPACE))
-                return true; // matched a SPACE wildcard against the void.
-              else
-                return false;  // there should be at least one
-            if (!wildcardMatches(wildcard, toConvert.charAt(inputIndex)))
-            {
-//System.err.println("Failed to match wildcards");
-              return false;  // ie match one character
-            }
-//System.err.println("Did match=<" + wildcard.flags + "> and <" + toConvert.charAt(inputIndex) + ">");
-            // ASSERTION: one character matched
-            wildMatched = true;
-            inputIndex--;
-            break;
-          case (Language.WILDCARD_SEVERAL):
-            if (inputIndex < 0)
-            // ASSERTION: at the very left of the input text.  This can match only
-            // if the wildcard indicates a space
-              if (wildcardMatches(wildcard, SPACE))
-                return true; // matched a SPACE wildcard against the void
-              else
-                return false; // there should be at least one
-            while (wildcardMatches(wildcard, toConvert.charAt(inputIndex)))
-            // keep going until run out of matching
-            {
+                break; // ie matched 0, check the rest of the context
+              while (wildcardMatches(wildcard, mapped[inputIndex]))
+              {
+                inputIndex--;
+                if (inputIndex < 0)
+                  break; // ie matched at least one, check the rest of the context
+              }
+              break; // ie matched some, check rest of context
+            case (Language.WILDCARD_ONE):
+              if (inputIndex < 0)
+              // ASSERTION: at the very left of the input text.  This can match only
+              // if the wildcard indicates a space
+                if (wildcardMatches(wildcard, SPACE))
+                  return true; // matched a SPACE wildcard against the void.
+                else
+                  return false;  // there should be at least one
+              if (!wildcardMatches(wildcard, mapped[inputIndex]))
+                return false;  // ie match one character
+              // ASSERTION: one character matched
               wildMatched = true;
               inputIndex--;
+              break;
+            case (Language.WILDCARD_SEVERAL):
               if (inputIndex < 0)
-                break; // keep going until run out of input
-            }
-            break;
-        }
-        if (wildMatched)
-        {
-        // right, the wildcards have matched, but now we should return if there
-        // is still context to go and we've run out of characters
-          if ((inputIndex < 0) && (contextIndex > 0 ))
+              // ASSERTION: at the very left of the input text.  This can match only
+              // if the wildcard indicates a space
+                if (wildcardMatches(wildcard, SPACE))
+                  return true; // matched a SPACE wildcard against the void
+                else
+                  return false; // there should be at least one
+              while (wildcardMatches(wildcard, mapped[inputIndex]))
+              // keep going until run out of matching
+              {
+                wildMatched = true;
+                inputIndex--;
+                if (inputIndex < 0)
+                  break; // keep going until run out of input
+              }
+              break;
+          }
+          if (wildMatched)
+          {
+          // right, the wildcards have matched, but now we should return if there
+          // is still context to go and we've run out of characters
+            if ((inputIndex < 0) && (contextIndex > 0 ))
+              return false;
+          }
+          else
+          // ASSERTION: wildcard wasn't matched.
+          {
             return false;
-        }
-        else
-        // ASSERTION: wildcard wasn't matched.
-        {
-          return false;
-        }
-      } // end Wildcard found
-      else // assertion: not wildcard
-      {
-        if (inputIndex < 0)
-          return false;
-//System.err.println("context=<" + leftContext.charAt(contextIndex) + "> input=<" + toConvert.charAt(inputIndex) + ">");
-        if (currentRule.leftContext.charAt(contextIndex) == toConvert.charAt(inputIndex))
-        {
-          // assertion: match of input char and context char
-          inputIndex--;
-        }
-        else // assertion: failed to match input char and context char
+          }
+        } // end Wildcard found
+        else // assertion: not wildcard
         {
-          return false;
+          if (inputIndex < 0)
+            return false;
+          if (contextChar == mapped[inputIndex])
+          {
+            // assertion: match of input char and context char
+            inputIndex--;
+          }
+          else // assertion: failed to match input char and context char
+          {
+            return false;
+          }
         }
-      }
-    }  // end of while
+      }  // end of while
 
-    return true;  // if got this far, has matched
+      return true;  // if got this far, has matched
+    }
+    finally
+    // ASSERTION: inputIndex is the last index looked at, or one past it
+    {
+      reached(inputIndex);
+    }
   }
 
-  private boolean compareRightContext(String toConvert, int startIndex)
+  private boolean matchRightContext(int startIndex)
   {
-    int contextLength = currentRule.rightContext.length();
+    int[] rightContext = currentRule.rightCodePoints;
+    int contextLength = rightContext.length;
     if (contextLength == 0)
       return true; // always match an empty right context
-    int inputIndex = startIndex + currentRule.focusLength;
-    int inputLength = toConvert.length();
-    for (int contextIndex = 0; contextIndex < contextLength; contextIndex++)
+    int inputIndex = startIndex + currentRule.focusCodePoints.length;
+    int inputLength = mappedLength;
+    try
     {
-      char contextChar = currentRule.rightContext.charAt(contextIndex);
-      // first, check right context character isn't a wildcard
-      WildcardUnicode wildcard = (WildcardUnicode) wildcardGetter.get(new Character(contextChar));
-      if (wildcard != null)
-      // assertion: wildcard found.
+      for (int contextIndex = 0; contextIndex < contextLength; contextIndex++)
       {
-        boolean wildcardMatched = false;
-        switch (wildcard.number)
+        int contextChar = rightContext[contextIndex];
+        // first, check right context character isn't a wildcard
+        if (contextChar < 0)
+        // assertion: wildcard found.
         {
-          case (Language.WILDCARD_NONE):
-            wildcardMatched = true;
-            if (inputIndex >= inputLength)
-              break; // ie matched 0, check the rest of the context
-            while (wildcardMatches(wildcard, toConvert.charAt(inputIndex)))
-            {
-              inputIndex++;
+          WildcardUnicode wildcard = wildcardList[-contextChar - 1];
+          boolean wildcardMatched = false;
+          switch (wildcard.number)
+          {
+            case (Language.WILDCARD_NONE):
+              wildcardMatched = true;
               if (inputIndex >= inputLength)
-                break; // ie matched at least one, check the rest of the context
-            }
-            break; // ie matched some, check rest of context
-          case (Language.WILDCARD_ONE):
-            if (inputIndex >= inputLength)
-            // ASSERTION: checking has progressed beyond end of input - only
-            // permissable is wildcard indicates a SPACE character
-              if (wildcardMatches(wildcard, SPACE))
-                return true; // SPACE wildcard, so okay to match against outside input
-              else
-                return false; // there should be at least one
-            if (!wildcardMatches(wildcard, toConvert.charAt(inputIndex)))
-              return false;  // ie match one character
-            wildcardMatched = true;
-            inputIndex++;
-            break;
-          case (Language.WILDCARD_SEVERAL):
-            if (inputIndex >= inputLength)
-            // ASSERTION: checking has progressed beyond end of input - only
-            // permissable is wildcard indicates a SPACE character
-              if (wildcardMatches(wildcard, SPACE))
-                return true; // SPACE wildcard, so okay to match against outside input
-              else
-                return false; // there should be at least one
-            while (wildcardMatches(wildcard, toConvert.charAt(inputIndex)))
-            // keep going until run out of matching
-            {
+                break; // ie matched 0, check the rest of the context
+              while (wildcardMatches(wildcard, mapped[inputIndex]))
+              {
+                inputIndex++;
+                if (inputIndex >= inputLength)
+                  break; // ie matched at least one, check the rest of the context
+              }
+              break; // ie matched some, check rest of context
+            case (Language.WILDCARD_ONE):
+              if (inputIndex >= inputLength)
+              // ASSERTION: checking has progressed beyond end of input - only
+              // permissable is wildcard indicates a SPACE character
+                if (wildcardMatches(wildcard, SPACE))
+                  return true; // SPACE wildcard, so okay to match against outside input
+                else
+                  return false; // there should be at least one
+              if (!wildcardMatches(wildcard, mapped[inputIndex]))
+                return false;  // ie match one character
               wildcardMatched = true;
               inputIndex++;
+              break;
+            case (Language.WILDCARD_SEVERAL):
               if (inputIndex >= inputLength)
-                break; // keep going until run out of input
-            }
-            break;
-        }
-        if (wildcardMatched)
+              // ASSERTION: checking has progressed beyond end of input - only
+              // permissable is wildcard indicates a SPACE character
+                if (wildcardMatches(wildcard, SPACE))
+                  return true; // SPACE wildcard, so okay to match against outside input
+                else
+                  return false; // there should be at least one
+              while (wildcardMatches(wildcard, mapped[inputIndex]))
+              // keep going until run out of matching
+              {
+                wildcardMatched = true;
+                inputIndex++;
+                if (inputIndex >= inputLength)
+                  break; // keep going until run out of input
+              }
+              break;
+          }
+          if (wildcardMatched)
+          {
+          // right, the wildcards have matched, but now we should return if there
+          // is still context to go and we've run out of characters
+            if ((inputIndex >= inputLength) && (contextIndex < (contextLength - 1)))
+              return false;
+          }
+          else
+          {
+            return false; // no wildcard matched
+          }
+        } // end Wildcard found
+        else // assertion: not wildcard
         {
-        // right, the wildcards have matched, but now we should return if there
-        // is still context to go and we've run out of characters
-          if ((inputIndex >= inputLength) && (contextIndex < (contextLength - 1)))
+          if (inputIndex >= inputLength)
             return false;
+          if (contextChar == mapped[inputIndex])
+          {
+            // assertion: match of input char and context char
+            inputIndex++;
+          }
+          else // assertion: failed to match input char and context char
+          {
+            return false;
+          }
         }
-        else
-        {
-          return false; // no wildcard matched
-        }
-      } // end Wildcard found
-      else // assertion: not wildcard
-      {
-        if (inputIndex >= inputLength)
-          return false;
-        if (currentRule.rightContext.charAt(contextIndex) == toConvert.charAt(inputIndex))
-        {
-          // assertion: match of input char and context char
-          inputIndex++;
-        }
-        else // assertion: failed to match input char and context char
-        {
-          return false;
-        }
-      }
 
-    }  // end of for
-    return true;  // if got this far, has matched
-  } // end of compareRightContext()
+      }  // end of for
+      return true;  // if got this far, has matched
+    }
+    finally
+    // ASSERTION: inputIndex is the last index looked at, or one past it
+    {
+      reached(inputIndex);
+    }
+  } // end of matchRightContext()
 
   /**
    * Allows the name of the language to be set.
@@ -734,9 +1384,9 @@ public class LanguageUnicode implements Language, Serializable
     this.numberCharacters = numberCharacters;
     int hashtableOptimisingSize = (int) (numberCharacters * HASHTABLE_SIZE_OPTIMIZER_PRODUCT)
       + HASHTABLE_SIZE_OPTIMIZER_OFFSET;
-    characterMapper = new Hashtable(hashtableOptimisingSize);
-    charFlagGetter = new Hashtable(hashtableOptimisingSize);
-    tRuleGetter = new Hashtable(hashtableOptimisingSize);
+    characterMapper = new Hashtable<Character, Character>(hashtableOptimisingSize);
+    charFlagGetter = new Hashtable<Character, Integer>(hashtableOptimisingSize);
+    tRuleGetter = new Hashtable<Character, TranslationRuleUnicode>(hashtableOptimisingSize);
   }
 
   /**
@@ -928,10 +1578,9 @@ public class LanguageUnicode implements Language, Serializable
     this.version = versionNumber;
   }
 
-  private boolean wildcardMatches(WildcardUnicode wildcard, char toMatch)
+  private boolean wildcardMatches(WildcardUnicode wildcard, int toMatch)
   {
-    Integer charFlagsGot = (Integer) charFlagGetter.get(new Character(toMatch));
-    int charFlags = charFlagsGot.intValue();
+    int charFlags = flagsGetter.get(toMatch);
 //System.err.println("Current rule=" + this.translationRules.PrintCurrentRule());
 //System.err.println("char=" + toMatch+ " charFlags=" + charFlags + " wildcard=" + wildcard.number + " wildcardFlags=" + wildcard.flags);
     if ((charFlags & wildcard.flags) != 0)
@@ -1189,6 +1838,14 @@ public class LanguageUnicode implements Language, Serializable
     private TranslationRuleUnicode nextRule;
     private boolean lastInCategory;
     private char firstCharOfFocus;
+    private transient int[] leftCodePoints;
+    private transient int[] rightCodePoints;
+    private transient int[] focusCodePoints;
+    private transient int[] outputCodePoints;
+    // the rule compiled to code points by compileRules
+    private transient int leftContextId; // interned id of leftContext
+    private transient int rightContextId; // interned id of rightContext
+    private final static long serialVersionUID = 7535625072650548705L;
 
     private TranslationRuleUnicode(String newLeftContext,
                 String newRightContext,
@@ -1271,6 +1928,123 @@ public class LanguageUnicode implements Language, Serializable
     }
   } // end of Wildcard class
 
+  /*
+    CodePointTable
+
+    Two-level page table from code points in the whole Unicode range, 0 to
+    0x10FFFF, to int values.  Pages of 256 values are only allocated where a
+    value has been stored, so the sparse character sets of real languages
+    take little memory, and a lookup is two array indexes.
+  */
+
+  private class Ranges implements RangeTranslator
+  // Translates ranges of mapped text, held as int[] code points, with this
+  // language
+  {
+    public Object mapText(CharSequence text)
+    {
+      compile();
+      int[] toReturn = text.codePoints().toArray();
+      for (int i = 0; i < toReturn.length; i++)
+        toReturn[i] = mapCharacter(toReturn[i]);
+      return toReturn;
+    }
+
+    public String translate(String text, int state)
+    {
+      if (!setState(state))
+        throw new IllegalArgumentException("State " + state
+          + " is not between 1 and " + numberStates);
+      return LanguageUnicode.this.translate(text);
+    }
+
+    public int mappedLength(Object text)
+    {
+      return ((int[]) text).length;
+    }
+
+    public int textIndex(CharSequence text, int position)
+    {
+      return Character.offsetByCodePoints(text, 0, position);
+    }
+
+    public boolean isMappedSpace(Object text, int position)
+    {
+      return ((int[]) text)[position] == SPACE;
+    }
+
+    public int leftContextStart(Object text, int position)
+    {
+      compile();
+      return contextStart((int[]) text, position);
+    }
+
+    public int getPermittedStates()
+    {
+      return numberStates;
+    }
+
+    public RangeTranslator newSession()
+    {
+      compile();
+      return new LanguageUnicode(LanguageUnicode.this).rangeTranslator();
+    }
+
+    public TranslatedRange translateRange(Object text, int from, int to,
+      int[] entryStates, int[] defaultStates)
+    {
+      int[] savedMapped = mapped;
+      int savedMappedLength = mappedLength;
+      mapped = (int[]) text;
+      mappedLength = mapped.length;
+      try
+      {
+        return convertMachines(from, to, entryStates, defaultStates);
+      }
+      finally
+      {
+        mapped = savedMapped;
+        mappedLength = savedMappedLength;
+      }
+    }
+  } // end of Ranges class
+
+  private static class CodePointTable
+  {
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private int[][] pages = new int[(MAX_CODE_POINT >> PAGE_BITS) + 1][];
+    private int missing; // value of code points never stored
+
+    private CodePointTable(int missing)
+    {
+      this.missing = missing;
+    }
+
+    private int get(int codePoint)
+    {
+      if ((codePoint < 0) || (codePoint > MAX_CODE_POINT))
+        return missing;
+      int[] page = pages[codePoint >> PAGE_BITS];
+      if (page == null)
+        return missing;
+      return page[codePoint & PAGE_MASK];
+    }
+
+    private void put(int codePoint, int value)
+    {
+      int[] page = pages[codePoint >> PAGE_BITS];
+      if (page == null)
+      {
+        page = pages[codePoint >> PAGE_BITS] = new int[PAGE_SIZE];
+        Arrays.fill(page, missing);
+      }
+      page[codePoint & PAGE_MASK] = value;
+    }
+  } // end of CodePointTable class
+
 } // end of LanguageUnicode class
 
 
@@ -0,0 +1,693 @@
+package uk.ac.umist.co.brailletrans;
+import java.io.*;
+import java.util.*;
+
+/**
+ * An immutable, parsed legacy language rules table (a ".dat" data file), as
+ * used by <CODE>LanguageInteger</CODE> and <CODE>Language256</CODE>.  Parsing a
+ * table once and passing it to any number of translators, of either class,
+ * lets them share one copy of the rules and of the indexes built over them:
+ * each translator then costs only its own state and buffers.  The rules are
+ * held exactly sized to the data file.  Every field is final and its arrays
+ * are filled only while the table is constructed; the translators read them
+ * and never write them.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public final class LegacyTable implements Serializable
+{
+  private static final long serialVersionUID = 1L;
+  private static final int NOT_DEFINED              =0;
+  private static final int NUMBER_OF_CHARACTERS   =256;
+  private static final int VERSION_FAULT           =16;      /* error conditions */
+  private static final int CHAR_FAULT              =17;
+  private static final int WILD_FAULT              =18;
+  private static final int DECISION_FAULT          =19;
+  private static final int WILD_DATA                =3;
+  private static final int WILD_MATCH               =1;      /* offsets in a wildcard's data */
+  private static final int WILD_BIT_PATTERN         =2;
+  private static final int EOF = -1;
+  private static final int INITIAL_TABLE_SIZE  =4096;      /* first guess at size of table */
+  private static final int MAX_ENTRY_SIZE       =260;      /* class, length and up to 255 more */
+  private static final int BIGRAM_CATEGORY_SIZE  =16;      /* focus categories bigger get a bigram index */
+  private static final int ANY = -1;                       /* rule matches whatever the next character */
+
+  final int[] table;             /* exceptions table */
+  final int[] wild_tab;          /* wildcard table */
+  final int[] decision_table;    /* state table */
+  final int no_wilds;            /* number of wildcards */
+  final int no_input_classes;    /* number of input classes */
+  final int no_states;           /* number of states */
+  final int version;             /* version of the language file */
+  final int[] input_trans = new int[NUMBER_OF_CHARACTERS];  /* character mapping */
+  final int[] to_up = new int[NUMBER_OF_CHARACTERS];        /* upper case of character */
+  final int[] data = new int[NUMBER_OF_CHARACTERS];         /* character flags */
+  final int[] hash = new int[NUMBER_OF_CHARACTERS];         /* first table entry for character */
+
+  /* The translation rules decoded out of table, in table order, indexed by
+     rule number.  Allocated by the constructor and filled by index_rules. */
+  final int no_rules;            /* number of translation rules */
+  final int[] rule_class;        /* input class of rule */
+  final int[] rule_new_state;    /* new state of rule, 0 for no change */
+  final int[][] rule_left;       /* left context of rule */
+  final int[][] rule_focus;      /* focus of rule */
+  final int[][] rule_right;      /* right context of rule */
+  final int[][] rule_output;     /* output of rule */
+  final int[] rule_left_id;      /* interned id of left context of rule */
+  final int[] rule_right_id;     /* interned id of right context of rule */
+  final int no_left_contexts;    /* number of distinct left contexts */
+  final int no_right_contexts;   /* number of distinct right contexts */
+  final int[] hash_rule = new int[NUMBER_OF_CHARACTERS];    /* rule number of hash entry */
+  final int[] first_rule = new int[NUMBER_OF_CHARACTERS];   /* first rule of focus category */
+  final int[] last_rule = new int[NUMBER_OF_CHARACTERS];    /* last rule of focus category */
+  final int[] rule_entry;        /* position of length of rule in table */
+
+  /* Bigram index for focus categories of more than BIGRAM_CATEGORY_SIZE
+     rules, null for smaller categories.  bigram_rules[first][next] is the
+     rules of the category of first that can match when the next input
+     character is next, in priority order; bigram_any[first] is those that
+     can match at the end of the input.  Set once by index_bigrams. */
+  final int[][][] bigram_rules = new int[NUMBER_OF_CHARACTERS][][];
+  final int[][] bigram_any = new int[NUMBER_OF_CHARACTERS][];
+
+ /**
+  * Loads a legacy language rules table from disk.
+  *
+  * @param filename Full path and name of language rules table as file to load,
+  * according to local filesystem.  Do not append the filename extension, for
+  * example ".DAT", just use the full path except this, for example
+  * "C:\trans\english" for the english.dat language rules table.
+  */
+  public LegacyTable(String filename)
+    throws IOException, FileNotFoundException, LanguageLegacyDatafileFormatException
+  {
+    BufferedInputStream inFile = null;
+  		// Used for File input
+    filename = filename + Language.FILE_EXTENSION_DELIMITER
+      + LanguageInteger.FILENAME_EXTENSION;
+
+    // 1 Open file "filename" to read
+    try
+    {
+      inFile = new BufferedInputStream(new FileInputStream(filename));
+    }
+  	catch (FileNotFoundException e)
+  	{ throw new FileNotFoundException("Unable to find language file " + filename); }
+
+    // 2 Read in the data
+    try
+    {
+      version = read_version_number(inFile);
+      read_character_data(inFile);
+      no_wilds = read_count(inFile, WILD_FAULT);
+      wild_tab = read_bytes(inFile, no_wilds * WILD_DATA, WILD_FAULT,
+        "Error reading wildcard table: ");
+      no_states = read_count(inFile, DECISION_FAULT);
+      no_input_classes = read_count(inFile, DECISION_FAULT);
+      decision_table = read_bytes(inFile, no_states * no_input_classes,
+        DECISION_FAULT, "Error reading decision table: ");
+      table = read_main_tables(inFile);
+    }
+    finally
+    {
+      // Close the language file
+      try
+      {
+        inFile.close();
+      }
+      catch (IOException e)
+      {
+        throw new IOException("Unable to close language file after reading " +
+         filename);
+      }
+    }
+    no_rules = count_rules();
+    rule_class = new int[no_rules];
+    rule_new_state = new int[no_rules];
+    rule_left = new int[no_rules][];
+    rule_focus = new int[no_rules][];
+    rule_right = new int[no_rules][];
+    rule_output = new int[no_rules][];
+    rule_left_id = new int[no_rules];
+    rule_right_id = new int[no_rules];
+    rule_entry = new int[no_rules];
+    Hashtable<String, Integer> leftIds = new Hashtable<String, Integer>();
+    Hashtable<String, Integer> rightIds = new Hashtable<String, Integer>();
+    index_rules(leftIds, rightIds);
+    no_left_contexts = leftIds.size();
+    no_right_contexts = rightIds.size();
+    index_bigrams();
+  }
+
+  /**
+   * Gets the number of states the language rules table defines.
+   *
+   * @return The number of states.
+   */
+  public int getPermittedStates()
+  {
+    return no_states;
+  }
+
+  /**
+   * Gets the number of <CODE>int</CODE>s holding the translation rules, a
+   * measure of the memory the table uses.
+   *
+   * @return The size of the translation rules.
+   */
+  public int getTableSize()
+  {
+    return table.length;
+  }
+
+
+  /* Function: context_start
+     find the first position a left context could look at when it is
+     matched at a position or after it, so that the input before it can be
+     dropped.  A context matched further on may have come back as far as the
+     position at any of its entries, part way through the run of a wildcard,
+     so every context is followed back from every entry, each run going on as
+     long as it can.
+     Parameters:
+          mapped is the mapped input
+          position is the position
+     Returns:
+          the position, or -1 if a context could look before the start of
+          the input
+  */
+  int context_start(char[] mapped, int position)
+  {
+    int rule, entry, looked;
+    int start = position;
+
+    for (rule = 0; rule < no_rules; rule++)
+      for (entry = rule_left[rule].length - 1; entry >= 0; entry--)
+      {
+        looked = left_reach(rule_left[rule], entry, mapped, position - 1);
+        if (looked < 0)
+          return -1;
+        if (looked < start)
+          start = looked;
+      }
+    return start;
+  }
+
+
+  /* Function: left_reach
+     follow a left context back through the input from one of its entries,
+     as the translators match it, a wildcard of several characters at the
+     first entry matching none or more as it may be part way through its run.
+     Parameters:
+          context is the left context
+          entry is the entry to start at
+          mapped is the mapped input
+          up_to is the position to start at
+     Returns:
+          the last position looked at, or -1 if the context went on before
+          the start of the input
+  */
+  private int left_reach(int[] context, int entry, char[] mapped, int up_to)
+  {
+    int i, w, bits, match;
+    int first = entry;
+    int looked = up_to + 1;
+
+    for (; entry >= 0; entry--)
+    {
+      if (up_to < 0)
+        return -1;
+      if ((data[context[entry]] & Language.WILDCARD_FLAG) == 0)
+      { /* a character */
+        looked = up_to;
+        if (mapped[up_to] != context[entry])
+          return looked;
+        up_to--;
+        continue;
+      }
+      for (w = 0; w < no_wilds; w++)
+        if (wild_tab[w * WILD_DATA] == context[entry])
+          break;
+      if (w == no_wilds)
+        continue;    /* a wildcard not defined is passed over */
+      match = wild_tab[w * WILD_DATA + WILD_MATCH];
+      bits = wild_tab[w * WILD_DATA + WILD_BIT_PATTERN];
+      looked = up_to;
+      if ((data[mapped[up_to]] & bits) == 0)
+      {
+        if ((match == Language.WILDCARD_NONE)
+            || ((match == Language.WILDCARD_SEVERAL) && (entry == first)))
+          continue;
+        return looked;
+      }
+      up_to--;
+      if (match == Language.WILDCARD_ONE)
+        continue;
+      for (i = up_to; i >= 0; i--)
+      {
+        looked = i;
+        if ((data[mapped[i]] & bits) == 0)
+          break;
+      }
+      up_to = i;
+    }
+    return looked;
+  }
+
+
+/* Function: read_version_number
+   read and verify version number from program data file
+   Parameters:
+        fp handle for file
+   Returns:
+        the version number
+*/
+  private static int read_version_number(BufferedInputStream inFile)
+    throws IOException, LanguageLegacyDatafileFormatException
+  {
+    try
+    {
+      if (inFile.read() != 17)
+        throw new LanguageLegacyDatafileFormatException("Language file format" +
+        " error, code " + VERSION_FAULT);
+      if (inFile.read() != 12)
+        throw new LanguageLegacyDatafileFormatException("Language file format" +
+        " error, code " + VERSION_FAULT);
+      if (inFile.read() != 8)
+        throw new LanguageLegacyDatafileFormatException("Language file format" +
+        " error, code " + VERSION_FAULT);
+      return inFile.read();
+    }
+    catch (IOException e)
+    {
+      throw new IOException("Error reading version number: " + e);
+    }
+  }
+
+
+  /* Function: read_character_data
+     read and verify data for 256 characters.
+     Parameters:
+          inFile handle for file
+     Returns:
+          void
+  */
+  private void read_character_data(BufferedInputStream inFile)
+    throws IOException, LanguageLegacyDatafileFormatException
+  {
+    int chr;
+    for (int i = 0; i < NUMBER_OF_CHARACTERS; i++)
+    {
+      try
+      {
+        if ((chr = inFile.read()) == EOF)
+          throw new LanguageLegacyDatafileFormatException("Language file format" +
+          " error, code " + CHAR_FAULT);
+        else
+          input_trans[i] = chr;
+        if ((chr = inFile.read()) == EOF)
+          throw new LanguageLegacyDatafileFormatException("Language file format" +
+          " error, code " + CHAR_FAULT);
+        else
+          to_up[i] = chr;
+        if ((chr = inFile.read()) == EOF)
+          throw new LanguageLegacyDatafileFormatException("Language file format" +
+          " error, code " + CHAR_FAULT);
+        else
+          data[i] = chr;
+      }
+      catch (IOException e)
+      {
+        throw new IOException("Error reading character table: " + e);
+      }
+    }
+  }
+
+
+  /* Function: read_count
+     read and verify a count (number of wildcards, states or input classes)
+     from program data file.
+     Parameters:
+          inFile handle for file
+          fault is the error code if the count is missing
+     Returns:
+          the count
+  */
+  private static int read_count(BufferedInputStream inFile, int fault)
+    throws IOException, LanguageLegacyDatafileFormatException
+  {
+    int count;
+    if ( (count = inFile.read()) == EOF)
+      throw new LanguageLegacyDatafileFormatException("Language file format" +
+      " error, code " + fault);
+    return count;
+  }
+
+
+  /* Function: read_bytes
+     read and verify the wildcard or decision table data from program data
+     file into an array of exactly the right size.
+     Parameters:
+          inFile handle for file
+          size is the number of bytes to read
+          fault is the error code if the data is short
+          description begins the message for a read error
+     Returns:
+          the data
+  */
+  private static int[] read_bytes(BufferedInputStream inFile, int size,
+    int fault, String description)
+    throws IOException, LanguageLegacyDatafileFormatException
+  {
+    int[] toReturn = new int[size];
+    int chr;
+    try
+    {
+      for (int i = 0; i < size; i++)
+      {
+        if ( (chr = inFile.read()) == EOF)
+          throw new LanguageLegacyDatafileFormatException("Language file format" +
+          " error, code " + fault);
+        toReturn[i] = chr;
+      }
+    }
+    catch (IOException e)
+    {
+      throw new IOException(description + e);
+    }
+    return toReturn;
+  }
+
+
+  /* Function: read_main tables
+     read into table[] and verify exceptions from program data file.
+     Build hash into table[] based on first character of focus [in brackets].
+     Parameters:
+          fp handle for file
+     Returns:
+          the table, trimmed to the size of the data
+  */
+  private int[] read_main_tables(BufferedInputStream inFile)
+    throws IOException, LanguageLegacyDatafileFormatException
+  {
+    int[] table = new int[INITIAL_TABLE_SIZE];
+    int i;
+    int chr;
+    int start;
+
+    for (i = 0; i < NUMBER_OF_CHARACTERS; i++)   /* initialise hash table */
+          hash[i] = NOT_DEFINED;
+
+    i = 0;
+    table[i++] = 0;       /* at start of table have dummy NUL and new state */
+    table[i++] = 1;       /* to ensure that algorithms work */
+
+    try
+    {
+      while (table[i - 1] != EOF)
+      {
+        if (table.length - i < MAX_ENTRY_SIZE)
+          table = grow(table);
+        table[i++] = inFile.read();                         /* input class */
+        start = i;
+        table[i++] = inFile.read();                   /* length of entry */
+        if (table[i - 1] == EOF)
+          break;
+        while ( (table[i++] = inFile.read()) != Language.LEFT_FOCUS_DELIMITER ) /* skip over left context and '[' */
+          if (table[i - 1] == EOF)
+            break;
+        table[i++] = chr = inFile.read();             /* first character of focus */
+        if (chr == EOF)
+          break;
+        if (hash[chr] == NOT_DEFINED)
+        {
+          hash[chr] = start;
+        }
+
+        /* read to the end of the line */
+        while ((table[i++] = inFile.read()) != NOT_DEFINED)
+          if (table [i - 1] == EOF)
+            break;
+        table[i++] = inFile.read();                   /* new state */
+      }
+    }
+    catch (IOException e)
+    {
+      throw new IOException("Error reading translation rules: " + e);
+    }
+
+    /* Finish with an entry the search through a focus category stops at
+       without running off the end: its focus can match no character. */
+    int[] toReturn = new int[i + 2];
+    System.arraycopy(table, 0, toReturn, 0, i);
+    toReturn[i] = Language.LEFT_FOCUS_DELIMITER;
+    toReturn[i + 1] = EOF;
+    return toReturn;
+  } // end of function read_main_tables
+
+
+  /* Function: count_rules
+     count the rules in table[].
+     Parameters:
+          none
+     Returns:
+          the number of rules
+  */
+  private int count_rules()
+  {
+    int count = 0;
+    for (int entry = 2; next_entry(entry) != EOF; entry = next_entry(entry))
+      count++;
+    return count;
+  }
+
+
+  /* Function: index_rules
+     decode the rules in table[] into one array per part of each rule, build
+     the focus category index over them and intern their contexts, so that
+     rules with identical contexts share an id.  Entries run from class and
+     length to new state, with the left context, '[', focus, ']', right
+     context, '=', output and NUL between.
+     Parameters:
+          leftIds holds the ids of the left contexts, empty to begin with
+          rightIds holds the ids of the right contexts, empty to begin with
+     Returns:
+          void
+  */
+  private void index_rules(Hashtable<String, Integer> leftIds,
+    Hashtable<String, Integer> rightIds)
+  {
+    int i;
+    int entry;
+    int rule;
+    int lastgot = 0;                 /* first character of last focus */
+
+    for (entry = 2, rule = 0; rule < no_rules; entry = next_entry(entry), rule++)
+    {
+      rule_class[rule] = table[entry];
+      rule_entry[rule] = entry + 1;
+      i = entry + 2;
+      rule_left[rule] = part(i, Language.LEFT_FOCUS_DELIMITER, false);
+      i += rule_left[rule].length + 1;
+      rule_focus[rule] = part(i, Language.RIGHT_FOCUS_DELIMITER, true);
+      i += rule_focus[rule].length + 1;
+      rule_right[rule] = part(i, Language.RULE_OUTPUT_DELIMITER, false);
+      i += rule_right[rule].length + 1;
+      rule_output[rule] = part(i, Language.RULE_CONTENT_DELIMITER, false);
+      i += rule_output[rule].length + 1;
+      rule_new_state[rule] = table[i];
+      rule_left_id[rule] = intern_context(leftIds, rule_left[rule]);
+      rule_right_id[rule] = intern_context(rightIds, rule_right[rule]);
+
+      if (hash[rule_focus[rule][0]] == entry + 1)
+        hash_rule[rule_focus[rule][0]] = rule;
+      if (lastgot != rule_focus[rule][0])
+      {
+        last_rule[lastgot] = rule - 1;
+        lastgot = rule_focus[rule][0];
+        first_rule[lastgot] = rule;
+      }
+    }
+    last_rule[lastgot] = no_rules - 1;
+  }
+
+
+  /* Function: index_bigrams
+     build the bigram index for each big focus category.  A rule with a focus
+     of two or more characters can only match when the next input character
+     is the second character of its focus.  A rule with a one-character focus
+     can only match when the next input character is the first character of
+     its right context, if that is not a wildcard.  Any other rule may match
+     whatever follows.  Only categories that both engines see as the same
+     run of rules are indexed.
+     Parameters:
+          none
+     Returns:
+          void
+  */
+  private void index_bigrams()
+  {
+    int chr, rule, next, i;
+    int[] key;
+    int[] count;
+    int any;
+
+    for (chr = 0; chr < NUMBER_OF_CHARACTERS; chr++)
+    {
+      if ((hash[chr] == NOT_DEFINED) || (hash_rule[chr] != first_rule[chr])
+          || (last_rule[chr] - first_rule[chr] + 1 <= BIGRAM_CATEGORY_SIZE))
+        continue;
+      for (rule = first_rule[chr]; rule <= last_rule[chr]; rule++)
+        if (rule_focus[rule][0] != chr)
+          break;
+      if (rule <= last_rule[chr])
+        continue;    /* category is split, leave it to the linear search */
+
+      /* work out which next character each rule needs, and count them */
+      key = new int[last_rule[chr] - first_rule[chr] + 1];
+      count = new int[NUMBER_OF_CHARACTERS];
+      any = 0;
+      for (rule = first_rule[chr]; rule <= last_rule[chr]; rule++)
+      {
+        key[rule - first_rule[chr]] = bigram_key(rule);
+        if (key[rule - first_rule[chr]] == ANY)
+          any++;
+        else
+          count[key[rule - first_rule[chr]]]++;
+      }
+
+      /* merge the rules for each next character with those for any */
+      bigram_any[chr] = new int[any];
+      bigram_rules[chr] = new int[NUMBER_OF_CHARACTERS][];
+      for (next = 0; next < NUMBER_OF_CHARACTERS; next++)
+        if (count[next] == 0)
+          bigram_rules[chr][next] = bigram_any[chr];
+        else
+          bigram_rules[chr][next] = new int[count[next] + any];
+      any = 0;
+      Arrays.fill(count, 0);    /* now counts the rules in each list */
+      for (rule = first_rule[chr]; rule <= last_rule[chr]; rule++)
+      {
+        next = key[rule - first_rule[chr]];
+        if (next != ANY)
+          bigram_rules[chr][next][count[next]++] = rule;
+        else
+        {
+          bigram_any[chr][any++] = rule;
+          for (i = 0; i < NUMBER_OF_CHARACTERS; i++)
+            if (bigram_rules[chr][i] != bigram_any[chr])
+              bigram_rules[chr][i][count[i]++] = rule;
+        }
+      }
+    }
+  }
+
+
+  /* Function: bigram_key
+     find the next input character a rule needs to match.
+     Parameters:
+          rule is the rule number
+     Returns:
+          the character, or ANY if the rule may match whatever follows
+  */
+  private int bigram_key(int rule)
+  {
+    int chr;
+    if (rule_focus[rule].length > 1)
+      return rule_focus[rule][1];
+    if (rule_right[rule].length == 0)
+      return ANY;
+    chr = rule_right[rule][0];
+    /* characters below space end a context for LanguageInteger */
+    if ((chr < ' ') || (chr >= NUMBER_OF_CHARACTERS)
+        || ((data[chr] & Language.WILDCARD_FLAG) != 0))
+      return ANY;
+    return chr;
+  }
+
+
+  /* Function: next_entry
+     find the entry after an entry in table[], reading through it to the
+     NUL after its output.
+     Parameters:
+          entry is the position of the input class of the entry
+     Returns:
+          the position of the input class of the next entry, or EOF if
+          the entry is the end of the table or is cut short
+  */
+  private int next_entry(int entry)
+  {
+    if ((table[entry] == EOF) || (table[entry + 1] == EOF))
+      return EOF;
+    int i = entry + 2;
+    while (table[i] != Language.RULE_CONTENT_DELIMITER)
+    {
+      if (table[i] == EOF)
+        return EOF;
+      i++;
+    }
+    return i + 2;
+  }
+
+
+  /* Function: part
+     copy part of a rule out of table[].
+     Parameters:
+          start is the position of the first character of the part
+          delimiter is the character ending the part
+          first is true if the first character is in the part whatever it is,
+            as for the focus
+     Returns:
+          the characters of the part
+  */
+  private int[] part(int start, int delimiter, boolean first)
+  {
+    int end = first ? start + 1 : start;
+    while ((table[end] != delimiter) && (table[end] != EOF))
+      end++;
+    int[] toReturn = new int[end - start];
+    System.arraycopy(table, start, toReturn, 0, end - start);
+    return toReturn;
+  }
+
+
+  /* Function: intern_context
+     find the id of a context, adding it as the next id if new.
+     Parameters:
+          ids holds the ids of the contexts so far
+          context is the context
+     Returns:
+          the id of the context
+  */
+  private static int intern_context(Hashtable<String, Integer> ids, int[] context)
+  {
+    StringBuffer key = new StringBuffer(context.length);
+    for (int i = 0; i < context.length; i++)
+      key.append((char) context[i]);
+    Integer id = ids.get(key.toString());
+    if (id == null)
+    {
+      id = Integer.valueOf(ids.size());
+      ids.put(key.toString(), id);
+    }
+    return id.intValue();
+  }
+
+
+  /* Function: grow
+     Make the table being read bigger.
+     Parameters:
+          table is the table so far
+     Returns:
+          a copy of the table twice the size
+  */
+  private static int[] grow(int[] table)
+  {
+    int[] grown = new int[table.length * 2];
+    System.arraycopy(table, 0, grown, 0, table.length);
+    return grown;
+  }
+}
@@ -0,0 +1,232 @@
+package uk.ac.umist.co.brailletrans;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/**
+ * Translates very large files without reading them onto the heap.  The input
+ * file is mapped into memory a window at a time with
+ * <CODE>FileChannel.map</CODE> and decoded straight from the mapping into a
+ * reused buffer of characters, which is translated a batch at a time with a
+ * <CODE>ChunkTranslator</CODE>.  Each batch goes from that buffer into the
+ * <CODE>ChunkTranslator</CODE>'s text, which the session maps directly, with
+ * no <CODE>String</CODE> made of it on the way.  The translation is encoded
+ * into a reused direct buffer and written to the output file's channel.  Only
+ * a window of the input and a batch of characters are held at once, however
+ * large the file, so multi-gigabyte files translate in little memory.
+ *
+ * <p>A character split between two windows is carried into the next window,
+ * so the output is the same whatever the window size.  Input that is not
+ * valid in the input encoding, or output that cannot be written in the output
+ * encoding, fails the file rather than being replaced.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class MappedFileTranslator
+{
+  /**
+   * The number of bytes of input mapped at a time unless another is set.
+   */
+  public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+  private static final int BATCH_CHARACTERS = 256 * 1024;
+  // characters decoded and translated at a time
+  private static final int OUTPUT_BUFFER_SIZE = 1024 * 1024;
+  // bytes encoded before each write to the output channel
+
+  private SessionPool sessions;
+  // sessions of the language to translate with
+  private int state;
+  private Charset inputEncoding = StandardCharsets.UTF_8;
+  private Charset outputEncoding = StandardCharsets.UTF_8;
+  private int windowSize = DEFAULT_WINDOW_SIZE;
+
+  /**
+   * Creates a <CODE>MappedFileTranslator</CODE> that translates with language.
+   *
+   * @param language  A <CODE>Language256</CODE>, <CODE>LanguageInteger</CODE>
+   * or <CODE>LanguageUnicode</CODE> to translate with.
+   * @param state  The state to translate each file in.
+   * @throws IllegalArgumentException if the state is not permitted.
+   */
+  public MappedFileTranslator(Language language, int state)
+  {
+    this(new SessionPool(language), state);
+  }
+
+  MappedFileTranslator(SessionPool sessions, int state)
+  // Creates a translator that shares sessions with another.
+  {
+    sessions.checkState(state);
+    this.sessions = sessions;
+    this.state = state;
+  }
+
+  /**
+   * Sets the encodings of the files.
+   *
+   * @param input  The encoding of the files read.
+   * @param output  The encoding of the files written.
+   */
+  public void setEncodings(Charset input, Charset output)
+  {
+    inputEncoding = input;
+    outputEncoding = output;
+  }
+
+  /**
+   * Sets how much of the input is mapped at a time.  Larger windows mean
+   * fewer mappings; smaller windows less address space.
+   *
+   * @param bytes  The number of bytes of input mapped at a time.
+   * @throws IllegalArgumentException if bytes is less than 16.
+   */
+  public void setWindowSize(int bytes)
+  {
+    if (bytes < 16)
+      throw new IllegalArgumentException("Window size " + bytes + " too small");
+    windowSize = bytes;
+  }
+
+  /**
+   * Returns how much of the input is mapped at a time.
+   *
+   * @return The number of bytes of input mapped at a time.
+   */
+  public int getWindowSize()
+  {
+    return windowSize;
+  }
+
+  /**
+   * Translates one file into another.
+   *
+   * @param input  The file to translate.
+   * @param output  The file to write its translation to, replacing any
+   * there.
+   * @return The number of characters of input translated.
+   * @throws IOException if the file cannot be read, or its translation
+   * written in the output encoding, in which case no output file is left.
+   */
+  public long translate(File input, File output) throws IOException
+  {
+    CharsetDecoder decoder = inputEncoding.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPORT)
+      .onUnmappableCharacter(CodingErrorAction.REPORT);
+    CharsetEncoder encoder = outputEncoding.newEncoder()
+      .onMalformedInput(CodingErrorAction.REPORT)
+      .onUnmappableCharacter(CodingErrorAction.REPORT);
+    ChunkTranslator translator = new ChunkTranslator(sessions, state);
+    FileChannel in = FileChannel.open(input.toPath(), StandardOpenOption.READ);
+    boolean written = false;
+    try
+    {
+      FileChannel out = FileChannel.open(output.toPath(), StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+      try
+      {
+        CharBuffer characters = CharBuffer.allocate(BATCH_CHARACTERS);
+        ByteBuffer encoded = ByteBuffer.allocateDirect(OUTPUT_BUFFER_SIZE);
+        long size = in.size();
+        long offset = 0;
+        long translated = 0;
+        boolean last = false;
+        while (!last)
+        {
+          long length = Math.min(windowSize, size - offset);
+          last = (offset + length == size);
+          MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, offset, length);
+          CoderResult result;
+          do
+          {
+            result = decoder.decode(window, characters, last);
+            if (result.isError())
+              result.throwException();
+            translated += translateBatch(translator, characters, encoder, encoded, out);
+          }
+          while (result.isOverflow());
+          // ASSERTION: any bytes left in the window begin a character that
+          // ends in the next, which is mapped from them
+          offset += window.position();
+        }
+        decoder.flush(characters);
+        translated += translateBatch(translator, characters, encoder, encoded, out);
+        encode(translator.finish(), true, encoder, encoded, out);
+        while (encoder.flush(encoded).isOverflow())
+          write(encoded, out);
+        write(encoded, out);
+        out.close();
+        written = true;
+        return translated;
+      }
+      finally
+      {
+        if (!written)
+        // ASSERTION: failed, so leave no partial output
+        {
+          try
+          {
+            out.close();
+          }
+          catch (IOException e)
+          {
+          }
+          output.delete();
+        }
+      }
+    }
+    finally
+    {
+      translator.abandon();
+      in.close();
+    }
+  }
+
+  //***** PRIVATE METHODS ***********************************************
+  private static int translateBatch(ChunkTranslator translator, CharBuffer characters,
+    CharsetEncoder encoder, ByteBuffer encoded, FileChannel out) throws IOException
+  // Translates the characters decoded so far, encodes the translation and
+  // empties characters for the next batch.  Returns the number of characters
+  // translated.
+  {
+    characters.flip();
+    int length = characters.remaining();
+    if (length > 0)
+      encode(translator.translate(characters.array(), characters.arrayOffset(), length),
+        false, encoder, encoded, out);
+    characters.clear();
+    return length;
+  }
+
+  private static void encode(String text, boolean last, CharsetEncoder encoder,
+    ByteBuffer encoded, FileChannel out) throws IOException
+  // Encodes text into encoded, writing it to out each time it fills.  last is
+  // true if text ends the output.
+  {
+    CharBuffer characters = CharBuffer.wrap(text);
+    CoderResult result;
+    do
+    {
+      result = encoder.encode(characters, encoded, last);
+      if (result.isError())
+        result.throwException();
+      if (result.isOverflow())
+        write(encoded, out);
+    }
+    while (result.isOverflow());
+  }
+
+  private static void write(ByteBuffer encoded, FileChannel out) throws IOException
+  // Writes everything in encoded to out and empties it.
+  {
+    encoded.flip();
+    while (encoded.hasRemaining())
+      out.write(encoded);
+    encoded.clear();
+  }
+}
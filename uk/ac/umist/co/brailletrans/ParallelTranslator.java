@@ -0,0 +1,254 @@
+package uk.ac.umist.co.brailletrans;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Translates long texts on several threads at once, giving exactly the output
+ * of translating each text in one piece with a single <CODE>Language</CODE>.
+ *
+ * <p>A text is split into pieces, preferably just after spaces.  The state of
+ * the machine at the start of every piece but the first depends on the
+ * translation of the piece before, so each of those pieces is translated
+ * speculatively from every state the language permits, in one pass.  The
+ * translations are then joined by following the actual exit state of each
+ * piece into the next.  Contexts are matched against the whole text, so a
+ * rule that looks across the split still sees the other side; where a rule
+ * matched across the split itself, the next piece is translated again from
+ * where the rule left off.
+ *
+ * <p>A <CODE>ParallelTranslator</CODE> can be used by several threads at
+ * once.  The <CODE>Language</CODE> it is given must not be altered while it
+ * is in use.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class ParallelTranslator
+{
+  private static final int MIN_PIECE_SIZE = 4096;
+  // texts are not split into pieces shorter than this
+  private static final int PIECES_PER_THREAD = 4;
+  // pieces per thread, so that a slow piece does not hold up the rest
+
+  private SessionPool sessions;
+  // sessions of the language to translate with
+  private ExecutorService executor;
+  // runs the translation of the pieces
+  private int parallelism;
+  // the number of threads the executor is expected to run at once
+
+  /**
+   * Creates a <CODE>ParallelTranslator</CODE> that translates with language on
+   * the common <CODE>ForkJoinPool</CODE>.
+   *
+   * @param language  A <CODE>Language256</CODE>, <CODE>LanguageInteger</CODE>
+   * or <CODE>LanguageUnicode</CODE> to translate with.
+   */
+  public ParallelTranslator(Language language)
+  {
+    this(language, ForkJoinPool.commonPool(),
+      ForkJoinPool.commonPool().getParallelism());
+  }
+
+  /**
+   * Creates a <CODE>ParallelTranslator</CODE> that translates with language on
+   * the threads of executor.
+   *
+   * @param language  A <CODE>Language256</CODE>, <CODE>LanguageInteger</CODE>
+   * or <CODE>LanguageUnicode</CODE> to translate with.
+   * @param executor  The <CODE>ExecutorService</CODE> to run the translation
+   * of pieces of text on.
+   * @param parallelism  The number of threads executor runs at once, which
+   * decides how many pieces a text is split into.
+   */
+  public ParallelTranslator(Language language, ExecutorService executor,
+    int parallelism)
+  {
+    sessions = new SessionPool(language);
+    this.executor = executor;
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  /**
+   * Translates text in state, as <CODE>setState(state)</CODE> followed by
+   * <CODE>translate(text)</CODE> would with the language.
+   *
+   * @param text  <CODE>String</CODE> holding characters to translate.
+   * @param state  The state to translate in, from 1 to the number of states
+   * the language permits.
+   * @return A <CODE>String</CODE> holding the translated text.
+   * @throws IllegalArgumentException if the state is not permitted.
+   */
+  public String translate(String text, int state)
+  {
+    sessions.checkState(state);
+    int numberStates = sessions.getPermittedStates();
+
+    RangeTranslator session = sessions.get();
+    Object mapped;
+    int[] bounds;
+    try
+    {
+      mapped = session.mapText(text);
+      bounds = split(session, mapped);
+      if (bounds.length == 2)
+      // ASSERTION: too short to split
+        return session.translateRange(mapped, 0, bounds[1], new int[] {state},
+          new int[] {state}).output[0];
+    }
+    finally
+    {
+      sessions.release(session);
+    }
+
+    // The first piece starts in state; the rest start in every state
+    int[] oneState = new int[] {state};
+    int[] everyState = new int[numberStates];
+    int[] defaultStates = new int[numberStates];
+    for (int entryState = 1; entryState <= numberStates; entryState++)
+    {
+      everyState[entryState - 1] = entryState;
+      defaultStates[entryState - 1] = state;
+    }
+    ArrayList<Future<TranslatedRange>> pieces =
+      new ArrayList<Future<TranslatedRange>>(bounds.length - 1);
+    try
+    {
+      for (int piece = 0; piece < bounds.length - 1; piece++)
+        pieces.add(executor.submit(new Piece(mapped, bounds[piece],
+          bounds[piece + 1], (piece == 0) ? oneState : everyState,
+          (piece == 0) ? oneState : defaultStates)));
+
+      // Join the pieces up by following the exit state of each into the next
+      StringBuffer toReturn = new StringBuffer(text.length());
+      int position = 0;
+      int exitState = state;
+      for (int piece = 0; piece < pieces.size(); piece++)
+      {
+        TranslatedRange translated = getResult(pieces.get(piece));
+        if ((position == bounds[piece]) && (exitState >= 1) && (exitState <= numberStates))
+        // ASSERTION: the piece before ended at the split, so this piece was
+        //  translated from the right place in every state it could start in
+        {
+          int used = (piece == 0) ? 0 : exitState - 1;
+          toReturn.append(translated.output[used]);
+          position = translated.end[used];
+          exitState = translated.exitState[used];
+        }
+        else if (position < bounds[piece + 1])
+        // ASSERTION: the last rule of the piece before matched across the
+        //  split, so translate this piece again from where it stopped
+        {
+          session = sessions.get();
+          try
+          {
+            translated = session.translateRange(mapped, position, bounds[piece + 1],
+              new int[] {exitState}, new int[] {state});
+          }
+          finally
+          {
+            sessions.release(session);
+          }
+          toReturn.append(translated.output[0]);
+          position = translated.end[0];
+          exitState = translated.exitState[0];
+        }
+        // else the piece before matched across the whole of this piece
+      }
+      return toReturn.toString();
+    }
+    finally
+    {
+      for (int piece = 0; piece < pieces.size(); piece++)
+        pieces.get(piece).cancel(false);
+    }
+  }
+
+  private int[] split(RangeTranslator session, Object mapped)
+  // Returns the positions the mapped text is split at, starting with 0 and
+  // ending with its length.  Splits are moved to just after a space where
+  // there is one nearby, since few rules match across a space.
+  {
+    int length = session.mappedLength(mapped);
+    int pieceSize = Math.max(MIN_PIECE_SIZE, length / (parallelism * PIECES_PER_THREAD) + 1);
+    Vector<Integer> bounds = new Vector<Integer>();
+    bounds.addElement(Integer.valueOf(0));
+    int start = 0;
+    while (length - start >= pieceSize + pieceSize / 2)
+    {
+      int split = start + pieceSize;
+      int limit = split + pieceSize / 2;
+      int at = split;
+      while ((at < limit) && !session.isMappedSpace(mapped, at - 1))
+        at++;
+      if (at < limit)
+        split = at;
+      bounds.addElement(Integer.valueOf(split));
+      start = split;
+    }
+    bounds.addElement(Integer.valueOf(length));
+
+    int[] toReturn = new int[bounds.size()];
+    for (int i = 0; i < toReturn.length; i++)
+      toReturn[i] = bounds.elementAt(i).intValue();
+    return toReturn;
+  }
+
+  private static <T> T getResult(Future<T> future)
+  // Waits for a piece, passing on anything it threw.
+  {
+    try
+    {
+      return future.get();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Interrupted while translating");
+    }
+    catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      if (e.getCause() instanceof Error)
+        throw (Error) e.getCause();
+      throw new IllegalStateException("Translation failed: " + e.getCause());
+    }
+  }
+
+  private class Piece implements Callable<TranslatedRange>
+  // Translates one piece of a mapped text in one or more entry states
+  {
+    private Object mapped;
+    private int from;
+    private int to;
+    private int[] entryStates;
+    private int[] defaultStates;
+
+    private Piece(Object mapped, int from, int to, int[] entryStates,
+      int[] defaultStates)
+    {
+      this.mapped = mapped;
+      this.from = from;
+      this.to = to;
+      this.entryStates = entryStates;
+      this.defaultStates = defaultStates;
+    }
+
+    public TranslatedRange call()
+    {
+      RangeTranslator session = sessions.get();
+      try
+      {
+        return session.translateRange(mapped, from, to, entryStates, defaultStates);
+      }
+      finally
+      {
+        sessions.release(session);
+      }
+    }
+  } // end of Piece class
+}
@@ -0,0 +1,114 @@
+package uk.ac.umist.co.brailletrans;
+
+/**
+ * Translation of part of a text that has already been mapped, provided by
+ * each <CODE>Language</CODE> for translating on several threads.  The text is
+ * mapped once into a buffer that any number of sessions can then translate
+ * ranges of at the same time.  Contexts are matched against the whole text,
+ * so a range translates exactly as it would as part of the whole.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+interface RangeTranslator
+{
+  /**
+   * Maps a text through the character rules of the language into a new
+   * buffer, which is not kept.  The characters are read straight from text,
+   * so a caller holding them in a buffer need not make a
+   * <CODE>String</CODE> of them first.
+   *
+   * @param text  The characters to translate.
+   * @return The mapped text, to pass to the other methods.
+   */
+  Object mapText(CharSequence text);
+
+  /**
+   * Translates the whole of a text, starting in a state, through the mapped
+   * input and output buffers the session keeps, which grow as needed, so a
+   * session translating one text after another allocates only the results.
+   *
+   * @param text  <CODE>String</CODE> holding the characters to translate.
+   * @param state  The state to start in, from 1 to the permitted states.
+   * @return The translated text.
+   */
+  String translate(String text, int state);
+
+  /**
+   * Returns the number of positions in a mapped text.
+   *
+   * @param mapped  A text returned by <CODE>mapText</CODE>.
+   * @return The number of mapped characters.
+   */
+  int mappedLength(Object mapped);
+
+  /**
+   * Returns the index in a text of the character a mapped position was
+   * mapped from.
+   *
+   * @param text  The text passed to <CODE>mapText</CODE>.
+   * @param position  A position in the mapped text, up to its length.
+   * @return The index in text.
+   */
+  int textIndex(CharSequence text, int position);
+
+  /**
+   * Returns whether a mapped character is a space, where a text is best
+   * split.
+   *
+   * @param mapped  A text returned by <CODE>mapText</CODE>.
+   * @param position  The position of the character.
+   * @return true if the character is a space.
+   */
+  boolean isMappedSpace(Object mapped, int position);
+
+  /**
+   * Returns the first position a left context could look at when a rule is
+   * matched at a position or after it, so the text before it can be dropped
+   * without changing any later translation.  A context may already be part
+   * way through a run of a wildcard at the position, so this can be well
+   * before the longest left context.
+   *
+   * @param mapped  A text returned by <CODE>mapText</CODE>.
+   * @param position  The position later rules are matched at or after.
+   * @return The first position, at most position, or -1 if a context could
+   * look before the start of the text.
+   */
+  int leftContextStart(Object mapped, int position);
+
+  /**
+   * Returns the number of states of the language.
+   *
+   * @return The number of permitted states.
+   */
+  int getPermittedStates();
+
+  /**
+   * Creates a new session of the language, which shares its rules but has
+   * its own state and buffers, so can translate on another thread.  The
+   * language must not be altered while its sessions are in use.
+   *
+   * @return The new session.
+   */
+  RangeTranslator newSession();
+
+  /**
+   * Translates a mapped text from a position, once for each of several entry
+   * states, in one pass.  Each translation stops at the first rule boundary
+   * at or after <CODE>to</CODE>.
+   *
+   * @param mapped  A text returned by <CODE>mapText</CODE>.
+   * @param from  The position to start translating at.
+   * @param to  The position to stop translating at.
+   * @param entryStates  The state each translation starts in.
+   * @param defaultStates  The state each translation returns to when no rule
+   *        matches.
+   * @return The output, end position and exit state of each translation,
+   * and the part of the text they looked at.
+   */
+  TranslatedRange translateRange(Object mapped, int from, int to,
+    int[] entryStates, int[] defaultStates);
+}
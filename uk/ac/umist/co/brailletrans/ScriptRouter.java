@@ -0,0 +1,289 @@
+package uk.ac.umist.co.brailletrans;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Translates text mixing several scripts with a set of
+ * <CODE>LanguageUnicode</CODE> objects, each used for the parts of the text
+ * it defines characters for.
+ *
+ * <p>The text is split into segments in one pass along it.  A new segment is
+ * started at any character the language of the current segment does not
+ * define, and the first language that does define it translates the new
+ * segment.  Each language defines the characters of its own scripts, so the
+ * segments follow the scripts of the text, while characters common to
+ * scripts, such as spaces, digits and punctuation, stay in the segment they
+ * are in unless its language does not define them.  Characters no language
+ * defines stay in the segment they are in, so are translated as spaces as
+ * before.
+ *
+ * <p>The segments are translated at the same time and their output joined in
+ * order.  Each segment is translated as a text on its own: it starts in the
+ * state set for its language with <CODE>setState</CODE>, and its rules see
+ * the ends of the segment as the ends of the text.  No state passes from
+ * one segment to the next.
+ *
+ * <p>A <CODE>ScriptRouter</CODE> can be used by several threads at once.  The
+ * characters each language defines are looked up once, when the
+ * <CODE>ScriptRouter</CODE> is made, so segmenting takes no locks.  The
+ * languages it is given must not be altered while it is in use.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class ScriptRouter
+{
+  private static final int UNROUTED = -1;
+  // no language defines a character
+  private static final int PAGE_BITS = 8;
+  private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+  private static final int WORD_BITS = 6;
+  // code points are looked up in pages of 256, each a bitmap of 4 longs
+
+  private SessionPool[] sessions;
+  // sessions of each language
+  private int[] states;
+  // the state each language's segments are translated in
+  private final long[][][] defined;
+  // defined[language][page]: a bit for each code point of the page the
+  // language defines, or null if it defines none of them
+  private ExecutorService executor;
+  // runs the translation of the segments
+
+  /**
+   * Creates a <CODE>ScriptRouter</CODE> that translates segments on the common
+   * <CODE>ForkJoinPool</CODE>.
+   *
+   * @param languages  The languages to translate with.  Where more than one
+   * defines a character, the first is used.
+   */
+  public ScriptRouter(LanguageUnicode[] languages)
+  {
+    this(languages, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Creates a <CODE>ScriptRouter</CODE> that translates segments on the threads
+   * of executor.  Each language's segments are translated in the state last
+   * set for the language with <CODE>setState</CODE>, as its
+   * <CODE>translate</CODE> would.
+   *
+   * @param languages  The languages to translate with.  Where more than one
+   * defines a character, the first is used.
+   * @param executor  The <CODE>ExecutorService</CODE> to run the translation
+   * of segments on.
+   */
+  public ScriptRouter(LanguageUnicode[] languages, ExecutorService executor)
+  {
+    if (languages.length == 0)
+      throw new IllegalArgumentException("No languages to translate with");
+    this.executor = executor;
+    sessions = new SessionPool[languages.length];
+    states = new int[languages.length];
+    defined = new long[languages.length][][];
+    for (int i = 0; i < languages.length; i++)
+    {
+      sessions[i] = new SessionPool(languages[i]);
+      states[i] = Math.max(1, languages[i].getDefaultState());
+      // ASSERTION: a language built and not yet loaded has no state yet
+      defined[i] = new long[(Character.MAX_CODE_POINT >> PAGE_BITS) + 1][];
+      int[] codePoints = languages[i].getDefinedCodePoints();
+      for (int j = 0; j < codePoints.length; j++)
+      {
+        long[] page = defined[i][codePoints[j] >> PAGE_BITS];
+        if (page == null)
+          page = defined[i][codePoints[j] >> PAGE_BITS] = new long[(PAGE_MASK + 1) >> WORD_BITS];
+        page[(codePoints[j] & PAGE_MASK) >> WORD_BITS] |= 1L << codePoints[j];
+      }
+    }
+  }
+
+  /**
+   * Sets the state the segments of one language are translated in.
+   *
+   * @param language  The index of the language in the array it was given in.
+   * @param newState  The state, from 1 to the number of states the language
+   * permits.
+   * @return true if the state is permitted, false otherwise.
+   */
+  public synchronized boolean setState(int language, int newState)
+  {
+    if ((newState > 0) && (newState <= sessions[language].getPermittedStates()))
+    {
+      states[language] = newState;
+      return true;
+    }
+    else
+      return false;
+  }
+
+  /**
+   * Returns the state the segments of one language are translated in.
+   *
+   * @param language  The index of the language in the array it was given in.
+   * @return The state.
+   */
+  public synchronized int getState(int language)
+  {
+    return states[language];
+  }
+
+  /**
+   * Translates text, each segment with the language that defines it.
+   *
+   * @param toConvert  <CODE>String</CODE> holding characters to translate.
+   * @return A <CODE>String</CODE> holding the translated text.
+   */
+  public String translate(String toConvert)
+  {
+    Vector<Segment> segments = segment(toConvert);
+    int[] segmentStates;
+    synchronized (this)
+    {
+      segmentStates = states.clone();
+    }
+    if (segments.size() == 1)
+      return segments.elementAt(0).translate(toConvert, segmentStates);
+
+    ArrayList<Future<String>> translated = new ArrayList<Future<String>>(segments.size());
+    try
+    {
+      for (int i = 0; i < segments.size(); i++)
+        translated.add(executor.submit(new SegmentTask(toConvert,
+          segments.elementAt(i), segmentStates)));
+      StringBuffer toReturn = new StringBuffer(toConvert.length());
+      for (int i = 0; i < translated.size(); i++)
+        toReturn.append(getResult(translated.get(i)));
+      return toReturn.toString();
+    }
+    finally
+    {
+      for (int i = 0; i < translated.size(); i++)
+        translated.get(i).cancel(false);
+    }
+  }
+
+  private Vector<Segment> segment(String toConvert)
+  // Splits text into segments, each with the language to translate it with,
+  // in one pass along it.  A character the language of its segment does not
+  // define starts a new segment if another language defines it.
+  {
+    Vector<Segment> segments = new Vector<Segment>();
+    int start = 0;
+    int language = UNROUTED;
+    int index = 0;
+    while (index < toConvert.length())
+    {
+      int codePoint = toConvert.codePointAt(index);
+      if ((language == UNROUTED) || !isDefined(language, codePoint))
+      {
+        int route = route(codePoint);
+        if (language == UNROUTED)
+          language = (route == UNROUTED) ? 0 : route;
+        else if (route != UNROUTED)
+        // ASSERTION: route is not language, which does not define the
+        //  character
+        {
+          segments.addElement(new Segment(start, index, language));
+          start = index;
+          language = route;
+        }
+      }
+      index += Character.charCount(codePoint);
+    }
+    segments.addElement(new Segment(start, index, (language == UNROUTED) ? 0 : language));
+    return segments;
+  }
+
+  private int route(int codePoint)
+  // Returns the first language that defines a character, else UNROUTED.
+  {
+    for (int i = 0; i < defined.length; i++)
+      if (isDefined(i, codePoint))
+        return i;
+    return UNROUTED;
+  }
+
+  private boolean isDefined(int language, int codePoint)
+  // Returns whether a language defines a character, as its
+  // isCharacterDefined would, from the bitmaps built for it.
+  {
+    long[] page = defined[language][codePoint >> PAGE_BITS];
+    return (page != null)
+      && ((page[(codePoint & PAGE_MASK) >> WORD_BITS] & (1L << codePoint)) != 0);
+  }
+
+  private static <T> T getResult(Future<T> future)
+  // Waits for a segment, passing on anything it threw.
+  {
+    try
+    {
+      return future.get();
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Interrupted while translating");
+    }
+    catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      if (e.getCause() instanceof Error)
+        throw (Error) e.getCause();
+      throw new IllegalStateException("Translation failed: " + e.getCause());
+    }
+  }
+
+  private class Segment
+  // A run of text, by char index, to translate with one language
+  {
+    private int start;
+    private int end;
+    private int language;
+
+    private Segment(int start, int end, int language)
+    {
+      this.start = start;
+      this.end = end;
+      this.language = language;
+    }
+
+    private String translate(String text, int[] segmentStates)
+    {
+      RangeTranslator session = sessions[language].get();
+      try
+      {
+        return session.translate(text.substring(start, end),
+          segmentStates[language]);
+      }
+      finally
+      {
+        sessions[language].release(session);
+      }
+    }
+  } // end of Segment class
+
+  private class SegmentTask implements Callable<String>
+  // Translates one segment on the executor
+  {
+    private String text;
+    private Segment segment;
+    private int[] segmentStates;
+
+    private SegmentTask(String text, Segment segment, int[] segmentStates)
+    {
+      this.text = text;
+      this.segment = segment;
+      this.segmentStates = segmentStates;
+    }
+
+    public String call()
+    {
+      return segment.translate(text, segmentStates);
+    }
+  } // end of SegmentTask class
+}
@@ -0,0 +1,87 @@
+package uk.ac.umist.co.brailletrans;
+import java.util.concurrent.*;
+
+/**
+ * Sessions of one <CODE>Language</CODE> for translating on several threads at
+ * once.  Each session shares the rules of the language but has its own state
+ * and buffers, so can be used by one thread while others use other sessions.
+ * Sessions are kept once made and handed out again, without locking.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+final class SessionPool
+{
+  private RangeTranslator language;
+  // the language sessions are made from
+  private int version;
+  // the version number of the language
+  private ConcurrentLinkedQueue<RangeTranslator> idle = new ConcurrentLinkedQueue<RangeTranslator>();
+  // sessions not in use
+
+  SessionPool(Language language)
+  {
+    if (language instanceof Language256)
+    {
+      this.language = ((Language256) language).rangeTranslator();
+      version = ((Language256) language).getVersionNumber();
+    }
+    else if (language instanceof LanguageInteger)
+    {
+      this.language = ((LanguageInteger) language).range_translator();
+      version = ((LanguageInteger) language).getTable().version;
+    }
+    else if (language instanceof LanguageUnicode)
+    {
+      this.language = ((LanguageUnicode) language).rangeTranslator();
+      version = ((LanguageUnicode) language).getVersionNumber();
+    }
+    else
+      throw new IllegalArgumentException("Cannot translate on several threads with "
+        + language.getClass().getName());
+  }
+
+  int getPermittedStates()
+  {
+    return language.getPermittedStates();
+  }
+
+  int getVersion()
+  {
+    return version;
+  }
+
+  void checkState(int state)
+  // Throws IllegalArgumentException if the language does not permit state.
+  {
+    if ((state < 1) || (state > language.getPermittedStates()))
+      throw new IllegalArgumentException("State " + state
+        + " is not between 1 and " + language.getPermittedStates());
+  }
+
+  RangeTranslator get()
+  // Returns a session not in use, creating one if need be.
+  {
+    RangeTranslator session = idle.poll();
+    if (session == null)
+      session = language.newSession();
+    return session;
+  }
+
+  void prepare(int count)
+  // Makes sessions until at least count are idle, so the first translations
+  // need not wait for them.
+  {
+    for (int i = idle.size(); i < count; i++)
+      idle.add(language.newSession());
+  }
+
+  void release(RangeTranslator session)
+  // Returns a session to be used again.
+  {
+    idle.add(session);
+  }
+}
@@ -0,0 +1,43 @@
+package uk.ac.umist.co.brailletrans;
+
+/**
+ * The results of translating part of a mapped text once for each of several
+ * entry states, returned by <CODE>RangeTranslator.translateRange</CODE>.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+final class TranslatedRange
+{
+  final String[] output;
+  // the translated text for each entry state
+  final int[] end;
+  // the position each translation stopped at, which may be past the end of
+  // the range if the last rule matched across it
+  final int[] exitState;
+  // the state each translation finished in
+  final int reachFrom;
+  final int reachTo;
+  // the first and last positions the translations looked at, -1 and the
+  // mapped length standing for the start and end of the text; everything
+  // outside them could have been anything without changing the translations
+
+  TranslatedRange(String[] output, int[] end, int[] exitState)
+  // Makes results whose reach is not known, so is the whole text.
+  {
+    this(output, end, exitState, -1, Integer.MAX_VALUE);
+  }
+
+  TranslatedRange(String[] output, int[] end, int[] exitState, int reachFrom,
+    int reachTo)
+  {
+    this.output = output;
+    this.end = end;
+    this.exitState = exitState;
+    this.reachFrom = reachFrom;
+    this.reachTo = reachTo;
+  }
+}
@@ -0,0 +1,881 @@
+package uk.ac.umist.co.brailletrans;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/**
+ * Translated paragraphs kept in a file, so that text translated once, such as
+ * notices and headings repeated through a corpus, is not translated again by
+ * later jobs or after a restart.  A text is split into paragraphs at blank
+ * lines and each paragraph looked up by the contents of the language's
+ * table, the state it is entered in, the paragraph itself and the text
+ * around it that its translation looked at.  Paragraphs found are read
+ * straight from the file; the others are translated and added.
+ *
+ * <p>The file is mapped into memory whole.  It holds an open-addressing index
+ * of the paragraphs, followed by the paragraphs and their translations,
+ * appended one after another.  When it is full the paragraphs found most
+ * recently, then the newest, are kept and the rest dropped, so the file
+ * never grows past the size it was made with.  Each paragraph is stored with
+ * its text, which is compared on every lookup, so a paragraph is never given
+ * another's translation.
+ *
+ * <p>A paragraph not found is translated where it stands in the whole text,
+ * so a text is always translated exactly as <CODE>Language.translate</CODE>
+ * would translate it.  The paragraph is stored with as much of the text
+ * before and after it as the rules looked at, usually a character or two,
+ * and with whether they looked past the start or end of the text, and is
+ * only found again where the text around it is the same.  The table is
+ * identified by a hash of the language file, such as
+ * <CODE>LanguageRegistry.getContentHash</CODE> gives, so changing the file
+ * leaves the old translations unused.
+ *
+ * <p>A <CODE>TranslationCache</CODE> can be used by several threads at once,
+ * and the same file by several processes on the same machine at once, which
+ * take turns through file locks.  Within a process, every
+ * <CODE>TranslationCache</CODE> of the same file shares one mapping of it
+ * and one set of locks, so they may be used at once too.  Paragraphs are
+ * found under a shared lock, so threads finding paragraphs do not wait for
+ * each other.  A process killed while writing leaves the cache usable,
+ * though without the paragraphs it was adding or moving.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class TranslationCache implements Closeable
+{
+  /**
+   * The size in bytes of a new cache file unless another is given.
+   */
+  public static final int DEFAULT_SIZE = 256 * 1024 * 1024;
+  /**
+   * The smallest size in bytes of a cache file.
+   */
+  public static final int MINIMUM_SIZE = 64 * 1024;
+  private static final int MAGIC = 0x42544348;
+  // "BTCH", the start of every cache file
+  private static final int FORMAT = 2;
+  private static final int HEADER_SIZE = 64;
+  private static final int SIZE_AT = 8;
+  // where in the header the size of the file is
+  private static final int SLOTS_AT = 12;
+  // where in the header the number of index slots is
+  private static final int END_AT = 16;
+  // where in the header the end of the paragraphs is
+  private static final int ENTRIES_AT = 20;
+  // where in the header the number of paragraphs is
+  private static final int COMPACTIONS_AT = 24;
+  // where in the header the number of compactions is
+  private static final int SLOT_SIZE = 16;
+  // a long key, which is 0 for an empty slot, and an int offset of the record
+  private static final int BYTES_PER_SLOT = 1024;
+  // bytes of file for each index slot
+  private static final int RECORD_HEADER = 44;
+  // int length, long table, int entry state, int default state, int exit
+  // state, int hits, int lengths of the text and of the text before and after
+  // it that the translation looked at, and int anchors, followed by the text
+  // before, the text, the text after and the translation in UTF-8
+  private static final int TABLE_AT = 4;
+  private static final int ENTRY_AT = 12;
+  private static final int DEFAULT_AT = 16;
+  private static final int EXIT_AT = 20;
+  private static final int HITS_AT = 24;
+  private static final int TEXT_LENGTH_AT = 28;
+  private static final int LEFT_LENGTH_AT = 32;
+  private static final int RIGHT_LENGTH_AT = 36;
+  private static final int ANCHORS_AT = 40;
+  private static final int START_ANCHORED = 1;
+  // the translation looked past the start of the text before
+  private static final int END_ANCHORED = 2;
+  // the translation looked past the end of the text after
+
+  private static final HashMap<String, SharedFile> OPEN = new HashMap<String, SharedFile>();
+  // the cache files open in this process, by canonical path
+
+  private SharedFile shared;
+  // the file, shared with every other object of the same file
+  private boolean closed;
+  private MappedByteBuffer buffer;
+  // the whole file
+  private int size;
+  private int slots;
+  // the number of index slots, a power of two
+  private int dataStart;
+  // where the records start, after the index
+  private Language lastLanguage;
+  private SessionPool lastSessions;
+  // sessions of the language last given to translate, for the paragraphs not
+  // found
+  private AtomicLong hits = new AtomicLong();
+  private AtomicLong misses = new AtomicLong();
+
+  /**
+   * Opens a cache file, creating it <CODE>DEFAULT_SIZE</CODE> bytes long if
+   * it does not exist.
+   *
+   * @param file  The cache file.
+   * @throws IOException if the file cannot be created or mapped, or is not a
+   * cache file.
+   */
+  public TranslationCache(File file) throws IOException
+  {
+    this(file, DEFAULT_SIZE);
+  }
+
+  /**
+   * Opens a cache file, creating it if it does not exist.  The file is made
+   * to its full size at once, though most file systems only store the parts
+   * written.  An existing file keeps the size it was made with.
+   *
+   * @param file  The cache file.
+   * @param size  The size in bytes of the file if it is created.
+   * @throws IOException if the file cannot be created or mapped, or is not a
+   * cache file.
+   * @throws IllegalArgumentException if size is less than
+   * <CODE>MINIMUM_SIZE</CODE>.
+   */
+  public TranslationCache(File file, int size) throws IOException
+  {
+    if (size < MINIMUM_SIZE)
+      throw new IllegalArgumentException("Cache size " + size + " is less than "
+        + MINIMUM_SIZE);
+    String path = file.getCanonicalPath();
+    synchronized (OPEN)
+    {
+      shared = OPEN.get(path);
+      if (shared == null)
+      {
+        shared = new SharedFile(file, size);
+        OPEN.put(path, shared);
+      }
+      shared.users++;
+    }
+    buffer = shared.buffer;
+    this.size = shared.size;
+    slots = shared.slots;
+    dataStart = HEADER_SIZE + slots * SLOT_SIZE;
+  }
+
+  /**
+   * Translates a text a paragraph at a time, reading the paragraphs found
+   * in the cache and translating and adding the others.  Texts are split by
+   * <CODE>splitParagraphs</CODE>.  The translation is the same as that of the
+   * whole text starting in state.
+   *
+   * @param language  A <CODE>Language256</CODE>, <CODE>LanguageInteger</CODE>
+   * or <CODE>LanguageUnicode</CODE> to translate with.  It must not be used
+   * directly while the cache translates with it.
+   * @param table  A hash of the contents of the language's file.
+   * @param state  The state to translate the text in.
+   * @param text  The text to translate.
+   * @return The translated text.
+   * @throws IOException if the cache file cannot be read or written.
+   * @throws IllegalArgumentException if the state is not permitted.
+   */
+  public String translate(Language language, long table, int state, String text)
+    throws IOException
+  {
+    SessionPool sessions;
+    synchronized (this)
+    {
+      if (language != lastLanguage)
+      {
+        lastSessions = new SessionPool(language);
+        lastLanguage = language;
+      }
+      sessions = lastSessions;
+    }
+    sessions.checkState(state);
+    return translate(sessions, table, state, text);
+  }
+
+  /**
+   * Splits a text after each blank line, keeping the line ends with the
+   * paragraph before them.
+   *
+   * @param text  The text to split.
+   * @return The paragraphs, which joined together are the text.
+   */
+  public static String[] splitParagraphs(String text)
+  {
+    Vector<String> paragraphs = new Vector<String>();
+    int start = 0;
+    int at = 0;
+    while (at < text.length())
+    {
+      int blank = text.indexOf("\n\n", at);
+      int blankCrLf = text.indexOf("\n\r\n", at);
+      if ((blank == -1) || ((blankCrLf != -1) && (blankCrLf < blank)))
+        blank = blankCrLf;
+      if (blank == -1)
+        break;
+      // Split after the last of the line ends
+      int end = blank + 1;
+      while ((end < text.length())
+        && ((text.charAt(end) == '\n') || (text.charAt(end) == '\r')))
+        end++;
+      paragraphs.addElement(text.substring(start, end));
+      start = at = end;
+    }
+    if (start < text.length())
+      paragraphs.addElement(text.substring(start));
+    String[] toReturn = new String[paragraphs.size()];
+    paragraphs.copyInto(toReturn);
+    return toReturn;
+  }
+
+  /**
+   * Drops paragraphs until the cache is at most half full.  The paragraphs
+   * found since the last compaction are kept first, newest first, and then
+   * the newest of the others.  This is done when the cache fills, so need
+   * not normally be called.
+   *
+   * @throws IOException if the cache file cannot be locked.
+   */
+  public void compact() throws IOException
+  {
+    shared.lockExclusive();
+    try
+    {
+      compactLocked();
+    }
+    finally
+    {
+      shared.unlockExclusive();
+    }
+  }
+
+  /**
+   * Returns the number of paragraphs this object found in the cache.
+   *
+   * @return The number of lookups that found a translation.
+   */
+  public long getHits()
+  {
+    return hits.get();
+  }
+
+  /**
+   * Returns the number of paragraphs this object did not find in the cache.
+   *
+   * @return The number of lookups that found no translation.
+   */
+  public long getMisses()
+  {
+    return misses.get();
+  }
+
+  /**
+   * Returns the number of paragraphs in the cache, added by any process.
+   *
+   * @return The number of paragraphs.
+   */
+  public int getEntries()
+  {
+    return buffer.getInt(ENTRIES_AT);
+  }
+
+  /**
+   * Returns the number of times the cache has been compacted by any process.
+   *
+   * @return The number of compactions since the file was made.
+   */
+  public int getCompactions()
+  {
+    return buffer.getInt(COMPACTIONS_AT);
+  }
+
+  /**
+   * Returns the size of the cache file.
+   *
+   * @return The size in bytes.
+   */
+  public int getSize()
+  {
+    return size;
+  }
+
+  /**
+   * Closes the cache file, once no other <CODE>TranslationCache</CODE> in
+   * this process has it open.  The cache cannot be used afterwards.
+   *
+   * @throws IOException if the file cannot be closed.
+   */
+  public void close() throws IOException
+  {
+    synchronized (OPEN)
+    {
+      if (closed)
+        return;
+      closed = true;
+      if (--shared.users > 0)
+        return;
+      OPEN.values().remove(shared);
+      // ASSERTION: closed before the file can be opened again, as closing it
+      //  may release every lock this process holds on it
+      shared.file.close();
+    }
+  }
+
+  String translate(SessionPool sessions, long table, int state, String text)
+    throws IOException
+  // Translates text with sessions a paragraph at a time, looking each up
+  // first.  A paragraph not found is translated in the whole text, and added
+  // with the text around it that its translation looked at.
+  {
+    Document document = new Document(text);
+    StringBuilder toReturn = new StringBuilder(text.length());
+    int[] exitState = new int[1];
+    int entryState = state;
+    int reached = 0;
+    // the mapped position translated up to, once the text is mapped
+    try
+    {
+      for (int i = 0; i < document.paragraphs.length; i++)
+      {
+        if ((document.mapped != null) && (reached > document.mappedStart[i]))
+        // ASSERTION: the last rule matched across the start of this
+        // paragraph, so translate the rest of it where it stands
+        {
+          if (reached < document.mappedStart[i + 1])
+          {
+            TranslatedRange range = document.session.translateRange(document.mapped,
+              reached, document.mappedStart[i + 1], new int[] {entryState},
+              new int[] {state});
+            toReturn.append(range.output[0]);
+            entryState = range.exitState[0];
+            reached = range.end[0];
+          }
+          continue;
+        }
+        long key = key(table, entryState, state, hash(document.bytes,
+          document.byteStart[i], document.byteStart[i + 1]));
+        String translated = lookup(key, table, entryState, state, document, i, exitState);
+        if (translated == null)
+        {
+          if (document.mapped == null)
+            document.map(sessions);
+          TranslatedRange range = document.session.translateRange(document.mapped,
+            document.mappedStart[i], document.mappedStart[i + 1], new int[] {entryState},
+            new int[] {state});
+          translated = range.output[0];
+          exitState[0] = range.exitState[0];
+          reached = range.end[0];
+          if (reached == document.mappedStart[i + 1])
+            store(key, table, entryState, state, document, i, range, translated);
+        }
+        else if (document.mapped != null)
+          reached = document.mappedStart[i + 1];
+        toReturn.append(translated);
+        entryState = exitState[0];
+      }
+    }
+    finally
+    {
+      if (document.session != null)
+        sessions.release(document.session);
+    }
+    return toReturn.toString();
+  }
+
+  static long hash(byte[] bytes)
+  // Returns a 64-bit hash of bytes.
+  {
+    return hash(bytes, 0, bytes.length);
+  }
+
+  //***** PRIVATE METHODS ***********************************************
+  private static long hash(byte[] bytes, int from, int to)
+  // Returns a 64-bit hash of bytes from from to to.
+  {
+    long h = 0xcbf29ce484222325L;
+    for (int i = from; i < to; i++)
+      h = (h ^ (bytes[i] & 0xff)) * 0x100000001b3L;
+    return mix(h);
+  }
+
+  private String lookup(long key, long table, int entryState,
+    int defaultState, Document document, int paragraph, int[] exitState)
+    throws IOException
+  // Returns the translation of a paragraph of document, and its exit state in
+  // exitState, or null if it is not in the cache with the same text around
+  // it.
+  {
+    shared.lockShared();
+    try
+    {
+      int slot = findSlot(key, table, entryState, defaultState, document, paragraph);
+      if (slot < 0)
+      {
+        misses.incrementAndGet();
+        return null;
+      }
+      int record = buffer.getInt(slot + 8);
+      // ASSERTION: a lost count from another thread or process only weakens
+      //  compaction
+      buffer.putInt(record + HITS_AT, buffer.getInt(record + HITS_AT) + 1);
+      exitState[0] = buffer.getInt(record + EXIT_AT);
+      int texts = buffer.getInt(record + LEFT_LENGTH_AT) + buffer.getInt(record + TEXT_LENGTH_AT)
+        + buffer.getInt(record + RIGHT_LENGTH_AT);
+      byte[] translation = new byte[buffer.getInt(record) - RECORD_HEADER - texts];
+      buffer.get(record + RECORD_HEADER + texts, translation);
+      hits.incrementAndGet();
+      return new String(translation, StandardCharsets.UTF_8);
+    }
+    finally
+    {
+      shared.unlockShared();
+    }
+  }
+
+  private void store(long key, long table, int entryState,
+    int defaultState, Document document, int paragraph, TranslatedRange range,
+    String translation) throws IOException
+  // Adds the translation of a paragraph of document, with the text around it
+  // that range looked at, unless it is already there or too big to be worth
+  // keeping.
+  {
+    byte[] translated = translation.getBytes(StandardCharsets.UTF_8);
+    int start = document.byteStart[paragraph];
+    int end = document.byteStart[paragraph + 1];
+    int left = start - document.byteIndex(Math.max(range.reachFrom, 0), false);
+    int right = Math.max(document.byteIndex(Math.min(range.reachTo + 1,
+      document.mappedStart[document.paragraphs.length]), true), end) - end;
+    int anchors = 0;
+    if (range.reachFrom < 0)
+      anchors |= START_ANCHORED;
+    if (range.reachTo >= document.mappedStart[document.paragraphs.length])
+      anchors |= END_ANCHORED;
+    long length = (long) RECORD_HEADER + left + (end - start) + right + translated.length;
+    if (length > (size - dataStart) / 4)
+      return;
+    shared.lockExclusive();
+    try
+    {
+      if (findSlot(key, table, entryState, defaultState, document, paragraph) >= 0)
+        return;
+      if (((long) buffer.getInt(END_AT) + length > size)
+        || (buffer.getInt(ENTRIES_AT) + 1 > slots / 4 * 3))
+        compactLocked();
+      int record = buffer.getInt(END_AT);
+      buffer.putInt(record, (int) length);
+      buffer.putLong(record + TABLE_AT, table);
+      buffer.putInt(record + ENTRY_AT, entryState);
+      buffer.putInt(record + DEFAULT_AT, defaultState);
+      buffer.putInt(record + EXIT_AT, range.exitState[0]);
+      buffer.putInt(record + HITS_AT, 0);
+      buffer.putInt(record + TEXT_LENGTH_AT, end - start);
+      buffer.putInt(record + LEFT_LENGTH_AT, left);
+      buffer.putInt(record + RIGHT_LENGTH_AT, right);
+      buffer.putInt(record + ANCHORS_AT, anchors);
+      buffer.put(record + RECORD_HEADER, document.bytes, start - left, left + (end - start) + right);
+      buffer.put(record + RECORD_HEADER + left + (end - start) + right, translated);
+      append(key, record, (int) length);
+    }
+    finally
+    {
+      shared.unlockExclusive();
+    }
+  }
+
+  private void append(long key, int record, int length)
+  // Counts a record just written at the end of the records and indexes it by
+  // key.  The end moves before the index is written, so a record is never
+  // indexed before it is whole.
+  {
+    buffer.putInt(END_AT, record + length);
+    buffer.putInt(ENTRIES_AT, buffer.getInt(ENTRIES_AT) + 1);
+    int slot = (int) key & (slots - 1);
+    while (buffer.getLong(HEADER_SIZE + slot * SLOT_SIZE) != 0)
+      slot = (slot + 1) & (slots - 1);
+    buffer.putInt(HEADER_SIZE + slot * SLOT_SIZE + 8, record);
+    buffer.putLong(HEADER_SIZE + slot * SLOT_SIZE, key);
+  }
+
+  private int findSlot(long key, long table, int entryState, int defaultState,
+    Document document, int paragraph)
+  // Returns the position of the index slot of a paragraph of document, or -1
+  // if it is not in the cache with the same text around it.  The file must
+  // be locked.
+  {
+    int start = document.byteStart[paragraph];
+    int end = document.byteStart[paragraph + 1];
+    int slot = (int) key & (slots - 1);
+    for (int probe = 0; probe < slots; probe++)
+    {
+      int at = HEADER_SIZE + slot * SLOT_SIZE;
+      long found = buffer.getLong(at);
+      if (found == 0)
+        return -1;
+      if (found == key)
+      {
+        int record = buffer.getInt(at + 8);
+        if ((recordLength(record) != -1)
+          && (buffer.getLong(record + TABLE_AT) == table)
+          && (buffer.getInt(record + ENTRY_AT) == entryState)
+          && (buffer.getInt(record + DEFAULT_AT) == defaultState)
+          && (buffer.getInt(record + TEXT_LENGTH_AT) == end - start)
+          && sameContext(record, document.bytes, start, end))
+          return at;
+      }
+      slot = (slot + 1) & (slots - 1);
+    }
+    return -1;
+  }
+
+  private int recordLength(int record)
+  // Returns the length of the record at record, or -1 if it is not a whole
+  // record, as after a process was killed while compacting.
+  {
+    int end = buffer.getInt(END_AT);
+    if ((record < dataStart) || (record > end - RECORD_HEADER))
+      return -1;
+    int length = buffer.getInt(record);
+    long texts = (long) buffer.getInt(record + LEFT_LENGTH_AT)
+      + buffer.getInt(record + TEXT_LENGTH_AT) + buffer.getInt(record + RIGHT_LENGTH_AT);
+    if ((length < RECORD_HEADER) || (length > end - record)
+      || (buffer.getInt(record + LEFT_LENGTH_AT) < 0)
+      || (buffer.getInt(record + TEXT_LENGTH_AT) < 0)
+      || (buffer.getInt(record + RIGHT_LENGTH_AT) < 0)
+      || (texts > length - RECORD_HEADER))
+      return -1;
+    return length;
+  }
+
+  private boolean sameContext(int record, byte[] bytes, int start, int end)
+  // Returns true if the record at record holds the text of bytes from start
+  // to end, with the same text before and after it as bytes has there.
+  {
+    int left = buffer.getInt(record + LEFT_LENGTH_AT);
+    int right = buffer.getInt(record + RIGHT_LENGTH_AT);
+    int anchors = buffer.getInt(record + ANCHORS_AT);
+    if ((left > start) || (right > bytes.length - end)
+      || (((anchors & START_ANCHORED) != 0) && (left != start))
+      || (((anchors & END_ANCHORED) != 0) && (right != bytes.length - end)))
+      return false;
+    return sameBytes(record + RECORD_HEADER, bytes, start - left, left + (end - start) + right);
+  }
+
+  private boolean sameBytes(int at, byte[] bytes, int from, int length)
+  // Returns true if the file holds length bytes of bytes from from at at.
+  {
+    for (int i = 0; i < length; i++)
+      if (buffer.get(at + i) != bytes[from + i])
+        return false;
+    return true;
+  }
+
+  private void compactLocked()
+  // Does the work of compact.  The file must be locked for writing.
+  {
+    // Collect the records the index refers to
+    Vector<long[]> records = new Vector<long[]>();
+    for (int slot = 0; slot < slots; slot++)
+    {
+      int at = HEADER_SIZE + slot * SLOT_SIZE;
+      long key = buffer.getLong(at);
+      int record = buffer.getInt(at + 8);
+      if ((key != 0) && (recordLength(record) != -1))
+        records.addElement(new long[] {record, key, buffer.getInt(record + HITS_AT)});
+    }
+    Collections.sort(records, new Comparator<long[]>()
+    {
+      public int compare(long[] a, long[] b)
+      {
+        if ((a[2] > 0) != (b[2] > 0))
+          return (a[2] > 0) ? -1 : 1;
+        return Long.compare(b[0], a[0]);
+      }
+    });
+
+    // Keep what fits in half the cache, in the order they were added
+    int budget = (size - dataStart) / 2;
+    TreeMap<Long, Object[]> kept = new TreeMap<Long, Object[]>();
+    // record -> {Long key, byte[] record}
+    for (int i = 0; (i < records.size()) && (kept.size() < slots / 2); i++)
+    {
+      long[] record = records.elementAt(i);
+      int length = recordLength((int) record[0]);
+      if (length > budget)
+        continue;
+      budget -= length;
+      byte[] bytes = new byte[length];
+      buffer.get((int) record[0], bytes);
+      kept.put(Long.valueOf(record[0]), new Object[] {Long.valueOf(record[1]), bytes});
+    }
+
+    buffer.putInt(END_AT, dataStart);
+    buffer.putInt(ENTRIES_AT, 0);
+    for (int slot = 0; slot < slots; slot++)
+      buffer.putLong(HEADER_SIZE + slot * SLOT_SIZE, 0);
+    Iterator<Object[]> values = kept.values().iterator();
+    while (values.hasNext())
+    {
+      Object[] value = values.next();
+      byte[] bytes = (byte[]) value[1];
+      int record = buffer.getInt(END_AT);
+      buffer.put(record, bytes);
+      buffer.putInt(record + HITS_AT, 0);
+      append(((Long) value[0]).longValue(), record, bytes.length);
+    }
+    buffer.putInt(COMPACTIONS_AT, buffer.getInt(COMPACTIONS_AT) + 1);
+  }
+
+  private static long key(long table, int entryState, int defaultState, long paragraph)
+  // Returns the index key of a paragraph, which is never 0.
+  {
+    long toReturn = mix(paragraph ^ mix(table + (((long) entryState << 32) | defaultState)));
+    return (toReturn == 0) ? 1 : toReturn;
+  }
+
+  private static long mix(long h)
+  // Spreads the bits of h over the whole long.
+  {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static class SharedFile
+  // A cache file open in this process, and the locks by which the threads of
+  // this process and other processes take turns with it.  A process holds
+  // one lock on the file for all its threads, as file locks are held by the
+  // whole process, and closing any channel of the file may release them.
+  {
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int size;
+    private int slots;
+    private int users;
+    // the TranslationCache objects open on the file
+    private ReentrantReadWriteLock threads = new ReentrantReadWriteLock();
+    // taken by each thread of this process before the file lock
+    private int readers;
+    // the threads holding the read lock of threads
+    private FileLock lock;
+    // the lock on the file held for all the threads, or null
+
+    private SharedFile(File name, int newSize) throws IOException
+    // Opens a cache file, creating it newSize bytes long if it is new.
+    {
+      file = new RandomAccessFile(name, "rw");
+      channel = file.getChannel();
+      boolean opened = false;
+      try
+      {
+        FileLock creating = channel.lock();
+        try
+        {
+          if (channel.size() == 0)
+          // ASSERTION: a new file, which no other process has begun
+          {
+            int newSlots = BYTES_PER_SLOT;
+            while (newSlots < newSize / BYTES_PER_SLOT)
+              newSlots *= 2;
+            file.setLength(newSize);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(0, MAGIC);
+            header.putInt(4, FORMAT);
+            header.putInt(SIZE_AT, newSize);
+            header.putInt(SLOTS_AT, newSlots);
+            header.putInt(END_AT, HEADER_SIZE + newSlots * SLOT_SIZE);
+            while (header.hasRemaining())
+              channel.write(header, header.position());
+          }
+          ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+          while (header.hasRemaining() && (channel.read(header, header.position()) > 0))
+            ;
+          if ((header.position() < HEADER_SIZE) || (header.getInt(0) != MAGIC)
+            || (header.getInt(4) != FORMAT))
+            throw new IOException(name + " is not a translation cache");
+          size = header.getInt(SIZE_AT);
+          slots = header.getInt(SLOTS_AT);
+          if (channel.size() < size)
+            throw new IOException(name + " is shorter than its cache");
+          buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+          opened = true;
+        }
+        finally
+        {
+          creating.release();
+        }
+      }
+      finally
+      {
+        if (!opened)
+          file.close();
+      }
+    }
+
+    private void lockShared() throws IOException
+    // Waits until the file may be read.  The first thread of this process to
+    // read takes a shared lock on the file, and the last to finish releases
+    // it.
+    {
+      threads.readLock().lock();
+      synchronized (this)
+      {
+        if (readers == 0)
+        {
+          try
+          {
+            lock = channel.lock(0, Long.MAX_VALUE, true);
+          }
+          catch (IOException e)
+          {
+            threads.readLock().unlock();
+            throw e;
+          }
+        }
+        readers++;
+      }
+    }
+
+    private void unlockShared() throws IOException
+    {
+      try
+      {
+        synchronized (this)
+        {
+          if (--readers == 0)
+          {
+            FileLock held = lock;
+            lock = null;
+            held.release();
+          }
+        }
+      }
+      finally
+      {
+        threads.readLock().unlock();
+      }
+    }
+
+    private void lockExclusive() throws IOException
+    // Waits until the file may be written, by this thread alone.
+    {
+      threads.writeLock().lock();
+      try
+      {
+        lock = channel.lock();
+      }
+      catch (IOException e)
+      {
+        threads.writeLock().unlock();
+        throw e;
+      }
+    }
+
+    private void unlockExclusive() throws IOException
+    {
+      try
+      {
+        FileLock held = lock;
+        lock = null;
+        held.release();
+      }
+      finally
+      {
+        threads.writeLock().unlock();
+      }
+    }
+  } // end of SharedFile class
+
+  private static class Document
+  // A text being translated through the cache, split into paragraphs, and
+  // mapped the first time a paragraph is not found
+  {
+    private String text;
+    private String[] paragraphs;
+    private byte[] bytes;
+    // the text in UTF-8
+    private int[] byteStart;
+    // the index in bytes of each paragraph, then the length of bytes
+    private int[] charStart;
+    // the index in text of each paragraph, then the length of text
+    private RangeTranslator session;
+    private Object mapped;
+    private int[] mappedStart;
+    // the mapped position of each paragraph, then the mapped length, once
+    // the text is mapped
+
+    private Document(String text)
+    {
+      this.text = text;
+      paragraphs = splitParagraphs(text);
+      bytes = text.getBytes(StandardCharsets.UTF_8);
+      byteStart = new int[paragraphs.length + 1];
+      charStart = new int[paragraphs.length + 1];
+      for (int i = 0; i < paragraphs.length; i++)
+      {
+        charStart[i + 1] = charStart[i] + paragraphs[i].length();
+        byteStart[i + 1] = byteStart[i] + utf8Length(paragraphs[i], 0, paragraphs[i].length());
+      }
+    }
+
+    private void map(SessionPool sessions)
+    // Maps the text with a session from sessions, which the caller releases.
+    {
+      session = sessions.get();
+      mapped = session.mapText(text);
+      mappedStart = new int[paragraphs.length + 1];
+      for (int i = 0; i < paragraphs.length; i++)
+        mappedStart[i + 1] = mappedStart[i]
+          + session.mappedLength(session.mapText(paragraphs[i]));
+    }
+
+    private int byteIndex(int position, boolean up)
+    // Returns the index in bytes of the character a mapped position was
+    // mapped from.  A position inside a surrogate pair, which the legacy
+    // languages map as two characters, is moved to the end of the pair if up
+    // is true and to its start if not, so a pair is never split.
+    {
+      if (position >= mappedStart[paragraphs.length])
+        return bytes.length;
+      int paragraph = Arrays.binarySearch(mappedStart, 0, paragraphs.length, position);
+      if (paragraph < 0)
+        paragraph = -paragraph - 2;
+      String within = paragraphs[paragraph];
+      int index = session.textIndex(within, position - mappedStart[paragraph]);
+      if ((index > 0) && Character.isLowSurrogate(within.charAt(index))
+        && Character.isHighSurrogate(within.charAt(index - 1)))
+        index += up ? 1 : -1;
+      return byteStart[paragraph] + utf8Length(within, 0, index);
+    }
+
+    private static int utf8Length(String text, int from, int to)
+    // Returns the number of bytes of the characters of text from from to to
+    // in UTF-8.
+    {
+      int length = 0;
+      for (int i = from; i < to; i++)
+      {
+        char c = text.charAt(i);
+        if (c < 0x80)
+          length++;
+        else if (c < 0x800)
+          length += 2;
+        else if (Character.isHighSurrogate(c) && (i + 1 < to)
+          && Character.isLowSurrogate(text.charAt(i + 1)))
+        {
+          length += 4;
+          i++;
+        }
+        else
+          length += 3;
+      }
+      return length;
+    }
+  } // end of Document class
+}
@@ -0,0 +1,507 @@
+package uk.ac.umist.co.brailletrans;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+/**
+ * Spreads translation over several worker processes, each running a
+ * <CODE>BinaryTranslationServer</CODE> on this machine or another, for jobs
+ * too large for one Java virtual machine.
+ *
+ * <p>A set of documents is shared out among the workers a few at a time, so a
+ * fast worker takes more than a slow one, and the translations are returned
+ * in the order of the documents.  A single large document is split into
+ * pieces that are shared out in the same way and joined into exactly the
+ * translation of the whole.  If a worker dies, or its connection breaks, the
+ * documents or pieces it had not answered are sent again to the workers that
+ * remain.
+ *
+ * <p>For testing on one machine, <CODE>startLocal</CODE> starts worker
+ * processes listening on the loopback interface, which the cluster stops when
+ * it is closed.
+ *
+ * <p>A <CODE>TranslationCluster</CODE> can be used by several threads at
+ * once.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class TranslationCluster
+{
+  /**
+   * The least number of characters in each piece a document is split into
+   * for <CODE>translateDocument</CODE>.
+   */
+  public static final int PIECE_SIZE = 16 * 1024;
+  /**
+   * The number of characters of a document sent either side of each piece,
+   * for the contexts of its rules, until they are found to look further.
+   */
+  public static final int MARGIN = 4 * 1024;
+  private static final int MAX_PIECE_SIZE = 1024 * 1024;
+  // the most characters in a piece, so that it and its margins fit a frame
+  private static final int PIECES_PER_WORKER = 2;
+  // pieces per worker, so that a slow worker does not hold up the rest
+  private static final int WINDOW = 32;
+  // the most documents or pieces sent to one worker and not yet answered
+  private static final String WORKER_CLASS = "uk.ac.umist.co.brailletrans.BinaryTranslationServer";
+  private static final String PORT_MESSAGE = "Translating on port ";
+  // what a worker prints once it is listening
+
+  private BinaryTranslationClient[] workers;
+  // a connection to each worker
+  private Process[] processes;
+  // the worker processes started by startLocal, or none
+
+  /**
+   * Creates a <CODE>TranslationCluster</CODE> of workers already running.
+   *
+   * @param addresses  The address of each worker.
+   * @throws IOException if a worker cannot be reached.
+   */
+  public TranslationCluster(InetSocketAddress[] addresses) throws IOException
+  {
+    this(addresses, new Process[0]);
+  }
+
+  /**
+   * Starts worker processes on this machine, each running a
+   * <CODE>BinaryTranslationServer</CODE> with the language files in a
+   * directory and listening on the loopback interface, and creates a
+   * <CODE>TranslationCluster</CODE> of them.  The workers run with the same
+   * Java runtime and class path as this one.
+   *
+   * @param languageDirectory  The directory holding the language files.
+   * @param numberWorkers  The number of worker processes to start.
+   * @return The cluster, which stops the workers when closed.
+   * @throws IOException if a worker cannot be started.
+   */
+  public static TranslationCluster startLocal(File languageDirectory, int numberWorkers)
+    throws IOException
+  {
+    Process[] processes = new Process[numberWorkers];
+    InetSocketAddress[] addresses = new InetSocketAddress[numberWorkers];
+    try
+    {
+      for (int worker = 0; worker < numberWorkers; worker++)
+      {
+        ProcessBuilder builder = new ProcessBuilder(new String[] {
+          System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+          "-cp", System.getProperty("java.class.path"), WORKER_CLASS,
+          languageDirectory.getAbsolutePath(), "0"});
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        processes[worker] = builder.start();
+      }
+      for (int worker = 0; worker < numberWorkers; worker++)
+        addresses[worker] = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+          readPort(processes[worker]));
+      return new TranslationCluster(addresses, processes);
+    }
+    catch (IOException e)
+    {
+      for (int worker = 0; worker < numberWorkers; worker++)
+        if (processes[worker] != null)
+          processes[worker].destroy();
+      throw e;
+    }
+  }
+
+  /**
+   * Translates documents, each as <CODE>setState(state)</CODE> followed by
+   * <CODE>translate(document)</CODE> would with the language.
+   *
+   * @param language  The name of the language in the workers' registries.
+   * @param state  The state to translate in.
+   * @param documents  The texts to translate.
+   * @return The translation of each document, in the same order.
+   * @throws IOException if a worker could not translate a document, or every
+   * worker has died.
+   */
+  public String[] translate(final String language, final int state,
+    final String[] documents) throws IOException
+  {
+    ArrayList<String> translated = share("document", documents.length, new Sender<String>()
+    {
+      public CompletableFuture<String> send(BinaryTranslationClient worker, int document)
+      {
+        return worker.translate(language, state, documents[document]);
+      }
+    });
+    return translated.toArray(new String[documents.length]);
+  }
+
+  /**
+   * Translates one document, as <CODE>setState(state)</CODE> followed by
+   * <CODE>translate(document)</CODE> would with the language, by splitting it
+   * into pieces that are translated by the workers at the same time.
+   *
+   * <p>This works as <CODE>ParallelTranslator</CODE> does across processes.
+   * Each piece but the first is translated from every state the language
+   * permits, and the translations are joined by following the exit state of
+   * each piece into the next.  Each piece is sent with <CODE>MARGIN</CODE>
+   * characters of the document either side of it, and sent again with twice
+   * as many on a side its rules looked beyond, so rules see their contexts
+   * however far they reach without the whole document being sent with every
+   * piece.  Where a rule matched across the end of a piece, the next piece is
+   * translated again from where it stopped.
+   *
+   * @param language  The name of the language in the workers' registries.
+   * @param state  The state to translate in.
+   * @param document  The text to translate.
+   * @return The translated text.
+   * @throws IOException if a worker could not translate a piece, or every
+   * worker has died.
+   */
+  public String translateDocument(final String language, final int state,
+    final String document) throws IOException
+  {
+    final int[] bounds = split(document);
+    if (bounds.length == 2)
+    // ASSERTION: too short to split
+      return translate(language, state, new String[] {document})[0];
+
+    // The first piece starts in state; the rest start in every state
+    int[][] entryStates = new int[bounds.length - 1][];
+    entryStates[0] = new int[] {state};
+    for (int piece = 1; piece < entryStates.length; piece++)
+      entryStates[piece] = new int[0];
+    int[] starts = Arrays.copyOfRange(bounds, 0, bounds.length - 1);
+    int[] ends = Arrays.copyOfRange(bounds, 1, bounds.length);
+    ArrayList<TranslatedRange> pieces = translateRanges(language, state, document,
+      starts, ends, entryStates);
+
+    // Join the pieces up by following the exit state of each into the next
+    StringBuffer toReturn = new StringBuffer(document.length());
+    int position = 0;
+    int exitState = state;
+    for (int piece = 0; piece < pieces.size(); piece++)
+    {
+      TranslatedRange translated = pieces.get(piece);
+      int used = (piece == 0) ? 0 : exitState - 1;
+      if ((position == bounds[piece]) && (used >= 0) && (used < translated.output.length))
+      // ASSERTION: the piece before ended at the split, so this piece was
+      //  translated from the right place in every state it could start in
+      {
+        toReturn.append(translated.output[used]);
+        position = translated.end[used];
+        exitState = translated.exitState[used];
+      }
+      else if (position < bounds[piece + 1])
+      // ASSERTION: the last rule of the piece before matched across the
+      //  split, so translate this piece again from where it stopped
+      {
+        translated = translateRanges(language, state, document, new int[] {position},
+          new int[] {bounds[piece + 1]}, new int[][] {{exitState}}).get(0);
+        toReturn.append(translated.output[0]);
+        position = translated.end[0];
+        exitState = translated.exitState[0];
+      }
+      // else the piece before matched across the whole of this piece
+    }
+    return toReturn.toString();
+  }
+
+  /**
+   * Returns the number of workers still connected.
+   *
+   * @return The number of workers that have not died.
+   */
+  public int getNumberWorkers()
+  {
+    int toReturn = 0;
+    for (int worker = 0; worker < workers.length; worker++)
+      if (workers[worker].isOpen())
+        toReturn++;
+    return toReturn;
+  }
+
+  /**
+   * Closes the connections to the workers, and stops any worker processes
+   * started by <CODE>startLocal</CODE>.
+   */
+  public void close()
+  {
+    for (int worker = 0; worker < workers.length; worker++)
+      workers[worker].close();
+    for (int process = 0; process < processes.length; process++)
+      processes[process].destroy();
+  }
+
+  //***** PRIVATE METHODS ***********************************************
+  private TranslationCluster(InetSocketAddress[] addresses, Process[] processes)
+    throws IOException
+  {
+    this.processes = processes;
+    workers = new BinaryTranslationClient[addresses.length];
+    try
+    {
+      for (int worker = 0; worker < addresses.length; worker++)
+        workers[worker] = new BinaryTranslationClient(addresses[worker]);
+    }
+    catch (IOException e)
+    {
+      for (int worker = 0; worker < addresses.length; worker++)
+        if (workers[worker] != null)
+          workers[worker].close();
+      throw e;
+    }
+  }
+
+  private static int readPort(Process process) throws IOException
+  // Waits for a worker to say which port it is listening on.
+  {
+    BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()));
+    String line;
+    while ((line = out.readLine()) != null)
+      if (line.startsWith(PORT_MESSAGE))
+        return Integer.parseInt(line.substring(PORT_MESSAGE.length()).trim());
+    throw new IOException("Worker exited before listening");
+  }
+
+  private <T> ArrayList<T> share(String kind, int numberItems, Sender<T> sender)
+    throws IOException
+  // Sends items to the workers with fewest waiting, sending again those lost
+  // with a worker that dies, and returns the results in order.
+  {
+    ArrayList<T> results = new ArrayList<T>(numberItems);
+    LinkedList<Integer> waiting = new LinkedList<Integer>();
+    // index of each item not yet sent, or to be sent again
+    for (int item = 0; item < numberItems; item++)
+    {
+      results.add(null);
+      waiting.addLast(Integer.valueOf(item));
+    }
+    int[] sent = new int[workers.length];
+    // items sent to each worker and not yet answered
+    LinkedBlockingQueue<Answer<T>> answers = new LinkedBlockingQueue<Answer<T>>();
+    int numberDone = 0;
+    try
+    {
+      while (numberDone < numberItems)
+      {
+        while (!waiting.isEmpty())
+        {
+          int worker = leastBusy(sent);
+          if (worker == -1)
+            break;
+          int item = waiting.removeFirst().intValue();
+          sent[worker]++;
+          sender.send(workers[worker], item)
+            .whenComplete(new Answer<T>(answers, item, worker));
+        }
+        if (!waiting.isEmpty() && (leastBusy(sent) == -1) && (sum(sent) == 0))
+          throw new IOException("Every worker has died");
+
+        Answer<T> answer = answers.take();
+        sent[answer.worker]--;
+        if (answer.failure == null)
+        {
+          results.set(answer.item, answer.result);
+          numberDone++;
+        }
+        else if (workers[answer.worker].isOpen())
+        // ASSERTION: the worker refused the item
+        {
+          IOException e = new IOException("Could not translate " + kind + " "
+            + answer.item + ": " + answer.failure.getMessage());
+          e.initCause(answer.failure);
+          throw e;
+        }
+        else
+        // ASSERTION: the worker died with the item
+          waiting.addFirst(Integer.valueOf(answer.item));
+      }
+      return results;
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while translating");
+    }
+  }
+
+  private ArrayList<TranslatedRange> translateRanges(final String language,
+    final int state, final String document, final int[] from, final int[] to,
+    final int[][] entryStates) throws IOException
+  // Translates ranges of a document on the workers, each sent with MARGIN
+  // characters either side of it, and sent again with twice as many on a
+  // side its rules looked beyond until none do, and returns the translations
+  // with their ends and reach as indices in the document.
+  {
+    final int[] windowFrom = new int[from.length];
+    final int[] windowTo = new int[from.length];
+    int[] before = new int[from.length];
+    int[] after = new int[from.length];
+    // the margins of each range
+    ArrayList<TranslatedRange> results = new ArrayList<TranslatedRange>(from.length);
+    ArrayList<Integer> waiting = new ArrayList<Integer>(from.length);
+    // the ranges not yet translated with margins wide enough
+    for (int range = 0; range < from.length; range++)
+    {
+      before[range] = MARGIN;
+      after[range] = MARGIN;
+      results.add(null);
+      waiting.add(Integer.valueOf(range));
+    }
+    while (!waiting.isEmpty())
+    {
+      final ArrayList<Integer> sending = waiting;
+      for (int item = 0; item < sending.size(); item++)
+      {
+        int range = sending.get(item).intValue();
+        windowFrom[range] = windowStart(document, from[range] - before[range]);
+        windowTo[range] = windowEnd(document, to[range] + after[range]);
+      }
+      ArrayList<TranslatedRange> answers = share("piece", sending.size(),
+        new Sender<TranslatedRange>()
+        {
+          public CompletableFuture<TranslatedRange> send(BinaryTranslationClient worker,
+            int item)
+          {
+            int range = sending.get(item).intValue();
+            return worker.translateRange(language, state,
+              document.substring(windowFrom[range], windowTo[range]),
+              from[range] - windowFrom[range], to[range] - windowFrom[range],
+              entryStates[range]);
+          }
+        });
+
+      waiting = new ArrayList<Integer>();
+      for (int item = 0; item < sending.size(); item++)
+      {
+        int range = sending.get(item).intValue();
+        TranslatedRange translated = answers.get(item);
+        boolean wantsBefore = (windowFrom[range] > 0) && (translated.reachFrom < 0);
+        boolean wantsAfter = (windowTo[range] < document.length())
+          && (translated.reachTo >= windowTo[range] - windowFrom[range]);
+        if (wantsBefore || wantsAfter)
+        // ASSERTION: the rules looked past the text sent, so may have matched
+        //  differently against the whole document
+        {
+          if (wantsBefore)
+            before[range] *= 2;
+          if (wantsAfter)
+            after[range] *= 2;
+          waiting.add(Integer.valueOf(range));
+          continue;
+        }
+        for (int i = 0; i < translated.end.length; i++)
+          translated.end[i] += windowFrom[range];
+        results.set(range, new TranslatedRange(translated.output, translated.end,
+          translated.exitState, translated.reachFrom + windowFrom[range],
+          translated.reachTo + windowFrom[range]));
+      }
+    }
+    return results;
+  }
+
+  private static int windowStart(String document, int index)
+  // Returns index moved back to the start of a character, and into document.
+  {
+    if (index <= 0)
+      return 0;
+    if (Character.isLowSurrogate(document.charAt(index)))
+      index--;
+    return index;
+  }
+
+  private static int windowEnd(String document, int index)
+  // Returns index moved on to the end of a character, and into document.
+  {
+    if (index >= document.length())
+      return document.length();
+    if (Character.isLowSurrogate(document.charAt(index)))
+      index++;
+    return index;
+  }
+
+  private int[] split(String document)
+  // Returns the indices a document is split at for translateDocument,
+  // starting with 0 and ending with its length.  Splits are moved to just
+  // after a space where there is one nearby, since few rules match across a
+  // space, and are never made inside a pair of surrogates.
+  {
+    int numberWorkers = Math.max(1, getNumberWorkers());
+    int pieceSize = Math.min(MAX_PIECE_SIZE, Math.max(PIECE_SIZE,
+      document.length() / (numberWorkers * PIECES_PER_WORKER) + 1));
+    Vector<Integer> bounds = new Vector<Integer>();
+    bounds.addElement(Integer.valueOf(0));
+    int start = 0;
+    while (document.length() - start >= pieceSize + pieceSize / 2)
+    {
+      int split = start + pieceSize;
+      int limit = split + pieceSize / 2;
+      int at = split;
+      while ((at < limit) && (document.charAt(at - 1) != ' '))
+        at++;
+      if (at < limit)
+        split = at;
+      else if (Character.isLowSurrogate(document.charAt(split)))
+        split++;
+      bounds.addElement(Integer.valueOf(split));
+      start = split;
+    }
+    bounds.addElement(Integer.valueOf(document.length()));
+
+    int[] toReturn = new int[bounds.size()];
+    for (int i = 0; i < toReturn.length; i++)
+      toReturn[i] = bounds.elementAt(i).intValue();
+    return toReturn;
+  }
+
+  private int leastBusy(int[] sent)
+  // Returns the live worker with fewest items waiting, or -1 if every
+  // live worker has a full window.
+  {
+    int toReturn = -1;
+    for (int worker = 0; worker < workers.length; worker++)
+      if ((sent[worker] < WINDOW) && workers[worker].isOpen()
+        && ((toReturn == -1) || (sent[worker] < sent[toReturn])))
+        toReturn = worker;
+    return toReturn;
+  }
+
+  private static int sum(int[] values)
+  {
+    int toReturn = 0;
+    for (int i = 0; i < values.length; i++)
+      toReturn += values[i];
+    return toReturn;
+  }
+
+  private interface Sender<T>
+  // Sends one of the items being shared out to a worker
+  {
+    CompletableFuture<T> send(BinaryTranslationClient worker, int item);
+  } // end of Sender interface
+
+  private static class Answer<T> implements BiConsumer<T, Throwable>
+  // The response of a worker to an item, queued for the coordinating thread
+  // when it arrives
+  {
+    private BlockingQueue<Answer<T>> answers;
+    private int item;
+    private int worker;
+    private T result;
+    private Throwable failure;
+
+    private Answer(BlockingQueue<Answer<T>> answers, int item, int worker)
+    {
+      this.answers = answers;
+      this.item = item;
+      this.worker = worker;
+    }
+
+    public void accept(T result, Throwable failure)
+    {
+      this.result = result;
+      this.failure = failure;
+      answers.add(this);
+    }
+  } // end of Answer class
+}
@@ -0,0 +1,232 @@
+package uk.ac.umist.co.brailletrans;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs translations of many small texts at once, each on a thread of its own,
+ * with any number of <CODE>Language</CODE> objects.
+ *
+ * <p>Each translation runs on a virtual thread where the Java runtime has
+ * them, and otherwise on a pool of one thread per processor.  A translation
+ * needs a session of its language, of which at most a fixed number are made,
+ * all sharing the language's rules; a translation waits for one to be free.
+ * Sessions are handed out without locking.
+ *
+ * <p>Each text is translated on its own, starting in the state given, as
+ * <CODE>setState(state)</CODE> followed by <CODE>translate(text)</CODE> would.
+ * A language must not be altered while the executor is using it.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class TranslationExecutor
+{
+  private ExecutorService threads;
+  // runs each translation
+  private boolean virtualThreads;
+  // whether threads makes a virtual thread for each translation
+  private int sessionsPerLanguage;
+  // the most sessions made of any one language
+  private ConcurrentHashMap<Language, Sessions> languages =
+    new ConcurrentHashMap<Language, Sessions>();
+  // the sessions of each language used so far
+
+  /**
+   * Creates a <CODE>TranslationExecutor</CODE> making at most one session of
+   * each language per processor.
+   */
+  public TranslationExecutor()
+  {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a <CODE>TranslationExecutor</CODE>.
+   *
+   * @param sessionsPerLanguage  The most sessions to make of any one
+   * language, and so the most translations with it to run at once.
+   */
+  public TranslationExecutor(int sessionsPerLanguage)
+  {
+    if (sessionsPerLanguage < 1)
+      throw new IllegalArgumentException("Sessions per language must be positive, not "
+        + sessionsPerLanguage);
+    this.sessionsPerLanguage = sessionsPerLanguage;
+    threads = newVirtualThreadExecutor();
+    virtualThreads = (threads != null);
+    if (!virtualThreads)
+      threads = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+        new ThreadFactory()
+        {
+          public Thread newThread(Runnable task)
+          {
+            Thread thread = new Thread(task, "TranslationExecutor");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+  }
+
+  static ExecutorService newVirtualThreadExecutor()
+  // Returns an executor that runs each task on a new virtual thread, or null
+  // if this runtime has no virtual threads.
+  {
+    try
+    {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    }
+    catch (Exception e)
+    {
+      return null;
+    }
+  }
+
+  /**
+   * Returns whether translations run on virtual threads.
+   *
+   * @return true if they do, false if they run on a pool of threads.
+   */
+  public boolean usesVirtualThreads()
+  {
+    return virtualThreads;
+  }
+
+  /**
+   * Submits a text for translation.  Cancelling the future before the
+   * translation has a session stops it.
+   *
+   * @param language  A <CODE>Language256</CODE>, <CODE>LanguageInteger</CODE>
+   * or <CODE>LanguageUnicode</CODE> to translate with.
+   * @param text  <CODE>String</CODE> holding characters to translate.
+   * @param state  The state to translate in.
+   * @return A future holding the translated text.
+   * @throws IllegalArgumentException if the state is not permitted.
+   * @throws RejectedExecutionException if the executor is shut down.
+   */
+  public Future<String> submit(Language language, String text, int state)
+  {
+    Sessions sessions = getSessions(language);
+    sessions.pool.checkState(state);
+    return threads.submit(new Translation(sessions, text, state));
+  }
+
+  /**
+   * Translates a batch of texts at once, and returns when all are translated.
+   * If the deadline passes, a translation fails or the calling thread is
+   * interrupted, the translations not yet done are cancelled before this
+   * returns, so none outlive the call.
+   *
+   * @param language  A <CODE>Language256</CODE>, <CODE>LanguageInteger</CODE>
+   * or <CODE>LanguageUnicode</CODE> to translate with.
+   * @param texts  The texts to translate.
+   * @param state  The state to translate in.
+   * @param timeout  How long to wait for the whole batch.
+   * @param unit  The unit of timeout.
+   * @return The translated texts, in the order of texts.
+   * @throws IllegalArgumentException if the state is not permitted.
+   * @throws InterruptedException if the calling thread is interrupted.
+   * @throws ExecutionException if a translation fails.
+   * @throws TimeoutException if the deadline passes first.
+   */
+  public List<String> translateAll(Language language, List<String> texts, int state,
+    long timeout, TimeUnit unit)
+    throws InterruptedException, ExecutionException, TimeoutException
+  {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    ArrayList<Future<String>> futures = new ArrayList<Future<String>>(texts.size());
+    boolean finished = false;
+    try
+    {
+      for (int i = 0; i < texts.size(); i++)
+        futures.add(submit(language, texts.get(i), state));
+      ArrayList<String> toReturn = new ArrayList<String>(texts.size());
+      for (int i = 0; i < futures.size(); i++)
+        toReturn.add(futures.get(i).get(Math.max(0, deadline - System.nanoTime()),
+          TimeUnit.NANOSECONDS));
+      finished = true;
+      return toReturn;
+    }
+    finally
+    {
+      if (!finished)
+        for (int i = 0; i < futures.size(); i++)
+          futures.get(i).cancel(true);
+    }
+  }
+
+  /**
+   * Stops taking translations and cancels those not yet done.
+   */
+  public void shutdownNow()
+  {
+    threads.shutdownNow();
+  }
+
+  private Sessions getSessions(Language language)
+  // Returns the sessions of a language, making a pool for it if it is new.
+  {
+    Sessions sessions = languages.get(language);
+    if (sessions == null)
+    {
+      Sessions made = new Sessions(new SessionPool(language), sessionsPerLanguage);
+      sessions = languages.putIfAbsent(language, made);
+      if (sessions == null)
+        sessions = made;
+    }
+    return sessions;
+  }
+
+  private static class Sessions
+  // The sessions of one language, with a permit for each that may be made
+  {
+    private SessionPool pool;
+    private Semaphore permits;
+
+    private Sessions(SessionPool pool, int permits)
+    {
+      this.pool = pool;
+      this.permits = new Semaphore(permits);
+    }
+  } // end of Sessions class
+
+  private static class Translation implements Callable<String>
+  // Translates one text once a session of its language is free
+  {
+    private Sessions sessions;
+    private String text;
+    private int state;
+
+    private Translation(Sessions sessions, String text, int state)
+    {
+      this.sessions = sessions;
+      this.text = text;
+      this.state = state;
+    }
+
+    public String call() throws InterruptedException
+    {
+      sessions.permits.acquire();
+      try
+      {
+        RangeTranslator session = sessions.pool.get();
+        try
+        {
+          return session.translate(text, state);
+        }
+        finally
+        {
+          sessions.pool.release(session);
+        }
+      }
+      finally
+      {
+        sessions.permits.release();
+      }
+    }
+  } // end of Translation class
+}
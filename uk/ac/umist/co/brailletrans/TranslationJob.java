@@ -0,0 +1,548 @@
+package uk.ac.umist.co.brailletrans;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A batch job translating many large files that can be stopped at any point,
+ * even by a crash, and run again to carry on where it left off.
+ *
+ * <p>Each file is translated a batch at a time with a
+ * <CODE>ChunkTranslator</CODE> and its output written as it goes.  Every
+ * <CODE>getInterval()</CODE> bytes of input, the output is forced to disk and
+ * a checkpoint written for the file: how much of the input has been read,
+ * how long the output is, and a snapshot of the translator holding the state
+ * of the machine and the text kept for context.  A checkpoint is written to
+ * a temporary file and renamed over the last, so there is always one whole
+ * checkpoint.  When the job is run again, a file whose checkpoint says it is
+ * complete is skipped, and a file part translated has its output cut back to
+ * the length in its checkpoint and is translated on from there.  A file that
+ * has changed since its checkpoint is translated again from the start.
+ * Output files are named for their input files' names, so the files of one
+ * job must have different names.
+ *
+ * <p>Files are read and written in encodings that carry no state from one
+ * character to the next, such as UTF-8 and ISO-8859-1, UTF-8 unless others
+ * are set.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class TranslationJob
+{
+  /**
+   * The bytes of input between checkpoints unless another interval is set.
+   */
+  public static final long DEFAULT_INTERVAL = 16 * 1024 * 1024;
+  /**
+   * The extension of checkpoint files.
+   */
+  public static final String CHECKPOINT_EXTENSION = ".checkpoint";
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // bytes read at a time
+  private static final int CHECKPOINT_MAGIC = 0x4254434b;
+  // "BTCK", the first bytes of every checkpoint
+  private static final int CHECKPOINT_VERSION = 1;
+
+  private String languageName;
+  private SessionPool sessions;
+  // sessions of the language to translate with
+  private int state;
+  private File checkpointDirectory;
+  private File outputDirectory;
+  private String suffix = BulkTranslator.DEFAULT_SUFFIX;
+  private Charset inputEncoding = StandardCharsets.UTF_8;
+  private Charset outputEncoding = StandardCharsets.UTF_8;
+  private long interval = DEFAULT_INTERVAL;
+
+  private AtomicInteger filesSkipped = new AtomicInteger();
+  private AtomicInteger filesResumed = new AtomicInteger();
+  private AtomicInteger filesStarted = new AtomicInteger();
+  private AtomicLong bytesTranslated = new AtomicLong();
+
+  /**
+   * Creates a <CODE>TranslationJob</CODE>.
+   *
+   * @param registry  The registry to find the language in.
+   * @param languageName  The name of the language to translate with.
+   * @param state  The state to translate each file in.
+   * @param checkpointDirectory  The directory to keep checkpoints in, which
+   * must be the same each time the job is run.
+   * @param outputDirectory  The directory to write translations to.
+   * @throws IOException if the language cannot be loaded or the directories
+   * made.
+   * @throws IllegalArgumentException if the state is not permitted.
+   */
+  public TranslationJob(LanguageRegistry registry, String languageName, int state,
+    File checkpointDirectory, File outputDirectory) throws IOException
+  {
+    this.languageName = languageName;
+    sessions = new SessionPool(registry.getLanguage(languageName));
+    sessions.checkState(state);
+    this.state = state;
+    this.checkpointDirectory = checkpointDirectory;
+    this.outputDirectory = outputDirectory;
+    Files.createDirectories(checkpointDirectory.toPath());
+    Files.createDirectories(outputDirectory.toPath());
+  }
+
+  /**
+   * Sets the encodings of the files, which must carry no state from one
+   * character to the next.
+   *
+   * @param input  The encoding of the files read.
+   * @param output  The encoding of the files written.
+   */
+  public void setEncodings(Charset input, Charset output)
+  {
+    inputEncoding = input;
+    outputEncoding = output;
+  }
+
+  /**
+   * Sets the suffix added to each input filename for its output file,
+   * ".brl" unless set.
+   *
+   * @param suffix  The suffix.
+   */
+  public void setSuffix(String suffix)
+  {
+    this.suffix = suffix;
+  }
+
+  /**
+   * Sets how often checkpoints are written.
+   *
+   * @param bytes  The bytes of input to translate between checkpoints.
+   */
+  public void setInterval(long bytes)
+  {
+    if (bytes < 1)
+      throw new IllegalArgumentException("Interval " + bytes + " is not positive");
+    interval = bytes;
+  }
+
+  /**
+   * Returns how often checkpoints are written.
+   *
+   * @return The bytes of input translated between checkpoints.
+   */
+  public long getInterval()
+  {
+    return interval;
+  }
+
+  /**
+   * Returns the output file of an input file.
+   *
+   * @param input  The input file.
+   * @return The file its translation is written to.
+   */
+  public File getOutputFile(File input)
+  {
+    return new File(outputDirectory, input.getName() + suffix);
+  }
+
+  /**
+   * Translates a file, carrying on from its checkpoint if it has one, or
+   * doing nothing if its checkpoint says it is complete.
+   *
+   * @param input  The file to translate.
+   * @throws IOException if the file cannot be read, or its translation
+   * written in the output encoding.
+   */
+  public void translate(File input) throws IOException
+  {
+    File checkpointFile = getCheckpointFile(input);
+    File output = getOutputFile(input);
+    Checkpoint checkpoint = readCheckpoint(checkpointFile, input);
+    if ((checkpoint != null) && (output.length() < checkpoint.outputLength))
+    // ASSERTION: the output has been cut short since, so start again
+      checkpoint = null;
+    if ((checkpoint != null) && checkpoint.complete)
+    {
+      if (output.length() > checkpoint.outputLength)
+        truncate(output, checkpoint.outputLength);
+      filesSkipped.incrementAndGet();
+      return;
+    }
+
+    ChunkTranslator translator;
+    long inputOffset = 0;
+    long outputLength = 0;
+    if (checkpoint == null)
+    {
+      translator = new ChunkTranslator(sessions, state);
+      filesStarted.incrementAndGet();
+    }
+    else
+    {
+      translator = ChunkTranslator.resume(checkpoint.snapshot, sessions);
+      inputOffset = checkpoint.inputOffset;
+      outputLength = checkpoint.outputLength;
+      filesResumed.incrementAndGet();
+    }
+
+    FileChannel in = FileChannel.open(input.toPath(), new OpenOption[] {StandardOpenOption.READ});
+    FileChannel out = null;
+    try
+    {
+      out = FileChannel.open(output.toPath(), new OpenOption[] {StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE});
+      out.truncate(outputLength);
+      out.position(outputLength);
+      in.position(inputOffset);
+      CharsetDecoder decoder = inputEncoding.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+      CharsetEncoder encoder = outputEncoding.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPORT)
+        .onUnmappableCharacter(CodingErrorAction.REPORT);
+      ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+      CharBuffer characters = CharBuffer.allocate(BUFFER_SIZE);
+      long sinceCheckpoint = 0;
+      boolean end = false;
+      while (!end)
+      {
+        end = (in.read(bytes) == -1);
+        bytes.flip();
+        CoderResult result = decoder.decode(bytes, characters, end);
+        if (result.isError())
+          result.throwException();
+        if (result.isOverflow())
+        // ASSERTION: more characters to take from bytes before the end
+          end = false;
+        else if (end)
+          decoder.flush(characters);
+        // ASSERTION: whole characters only have been taken from bytes, so the
+        //  input position is at the start of a character
+        inputOffset += bytes.position();
+        sinceCheckpoint += bytes.position();
+        bytes.compact();
+        characters.flip();
+        if (characters.hasRemaining())
+          outputLength += write(out, encoder, translator.translate(characters.toString()));
+        characters.clear();
+        if (!end && (sinceCheckpoint >= interval))
+        {
+          out.force(false);
+          writeCheckpoint(checkpointFile, input, false, inputOffset, outputLength,
+            translator.snapshot(languageName));
+          sinceCheckpoint = 0;
+        }
+      }
+      outputLength += write(out, encoder, translator.finish());
+      out.force(false);
+      writeCheckpoint(checkpointFile, input, true, inputOffset, outputLength, new byte[0]);
+      bytesTranslated.addAndGet(inputOffset - ((checkpoint == null) ? 0 : checkpoint.inputOffset));
+    }
+    finally
+    {
+      translator.abandon();
+      in.close();
+      if (out != null)
+        out.close();
+    }
+  }
+
+  /**
+   * Translates files on several threads, each as <CODE>translate</CODE>
+   * does.  Files that cannot be translated are reported on the standard
+   * error stream, and the rest still translated.
+   *
+   * @param inputs  The files to translate.
+   * @param numberThreads  The number of files to translate at once.
+   * @return The number of files that could not be translated.
+   * @throws IllegalArgumentException if two of the files have the same name,
+   * and so the same output file, in which case none is translated.
+   */
+  public int run(File[] inputs, int numberThreads) throws InterruptedException
+  {
+    File[] outputs = new File[inputs.length];
+    for (int file = 0; file < inputs.length; file++)
+      outputs[file] = getOutputFile(inputs[file]);
+    BulkTranslator.checkOutputs(inputs, outputs);
+    ExecutorService threads = Executors.newFixedThreadPool(Math.max(1, numberThreads));
+    Future<?>[] done = new Future<?>[inputs.length];
+    try
+    {
+      for (int file = 0; file < inputs.length; file++)
+      {
+        final File input = inputs[file];
+        done[file] = threads.submit(new Callable<Void>()
+        {
+          public Void call() throws IOException
+          {
+            translate(input);
+            return null;
+          }
+        });
+      }
+      int failed = 0;
+      for (int file = 0; file < inputs.length; file++)
+      {
+        try
+        {
+          done[file].get();
+        }
+        catch (ExecutionException e)
+        {
+          System.err.println(inputs[file] + ": " + e.getCause());
+          failed++;
+        }
+      }
+      return failed;
+    }
+    finally
+    {
+      threads.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns the number of files found complete and skipped.
+   *
+   * @return The number of files skipped.
+   */
+  public int getFilesSkipped()
+  {
+    return filesSkipped.get();
+  }
+
+  /**
+   * Returns the number of files carried on from a checkpoint.
+   *
+   * @return The number of files resumed.
+   */
+  public int getFilesResumed()
+  {
+    return filesResumed.get();
+  }
+
+  /**
+   * Returns the number of files translated from the start.
+   *
+   * @return The number of files started.
+   */
+  public int getFilesStarted()
+  {
+    return filesStarted.get();
+  }
+
+  /**
+   * Returns the number of bytes of input translated in this run.
+   *
+   * @return The bytes translated, not counting those translated before the
+   * checkpoints resumed from.
+   */
+  public long getBytesTranslated()
+  {
+    return bytesTranslated.get();
+  }
+
+  /**
+   * Runs a job on the command line.  The exit code is the number of files
+   * that failed, or 255 if more than 255 failed.
+   *
+   * @param args  Options, the directory holding the language files, the
+   * language, the state, the checkpoint directory, the output directory and
+   * the files to translate.
+   */
+  public static void main(String[] args) throws IOException, InterruptedException
+  {
+    int numberThreads = Runtime.getRuntime().availableProcessors();
+    long interval = DEFAULT_INTERVAL;
+    Charset inputEncoding = StandardCharsets.UTF_8;
+    Charset outputEncoding = StandardCharsets.UTF_8;
+    int arg = 0;
+    try
+    {
+      for (; (arg < args.length) && args[arg].startsWith("-"); arg += 2)
+      {
+        if (arg + 1 >= args.length)
+          throw new IllegalArgumentException("No value for " + args[arg]);
+        if (args[arg].equals("-threads"))
+          numberThreads = Integer.parseInt(args[arg + 1]);
+        else if (args[arg].equals("-interval"))
+          interval = Long.parseLong(args[arg + 1]) * 1024;
+        else if (args[arg].equals("-in"))
+          inputEncoding = Charset.forName(args[arg + 1]);
+        else if (args[arg].equals("-out"))
+          outputEncoding = Charset.forName(args[arg + 1]);
+        else
+          throw new IllegalArgumentException("Unknown option " + args[arg]);
+      }
+      if (args.length - arg < 6)
+        throw new IllegalArgumentException("Too few arguments");
+    }
+    catch (IllegalArgumentException e)
+    {
+      System.out.println(e.getMessage());
+      System.out.println("Usage: java uk.ac.umist.co.brailletrans.TranslationJob "
+        + "[-threads n] [-interval kilobytes] [-in charset] [-out charset] "
+        + "languageDirectory language state checkpointDirectory outputDirectory file...");
+      System.exit(1);
+    }
+
+    TranslationJob job = new TranslationJob(new LanguageRegistry(new File(args[arg])),
+      args[arg + 1], Integer.parseInt(args[arg + 2]), new File(args[arg + 3]),
+      new File(args[arg + 4]));
+    job.setInterval(interval);
+    job.setEncodings(inputEncoding, outputEncoding);
+    long started = System.currentTimeMillis();
+    int failed = 0;
+    try
+    {
+      failed = job.run(BulkTranslator.expand(Arrays.copyOfRange(args, arg + 5, args.length)),
+        numberThreads);
+    }
+    catch (IllegalArgumentException e)
+    {
+      System.out.println(e.getMessage());
+      System.exit(1);
+    }
+    System.err.println(job.getFilesStarted() + " files started, " + job.getFilesResumed()
+      + " resumed, " + job.getFilesSkipped() + " already complete, "
+      + (job.getBytesTranslated() / 1024) + "K translated in "
+      + (System.currentTimeMillis() - started) + "ms"
+      + ((failed == 0) ? "" : ", " + failed + " failed"));
+    // exit codes are taken modulo 256, so 256 failures must not look like none
+    System.exit(Math.min(failed, 255));
+  }
+
+  //***** PRIVATE METHODS ***********************************************
+  private File getCheckpointFile(File input) throws IOException
+  // Returns the checkpoint file of an input file, named for both its name and
+  // its path so files of the same name in different directories differ.
+  {
+    String path = input.getCanonicalPath();
+    return new File(checkpointDirectory, input.getName() + "-"
+      + Integer.toHexString(path.hashCode()) + CHECKPOINT_EXTENSION);
+  }
+
+  private static long write(FileChannel out, CharsetEncoder encoder, String text)
+    throws IOException
+  // Writes text in an encoding, returning the number of bytes written.
+  {
+    if (text.length() == 0)
+      return 0;
+    ByteBuffer bytes = encoder.encode(CharBuffer.wrap(text));
+    long toReturn = bytes.remaining();
+    while (bytes.hasRemaining())
+      out.write(bytes);
+    return toReturn;
+  }
+
+  private static void truncate(File file, long length) throws IOException
+  {
+    FileChannel channel = FileChannel.open(file.toPath(),
+      new OpenOption[] {StandardOpenOption.WRITE});
+    try
+    {
+      channel.truncate(length);
+    }
+    finally
+    {
+      channel.close();
+    }
+  }
+
+  private void writeCheckpoint(File checkpointFile, File input, boolean complete,
+    long inputOffset, long outputLength, byte[] snapshot) throws IOException
+  // Writes a checkpoint to disk, replacing the last in one step.
+  {
+    File temporary = Files.createTempFile(checkpointDirectory.toPath(), ".", ".tmp").toFile();
+    try
+    {
+      FileOutputStream file = new FileOutputStream(temporary);
+      try
+      {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+        out.writeInt(CHECKPOINT_MAGIC);
+        out.writeShort(CHECKPOINT_VERSION);
+        out.writeUTF(input.getCanonicalPath());
+        out.writeLong(input.length());
+        out.writeLong(input.lastModified());
+        out.writeBoolean(complete);
+        out.writeLong(inputOffset);
+        out.writeLong(outputLength);
+        out.writeInt(snapshot.length);
+        out.write(snapshot);
+        out.flush();
+        file.getFD().sync();
+      }
+      finally
+      {
+        file.close();
+      }
+      try
+      {
+        Files.move(temporary.toPath(), checkpointFile.toPath(), new CopyOption[] {
+          StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING});
+      }
+      catch (AtomicMoveNotSupportedException e)
+      {
+        Files.move(temporary.toPath(), checkpointFile.toPath(), new CopyOption[] {
+          StandardCopyOption.REPLACE_EXISTING});
+      }
+    }
+    finally
+    {
+      temporary.delete();
+    }
+  }
+
+  private static Checkpoint readCheckpoint(File checkpointFile, File input)
+    throws IOException
+  // Returns the checkpoint of an input file, or null if it has none or has
+  // changed since.
+  {
+    if (!checkpointFile.isFile())
+      return null;
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+      new FileInputStream(checkpointFile)));
+    try
+    {
+      if ((in.readInt() != CHECKPOINT_MAGIC) || (in.readUnsignedShort() > CHECKPOINT_VERSION)
+        || !in.readUTF().equals(input.getCanonicalPath())
+        || (in.readLong() != input.length()) || (in.readLong() != input.lastModified()))
+        return null;
+      Checkpoint toReturn = new Checkpoint();
+      toReturn.complete = in.readBoolean();
+      toReturn.inputOffset = in.readLong();
+      toReturn.outputLength = in.readLong();
+      toReturn.snapshot = new byte[in.readInt()];
+      in.readFully(toReturn.snapshot);
+      return toReturn;
+    }
+    catch (EOFException e)
+    // ASSERTION: not a checkpoint this wrote, so start again
+    {
+      return null;
+    }
+    finally
+    {
+      in.close();
+    }
+  }
+
+  private static class Checkpoint
+  // The progress through one file recorded in its checkpoint
+  {
+    private boolean complete;
+    private long inputOffset;
+    // bytes of input read
+    private long outputLength;
+    // bytes of output written and forced to disk
+    private byte[] snapshot;
+    // of the translator, if not complete
+  } // end of Checkpoint class
+}
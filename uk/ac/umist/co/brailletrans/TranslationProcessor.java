@@ -0,0 +1,302 @@
+package uk.ac.umist.co.brailletrans;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A <CODE>Flow.Processor</CODE> that translates a text arriving in chunks
+ * with a <CODE>Language</CODE> and publishes the translation in chunks.
+ *
+ * <p>The chunks are translated as one text by a <CODE>ChunkTranslator</CODE>,
+ * so the state of the machine carries from one to the next, rules see the
+ * text either side of a chunk boundary, and small chunks are gathered and
+ * translated together.
+ *
+ * <p>Chunks are only requested from upstream while the subscriber has
+ * demand, so a slow subscriber slows translation rather than letting
+ * translated text build up.  At most <CODE>UPSTREAM_REQUEST</CODE> chunks
+ * and one batch of translated text are held at once.  Translation is done on
+ * whichever thread delivers a chunk or a request.
+ *
+ * <p>A <CODE>TranslationProcessor</CODE> has one subscriber and translates one
+ * text.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class TranslationProcessor implements Flow.Processor<String, String>
+{
+  /**
+   * The number of characters before the end of the text given at which a
+   * translation is cut, so that rules seldom look as far as the end and have
+   * to wait for more.
+   */
+  public static final int CONTEXT_SIZE = ChunkTranslator.CONTEXT_SIZE;
+  /**
+   * The number of characters to gather before translating them.
+   */
+  public static final int BATCH_SIZE = ChunkTranslator.BATCH_SIZE;
+  /**
+   * The number of chunks requested from upstream at a time.
+   */
+  public static final int UPSTREAM_REQUEST = 16;
+
+  private ChunkTranslator translator;
+  // translates the chunks as one text
+
+  private volatile Flow.Subscription upstream;
+  private volatile Flow.Subscriber<? super String> downstream;
+  private volatile boolean upstreamDone;
+  private volatile Throwable upstreamError;
+  private volatile boolean cancelled;
+  private volatile Throwable requestError;
+  // a request the subscriber should not have made, signalled by drain
+  private AtomicLong requested = new AtomicLong();
+  // unmet demand of the subscriber
+  private ConcurrentLinkedQueue<String> arrived = new ConcurrentLinkedQueue<String>();
+  // chunks from upstream not yet given to the translator
+  private AtomicInteger drainRequests = new AtomicInteger();
+  // the number of calls to drain since the draining thread last looked; only
+  // the thread that raised it from zero drains
+
+  // Owned by the draining thread:
+  private int outstanding;
+  // chunks requested from upstream and not yet arrived
+  private LinkedList<String> translated = new LinkedList<String>();
+  // translated chunks waiting for demand
+  private boolean flushed;
+  // the end of the text has been translated
+  private boolean finished;
+  // the subscriber has been told the text is complete
+
+  /**
+   * Creates a <CODE>TranslationProcessor</CODE> that translates with language
+   * starting in state.
+   *
+   * @param language  A <CODE>Language256</CODE>, <CODE>LanguageInteger</CODE>
+   * or <CODE>LanguageUnicode</CODE> to translate with, which must not be
+   * altered while the processor is in use.
+   * @param state  The state to start in and return to when no rule matches.
+   * @throws IllegalArgumentException if the state is not permitted.
+   */
+  public TranslationProcessor(Language language, int state)
+  {
+    translator = new ChunkTranslator(language, state);
+  }
+
+  //***** SUBSCRIBER ****************************************************
+  public void onSubscribe(Flow.Subscription subscription)
+  {
+    if (upstream != null)
+    {
+      subscription.cancel();
+      return;
+    }
+    upstream = subscription;
+    if (cancelled)
+      subscription.cancel();
+    else
+      drain();
+  }
+
+  public void onNext(String chunk)
+  {
+    arrived.add(chunk);
+    drain();
+  }
+
+  public void onError(Throwable error)
+  {
+    upstreamError = error;
+    upstreamDone = true;
+    drain();
+  }
+
+  public void onComplete()
+  {
+    upstreamDone = true;
+    drain();
+  }
+
+  //***** PUBLISHER *****************************************************
+  public void subscribe(Flow.Subscriber<? super String> subscriber)
+  {
+    boolean first;
+    synchronized (this)
+    {
+      first = (downstream == null);
+      if (first)
+        downstream = subscriber;
+    }
+    if (first)
+    {
+      subscriber.onSubscribe(new Subscription());
+      drain();
+    }
+    else
+    {
+      subscriber.onSubscribe(new Flow.Subscription()
+      {
+        public void request(long n)
+        {
+        }
+
+        public void cancel()
+        {
+        }
+      });
+      subscriber.onError(new IllegalStateException("Already has a subscriber"));
+    }
+  }
+
+  private class Subscription implements Flow.Subscription
+  {
+    public void request(long n)
+    {
+      if (n <= 0)
+      {
+        if (requestError == null)
+          requestError = new IllegalArgumentException(
+            "Requests must be positive, not " + n);
+        drain();
+        return;
+      }
+      long current;
+      long updated;
+      do
+      {
+        current = requested.get();
+        updated = current + n;
+        if (updated < 0)
+          updated = Long.MAX_VALUE;
+      } while (!requested.compareAndSet(current, updated));
+      drain();
+    }
+
+    public void cancel()
+    {
+      cancelled = true;
+      Flow.Subscription subscription = upstream;
+      if (subscription != null)
+        subscription.cancel();
+      drain();
+      // ASSERTION: the draining thread releases the translator's session
+    }
+  } // end of Subscription class
+
+  //***** PRIVATE METHODS ***********************************************
+  private void drain()
+  // Does whatever can be done now: takes arrived chunks, publishes
+  // translations there is demand for, translates and requests more, or
+  // signals an error and stops.  Only one thread drains at a time; calls made
+  // meanwhile make it go round again, so the subscriber is signalled by one
+  // thread at a time.
+  {
+    if (drainRequests.getAndIncrement() != 0)
+      return;
+    int missed = 1;
+    while (true)
+    {
+      Flow.Subscriber<? super String> subscriber = downstream;
+      if (!cancelled && (subscriber != null))
+      {
+        if (requestError != null)
+          stop(subscriber, requestError);
+        else
+        {
+          try
+          {
+            step(subscriber);
+          }
+          catch (RuntimeException e)
+          {
+            stop(subscriber, e);
+          }
+        }
+      }
+      if (cancelled)
+      {
+        arrived.clear();
+        translated.clear();
+        translator.abandon();
+      }
+      missed = drainRequests.addAndGet(-missed);
+      if (missed == 0)
+        return;
+    }
+  }
+
+  private void stop(Flow.Subscriber<? super String> subscriber, Throwable error)
+  // Cancels upstream and signals error to the subscriber.
+  {
+    cancelled = true;
+    if (upstream != null)
+      upstream.cancel();
+    subscriber.onError(error);
+  }
+
+  private void step(Flow.Subscriber<? super String> subscriber)
+  // Moves the text along as far as demand allows.
+  {
+    while (true)
+    {
+      // Publish what there is demand for
+      long demand = requested.get();
+      long published = 0;
+      while ((published < demand) && !translated.isEmpty() && !cancelled)
+      {
+        subscriber.onNext(translated.removeFirst());
+        published++;
+      }
+      if ((published > 0) && (demand != Long.MAX_VALUE))
+        requested.addAndGet(-published);
+      if (cancelled || !translated.isEmpty())
+        return;
+
+      // Translate what has arrived
+      if (flushed)
+        break;
+      boolean last = upstreamDone;
+      // ASSERTION: nothing arrives after upstream is done
+      StringBuffer chunks = new StringBuffer();
+      String chunk;
+      while ((chunk = arrived.poll()) != null)
+      {
+        chunks.append(chunk);
+        outstanding--;
+      }
+      String output = translator.translate(chunks.toString());
+      if (last)
+      {
+        output = output + translator.finish();
+        flushed = true;
+      }
+      if (output.length() > 0)
+        translated.addLast(output);
+      else if (!flushed)
+        break;
+      if (requested.get() == 0)
+        return;
+    }
+
+    if (flushed)
+    {
+      if (!finished)
+      {
+        finished = true;
+        if (upstreamError != null)
+          subscriber.onError(upstreamError);
+        else
+          subscriber.onComplete();
+      }
+    }
+    else if ((outstanding <= 0) && (requested.get() > 0) && (upstream != null))
+    {
+      outstanding = UPSTREAM_REQUEST;
+      upstream.request(UPSTREAM_REQUEST);
+    }
+  }
+}
@@ -0,0 +1,370 @@
+package uk.ac.umist.co.brailletrans;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+import com.sun.net.httpserver.*;
+
+/**
+ * A local HTTP service translating text with the languages of a
+ * <CODE>LanguageRegistry</CODE>, using only the HTTP server built into the
+ * JDK.
+ *
+ * <p>The service answers two requests:
+ * <ul>
+ * <li><CODE>GET /languages</CODE> lists the names of the languages, one per
+ * line.
+ * <li><CODE>POST /translate/<I>name</I>?state=<I>n</I></CODE> translates the
+ * request body with the language called <I>name</I>, in state <I>n</I> or 1 if
+ * none is given.  Text is UTF-8 both ways.
+ * </ul>
+ *
+ * <p>A request body of known length up to <CODE>MAX_FIXED_LENGTH</CODE> bytes
+ * is translated whole and answered with a body of known length.  Any other,
+ * such as a chunked body, is translated as it is read with a
+ * <CODE>ChunkTranslator</CODE> and answered with a chunked body, so documents
+ * of any size are translated in little memory.  Connections are kept alive
+ * between requests.  Each request runs on a virtual thread where the Java
+ * runtime has them.  A language is loaded and its sessions made when it is
+ * first asked for, so the service starts at once whatever the size of the
+ * registry, and holds only the languages in use.  Languages named to
+ * <CODE>prepare</CODE> are loaded beforehand, so their first requests need
+ * not wait.
+ *
+ * <p>The service asks for no credentials, so when run with <CODE>main</CODE>
+ * it listens only on the loopback address unless another address to listen
+ * on is given.
+ *
+ * <p>When run with <CODE>main</CODE>, responses are sent without waiting on
+ * delayed acknowledgements.  This is a setting of the whole Java virtual
+ * machine, so a program starting the service itself is left to choose: start
+ * the virtual machine with <CODE>-Dsun.net.httpserver.nodelay=true</CODE>,
+ * or set that property before any JDK HTTP server is made, for the same
+ * latency.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class TranslationServer
+{
+  /**
+   * The largest request body translated whole.
+   */
+  public static final int MAX_FIXED_LENGTH = 64 * 1024;
+  private static final int BUFFER_SIZE = 8192;
+  private static final String TRANSLATE_PATH = "/translate/";
+  private static final String LANGUAGES_PATH = "/languages";
+  private static final Charset UTF8 = StandardCharsets.UTF_8;
+  private static final String TEXT_TYPE = "text/plain; charset=UTF-8";
+
+  private LanguageRegistry registry;
+  // the languages to translate with
+  private int sessionsPerLanguage;
+  // the sessions to make of each language when it is first used
+  private HttpServer server;
+  private ExecutorService threads;
+  // runs each request
+  private ConcurrentHashMap<Language, SessionPool> sessions =
+    new ConcurrentHashMap<Language, SessionPool>();
+  // the sessions of each language
+
+  /**
+   * Creates a <CODE>TranslationServer</CODE> that makes one session of a
+   * language per processor when the language is first used.
+   *
+   * @param registry  The languages to translate with.
+   * @param address  The address to listen on.
+   * @throws IOException if the address cannot be listened on.
+   */
+  public TranslationServer(LanguageRegistry registry, InetSocketAddress address)
+    throws IOException
+  {
+    this(registry, address, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a <CODE>TranslationServer</CODE>.
+   *
+   * @param registry  The languages to translate with.
+   * @param address  The address to listen on.
+   * @param sessionsPerLanguage  The sessions to make of each language when it
+   * is first used.
+   * @throws IOException if the address cannot be listened on.
+   */
+  public TranslationServer(LanguageRegistry registry, InetSocketAddress address,
+    int sessionsPerLanguage) throws IOException
+  {
+    this.registry = registry;
+    this.sessionsPerLanguage = sessionsPerLanguage;
+    server = HttpServer.create(address, 0);
+    threads = TranslationExecutor.newVirtualThreadExecutor();
+    if (threads == null)
+      threads = Executors.newCachedThreadPool();
+    server.setExecutor(threads);
+    server.createContext(LANGUAGES_PATH, new HttpHandler()
+    {
+      public void handle(HttpExchange exchange) throws IOException
+      {
+        handleLanguages(exchange);
+      }
+    });
+    server.createContext(TRANSLATE_PATH, new HttpHandler()
+    {
+      public void handle(HttpExchange exchange) throws IOException
+      {
+        handleTranslate(exchange);
+      }
+    });
+  }
+
+  /**
+   * Loads languages and makes their sessions now rather than when they are
+   * first asked for, so the first requests for them are answered as quickly
+   * as any other.  Call this before <CODE>start</CODE>.
+   *
+   * @param names  The names of the languages in the registry to load.
+   * @throws IOException if a language cannot be loaded.
+   */
+  public void prepare(String[] names) throws IOException
+  {
+    for (int i = 0; i < names.length; i++)
+      getSessions(registry.getLanguage(names[i]));
+  }
+
+  /**
+   * Starts answering requests.
+   */
+  public void start()
+  {
+    server.start();
+  }
+
+  /**
+   * Stops answering requests, waiting for those under way to finish.
+   *
+   * @param delay  The most seconds to wait.
+   */
+  public void stop(int delay)
+  {
+    server.stop(delay);
+    threads.shutdown();
+  }
+
+  /**
+   * Returns the address the service listens on.
+   *
+   * @return The address.
+   */
+  public InetSocketAddress getAddress()
+  {
+    return server.getAddress();
+  }
+
+  /**
+   * Runs the service on the command line.
+   *
+   * @param args  The directory holding the language files, then optionally
+   * the port to listen on, 8080 if none is given, then optionally the address
+   * to listen on, the loopback address if none is given.
+   */
+  public static void main(String[] args) throws IOException
+  {
+    if (args.length < 1)
+    {
+      System.out.println("Usage: java uk.ac.umist.co.brailletrans.TranslationServer "
+        + "languageDirectory [port [address]]");
+      return;
+    }
+    // Send each response at once rather than waiting for the client to
+    // acknowledge the headers.  The JDK server reads this when first used.
+    if (System.getProperty("sun.net.httpserver.nodelay") == null)
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    int port = (args.length > 1) ? Integer.parseInt(args[1]) : 8080;
+    // Only listen beyond this machine when asked to
+    InetAddress address = (args.length > 2) ? InetAddress.getByName(args[2])
+      : InetAddress.getLoopbackAddress();
+    TranslationServer translationServer = new TranslationServer(
+      new LanguageRegistry(new File(args[0])), new InetSocketAddress(address, port));
+    translationServer.start();
+    System.out.println("Translating on port " + translationServer.getAddress().getPort());
+  }
+
+  //***** PRIVATE METHODS ***********************************************
+  private SessionPool getSessions(Language language)
+  // Returns the sessions of a language, making a pool for it and its first
+  // sessions if it is new.
+  {
+    SessionPool pool = sessions.get(language);
+    if (pool == null)
+    {
+      SessionPool made = new SessionPool(language);
+      pool = sessions.putIfAbsent(language, made);
+      if (pool == null)
+      {
+        made.prepare(sessionsPerLanguage);
+        pool = made;
+      }
+    }
+    return pool;
+  }
+
+  private void handleLanguages(HttpExchange exchange) throws IOException
+  {
+    try
+    {
+      if (!"GET".equals(exchange.getRequestMethod()))
+      {
+        sendError(exchange, 405, "Use GET");
+        return;
+      }
+      String[] names = registry.getNames();
+      StringBuffer list = new StringBuffer();
+      for (int i = 0; i < names.length; i++)
+        list.append(names[i]).append('\n');
+      send(exchange, 200, list.toString());
+    }
+    finally
+    {
+      exchange.close();
+    }
+  }
+
+  private void handleTranslate(HttpExchange exchange) throws IOException
+  {
+    try
+    {
+      if (!"POST".equals(exchange.getRequestMethod()))
+      {
+        sendError(exchange, 405, "Use POST");
+        return;
+      }
+      String name = exchange.getRequestURI().getPath().substring(TRANSLATE_PATH.length());
+      Language language;
+      try
+      {
+        language = registry.getLanguage(name);
+      }
+      catch (FileNotFoundException e)
+      {
+        sendError(exchange, 404, "No language called " + name);
+        return;
+      }
+      catch (IOException e)
+      {
+        sendError(exchange, 500, "Cannot load " + name + ": " + e.getMessage());
+        return;
+      }
+      ChunkTranslator translator;
+      try
+      {
+        translator = new ChunkTranslator(getSessions(language),
+          getState(exchange.getRequestURI().getRawQuery()));
+      }
+      catch (IllegalArgumentException e)
+      {
+        sendError(exchange, 400, e.getMessage());
+        return;
+      }
+
+      try
+      {
+        Reader in = new InputStreamReader(exchange.getRequestBody(), UTF8);
+        char[] buffer = new char[BUFFER_SIZE];
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        exchange.getResponseHeaders().set("Content-Type", TEXT_TYPE);
+        if ((length != null) && (Long.parseLong(length.trim()) <= MAX_FIXED_LENGTH))
+        // ASSERTION: small enough to translate whole
+        {
+          StringBuffer text = new StringBuffer();
+          int read;
+          while ((read = in.read(buffer)) != -1)
+            text.append(buffer, 0, read);
+          String translated = translator.translate(text.toString()) + translator.finish();
+          send(exchange, 200, translated);
+        }
+        else
+        {
+          exchange.sendResponseHeaders(200, 0);
+          Writer out = new OutputStreamWriter(exchange.getResponseBody(), UTF8);
+          int read;
+          while ((read = in.read(buffer)) != -1)
+          {
+            String translated = translator.translate(new String(buffer, 0, read));
+            if (translated.length() > 0)
+            {
+              out.write(translated);
+              out.flush();
+            }
+          }
+          out.write(translator.finish());
+          out.close();
+        }
+      }
+      finally
+      {
+        translator.abandon();
+      }
+    }
+    catch (NumberFormatException e)
+    {
+      sendError(exchange, 400, "Bad Content-Length");
+    }
+    catch (RuntimeException e)
+    {
+      if (exchange.getResponseCode() == -1)
+      // ASSERTION: no headers sent yet, so the failure can be answered
+        sendError(exchange, 500, "Translation failed: " + e);
+      else
+        throw e;
+    }
+    finally
+    {
+      exchange.close();
+    }
+  }
+
+  private static int getState(String query)
+  // Returns the state asked for in a query, or 1 if none is.
+  {
+    if (query != null)
+    {
+      StringTokenizer parameters = new StringTokenizer(query, "&");
+      while (parameters.hasMoreTokens())
+      {
+        String parameter = parameters.nextToken();
+        if (parameter.startsWith("state="))
+        {
+          try
+          {
+            return Integer.parseInt(parameter.substring("state=".length()));
+          }
+          catch (NumberFormatException e)
+          {
+            throw new IllegalArgumentException("Bad state " + parameter);
+          }
+        }
+      }
+    }
+    return 1;
+  }
+
+  private static void send(HttpExchange exchange, int status, String body)
+    throws IOException
+  {
+    byte[] bytes = body.getBytes(UTF8);
+    exchange.getResponseHeaders().set("Content-Type", TEXT_TYPE);
+    exchange.sendResponseHeaders(status, (bytes.length == 0) ? -1 : bytes.length);
+    if (bytes.length > 0)
+      exchange.getResponseBody().write(bytes);
+  }
+
+  private static void sendError(HttpExchange exchange, int status, String message)
+    throws IOException
+  {
+    send(exchange, status, message + "\n");
+  }
+}
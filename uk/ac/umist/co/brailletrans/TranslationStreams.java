@@ -0,0 +1,240 @@
+package uk.ac.umist.co.brailletrans;
+import java.util.*;
+import java.util.function.*;
+import java.util.stream.*;
+
+/**
+ * Translates streams of texts, such as the lines or paragraphs of a corpus,
+ * with a <CODE>Language</CODE>.  Parallel streams are translated on the
+ * common <CODE>ForkJoinPool</CODE>, each worker with a session of the language
+ * of its own, and the translated texts keep the order of the originals.
+ *
+ * <p>Each text is translated on its own, starting in the state given, as
+ * <CODE>setState(state)</CODE> followed by <CODE>translate(text)</CODE> would.
+ * The language must not be altered while a stream using it is in use.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public final class TranslationStreams
+{
+  private TranslationStreams()
+  {
+  }
+
+  /**
+   * Returns a stream of the translations of texts, which is parallel if
+   * texts is.  Closing it closes texts.
+   *
+   * @param texts  The texts to translate.
+   * @param language  A <CODE>Language256</CODE>, <CODE>LanguageInteger</CODE>
+   * or <CODE>LanguageUnicode</CODE> to translate with.
+   * @param state  The state to translate in.
+   * @return The translated texts, in the order of texts.
+   * @throws IllegalArgumentException if the state is not permitted.
+   */
+  public static Stream<String> translate(final Stream<String> texts, Language language,
+    int state)
+  {
+    Spliterator<String> translated = spliterator(texts.spliterator(), language, state);
+    return StreamSupport.stream(translated, texts.isParallel()).onClose(new Runnable()
+    {
+      public void run()
+      {
+        texts.close();
+      }
+    });
+  }
+
+  /**
+   * Returns a <CODE>Spliterator</CODE> over the translations of the texts of
+   * another.  Each part it is split into borrows one session of the language
+   * for as long as it is traversed in bulk.
+   *
+   * @param texts  The texts to translate.
+   * @param language  A <CODE>Language256</CODE>, <CODE>LanguageInteger</CODE>
+   * or <CODE>LanguageUnicode</CODE> to translate with.
+   * @param state  The state to translate in.
+   * @return The translated texts, in the order of texts.
+   * @throws IllegalArgumentException if the state is not permitted.
+   */
+  public static Spliterator<String> spliterator(Spliterator<String> texts,
+    Language language, int state)
+  {
+    SessionPool sessions = new SessionPool(language);
+    sessions.checkState(state);
+    return new TranslatingSpliterator(texts, sessions, state);
+  }
+
+  /**
+   * Returns a <CODE>Collector</CODE> that translates texts into a
+   * <CODE>List</CODE>, in encounter order.  Each container the collector
+   * makes holds one session of the language, so a parallel stream translates
+   * with one session per worker.
+   *
+   * @param language  A <CODE>Language256</CODE>, <CODE>LanguageInteger</CODE>
+   * or <CODE>LanguageUnicode</CODE> to translate with.
+   * @param state  The state to translate in.
+   * @return The collector.
+   * @throws IllegalArgumentException if the state is not permitted.
+   */
+  public static Collector<String, ?, List<String>> toTranslatedList(Language language,
+    final int state)
+  {
+    final SessionPool sessions = new SessionPool(language);
+    sessions.checkState(state);
+    return Collector.of(
+      new Supplier<Translated>()
+      {
+        public Translated get()
+        {
+          return new Translated(sessions, state);
+        }
+      },
+      new BiConsumer<Translated, String>()
+      {
+        public void accept(Translated translated, String text)
+        {
+          translated.add(text);
+        }
+      },
+      new BinaryOperator<Translated>()
+      {
+        public Translated apply(Translated translated, Translated other)
+        {
+          return translated.combine(other);
+        }
+      },
+      new Function<Translated, List<String>>()
+      {
+        public List<String> apply(Translated translated)
+        {
+          return translated.finish();
+        }
+      });
+  }
+
+  private static class Translated
+  // A collector container: the texts translated so far and the session
+  // translating them, held until the container is combined or finished
+  {
+    private SessionPool sessions;
+    private RangeTranslator session;
+    private int state;
+    private ArrayList<String> output = new ArrayList<String>();
+
+    private Translated(SessionPool sessions, int state)
+    {
+      this.sessions = sessions;
+      this.state = state;
+    }
+
+    private void add(String text)
+    {
+      if (session == null)
+        session = sessions.get();
+      output.add(session.translate(text, state));
+    }
+
+    private Translated combine(Translated other)
+    {
+      output.addAll(other.output);
+      other.releaseSession();
+      return this;
+    }
+
+    private List<String> finish()
+    {
+      releaseSession();
+      return output;
+    }
+
+    private void releaseSession()
+    {
+      if (session != null)
+        sessions.release(session);
+      session = null;
+    }
+  } // end of Translated class
+
+  private static class TranslatingSpliterator implements Spliterator<String>
+  // Translates the texts of another Spliterator as they are taken
+  {
+    private Spliterator<String> texts;
+    private SessionPool sessions;
+    private int state;
+
+    private TranslatingSpliterator(Spliterator<String> texts, SessionPool sessions,
+      int state)
+    {
+      this.texts = texts;
+      this.sessions = sessions;
+      this.state = state;
+    }
+
+    public boolean tryAdvance(Consumer<? super String> action)
+    {
+      RangeTranslator session = sessions.get();
+      try
+      {
+        return texts.tryAdvance(translating(session, action));
+      }
+      finally
+      {
+        sessions.release(session);
+      }
+    }
+
+    public void forEachRemaining(Consumer<? super String> action)
+    {
+      RangeTranslator session = sessions.get();
+      try
+      {
+        texts.forEachRemaining(translating(session, action));
+      }
+      finally
+      {
+        sessions.release(session);
+      }
+    }
+
+    private Consumer<String> translating(final RangeTranslator session,
+      final Consumer<? super String> action)
+    // Returns a Consumer that passes each text to action translated with
+    // session.
+    {
+      return new Consumer<String>()
+      {
+        public void accept(String text)
+        {
+          action.accept(session.translate(text, state));
+        }
+      };
+    }
+
+    public Spliterator<String> trySplit()
+    {
+      Spliterator<String> split = texts.trySplit();
+      if (split == null)
+        return null;
+      else
+        return new TranslatingSpliterator(split, sessions, state);
+    }
+
+    public long estimateSize()
+    {
+      return texts.estimateSize();
+    }
+
+    public int characteristics()
+    {
+      // translation keeps the order and number of texts, but not their
+      // sorting or distinctness
+      return (texts.characteristics() & (ORDERED | SIZED | SUBSIZED | IMMUTABLE
+        | CONCURRENT)) | NONNULL;
+    }
+  } // end of TranslatingSpliterator class
+}
@@ -0,0 +1,152 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * AffinityTest
+ * Copies each language in a directory under several names, runs several
+ * BinaryTranslationServer nodes on the loopback interface and sends each line
+ * of a file in every language through a LanguageRouter.  Then stops one node
+ * and does it again.  Checks every translation against translating directly,
+ * and that each node ends up with only the languages it owns loaded.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class AffinityTest extends Translator
+{
+  private static final int COPIES = 8;
+  // names each language is copied under
+  private static final int UNLOAD_AFTER = 500;
+  // milliseconds a node keeps a language it is not sent
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 3)
+    {
+      System.out.println("AffinityTest");
+      System.out.println("USAGE  java AffinityTest <languageDirectory> <file> <nodes>");
+      System.exit(SUCCESS);
+    }
+
+    // Copy the languages under several names
+    String[] original = new LanguageRegistry(new File(args[0])).getNames();
+    File directory = Files.createTempDirectory("AffinityTest").toFile();
+    File[] files = new File(args[0]).listFiles();
+    for (int i = 0; i < files.length; i++)
+      for (int name = 0; name < original.length; name++)
+        if (files[i].getName().startsWith(original[name] + "."))
+          for (int copy = 0; copy < COPIES; copy++)
+          {
+            File target = new File(directory, original[name] + copy
+              + files[i].getName().substring(original[name].length()));
+            Files.copy(files[i].toPath(), target.toPath());
+            target.deleteOnExit();
+          }
+    directory.deleteOnExit();
+    String[] names = new LanguageRegistry(directory).getNames();
+
+    Vector<String> lines = new Vector<String>();
+    BufferedReader in = new BufferedReader(new FileReader(args[1]));
+    String line;
+    while ((line = in.readLine()) != null)
+      lines.addElement(line);
+    in.close();
+    Hashtable<String, String[]> expected = new Hashtable<String, String[]>();
+    LanguageRegistry local = new LanguageRegistry(directory);
+    for (int name = 0; name < names.length; name++)
+    {
+      Language language = local.getLanguage(names[name]);
+      String[] translated = new String[lines.size()];
+      for (int i = 0; i < translated.length; i++)
+      {
+        language.setState(1);
+        translated[i] = language.translate(lines.elementAt(i));
+      }
+      expected.put(names[name], translated);
+    }
+
+    int numberNodes = Integer.parseInt(args[2]);
+    LanguageRegistry[] registries = new LanguageRegistry[numberNodes];
+    BinaryTranslationServer[] servers = new BinaryTranslationServer[numberNodes];
+    LanguageRouter router = new LanguageRouter();
+    for (int node = 0; node < numberNodes; node++)
+    {
+      registries[node] = new LanguageRegistry(directory);
+      servers[node] = new BinaryTranslationServer(registries[node],
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      servers[node].setUnloadAfter(UNLOAD_AFTER);
+      servers[node].start();
+      router.addNode(servers[node].getAddress());
+    }
+
+    Hashtable<String, InetSocketAddress> owners = new Hashtable<String, InetSocketAddress>();
+    for (int name = 0; name < names.length; name++)
+      owners.put(names[name], router.getNode(names[name]));
+    report("all nodes", run(router, names, lines, expected), router, servers, registries);
+
+    servers[0].stop();
+    registries[0] = null;
+    int wrong = run(router, names, lines, expected);
+    int moved = 0;
+    for (int name = 0; name < names.length; name++)
+      if (!owners.get(names[name]).equals(router.getNode(names[name])))
+        moved++;
+    System.out.println(moved + " of " + names.length + " languages moved");
+    Thread.sleep(UNLOAD_AFTER * 3);
+    wrong += run(router, names, lines, expected);
+    report("one node stopped", wrong, router, servers, registries);
+
+    router.close();
+    for (int node = 1; node < numberNodes; node++)
+      servers[node].stop();
+    System.exit(SUCCESS);
+  }
+
+  private static int run(LanguageRouter router, String[] names, Vector<String> lines,
+    Hashtable<String, String[]> expected) throws Exception
+  // Translates every line in every language and returns the number wrong.
+  {
+    Vector<Future<String>> sent = new Vector<Future<String>>();
+    for (int name = 0; name < names.length; name++)
+      for (int i = 0; i < lines.size(); i++)
+        sent.addElement(router.translate(names[name], 1, lines.elementAt(i)));
+    int wrong = 0;
+    int request = 0;
+    for (int name = 0; name < names.length; name++)
+    {
+      String[] translated = expected.get(names[name]);
+      for (int i = 0; i < lines.size(); i++)
+        if (!translated[i].equals(sent.elementAt(request++).get()))
+          wrong++;
+    }
+    return wrong;
+  }
+
+  private static void report(String title, int wrong, LanguageRouter router,
+    BinaryTranslationServer[] servers, LanguageRegistry[] registries)
+    throws Exception
+  // Prints the languages each node has loaded and whether they are only
+  // those it owns.
+  {
+    System.out.println(title + ": " + wrong + " wrong");
+    for (int node = 0; node < servers.length; node++)
+    {
+      if (registries[node] == null)
+        continue;
+      String[] loaded = registries[node].getLoadedNames();
+      int strays = 0;
+      for (int name = 0; name < loaded.length; name++)
+        if (!servers[node].getAddress().equals(router.getNode(loaded[name])))
+          strays++;
+      System.out.println("  node " + node + ": " + loaded.length + " languages loaded, "
+        + strays + " not its own");
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * BatchingTest
+ * Submits the lines of a file, in states chosen at random, from several
+ * threads at once to a BatchingTranslator of each language in a directory.
+ * Checks each translation against setState followed by translate, and that
+ * texts submitted once the translator is closed are refused.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class BatchingTest extends Translator
+{
+  private static final int BATCH_SIZE = 64;
+  private static final long WINDOW_MILLIS = 2;
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 4)
+    {
+      System.out.println("BatchingTest");
+      System.out.println("USAGE  java BatchingTest <languageDirectory> <file> <threads> <texts>");
+      System.exit(SUCCESS);
+    }
+
+    final Vector<String> lines = new Vector<String>();
+    BufferedReader in = new BufferedReader(new FileReader(args[1]));
+    String line;
+    while ((line = in.readLine()) != null)
+      lines.addElement(line);
+    in.close();
+    int numberThreads = Integer.parseInt(args[2]);
+    final int numberTexts = Integer.parseInt(args[3]);
+
+    int wrong = 0;
+    String[] names = readLanguageNames(args[0]);
+    for (int i = 0; i < names.length; i++)
+    {
+      final Language language = readLanguage(args[0], names[i]);
+      final String[][] expected = new String[language.getPermittedStates()][lines.size()];
+      for (int state = 1; state <= expected.length; state++)
+        for (int j = 0; j < lines.size(); j++)
+        {
+          language.setState(state);
+          expected[state - 1][j] = language.translate(lines.elementAt(j));
+        }
+
+      final BatchingTranslator translator = new BatchingTranslator(language,
+        BATCH_SIZE, WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+      ExecutorService threads = Executors.newFixedThreadPool(numberThreads);
+      Vector<Future<Integer>> results = new Vector<Future<Integer>>();
+      for (int thread = 0; thread < numberThreads; thread++)
+      {
+        final long seed = thread;
+        results.addElement(threads.submit(new Callable<Integer>()
+        {
+          public Integer call() throws Exception
+          {
+            Random random = new Random(seed);
+            int[] states = new int[numberTexts];
+            int[] texts = new int[numberTexts];
+            Vector<CompletableFuture<String>> translated =
+              new Vector<CompletableFuture<String>>();
+            for (int j = 0; j < numberTexts; j++)
+            {
+              states[j] = 1 + random.nextInt(expected.length);
+              texts[j] = random.nextInt(lines.size());
+              translated.addElement(translator.translate(lines.elementAt(texts[j]),
+                states[j]));
+            }
+            int threadWrong = 0;
+            for (int j = 0; j < numberTexts; j++)
+              if (!expected[states[j] - 1][texts[j]].equals(translated.elementAt(j).get()))
+                threadWrong++;
+            return Integer.valueOf(threadWrong);
+          }
+        }));
+      }
+      int before = wrong;
+      for (int thread = 0; thread < numberThreads; thread++)
+        wrong += results.elementAt(thread).get().intValue();
+      threads.shutdown();
+
+      translator.close();
+      try
+      // ASSERTION: a closed translator refuses texts
+      {
+        translator.translate(lines.elementAt(0), 1).get();
+        wrong++;
+      }
+      catch (ExecutionException e)
+      {
+        if (!(e.getCause() instanceof RejectedExecutionException))
+          wrong++;
+      }
+      System.out.println(names[i] + ": " + (wrong - before) + " wrong");
+    }
+    System.out.println(numberThreads * numberTexts + " texts translated with each of "
+      + names.length + " languages, " + wrong + " wrong");
+    System.exit((wrong == 0) ? SUCCESS : UNKNOWN_ERROR);
+  }
+}
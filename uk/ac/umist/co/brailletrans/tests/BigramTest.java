@@ -0,0 +1,56 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.util.*;
+
+/*
+ * BigramTest
+ * Makes random languages with two focus categories, each holding many more
+ * rules than LanguageUnicode.BIGRAM_CATEGORY_SIZE, above which a category is
+ * indexed by its first two characters, so their rules are found through the
+ * bigram index.
+ * The legacy translators, which index as big a category the same way, load
+ * the language as a legacy table.  Translates random texts with a
+ * LanguageUnicode, Language256 and LanguageInteger for each language, half of
+ * them ending in a focus character with nothing after it, and checks each
+ * translation against a plain interpreter of the same rules that tries every
+ * rule in order.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class BigramTest extends Translator
+{
+  private static final String FOCI = "aaas";
+  // two big focus categories, mostly of one character
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 2)
+    {
+      System.out.println("BigramTest");
+      System.out.println("USAGE  java BigramTest <languages> <texts>");
+      System.exit(SUCCESS);
+    }
+
+    int numberLanguages = Integer.parseInt(args[0]);
+    int numberTexts = Integer.parseInt(args[1]);
+    int wrong = PlainLanguage.check(FOCI, 4 * LanguageUnicode.BIGRAM_CATEGORY_SIZE, 100,
+      numberLanguages, numberTexts, new Random(32), new PlainLanguage.Check()
+    {
+      public String[] texts(Random random, int text)
+      {
+        String[] inputs = {PlainLanguage.randomText(random, random.nextInt(80)),
+          PlainLanguage.randomLegacyText(random, random.nextInt(80))};
+        if (text % 2 == 0)
+          for (int i = 0; i < inputs.length; i++)
+            inputs[i] += FOCI.charAt(random.nextInt(FOCI.length()));
+        return inputs;
+      }
+    });
+    System.out.println(numberLanguages * numberTexts
+      + " texts translated by each translator, " + wrong + " wrong");
+    System.exit((wrong == 0) ? SUCCESS : UNKNOWN_ERROR);
+  }
+}
@@ -0,0 +1,100 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * BinaryThroughput
+ * Measures the throughput of BinaryTranslationServer over the loopback
+ * interface, sending each line of a file as a request with many requests in
+ * flight on one connection, and checks every response against translating the
+ * line directly.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class BinaryThroughput extends Translator
+{
+  private static final int IN_FLIGHT = 256;
+  // requests sent and not yet answered
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 5)
+    {
+      System.out.println("BinaryThroughput");
+      System.out.println("USAGE  java BinaryThroughput <languageDirectory> <language> <state> <file> <requests>");
+      System.exit(SUCCESS);
+    }
+
+    LanguageRegistry registry = new LanguageRegistry(new File(args[0]));
+    String languageName = args[1];
+    int state = Integer.parseInt(args[2]);
+    BufferedReader lines = new BufferedReader(new FileReader(args[3]));
+    int numberRequests = Integer.parseInt(args[4]);
+
+    Vector<String> texts = new Vector<String>();
+    Vector<String> expected = new Vector<String>();
+    Language language = registry.getLanguage(languageName);
+    long bytes = 0;
+    String line;
+    while ((line = lines.readLine()) != null)
+    {
+      texts.addElement(line);
+      language.setState(state);
+      expected.addElement(language.translate(line));
+      bytes += line.length();
+    }
+    lines.close();
+
+    BinaryTranslationServer server = new BinaryTranslationServer(registry,
+      new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    server.start();
+    BinaryTranslationClient client = new BinaryTranslationClient(server.getAddress());
+
+    // Warm up, then time
+    run(client, languageName, state, texts, expected, numberRequests / 10 + 1);
+    long started = System.nanoTime();
+    int wrong = run(client, languageName, state, texts, expected, numberRequests);
+    long elapsed = System.nanoTime() - started;
+
+    client.close();
+    server.stop();
+    double seconds = elapsed / 1e9;
+    double characters = (double) bytes * numberRequests / texts.size();
+    System.out.println(numberRequests + " requests in " + (int) (seconds * 1000) + "ms: "
+      + (int) (numberRequests / seconds) + " requests/s, "
+      + (int) (characters / seconds / 1024) + "K characters/s, " + wrong + " wrong");
+    System.exit(SUCCESS);
+  }
+
+  private static int run(BinaryTranslationClient client, String languageName,
+    int state, Vector<String> texts, Vector<String> expected, int numberRequests) throws Exception
+  // Sends numberRequests requests keeping IN_FLIGHT in flight, and returns the
+  // number of wrong responses.
+  {
+    int wrong = 0;
+    LinkedList<Object[]> inFlight = new LinkedList<Object[]>();
+    for (int request = 0; request < numberRequests; request++)
+    {
+      int line = request % texts.size();
+      inFlight.addLast(new Object[] {client.translate(languageName, state,
+        texts.elementAt(line)), expected.elementAt(line)});
+      if (inFlight.size() == IN_FLIGHT)
+        wrong += check(inFlight.removeFirst());
+    }
+    while (!inFlight.isEmpty())
+      wrong += check(inFlight.removeFirst());
+    return wrong;
+  }
+
+  private static int check(Object[] sent) throws Exception
+  {
+    String translated = (String) ((Future<?>) sent[0]).get();
+    return translated.equals(sent[1]) ? 0 : 1;
+  }
+}
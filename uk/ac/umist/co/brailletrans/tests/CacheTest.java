@@ -0,0 +1,181 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * CacheTest
+ * Starts several processes that translate the same documents through one
+ * small TranslationCache file at once, each on two threads with a
+ * TranslationCache of its own, so that they share paragraphs and the cache
+ * is compacted while they run, then translates them once more here.
+ * Each document is a repeated notice and lines of a file as paragraphs, and
+ * every translation is checked against translating the document directly,
+ * so a paragraph found in the cache must translate as it would have where it
+ * stands.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class CacheTest extends Translator
+{
+  private static final int CACHE_SIZE = TranslationCache.MINIMUM_SIZE;
+  // bytes in the shared cache, small enough to be compacted
+  private static final int ROUNDS = 3;
+  // times each thread translates every document
+  private static final int THREADS = 2;
+  // threads in each process, each with its own TranslationCache of the file
+  private static final String NOTICE = "This document is copyright and may not be copied.";
+
+  public static void main(String[] args) throws Exception
+  {
+    if ((args.length == 7) && args[0].equals("-child"))
+    {
+      System.exit(child(args));
+    }
+    if (args.length != 5)
+    {
+      System.out.println("CacheTest");
+      System.out.println("USAGE  java CacheTest <languageDirectory> <language> <state> <file> <processes>");
+      System.exit(SUCCESS);
+    }
+
+    int numberProcesses = Integer.parseInt(args[4]);
+    Path directory = Files.createTempDirectory("CacheTest");
+    File cacheFile = directory.resolve("paragraphs.cache").toFile();
+    new TranslationCache(cacheFile, CACHE_SIZE).close();
+
+    long started = System.currentTimeMillis();
+    Process[] children = new Process[numberProcesses];
+    for (int child = 0; child < numberProcesses; child++)
+      children[child] = new ProcessBuilder(new String[] {
+        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+        "-cp", System.getProperty("java.class.path"), CacheTest.class.getName(),
+        "-child", args[0], args[1], args[2], args[3], cacheFile.getPath(),
+        String.valueOf(child)}).inheritIO().start();
+    int failed = 0;
+    for (int child = 0; child < numberProcesses; child++)
+      if (children[child].waitFor() != SUCCESS)
+        failed++;
+    System.out.println(numberProcesses + " processes finished in "
+      + (System.currentTimeMillis() - started) + "ms, " + failed + " with wrong translations");
+
+    int result = child(new String[] {"-child", args[0], args[1], args[2], args[3],
+      cacheFile.getPath(), String.valueOf(numberProcesses)});
+    cacheFile.delete();
+    directory.toFile().delete();
+    System.exit(result);
+  }
+
+  private static int child(String[] args) throws Exception
+  // Translates the documents through the shared cache, checking each, and
+  // returns SUCCESS if all were right.
+  {
+    File languageDirectory = new File(args[1]);
+    LanguageRegistry registry = new LanguageRegistry(languageDirectory);
+    Language language = registry.getLanguage(args[2]);
+    final long table = registry.getContentHash(args[2]);
+    final int state = Integer.parseInt(args[3]);
+    final int process = Integer.parseInt(args[6]);
+    Vector<String> lines = new Vector<String>();
+    BufferedReader in = new BufferedReader(new FileReader(args[4]));
+    String line;
+    while ((line = in.readLine()) != null)
+      if (line.trim().length() > 0)
+        lines.addElement(line);
+    in.close();
+
+    // Every line alone, every line between notices, and lines run on after
+    // a notice and before one, so paragraphs are met in many places
+    final Vector<String> documents = new Vector<String>();
+    for (int i = 0; i < lines.size(); i++)
+    {
+      String next = lines.elementAt((i + 1) % lines.size());
+      documents.addElement(lines.elementAt(i));
+      documents.addElement(NOTICE + "\n\n" + lines.elementAt(i) + "\n\n"
+        + next + "\n\n" + NOTICE + "\n");
+      documents.addElement(lines.elementAt(i) + "\n\n" + NOTICE + "\n\n" + next);
+      documents.addElement(NOTICE + "\n\n" + NOTICE + " " + lines.elementAt(i)
+        + "\n\n\n" + next + "\n\n" + NOTICE);
+    }
+    final String[] expected = new String[documents.size()];
+    for (int i = 0; i < expected.length; i++)
+    {
+      language.setState(state);
+      expected[i] = language.translate(documents.elementAt(i));
+    }
+
+    final TranslationCache[] caches = new TranslationCache[THREADS];
+    final int[] wrong = new int[THREADS];
+    Thread[] threads = new Thread[THREADS];
+    for (int thread = 0; thread < THREADS; thread++)
+    {
+      // each thread's own language, as languages are not shared by threads
+      final Language threadLanguage = (thread == 0) ? language
+        : new LanguageRegistry(languageDirectory).getLanguage(args[2]);
+      final TranslationCache cache = caches[thread] = new TranslationCache(new File(args[5]));
+      final Random random = new Random(process * THREADS + thread);
+      final int index = thread;
+      threads[thread] = new Thread(new Runnable()
+      {
+        public void run()
+        {
+          try
+          {
+            wrong[index] = translateRounds(cache, threadLanguage, table, state,
+              documents, expected, random);
+          }
+          catch (IOException e)
+          {
+            System.out.println("Process " + process + ": " + e);
+            wrong[index] = expected.length * ROUNDS;
+          }
+        }
+      });
+      threads[thread].start();
+    }
+    int totalWrong = 0;
+    long hits = 0;
+    long misses = 0;
+    for (int thread = 0; thread < THREADS; thread++)
+    {
+      threads[thread].join();
+      totalWrong += wrong[thread];
+      hits += caches[thread].getHits();
+      misses += caches[thread].getMisses();
+    }
+    System.out.println("Process " + process + ": " + hits + " paragraphs found, "
+      + misses + " translated, " + totalWrong + " of " + (THREADS * ROUNDS * expected.length)
+      + " documents wrong, " + caches[0].getEntries() + " in the cache after "
+      + caches[0].getCompactions() + " compactions");
+    for (int thread = 0; thread < THREADS; thread++)
+      caches[thread].close();
+    return (totalWrong == 0) ? SUCCESS : UNKNOWN_ERROR;
+  }
+
+  private static int translateRounds(TranslationCache cache, Language language, long table,
+    int state, Vector<String> documents, String[] expected, Random random) throws IOException
+  // Translates the documents in a random order ROUNDS times through cache,
+  // returning the number of translations that differ from expected.
+  {
+    int wrong = 0;
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      Vector<Integer> order = new Vector<Integer>();
+      for (int i = 0; i < expected.length; i++)
+        order.addElement(Integer.valueOf(i));
+      Collections.shuffle(order, random);
+      for (int i = 0; i < order.size(); i++)
+      {
+        int document = order.elementAt(i).intValue();
+        if (!expected[document].equals(cache.translate(language, table, state,
+          documents.elementAt(document))))
+          wrong++;
+      }
+    }
+    return wrong;
+  }
+}
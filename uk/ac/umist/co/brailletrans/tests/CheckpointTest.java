@@ -0,0 +1,121 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * CheckpointTest
+ * Makes several large files from copies of a file, starts a TranslationJob
+ * on them in another process and kills it once it has written checkpoints,
+ * then runs the job again here to finish, and once more to find everything
+ * complete.  Checks every output against translating its file directly.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class CheckpointTest extends Translator
+{
+  private static final int COPIES = 64;
+  // copies of the file in each large file
+  private static final int INTERVAL = 64;
+  // kilobytes between checkpoints
+  private static final int KILL_DELAY = 300;
+  // milliseconds after the first checkpoint to kill the job
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 5)
+    {
+      System.out.println("CheckpointTest");
+      System.out.println("USAGE  java CheckpointTest <languageDirectory> <language> <state> <file> <files>");
+      System.exit(SUCCESS);
+    }
+
+    File languageDirectory = new File(args[0]);
+    String languageName = args[1];
+    int state = Integer.parseInt(args[2]);
+    byte[] text = Files.readAllBytes(Paths.get(args[3]));
+    int numberFiles = Integer.parseInt(args[4]);
+
+    Path directory = Files.createTempDirectory("CheckpointTest");
+    File checkpoints = directory.resolve("checkpoints").toFile();
+    File output = directory.resolve("output").toFile();
+    File[] inputs = new File[numberFiles];
+    for (int file = 0; file < numberFiles; file++)
+    {
+      inputs[file] = directory.resolve("text" + file + ".txt").toFile();
+      OutputStream out = new BufferedOutputStream(new FileOutputStream(inputs[file]));
+      for (int copy = 0; copy < COPIES; copy++)
+      {
+        out.write(("Copy " + copy + " of file " + file + ". ").getBytes(StandardCharsets.UTF_8));
+        out.write(text);
+      }
+      out.close();
+    }
+
+    // Start the job in another process and kill it part way through
+    Vector<String> command = new Vector<String>(Arrays.asList(new String[] {
+      System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+      "-cp", System.getProperty("java.class.path"), "uk.ac.umist.co.brailletrans.TranslationJob",
+      "-threads", "2", "-interval", String.valueOf(INTERVAL), languageDirectory.getPath(),
+      languageName, String.valueOf(state), checkpoints.getPath(), output.getPath()}));
+    for (int file = 0; file < numberFiles; file++)
+      command.addElement(inputs[file].getPath());
+    Process job = new ProcessBuilder(command).inheritIO().start();
+    while (job.isAlive())
+    {
+      String[] written = checkpoints.list();
+      if ((written != null) && (written.length > 0))
+      {
+        Thread.sleep(KILL_DELAY);
+        break;
+      }
+      Thread.sleep(10);
+    }
+    job.destroyForcibly().waitFor();
+    System.out.println("Killed the job with " + checkpoints.list().length + " checkpoints written");
+
+    TranslationJob resumed = new TranslationJob(new LanguageRegistry(languageDirectory),
+      languageName, state, checkpoints, output);
+    resumed.setInterval(INTERVAL * 1024);
+    int failed = resumed.run(inputs, 2);
+    System.out.println("Run again: " + resumed.getFilesStarted() + " started, "
+      + resumed.getFilesResumed() + " resumed, " + resumed.getFilesSkipped()
+      + " complete, " + failed + " failed");
+
+    TranslationJob finished = new TranslationJob(new LanguageRegistry(languageDirectory),
+      languageName, state, checkpoints, output);
+    failed = finished.run(inputs, 2);
+    System.out.println("Run a third time: " + finished.getFilesStarted() + " started, "
+      + finished.getFilesResumed() + " resumed, " + finished.getFilesSkipped()
+      + " complete, " + failed + " failed");
+
+    Language language = new LanguageRegistry(languageDirectory).getLanguage(languageName);
+    int wrong = 0;
+    for (int file = 0; file < numberFiles; file++)
+    {
+      language.setState(state);
+      String expected = language.translate(new String(Files.readAllBytes(inputs[file].toPath()),
+        StandardCharsets.UTF_8));
+      File translated = resumed.getOutputFile(inputs[file]);
+      if (!expected.equals(new String(Files.readAllBytes(translated.toPath()),
+        StandardCharsets.UTF_8)))
+        wrong++;
+    }
+    System.out.println(wrong + " of " + numberFiles + " outputs wrong");
+
+    File[] files = new File[] {checkpoints, output, directory.toFile()};
+    for (int i = 0; i < files.length; i++)
+    {
+      File[] contents = files[i].listFiles();
+      for (int j = 0; j < contents.length; j++)
+        contents[j].delete();
+      files[i].delete();
+    }
+    System.exit(SUCCESS);
+  }
+}
@@ -0,0 +1,103 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.util.*;
+
+/*
+ * ChunkContextTest
+ * Makes random languages whose contexts hold wildcards of several spaces,
+ * punctuation or letters, and translates random texts with runs of
+ * thousands of such characters with a ChunkTranslator for a LanguageUnicode,
+ * Language256 and LanguageInteger of each language, in chunks of random
+ * sizes, so that the contexts either side of a run reach across the cuts in
+ * the text and the text dropped behind them.  The legacy translators load the
+ * language as a legacy table.  Checks each translation against the same
+ * language translating the whole text at once.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class ChunkContextTest extends Translator
+{
+  private static final String FOCI = "abs";
+  // focus characters, so rules match either side of the runs
+  private static final String[] RUNS = {" .,;", " ", "abs"};
+  // what the runs are made of
+  private static final int MAX_RUN = 3 * ChunkTranslator.BATCH_SIZE;
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 2)
+    {
+      System.out.println("ChunkContextTest");
+      System.out.println("USAGE  java ChunkContextTest <languages> <texts>");
+      System.exit(SUCCESS);
+    }
+
+    int numberLanguages = Integer.parseInt(args[0]);
+    int numberTexts = Integer.parseInt(args[1]);
+    int wrong = PlainLanguage.check(FOCI, 20, 60, numberLanguages, numberTexts,
+      new Random(37), new PlainLanguage.Check()
+    {
+      public String[] texts(Random random, int text)
+      {
+        String input = randomText(random);
+        return new String[] {input, input};
+      }
+
+      public String expected(PlainLanguage plain, Language language, String input, int state)
+      {
+        return PlainLanguage.translateWith(language, input, state);
+      }
+
+      public String translate(Language language, String input, int state, Random random)
+      {
+        return translateInChunks(language, input, state, random);
+      }
+
+      public String describe(String input)
+      {
+        return input.length() + " characters";
+      }
+    });
+    System.out.println(numberLanguages * numberTexts
+      + " texts translated in chunks by each translator, " + wrong + " wrong");
+    System.exit((wrong == 0) ? SUCCESS : UNKNOWN_ERROR);
+  }
+
+  private static String randomText(Random random)
+  // Returns short random texts between long runs of one kind of character.
+  {
+    StringBuilder text = new StringBuilder();
+    int runs = 1 + random.nextInt(3);
+    for (int run = 0; run < runs; run++)
+    {
+      text.append(PlainLanguage.randomLegacyText(random, 1 + random.nextInt(6)));
+      String characters = RUNS[random.nextInt(RUNS.length)];
+      int length = 1 + random.nextInt(MAX_RUN);
+      for (int i = 0; i < length; i++)
+        text.append(characters.charAt(random.nextInt(characters.length())));
+    }
+    text.append(PlainLanguage.randomLegacyText(random, 1 + random.nextInt(6)));
+    return text.toString();
+  }
+
+  private static String translateInChunks(Language language, String text, int state,
+    Random random)
+  // Translates text with a ChunkTranslator given chunks of random sizes.
+  {
+    ChunkTranslator translator = new ChunkTranslator(language, state);
+    StringBuilder output = new StringBuilder();
+    int given = 0;
+    while (given < text.length())
+    {
+      int size = Math.min(text.length() - given,
+        1 + random.nextInt(2 * ChunkTranslator.BATCH_SIZE));
+      output.append(translator.translate(text.substring(given, given + size)));
+      given += size;
+    }
+    output.append(translator.finish());
+    return output.toString();
+  }
+}
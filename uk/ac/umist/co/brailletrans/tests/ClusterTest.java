@@ -0,0 +1,202 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * ClusterTest
+ * Starts worker processes on this machine and translates each line of a file
+ * many times over with a TranslationCluster, killing one worker part way
+ * through, then translates the lines joined into one large document, once
+ * as paragraphs and once as a single paragraph, and then as a document
+ * larger than a frame of the protocol.  Last, makes a language whose rules
+ * look through runs of spaces and punctuation, and translates a document
+ * with runs much longer than the margins sent around each piece, split in
+ * the middle of each, with workers loading that language.  Each translation
+ * is checked against translating directly with Language.translate.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class ClusterTest extends Translator
+{
+  private static final int COPIES = 100;
+  // times over each line is translated
+  private static final int LARGE_DOCUMENT = 17 * 1024 * 1024;
+  // characters in the document larger than a frame
+  private static final int RUN = TranslationCluster.PIECE_SIZE;
+  private static final int RUNS = 8;
+  // the length and number of the runs the rules look through
+  private static final String CONTEXT_LANGUAGE = "contexts";
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 5)
+    {
+      System.out.println("ClusterTest");
+      System.out.println("USAGE  java ClusterTest <languageDirectory> <language> <state> <file> <workers>");
+      System.exit(SUCCESS);
+    }
+
+    File directory = new File(args[0]);
+    String languageName = args[1];
+    int state = Integer.parseInt(args[2]);
+    int numberWorkers = Integer.parseInt(args[4]);
+    Language language = new LanguageRegistry(directory).getLanguage(languageName);
+
+    Vector<String> lines = new Vector<String>();
+    BufferedReader in = new BufferedReader(new FileReader(args[3]));
+    String line;
+    while ((line = in.readLine()) != null)
+      lines.addElement(line);
+    in.close();
+    String[] documents = new String[lines.size() * COPIES];
+    String[] expected = new String[documents.length];
+    for (int i = 0; i < documents.length; i++)
+    {
+      documents[i] = lines.elementAt(i % lines.size());
+      language.setState(state);
+      expected[i] = language.translate(documents[i]);
+    }
+
+    TranslationCluster cluster = TranslationCluster.startLocal(directory, numberWorkers);
+    boolean passed;
+    try
+    {
+      // Kill a worker once the translation is under way
+      Thread killer = new Thread()
+      {
+        public void run()
+        {
+          try
+          {
+            Thread.sleep(200);
+          }
+          catch (InterruptedException e)
+          {
+            return;
+          }
+          Optional<ProcessHandle> worker = ProcessHandle.current().children().findFirst();
+          if (worker.isPresent())
+            worker.get().destroyForcibly();
+        }
+      };
+      long started = System.currentTimeMillis();
+      killer.start();
+      String[] translated = cluster.translate(languageName, state, documents);
+      killer.join();
+      int wrong = 0;
+      for (int i = 0; i < documents.length; i++)
+        if (!translated[i].equals(expected[i]))
+          wrong++;
+      System.out.println(documents.length + " documents in "
+        + (System.currentTimeMillis() - started) + "ms, " + wrong + " wrong, "
+        + cluster.getNumberWorkers() + " of " + numberWorkers + " workers left");
+
+      // One document of paragraphs, one of a single paragraph and one larger
+      // than a frame, each split into pieces translated by different workers
+      String[] wholes = new String[] {join(documents, "\n\n", 0),
+        join(documents, " ", 0), join(documents, " ", LARGE_DOCUMENT)};
+      int right = 0;
+      for (int i = 0; i < wholes.length; i++)
+      {
+        language.setState(state);
+        String direct = language.translate(wholes[i]);
+        started = System.currentTimeMillis();
+        String whole = cluster.translateDocument(languageName, state, wholes[i]);
+        boolean same = whole.equals(direct);
+        if (same)
+          right++;
+        System.out.println(wholes[i].length() + " characters in "
+          + (System.currentTimeMillis() - started) + "ms, " + (same ? "right" : "WRONG"));
+      }
+      passed = (wrong == 0) && (right == wholes.length);
+    }
+    finally
+    {
+      cluster.close();
+    }
+
+    // Contexts running from one piece far into the next
+    File contextDirectory = writeContextLanguage();
+    language = new LanguageRegistry(contextDirectory).getLanguage(CONTEXT_LANGUAGE);
+    cluster = TranslationCluster.startLocal(contextDirectory, numberWorkers);
+    try
+    {
+      StringBuffer document = new StringBuffer();
+      for (int i = 0; i < RUNS; i++)
+        document.append('a').append(run(RUN / 2)).append(' ').append(run(RUN / 2)).append('b');
+      language.setState(1);
+      String direct = language.translate(document.toString());
+      long started = System.currentTimeMillis();
+      boolean same = cluster.translateDocument(CONTEXT_LANGUAGE, 1,
+        document.toString()).equals(direct);
+      System.out.println(document.length() + " characters with long contexts in "
+        + (System.currentTimeMillis() - started) + "ms, " + (same ? "right" : "WRONG"));
+      passed &= same;
+    }
+    finally
+    {
+      cluster.close();
+    }
+    System.exit(passed ? SUCCESS : UNKNOWN_ERROR);
+  }
+
+  private static String join(String[] lines, String separator, int minimum)
+  // Joins every line, over again until there are minimum characters.
+  {
+    StringBuffer toReturn = new StringBuffer();
+    for (int i = 0; (i < lines.length) || (toReturn.length() < minimum); i++)
+      toReturn.append(lines[i % lines.length]).append(separator);
+    return toReturn.toString();
+  }
+
+  private static String run(int length)
+  // Returns a run of full stops and commas, the pieces of a document with
+  // runs being split only at the space in the middle of each.
+  {
+    StringBuffer toReturn = new StringBuffer(length);
+    for (int i = 0; i < length; i++)
+      toReturn.append(((i % 2) == 0) ? '.' : ',');
+    return toReturn.toString();
+  }
+
+  private static File writeContextLanguage() throws IOException,
+    LanguageDefinitionException
+  // Writes a language to a new directory whose rules for a and b look
+  // through a run of spaces and punctuation on either side: an a followed
+  // by a run and a b is translated X, and a b after a run that follows an a
+  // is translated Y.  Where a run is cut off by the end of the text sent with
+  // a piece, the rules do not match.
+  {
+    LanguageUnicode contexts = new LanguageUnicode();
+    contexts.setVersionNumber(1);
+    contexts.setName(CONTEXT_LANGUAGE);
+    String characters = "ab .,";
+    contexts.setNumberCharacters(characters.length());
+    for (int i = 0; i < characters.length(); i++)
+    {
+      char c = characters.charAt(i);
+      contexts.addCharacterInformation(Character.valueOf(c), Character.valueOf(c),
+        Integer.valueOf(Character.isLetter(c) ? 1 : ((c == ' ') ? 8 : 2)));
+    }
+    contexts.setNumberWildcards(1);
+    contexts.addWildcardInformation(Language.WILDCARD_SEVERAL, 10, Character.valueOf('$'));
+    contexts.setNumberStates(1);
+    contexts.setNumberInputClasses(1);
+    contexts.setDecisionTableEntry(1, 1, true);
+    String[] rules = {"[a]$b=X", "[a]=a", "a$[b]=Y", "[b]=b", "[ ]= ", "[.]=.",
+      "[,]=,"};
+    for (int i = 0; i < rules.length; i++)
+      contexts.addTranslationRule("1\t" + rules[i] + "\t-");
+    File directory = Files.createTempDirectory("contexts").toFile();
+    File file = new File(directory, CONTEXT_LANGUAGE + ".ulf");
+    contexts.writeLanguageUnicodeToDisk(new File(directory, CONTEXT_LANGUAGE).getPath());
+    directory.deleteOnExit();
+    file.deleteOnExit();
+    return directory;
+  }
+}
@@ -0,0 +1,107 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * ExecutorTest
+ * Translates the lines of a file with one TranslationExecutor for every
+ * language in a directory: all of them at once with translateAll in each
+ * state, then each submitted on its own in a state chosen at random, the
+ * languages interleaved.  Checks each translation against setState followed
+ * by translate, and that texts submitted once the executor is shut down are
+ * refused.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class ExecutorTest extends Translator
+{
+  private static final long TIMEOUT_SECONDS = 60;
+  // how long to wait for a batch of texts
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 3)
+    {
+      System.out.println("ExecutorTest");
+      System.out.println("USAGE  java ExecutorTest <languageDirectory> <file> <sessions>");
+      System.exit(SUCCESS);
+    }
+
+    Vector<String> lines = new Vector<String>();
+    BufferedReader in = new BufferedReader(new FileReader(args[1]));
+    String line;
+    while ((line = in.readLine()) != null)
+      lines.addElement(line);
+    in.close();
+    TranslationExecutor executor = new TranslationExecutor(Integer.parseInt(args[2]));
+
+    String[] names = readLanguageNames(args[0]);
+    Language[] languages = new Language[names.length];
+    String[][][] expected = new String[names.length][][];
+    for (int i = 0; i < names.length; i++)
+    {
+      languages[i] = readLanguage(args[0], names[i]);
+      expected[i] = new String[languages[i].getPermittedStates()][lines.size()];
+      for (int state = 1; state <= expected[i].length; state++)
+        for (int j = 0; j < lines.size(); j++)
+        {
+          languages[i].setState(state);
+          expected[i][state - 1][j] = languages[i].translate(lines.elementAt(j));
+        }
+    }
+
+    int wrong = 0;
+    int checked = 0;
+    try
+    {
+      for (int i = 0; i < languages.length; i++)
+        for (int state = 1; state <= expected[i].length; state++)
+        {
+          if (!Arrays.asList(expected[i][state - 1]).equals(executor.translateAll(
+            languages[i], lines, state, TIMEOUT_SECONDS, TimeUnit.SECONDS)))
+            wrong++;
+          checked += lines.size();
+        }
+
+      Random random = new Random(39);
+      int[] language = new int[lines.size() * languages.length];
+      int[] state = new int[language.length];
+      Vector<Future<String>> translated = new Vector<Future<String>>();
+      for (int j = 0; j < language.length; j++)
+      {
+        language[j] = random.nextInt(languages.length);
+        state[j] = 1 + random.nextInt(expected[language[j]].length);
+        translated.addElement(executor.submit(languages[language[j]],
+          lines.elementAt(j % lines.size()), state[j]));
+      }
+      for (int j = 0; j < language.length; j++)
+        if (!expected[language[j]][state[j] - 1][j % lines.size()].equals(
+          translated.elementAt(j).get(TIMEOUT_SECONDS, TimeUnit.SECONDS)))
+          wrong++;
+      checked += language.length;
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+
+    try
+    // ASSERTION: a shut down executor refuses texts
+    {
+      executor.submit(languages[0], lines.elementAt(0), 1);
+      wrong++;
+    }
+    catch (RejectedExecutionException e)
+    {
+    }
+    System.out.println(checked + " texts translated on "
+      + (executor.usesVirtualThreads() ? "virtual threads" : "a pool of threads")
+      + ", " + wrong + " wrong");
+    System.exit((wrong == 0) ? SUCCESS : UNKNOWN_ERROR);
+  }
+}
@@ -0,0 +1,139 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * FlowTest
+ * Joins the lines of a file into long texts and publishes each, cut into
+ * chunks of random sizes, through a TranslationProcessor of each language in
+ * a directory, in every state.  Each text is read once by a subscriber
+ * taking everything at once and once by one taking a chunk at a time.
+ * Checks that the chunks the processor publishes join into what setState
+ * followed by translate gives for the whole text.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class FlowTest extends Translator
+{
+  private static final int TIMEOUT = 60000;
+  // milliseconds to wait for a text to be translated
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 3)
+    {
+      System.out.println("FlowTest");
+      System.out.println("USAGE  java FlowTest <languageDirectory> <file> <texts>");
+      System.exit(SUCCESS);
+    }
+
+    Vector<String> lines = new Vector<String>();
+    BufferedReader in = new BufferedReader(new FileReader(args[1]));
+    String line;
+    while ((line = in.readLine()) != null)
+      lines.addElement(line);
+    in.close();
+    int numberTexts = Integer.parseInt(args[2]);
+
+    Random random = new Random(37);
+    int wrong = 0;
+    int checked = 0;
+    String[] names = readLanguageNames(args[0]);
+    for (int i = 0; i < names.length; i++)
+    {
+      Language language = readLanguage(args[0], names[i]);
+      int before = wrong;
+      for (int text = 0; text < numberTexts; text++)
+      {
+        StringBuffer whole = new StringBuffer();
+        int length = random.nextInt(4) * TranslationProcessor.BATCH_SIZE
+          + random.nextInt(TranslationProcessor.BATCH_SIZE);
+        while (whole.length() < length)
+          whole.append(lines.elementAt(random.nextInt(lines.size()))).append('\n');
+        for (int state = 1; state <= language.getPermittedStates(); state++)
+        {
+          language.setState(state);
+          String expected = language.translate(whole.toString());
+          if (!expected.equals(publish(language, state, whole.toString(), random, false)))
+            wrong++;
+          if (!expected.equals(publish(language, state, whole.toString(), random, true)))
+            wrong++;
+          checked += 2;
+        }
+      }
+      System.out.println(names[i] + ": " + (wrong - before) + " wrong");
+    }
+    System.out.println(checked + " texts translated, " + wrong + " wrong");
+    System.exit((wrong == 0) ? SUCCESS : UNKNOWN_ERROR);
+  }
+
+  private static String publish(Language language, int state, String text,
+    Random random, boolean slow) throws InterruptedException
+  // Publishes text in chunks through a TranslationProcessor and returns what
+  // the processor publishes, or null if it fails or takes too long.
+  {
+    TranslationProcessor processor = new TranslationProcessor(language, state);
+    SubmissionPublisher<String> publisher = new SubmissionPublisher<String>(
+      ForkJoinPool.commonPool(), 8);
+    publisher.subscribe(processor);
+    Collector collector = new Collector(slow);
+    processor.subscribe(collector);
+    int start = 0;
+    while (start < text.length())
+    {
+      int end = Math.min(text.length(), start + 1 + random.nextInt(slow ? 300 : 40));
+      publisher.submit(text.substring(start, end));
+      start = end;
+    }
+    publisher.close();
+    if (!collector.done.await(TIMEOUT, TimeUnit.MILLISECONDS) || collector.failed)
+      return null;
+    return collector.received.toString();
+  }
+
+  private static class Collector implements Flow.Subscriber<String>
+  // Gathers what a processor publishes, asking for it all at once or, if
+  // slow, one chunk at a time
+  {
+    private boolean slow;
+    private Flow.Subscription subscription;
+    private StringBuffer received = new StringBuffer();
+    private volatile boolean failed;
+    private CountDownLatch done = new CountDownLatch(1);
+
+    private Collector(boolean slow)
+    {
+      this.slow = slow;
+    }
+
+    public void onSubscribe(Flow.Subscription subscription)
+    {
+      this.subscription = subscription;
+      subscription.request(slow ? 1 : Long.MAX_VALUE);
+    }
+
+    public void onNext(String chunk)
+    {
+      received.append(chunk);
+      if (slow)
+        subscription.request(1);
+    }
+
+    public void onError(Throwable error)
+    {
+      error.printStackTrace();
+      failed = true;
+      done.countDown();
+    }
+
+    public void onComplete()
+    {
+      done.countDown();
+    }
+  } // end of Collector class
+}
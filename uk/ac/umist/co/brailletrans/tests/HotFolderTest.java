@@ -0,0 +1,118 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+ * HotFolderTest
+ * Runs a HotFolderTranslator on a temporary directory and drops each line of
+ * a file into it as a separate file, many times over, half of them written in
+ * place and half written under a hidden name and renamed in, each followed
+ * by a blank line and the next line.  Waits for them all to be translated
+ * and checks each against translating directly.  Given a cache file, the
+ * daemon translates through a TranslationCache in it, which must not change
+ * the translations.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class HotFolderTest extends Translator
+{
+  private static final int TIMEOUT = 120000;
+  // milliseconds to wait for the files to be translated
+
+  public static void main(String[] args) throws Exception
+  {
+    if ((args.length != 5) && (args.length != 6))
+    {
+      System.out.println("HotFolderTest");
+      System.out.println("USAGE  java HotFolderTest <languageDirectory> <language> <state> <file> <files> [cacheFile]");
+      System.exit(SUCCESS);
+    }
+
+    LanguageRegistry registry = new LanguageRegistry(new File(args[0]));
+    Language language = registry.getLanguage(args[1]);
+    int state = Integer.parseInt(args[2]);
+    int numberFiles = Integer.parseInt(args[4]);
+    Vector<String> lines = new Vector<String>();
+    BufferedReader in = new BufferedReader(new FileReader(args[3]));
+    String line;
+    while ((line = in.readLine()) != null)
+      lines.addElement(line);
+    in.close();
+
+    Path input = Files.createTempDirectory("HotFolderTest");
+    Path output = Files.createTempDirectory("HotFolderTest");
+    HotFolderTranslator daemon = new HotFolderTranslator(language, state,
+      input.toFile(), output.toFile());
+    TranslationCache cache = null;
+    if (args.length == 6)
+    {
+      cache = new TranslationCache(new File(args[5]));
+      daemon.setCache(cache, registry.getContentHash(args[1]));
+    }
+    daemon.start();
+
+    long started = System.currentTimeMillis();
+    for (int file = 0; file < numberFiles; file++)
+    {
+      byte[] text = document(lines, file).getBytes(StandardCharsets.UTF_8);
+      String name = "text" + file + ".txt";
+      if (file % 2 == 0)
+        Files.write(input.resolve(name), text);
+      else
+      {
+        Files.write(input.resolve("." + name), text);
+        Files.move(input.resolve("." + name), input.resolve(name),
+          new CopyOption[] {StandardCopyOption.ATOMIC_MOVE});
+      }
+    }
+    int deepest = 0;
+    while ((daemon.getFilesTranslated() + daemon.getFilesFailed() < numberFiles)
+      && (System.currentTimeMillis() - started < TIMEOUT))
+    {
+      deepest = Math.max(deepest, daemon.getQueueDepth());
+      Thread.sleep(50);
+    }
+    long elapsed = System.currentTimeMillis() - started;
+    daemon.stop();
+
+    int wrong = 0;
+    for (int file = 0; file < numberFiles; file++)
+    {
+      language.setState(state);
+      String expected = language.translate(document(lines, file));
+      Path translated = output.resolve("text" + file + ".txt");
+      if (!Files.exists(translated)
+        || !expected.equals(new String(Files.readAllBytes(translated), StandardCharsets.UTF_8)))
+        wrong++;
+      Files.deleteIfExists(translated);
+    }
+    String[] left = input.toFile().list();
+    System.out.println(daemon.getFilesTranslated() + " of " + numberFiles
+      + " files translated in " + elapsed + "ms, " + daemon.getFilesFailed()
+      + " failed, " + wrong + " wrong, deepest queue " + deepest + ", "
+      + (left.length - 1) + " left in the input directory");
+    if (cache != null)
+    {
+      System.out.println(cache.getHits() + " paragraphs found in the cache, "
+        + cache.getMisses() + " translated");
+      cache.close();
+    }
+    Files.deleteIfExists(input.resolve(HotFolderTranslator.FAILED_DIRECTORY));
+    Files.deleteIfExists(input);
+    Files.deleteIfExists(output);
+    System.exit((wrong == 0) ? SUCCESS : UNKNOWN_ERROR);
+  }
+
+  private static String document(Vector<String> lines, int file)
+  // Returns the text of a file: a line, a blank line and the next line.
+  {
+    return lines.elementAt(file % lines.size()) + "\n\n"
+      + lines.elementAt((file + 1) % lines.size());
+  }
+}
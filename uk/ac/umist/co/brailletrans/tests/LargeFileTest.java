@@ -0,0 +1,96 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/*
+ * LargeFileTest
+ * Makes a large file from copies of a file and translates it with a
+ * MappedFileTranslator, once with the default window and once with a small
+ * window of an odd size so that characters are split between windows.  Checks
+ * both against translating the file through a Reader, and prints the speed of
+ * each.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class LargeFileTest extends Translator
+{
+  private static final int SMALL_WINDOW = 4099;
+  // bytes mapped at a time in the second translation
+  private static final int READ_SIZE = 64 * 1024;
+  // characters read at a time for the check
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 5)
+    {
+      System.out.println("LargeFileTest");
+      System.out.println("USAGE  java LargeFileTest <languageDirectory> <language> <state> <file> <megabytes>");
+      System.exit(SUCCESS);
+    }
+
+    Language language = new LanguageRegistry(new File(args[0])).getLanguage(args[1]);
+    int state = Integer.parseInt(args[2]);
+    byte[] text = Files.readAllBytes(Paths.get(args[3]));
+    long size = Long.parseLong(args[4]) * 1024 * 1024;
+
+    Path directory = Files.createTempDirectory("LargeFileTest");
+    File input = directory.resolve("large.txt").toFile();
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(input));
+    for (long written = 0; written < size; written += text.length)
+      out.write(text);
+    out.close();
+
+    // Translate through a Reader to check against
+    Stopwatch timer = new Stopwatch();
+    File expected = directory.resolve("expected.brl").toFile();
+    timer.start();
+    ChunkTranslator chunks = new ChunkTranslator(language, state);
+    Reader in = new InputStreamReader(new FileInputStream(input), StandardCharsets.UTF_8);
+    Writer check = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(expected),
+      StandardCharsets.UTF_8), READ_SIZE);
+    char[] buffer = new char[READ_SIZE];
+    int read;
+    while ((read = in.read(buffer)) != -1)
+      check.write(chunks.translate(new String(buffer, 0, read)));
+    check.write(chunks.finish());
+    check.close();
+    in.close();
+    timer.stop();
+    report("Reader", input.length(), timer.getTime(), expected, expected);
+
+    MappedFileTranslator mapped = new MappedFileTranslator(language, state);
+    int[] windows = new int[] {mapped.getWindowSize(), SMALL_WINDOW};
+    for (int i = 0; i < windows.length; i++)
+    {
+      File output = directory.resolve("mapped" + i + ".brl").toFile();
+      mapped.setWindowSize(windows[i]);
+      timer = new Stopwatch();
+      timer.start();
+      mapped.translate(input, output);
+      timer.stop();
+      report("Mapped, " + windows[i] + " byte window", input.length(), timer.getTime(),
+        output, expected);
+      output.delete();
+    }
+
+    expected.delete();
+    input.delete();
+    directory.toFile().delete();
+    System.exit(SUCCESS);
+  }
+
+  private static void report(String name, long bytes, long time, File output, File expected)
+    throws IOException
+  // Prints the speed of a translation and whether its output is right.
+  {
+    boolean right = (Files.mismatch(output.toPath(), expected.toPath()) == -1);
+    System.out.println(name + ": " + (bytes / 1024 / 1024) + "MB in " + time + "ms, "
+      + (bytes * 1000 / 1024 / 1024 / Math.max(1, time)) + "MB/s, "
+      + (right ? "right" : "WRONG"));
+  }
+}
@@ -0,0 +1,48 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.util.*;
+
+/*
+ * MemoTest
+ * Makes random languages whose rules share their contexts and translates
+ * random texts with each, in states chosen at random, with one
+ * LanguageUnicode, Language256 and LanguageInteger per language that keep
+ * their memos of matched contexts from text to text.  The legacy translators
+ * load the language as a legacy table.  Checks each translation against a
+ * plain interpreter of the same rules that keeps no memo.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class MemoTest extends Translator
+{
+  private static final String FOCI = "abcdefs .,;";
+  // small focus categories, so most rules are matched through the memo
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 2)
+    {
+      System.out.println("MemoTest");
+      System.out.println("USAGE  java MemoTest <languages> <texts>");
+      System.exit(SUCCESS);
+    }
+
+    int numberLanguages = Integer.parseInt(args[0]);
+    int numberTexts = Integer.parseInt(args[1]);
+    int wrong = PlainLanguage.check(FOCI, 20, 60, numberLanguages, numberTexts,
+      new Random(26), new PlainLanguage.Check()
+    {
+      public String[] texts(Random random, int text)
+      {
+        return new String[] {PlainLanguage.randomText(random, random.nextInt(80)),
+          PlainLanguage.randomLegacyText(random, 1 + random.nextInt(80))};
+      }
+    });
+    System.out.println(numberLanguages * numberTexts
+      + " texts translated by each translator, " + wrong + " wrong");
+    System.exit((wrong == 0) ? SUCCESS : UNKNOWN_ERROR);
+  }
+}
@@ -0,0 +1,196 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+ * ParallelTest
+ * Translates the lines of a file, and the whole file as one long text, with
+ * every language in a directory and with random languages, in every state
+ * the language permits.  Each line is translated in all the states at once,
+ * both by the language and by the default of Language, and the long text is
+ * translated on several threads with a ParallelTranslator, from each state
+ * and from starts throughout the text.
+ * Checks every translation against setState followed by translate.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class ParallelTest extends Translator
+{
+  private static final int RANDOM_LANGUAGES = 20;
+  private static final int RANDOM_TEXT_LENGTH = 50000;
+  // long enough to be split into many pieces
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 3)
+    {
+      System.out.println("ParallelTest");
+      System.out.println("USAGE  java ParallelTest <languageDirectory> <file> <threads>");
+      System.exit(SUCCESS);
+    }
+
+    Vector<String> lines = new Vector<String>();
+    StringBuffer whole = new StringBuffer();
+    BufferedReader in = new BufferedReader(new FileReader(args[1]));
+    String line;
+    while ((line = in.readLine()) != null)
+    {
+      lines.addElement(line);
+      whole.append(line).append('\n');
+    }
+    in.close();
+    int threads = Integer.parseInt(args[2]);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+    int wrong = 0;
+    int checked = 0;
+    try
+    {
+      String[] names = readLanguageNames(args[0]);
+      for (int i = 0; i < names.length; i++)
+      {
+        Language language = readLanguage(args[0], names[i]);
+        int before = wrong;
+        for (int j = 0; j < lines.size(); j++)
+        {
+          wrong += checkStates(language, lines.elementAt(j));
+          wrong += checkStates(new Unoptimised(language), lines.elementAt(j));
+        }
+        wrong += checkParallel(language, whole.toString(), executor, threads);
+        checked += lines.size() + 1;
+        System.out.println(names[i] + ": " + (wrong - before) + " wrong");
+      }
+      Random random = new Random(34);
+      for (int seed = 0; seed < RANDOM_LANGUAGES; seed++)
+      {
+        Language language = new PlainLanguage(seed, "abcdefs .,;", 40).getLanguage();
+        String text = PlainLanguage.randomText(random, RANDOM_TEXT_LENGTH);
+        wrong += checkStates(language, text.substring(0, 200));
+        wrong += checkStates(new Unoptimised(language), text.substring(0, 200));
+        wrong += checkParallel(language, text, executor, threads);
+        checked += 2;
+      }
+
+      try
+      // ASSERTION: a state not permitted is refused
+      {
+        Language language = readLanguage(args[0], names[0]);
+        language.translate("text", new int[] {1, language.getPermittedStates() + 1});
+        System.out.println("state " + (language.getPermittedStates() + 1) + " not refused");
+        wrong++;
+      }
+      catch (IllegalArgumentException e)
+      {
+      }
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+    System.out.println(checked + " texts translated in every state, " + wrong + " wrong");
+    System.exit((wrong == 0) ? SUCCESS : UNKNOWN_ERROR);
+  }
+
+  private static int checkStates(Language language, String text)
+  // Translates text in every state at once, and in every state twice in
+  // reverse order, and returns the number of translations that differ from
+  // translating in each state alone, and one more for each of the state the
+  // next translation starts in and that translation if translating in every
+  // state changed them.
+  {
+    int states = language.getPermittedStates();
+    int[] all = new int[2 * states];
+    for (int i = 0; i < states; i++)
+    {
+      all[i] = i + 1;
+      all[2 * states - 1 - i] = i + 1;
+    }
+    int wrong = 0;
+    language.setState(states);
+    language.translate(text);
+    int start = language.getDefaultState();
+    String next = language.translate(text);
+    language.setState(states);
+    language.translate(text);
+    String[] translated = language.translate(text, all);
+    if (language.getDefaultState() != start)
+      wrong++;
+    if (!language.translate(text).equals(next))
+      wrong++;
+    for (int i = 0; i < all.length; i++)
+    {
+      language.setState(all[i]);
+      if (!language.translate(text).equals(translated[i]))
+        wrong++;
+    }
+    return wrong;
+  }
+
+  private static int checkParallel(Language language, String text,
+    ExecutorService executor, int threads)
+  // Translates text, and the text from a few places in it on, in parallel in
+  // every state, and returns the number of translations that differ from
+  // translating in one piece.
+  {
+    ParallelTranslator parallel = new ParallelTranslator(language, executor, threads);
+    int wrong = 0;
+    for (int state = 1; state <= language.getPermittedStates(); state++)
+      for (int start = 0; start < text.length(); start += text.length() / 3 + 1)
+      {
+        String piece = text.substring(start);
+        if (Character.isLowSurrogate(piece.charAt(0)))
+          piece = piece.substring(1);
+        language.setState(state);
+        if (!language.translate(piece).equals(parallel.translate(piece, state)))
+          wrong++;
+      }
+    return wrong;
+  }
+
+  private static class Unoptimised implements Language
+  // A language translating in several states with the default of Language,
+  // one state at a time.
+  {
+    private Language language;
+
+    Unoptimised(Language language)
+    {
+      this.language = language;
+    }
+
+    public boolean setState(int state)
+    {
+      return language.setState(state);
+    }
+
+    public int getPermittedStates()
+    {
+      return language.getPermittedStates();
+    }
+
+    public int getState()
+    {
+      return language.getState();
+    }
+
+    public int getDefaultState()
+    {
+      return language.getDefaultState();
+    }
+
+    public String translate(String toConvert)
+    {
+      return language.translate(toConvert);
+    }
+
+    public int[] translate(int[] toConvert)
+    {
+      return language.translate(toConvert);
+    }
+  }
+}
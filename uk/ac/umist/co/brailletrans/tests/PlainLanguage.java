@@ -0,0 +1,567 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.util.*;
+
+/**
+ * A random language, built both as a <CODE>LanguageUnicode</CODE> and as a
+ * plain interpreter of the same rules, and written as a legacy table for
+ * <CODE>Language256</CODE> and <CODE>LanguageInteger</CODE>.  The
+ * interpreter tries every rule in the order it was added at every position
+ * and matches every context afresh, with no index and no memo, so the
+ * translators' indexes and memos can be checked against it.
+ *
+ * <p>The languages have up to four states and input classes, letters,
+ * punctuation and a space, capitals mapped to small letters, and wildcards of
+ * each kind in the contexts of the rules.  Characters the language does not
+ * define are translated as spaces.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class PlainLanguage
+{
+  private static final String CHARACTERS = "abcdefs .,;AB";
+  // the characters defined, capitals mapped to small letters
+  private static final String WILDCARDS = "!$&~%^";
+  private static final int[] WILDCARD_NUMBERS = {Language.WILDCARD_NONE,
+    Language.WILDCARD_ONE, Language.WILDCARD_SEVERAL, Language.WILDCARD_ONE,
+    Language.WILDCARD_NONE, Language.WILDCARD_SEVERAL};
+  private static final int[] WILDCARD_FLAGS = {8, 1, 1, 8, 1, 10};
+  // the wildcards, matching spaces, letters, or spaces and punctuation
+  private static final String CONTEXTS = "abs .!$&~%^";
+  // what contexts are made of
+  private static final String OUTPUTS = "0123456789XYZQ";
+  private static final String TEXT = "aaaassbcdef  .,;ABxyz\u00e9\ud83d\ude00";
+  // what random texts are made of, including characters not defined
+  private static final String LEGACY_TEXT = "aaaassbcdef  .,;ABxyz\u00e9";
+  // the same without the character beyond the legacy tables' 256
+  private static final char LAST_FOCUS = '|';
+  // the focus of a rule ending a legacy table, never in the mapped input
+
+  private LanguageUnicode language;
+  private Hashtable<Integer, Integer> mapping = new Hashtable<Integer, Integer>();
+  private Hashtable<Integer, Integer> flags = new Hashtable<Integer, Integer>();
+  private boolean[][] decisions;
+  // [state - 1][input class - 1]
+  private Vector<int[][]> rules = new Vector<int[][]>();
+  // each rule as {focus}, {left context}, {right context}, {output},
+  // {input class, new state}, with wildcard i in a context as -(i + 1)
+
+  /**
+   * Makes a random language.
+   *
+   * @param seed  The seed of the random choices, so the same seed makes the
+   * same language.
+   * @param focusCharacters  The characters the foci of the rules are made
+   * of; a character appearing often makes a big focus category.
+   * @param numberRules  The number of translation rules.
+   * @throws LanguageDefinitionException if the language cannot be built.
+   */
+  public PlainLanguage(long seed, String focusCharacters, int numberRules)
+    throws LanguageDefinitionException
+  {
+    Random random = new Random(seed);
+    language = new LanguageUnicode();
+    language.setVersionNumber(1);
+    language.setName("plain" + seed);
+    language.setNumberCharacters(CHARACTERS.length());
+    for (int i = 0; i < CHARACTERS.length(); i++)
+    {
+      char from = CHARACTERS.charAt(i);
+      char to = Character.toLowerCase(from);
+      int flag = Character.isLetter(from) ? 1 : ((from == ' ') ? 8 : 2);
+      language.addCharacterInformation(Character.valueOf(from), Character.valueOf(to),
+        Integer.valueOf(flag));
+      mapping.put(Integer.valueOf(from), Integer.valueOf(to));
+      flags.put(Integer.valueOf(to), Integer.valueOf(flag));
+    }
+    language.setNumberWildcards(WILDCARDS.length());
+    for (int i = 0; i < WILDCARDS.length(); i++)
+      language.addWildcardInformation(WILDCARD_NUMBERS[i], WILDCARD_FLAGS[i],
+        Character.valueOf(WILDCARDS.charAt(i)));
+
+    int numberStates = 1 + random.nextInt(4);
+    int numberClasses = 1 + random.nextInt(4);
+    language.setNumberStates(numberStates);
+    language.setNumberInputClasses(numberClasses);
+    decisions = new boolean[numberStates][numberClasses];
+    for (int state = 0; state < numberStates; state++)
+      for (int inputClass = 0; inputClass < numberClasses; inputClass++)
+      {
+        decisions[state][inputClass] = random.nextInt(10) < 7;
+        language.setDecisionTableEntry(state + 1, inputClass + 1,
+          decisions[state][inputClass]);
+      }
+
+    for (int rule = 0; rule < numberRules; rule++)
+    {
+      String focus = randomText(random, focusCharacters, 1 + random.nextInt(3));
+      String left = randomText(random, CONTEXTS, random.nextInt(4) / 2 * random.nextInt(3));
+      String right = randomText(random, CONTEXTS, random.nextInt(4) / 2 * random.nextInt(3));
+      String output = randomText(random, OUTPUTS, 1 + random.nextInt(2 * focus.length()));
+      int inputClass = 1 + random.nextInt(numberClasses);
+      int newState = random.nextInt(numberStates + 1);
+      language.addTranslationRule(inputClass + "\t" + left + "[" + focus + "]" + right
+        + "=" + output + "\t" + ((newState == 0) ? "-" : String.valueOf(newState)));
+      rules.addElement(new int[][] {focus.codePoints().toArray(), compile(left),
+        compile(right), output.codePoints().toArray(), {inputClass, newState}});
+    }
+  }
+
+  /**
+   * Returns the language as a <CODE>LanguageUnicode</CODE>.
+   *
+   * @return The language, which this object does not change.
+   */
+  public LanguageUnicode getLanguage()
+  {
+    return language;
+  }
+
+  /**
+   * Returns the number of states of the language.
+   *
+   * @return The number of permitted states.
+   */
+  public int getPermittedStates()
+  {
+    return decisions.length;
+  }
+
+  /**
+   * Writes the language as a legacy table, which <CODE>Language256</CODE>
+   * and <CODE>LanguageInteger</CODE> load from the filename returned.  The
+   * rules are grouped by the first character of their focus, as the legacy
+   * tables require, keeping the order of the rules within each group, so the
+   * rules that can match at any position are tried in the same order as by
+   * the interpreter.  The table is a temporary file, deleted on exit.
+   *
+   * @return The full path and name of the table, without the ".dat"
+   * filename extension.
+   * @throws IOException if the table cannot be written.
+   */
+  public String writeLegacy() throws IOException
+  {
+    ByteArrayOutputStream table = new ByteArrayOutputStream();
+    table.write(17);
+    table.write(12);
+    table.write(8);
+    table.write(1);
+    for (int i = 0; i < 256; i++)
+    {
+      Integer mapped = mapping.get(Integer.valueOf(i));
+      Integer flag = flags.get(Integer.valueOf(i));
+      table.write((mapped == null) ? ' ' : mapped.intValue());
+      table.write(i);
+      if (WILDCARDS.indexOf(i) != -1)
+        table.write(Language.WILDCARD_FLAG);
+      else
+        table.write((flag == null) ? 0 : flag.intValue());
+    }
+    table.write(WILDCARDS.length());
+    for (int i = 0; i < WILDCARDS.length(); i++)
+    {
+      table.write(WILDCARDS.charAt(i));
+      table.write(WILDCARD_NUMBERS[i]);
+      table.write(WILDCARD_FLAGS[i]);
+    }
+    table.write(decisions.length);
+    table.write(decisions[0].length);
+    for (int state = 0; state < decisions.length; state++)
+      for (int inputClass = 0; inputClass < decisions[state].length; inputClass++)
+        table.write(decisions[state][inputClass] ? 1 : 0);
+
+    Vector<int[][]> sorted = new Vector<int[][]>(rules);
+    Collections.sort(sorted, new Comparator<int[][]>()
+    {
+      public int compare(int[][] rule, int[][] other)
+      {
+        return rule[0][0] - other[0][0];
+      }
+    });
+    sorted.addElement(new int[][] {{LAST_FOCUS}, {}, {}, {LAST_FOCUS}, {1, 0}});
+    for (int i = 0; i < sorted.size(); i++)
+    {
+      int[][] rule = sorted.elementAt(i);
+      StringBuffer body = new StringBuffer();
+      body.append(decompile(rule[1])).append(Language.LEFT_FOCUS_DELIMITER);
+      body.append(decompile(rule[0])).append(Language.RIGHT_FOCUS_DELIMITER);
+      body.append(decompile(rule[2])).append(Language.RULE_OUTPUT_DELIMITER);
+      body.append(decompile(rule[3]));
+      table.write(rule[4][0]);
+      table.write(body.length() + 4); // input class, length, 0 and new state
+      for (int j = 0; j < body.length(); j++)
+        table.write(body.charAt(j));
+      table.write(Language.RULE_CONTENT_DELIMITER);
+      table.write(rule[4][1]);
+    }
+    table.write(Language.TABLE_DELIMITER);
+
+    File file = File.createTempFile(language.getName(), Language.FILE_EXTENSION_DELIMITER
+      + Language256.FILENAME_EXTENSION);
+    file.deleteOnExit();
+    OutputStream out = new FileOutputStream(file);
+    try
+    {
+      table.writeTo(out);
+    }
+    finally
+    {
+      out.close();
+    }
+    String filename = file.getPath();
+    return filename.substring(0, filename.lastIndexOf(Language.FILE_EXTENSION_DELIMITER));
+  }
+
+  /**
+   * Translates a text by trying every rule at every position, as
+   * <CODE>LanguageUnicode</CODE> does.
+   *
+   * @param text  The text to translate.
+   * @param state  The state to translate in, which is also the state returned
+   * to when no rule matches.
+   * @return The translated text.
+   */
+  public String translate(String text, int state)
+  {
+    return translate(text.codePoints().toArray(), state, false);
+  }
+
+  /**
+   * Translates a text by trying every rule at every position, as
+   * <CODE>Language256</CODE> and <CODE>LanguageInteger</CODE> do.  These
+   * translate each <CODE>char</CODE> rather than each code point, and a
+   * wildcard that reaches past either end of the text with context left to
+   * match goes on matching the rest of the context there.
+   *
+   * @param text  The text to translate, of characters below 256.
+   * @param state  The state to translate in, which is also the state returned
+   * to when no rule matches.
+   * @return The translated text.
+   */
+  public String translateLegacy(String text, int state)
+  {
+    int[] input = new int[text.length()];
+    for (int i = 0; i < input.length; i++)
+      input[i] = text.charAt(i);
+    return translate(input, state, true);
+  }
+
+  /**
+   * Translates a text with a translator in a state.  The legacy translators
+   * are given the characters as ints, which every version of them
+   * translates.
+   *
+   * @param language  The translator.
+   * @param text  The text to translate.
+   * @param state  The state to translate in.
+   * @return The translated text.
+   */
+  public static String translateWith(Language language, String text, int state)
+  {
+    language.setState(state);
+    if (language instanceof LanguageUnicode)
+      return language.translate(text);
+    int[] characters = new int[text.length()];
+    for (int i = 0; i < characters.length; i++)
+      characters[i] = text.charAt(i);
+    characters = language.translate(characters);
+    StringBuffer output = new StringBuffer();
+    for (int i = 0; i < characters.length; i++)
+      output.append((char) characters[i]);
+    return output.toString();
+  }
+
+  /**
+   * Makes random languages and translates random texts with a
+   * <CODE>LanguageUnicode</CODE>, <CODE>Language256</CODE> and
+   * <CODE>LanguageInteger</CODE> for each, in states chosen at random, checking
+   * each translation as check says.  The legacy translators load the language
+   * as a legacy table.  Prints the first translation that is wrong.
+   *
+   * @param foci  The characters the foci of the rules are made of.
+   * @param leastRules  The fewest rules in a language.
+   * @param moreRules  The most rules a language has beyond leastRules.
+   * @param numberLanguages  The number of languages to make.
+   * @param numberTexts  The number of texts to translate with each.
+   * @param random  The source of random choices.
+   * @param check  Makes each text and says what its translation should be.
+   * @return The number of translations that are wrong.
+   * @throws Exception if a language cannot be built or written.
+   */
+  public static int check(String foci, int leastRules, int moreRules,
+    int numberLanguages, int numberTexts, Random random, Check check) throws Exception
+  {
+    int wrong = 0;
+    for (int seed = 0; seed < numberLanguages; seed++)
+    {
+      PlainLanguage plain = new PlainLanguage(seed, foci, leastRules + random.nextInt(moreRules));
+      String filename = plain.writeLegacy();
+      Language[] languages = {plain.getLanguage(), new Language256(filename),
+        new LanguageInteger(filename)};
+      for (int text = 0; text < numberTexts; text++)
+      {
+        int state = 1 + random.nextInt(plain.getPermittedStates());
+        String[] inputs = check.texts(random, text);
+        for (int i = 0; i < languages.length; i++)
+        {
+          String input = inputs[(i == 0) ? 0 : 1];
+          String expected = check.expected(plain, languages[i], input, state);
+          if (!expected.equals(check.translate(languages[i], input, state, random)))
+          {
+            if (wrong == 0)
+              System.out.println(languages[i].getClass().getName() + " language "
+                + seed + " state " + state + ": " + check.describe(input));
+            wrong++;
+          }
+        }
+      }
+    }
+    return wrong;
+  }
+
+  /**
+   * What <CODE>check</CODE> does with each text.  By default a text is
+   * translated with <CODE>translateWith</CODE> and must match the plain
+   * interpreter.
+   */
+  public static abstract class Check
+  {
+    /**
+     * Returns a random text, then one for the legacy translators.
+     *
+     * @param random  The source of random choices.
+     * @param text  The number of the text for this language, from 0.
+     * @return The two texts.
+     */
+    public abstract String[] texts(Random random, int text);
+
+    /**
+     * Returns the translation a translator should give of a text.
+     *
+     * @param plain  The plain interpreter of the language.
+     * @param language  The translator.
+     * @param input  The text.
+     * @param state  The state to translate in.
+     * @return The translation expected.
+     */
+    public String expected(PlainLanguage plain, Language language, String input, int state)
+    {
+      return (language instanceof LanguageUnicode) ? plain.translate(input, state)
+        : plain.translateLegacy(input, state);
+    }
+
+    /**
+     * Translates a text with a translator.
+     *
+     * @param language  The translator.
+     * @param input  The text.
+     * @param state  The state to translate in.
+     * @param random  The source of random choices.
+     * @return The translation.
+     */
+    public String translate(Language language, String input, int state, Random random)
+    {
+      return translateWith(language, input, state);
+    }
+
+    /**
+     * Describes a text that was translated wrongly.
+     *
+     * @param input  The text.
+     * @return The description.
+     */
+    public String describe(String input)
+    {
+      return "\"" + input + "\"";
+    }
+  } // end of Check class
+
+  /**
+   * Returns a random text of characters the languages do and do not define.
+   *
+   * @param random  The source of random choices.
+   * @param length  The number of characters.
+   * @return The text.
+   */
+  public static String randomText(Random random, int length)
+  {
+    return randomCodePoints(random, TEXT, length);
+  }
+
+  /**
+   * Returns a random text of characters the languages do and do not define,
+   * all below 256, for the legacy translators.
+   *
+   * @param random  The source of random choices.
+   * @param length  The number of characters.
+   * @return The text.
+   */
+  public static String randomLegacyText(Random random, int length)
+  {
+    return randomCodePoints(random, LEGACY_TEXT, length);
+  }
+
+  //***** PRIVATE METHODS ***********************************************
+  private static String randomText(Random random, String characters, int length)
+  {
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < length; i++)
+      text.append(characters.charAt(random.nextInt(characters.length())));
+    return text.toString();
+  }
+
+  private static String randomCodePoints(Random random, String characters, int length)
+  {
+    StringBuilder text = new StringBuilder();
+    int[] codePoints = characters.codePoints().toArray();
+    for (int i = 0; i < length; i++)
+      text.appendCodePoint(codePoints[random.nextInt(codePoints.length)]);
+    return text.toString();
+  }
+
+  private static int[] compile(String context)
+  // Returns the code points of a context, with wildcard i as -(i + 1).
+  {
+    int[] compiled = context.codePoints().toArray();
+    for (int i = 0; i < compiled.length; i++)
+      if (WILDCARDS.indexOf(compiled[i]) != -1)
+        compiled[i] = -(WILDCARDS.indexOf(compiled[i]) + 1);
+    return compiled;
+  }
+
+  private static String decompile(int[] compiled)
+  // Returns the characters of a compiled context, focus or output.
+  {
+    StringBuffer context = new StringBuffer();
+    for (int i = 0; i < compiled.length; i++)
+      context.append((compiled[i] < 0) ? WILDCARDS.charAt(-compiled[i] - 1) : (char) compiled[i]);
+    return context.toString();
+  }
+
+  private String translate(int[] input, int state, boolean legacy)
+  // Translates input, mapping it first, with the legacy translators' contexts
+  // if legacy is true.
+  {
+    for (int i = 0; i < input.length; i++)
+    {
+      Integer mapped = mapping.get(Integer.valueOf(input[i]));
+      input[i] = (mapped == null) ? ' ' : mapped.intValue();
+    }
+    StringBuilder output = new StringBuilder();
+    int current = state;
+    int position = 0;
+    while (position < input.length)
+    {
+      int[][] matched = null;
+      for (int i = 0; (matched == null) && (i < rules.size()); i++)
+      {
+        int[][] rule = rules.elementAt(i);
+        if (matchesFocus(input, position, rule[0])
+          && decisions[current - 1][rule[4][0] - 1]
+          && matchesLeft(input, position - 1, rule[1], legacy)
+          && matchesRight(input, position + rule[0].length, rule[2], legacy))
+          matched = rule;
+      }
+      if (matched != null)
+      {
+        for (int i = 0; i < matched[3].length; i++)
+          output.appendCodePoint(matched[3][i]);
+        if (matched[4][1] != 0)
+          current = matched[4][1];
+        position += matched[0].length;
+      }
+      else
+      {
+        output.appendCodePoint(input[position]);
+        position++;
+        current = state;
+      }
+    }
+    return output.toString();
+  }
+
+  private boolean isMatchedBy(int wildcard, int mapped)
+  // Returns true if the mapped character has a flag of the wildcard.
+  {
+    Integer flag = flags.get(Integer.valueOf(mapped));
+    return (flag != null) && ((flag.intValue() & WILDCARD_FLAGS[wildcard]) != 0);
+  }
+
+  private static boolean matchesFocus(int[] input, int position, int[] focus)
+  {
+    if (position + focus.length > input.length)
+      return false;
+    for (int i = 0; i < focus.length; i++)
+      if (input[position + i] != focus[i])
+        return false;
+    return true;
+  }
+
+  private boolean matchesLeft(int[] input, int position, int[] context, boolean legacy)
+  // Matches context leftwards from position.  A wildcard of one or several
+  // characters matches past the start of the text if it matches a space.
+  // Unless legacy, a wildcard that reaches the start with context left to
+  // match fails.
+  {
+    for (int i = context.length - 1; i >= 0; i--)
+    {
+      if (context[i] >= 0)
+      {
+        if ((position < 0) || (input[position] != context[i]))
+          return false;
+        position--;
+        continue;
+      }
+      int wildcard = -context[i] - 1;
+      if (WILDCARD_NUMBERS[wildcard] != Language.WILDCARD_NONE)
+      {
+        if (position < 0)
+          return isMatchedBy(wildcard, ' ');
+        if (!isMatchedBy(wildcard, input[position]))
+          return false;
+        position--;
+      }
+      if (WILDCARD_NUMBERS[wildcard] != Language.WILDCARD_ONE)
+        while ((position >= 0) && isMatchedBy(wildcard, input[position]))
+          position--;
+      if (!legacy && (position < 0) && (i > 0))
+        return false;
+    }
+    return true;
+  }
+
+  private boolean matchesRight(int[] input, int position, int[] context, boolean legacy)
+  // Matches context rightwards from position, as matchesLeft does leftwards.
+  {
+    for (int i = 0; i < context.length; i++)
+    {
+      if (context[i] >= 0)
+      {
+        if ((position >= input.length) || (input[position] != context[i]))
+          return false;
+        position++;
+        continue;
+      }
+      int wildcard = -context[i] - 1;
+      if (WILDCARD_NUMBERS[wildcard] != Language.WILDCARD_NONE)
+      {
+        if (position >= input.length)
+          return isMatchedBy(wildcard, ' ');
+        if (!isMatchedBy(wildcard, input[position]))
+          return false;
+        position++;
+      }
+      if (WILDCARD_NUMBERS[wildcard] != Language.WILDCARD_ONE)
+        while ((position < input.length) && isMatchedBy(wildcard, input[position]))
+          position++;
+      if (!legacy && (position >= input.length) && (i < context.length - 1))
+        return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,118 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.util.*;
+
+/*
+ * RouterTest
+ * Translates the lines of a file, and random texts, with ScriptRouters of
+ * the Unicode languages in a directory: each language alone, and each paired
+ * both ways round with random languages defining only a few letters and
+ * punctuation, so the text is split between them.  Checks each translation
+ * against splitting the text by hand and translating each segment with its
+ * language's translate, in the state set for it.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class RouterTest extends Translator
+{
+  private static final int RANDOM_LANGUAGES = 10;
+  private static final int RANDOM_TEXTS = 100;
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 2)
+    {
+      System.out.println("RouterTest");
+      System.out.println("USAGE  java RouterTest <languageDirectory> <file>");
+      System.exit(SUCCESS);
+    }
+
+    Vector<String> texts = new Vector<String>();
+    BufferedReader in = new BufferedReader(new FileReader(args[1]));
+    String line;
+    while ((line = in.readLine()) != null)
+      texts.addElement(line);
+    in.close();
+    Random random = new Random(35);
+    for (int i = 0; i < RANDOM_TEXTS; i++)
+      texts.addElement(PlainLanguage.randomText(random, random.nextInt(200))
+        + texts.elementAt(random.nextInt(texts.size())));
+
+    int wrong = 0;
+    int checked = 0;
+    String[] names = readLanguageNames(args[0]);
+    for (int i = 0; i < names.length; i++)
+    {
+      Language loaded = readLanguage(args[0], names[i]);
+      if (!(loaded instanceof LanguageUnicode))
+        continue;
+      LanguageUnicode language = (LanguageUnicode) loaded;
+      int before = wrong;
+      for (int state = 1; state <= language.getPermittedStates(); state++)
+      {
+        language.setState(state);
+        wrong += check(new LanguageUnicode[] {language}, texts);
+        checked += texts.size();
+      }
+      for (int seed = 0; seed < RANDOM_LANGUAGES; seed++)
+      {
+        PlainLanguage plain = new PlainLanguage(seed, "abcdefs .,;", 40);
+        LanguageUnicode other = plain.getLanguage();
+        language.setState(1 + random.nextInt(language.getPermittedStates()));
+        other.setState(1 + random.nextInt(plain.getPermittedStates()));
+        wrong += check(new LanguageUnicode[] {language, other}, texts);
+        wrong += check(new LanguageUnicode[] {other, language}, texts);
+        checked += 2 * texts.size();
+      }
+      System.out.println(names[i] + ": " + (wrong - before) + " wrong");
+    }
+    System.out.println(checked + " texts translated, " + wrong + " wrong");
+    System.exit((wrong == 0) ? SUCCESS : UNKNOWN_ERROR);
+  }
+
+  private static int check(LanguageUnicode[] languages, Vector<String> texts)
+  // Returns the number of texts a router of languages translates differently
+  // from translating by hand.
+  {
+    ScriptRouter router = new ScriptRouter(languages);
+    int wrong = 0;
+    for (int i = 0; i < texts.size(); i++)
+      if (!translate(languages, texts.elementAt(i)).equals(router.translate(texts.elementAt(i))))
+        wrong++;
+    return wrong;
+  }
+
+  private static String translate(LanguageUnicode[] languages, String text)
+  // Translates each run of text with the first language defining its first
+  // character, or the first language if none does, the run going on while
+  // that language defines the characters or no language does.
+  {
+    StringBuffer translated = new StringBuffer();
+    int start = 0;
+    int language = -1;
+    int index = 0;
+    while (index < text.length())
+    {
+      int codePoint = text.codePointAt(index);
+      int first = -1;
+      for (int i = languages.length - 1; i >= 0; i--)
+        if (languages[i].isCharacterDefined(codePoint))
+          first = i;
+      if (language == -1)
+        language = Math.max(first, 0);
+      else if ((first != -1) && !languages[language].isCharacterDefined(codePoint))
+      {
+        translated.append(languages[language].translate(text.substring(start, index)));
+        start = index;
+        language = first;
+      }
+      index += Character.charCount(codePoint);
+    }
+    translated.append(languages[Math.max(language, 0)].translate(text.substring(start)));
+    return translated.toString();
+  }
+}
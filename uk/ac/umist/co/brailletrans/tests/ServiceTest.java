@@ -0,0 +1,147 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.net.*;
+import java.nio.charset.*;
+import java.util.*;
+
+/*
+ * ServiceTest
+ * Starts a TranslationServer on the languages in a directory, half of them
+ * prepared beforehand, and posts the lines of a file to it, each with a body
+ * of known length, then the whole file repeated past
+ * TranslationServer.MAX_FIXED_LENGTH bytes, both with a body of known length
+ * and chunked, in every state of every language.
+ * Checks each response against setState followed by translate, and checks
+ * the list of languages and that an unknown language is not found.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class ServiceTest extends Translator
+{
+  private static final int SESSIONS = 2;
+  // sessions of each language the server makes
+  private static final int CHUNK_SIZE = 1000;
+  // bytes in each chunk of a chunked request
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 2)
+    {
+      System.out.println("ServiceTest");
+      System.out.println("USAGE  java ServiceTest <languageDirectory> <file>");
+      System.exit(SUCCESS);
+    }
+
+    LanguageRegistry registry = new LanguageRegistry(new File(args[0]));
+    Vector<String> lines = new Vector<String>();
+    StringBuffer whole = new StringBuffer();
+    BufferedReader in = new BufferedReader(new FileReader(args[1]));
+    String line;
+    while ((line = in.readLine()) != null)
+    {
+      lines.addElement(line);
+      whole.append(line).append('\n');
+    }
+    in.close();
+    String file = whole.toString();
+    while (whole.toString().getBytes(StandardCharsets.UTF_8).length
+      <= TranslationServer.MAX_FIXED_LENGTH)
+      whole.append(file);
+    String large = whole.toString();
+
+    // Answer each request at once, as TranslationServer.main does.
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    TranslationServer server = new TranslationServer(registry,
+      new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), SESSIONS);
+    // Load half the languages beforehand and leave the rest to first use
+    String[] prepared = registry.getNames();
+    server.prepare(Arrays.copyOf(prepared, prepared.length / 2));
+    server.start();
+    String base = "http://" + server.getAddress().getHostString() + ":"
+      + server.getAddress().getPort();
+    int wrong = 0;
+    int checked = 0;
+    try
+    {
+      String[] names = registry.getNames();
+      StringBuffer list = new StringBuffer();
+      for (int i = 0; i < names.length; i++)
+        list.append(names[i]).append('\n');
+      if (!list.toString().equals(request(base + "/languages", null, -1)))
+        wrong++;
+      if (request(base + "/translate/no such language", "text", -1) != null)
+        wrong++;
+
+      for (int i = 0; i < names.length; i++)
+      {
+        Language language = registry.getLanguage(names[i]);
+        int before = wrong;
+        for (int state = 1; state <= language.getPermittedStates(); state++)
+        {
+          String url = base + "/translate/" + names[i] + "?state=" + state;
+          for (int j = 0; j < lines.size(); j++)
+          {
+            language.setState(state);
+            if (!language.translate(lines.elementAt(j)).equals(
+              request(url, lines.elementAt(j), -1)))
+              wrong++;
+          }
+          language.setState(state);
+          String expected = language.translate(large);
+          if (!expected.equals(request(url, large, -1)))
+            wrong++;
+          if (!expected.equals(request(url, large, CHUNK_SIZE)))
+            wrong++;
+          checked += lines.size() + 2;
+        }
+        System.out.println(names[i] + ": " + (wrong - before) + " wrong");
+      }
+    }
+    finally
+    {
+      server.stop(0);
+    }
+    System.out.println(checked + " requests translated, " + wrong + " wrong");
+    System.exit((wrong == 0) ? SUCCESS : UNKNOWN_ERROR);
+  }
+
+  private static String request(String url, String text, int chunkSize)
+    throws IOException
+  // Gets url, or posts text to it if there is any, chunked if chunkSize is
+  // positive.  Returns the body of the response, or null if the status is not
+  // 200 OK.
+  {
+    HttpURLConnection connection = (HttpURLConnection)
+      new URL(url.replace(" ", "%20")).openConnection();
+    if (text != null)
+    {
+      byte[] body = text.getBytes(StandardCharsets.UTF_8);
+      connection.setRequestMethod("POST");
+      connection.setDoOutput(true);
+      if (chunkSize > 0)
+        connection.setChunkedStreamingMode(chunkSize);
+      else
+        connection.setFixedLengthStreamingMode(body.length);
+      OutputStream out = connection.getOutputStream();
+      out.write(body);
+      out.close();
+    }
+    if (connection.getResponseCode() != HttpURLConnection.HTTP_OK)
+    {
+      connection.getErrorStream().close();
+      return null;
+    }
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    InputStream responseIn = connection.getInputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+    while ((read = responseIn.read(buffer)) != -1)
+      response.write(buffer, 0, read);
+    responseIn.close();
+    return new String(response.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,146 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.util.*;
+
+/*
+ * SharedTableTest
+ * Parses a legacy language rules table once and builds several Language256
+ * and LanguageInteger translators on it, then checks that each translates a
+ * file as a translator that loaded the table itself does.  Each
+ * LanguageInteger also translates a part of the file from the middle of an
+ * int[] and a char[] into the middle of an output array, which must leave
+ * the input and the rest of the output as they were, and must throw
+ * ArrayIndexOutOfBoundsException when the output is too small.  Prints the
+ * time taken to build the translators each way.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class SharedTableTest extends Translator
+{
+  private static final int MARGIN = 7;
+  // unused places either side of the text and output given to translate
+  private static final int UNUSED = -2;
+  // what the unused places hold
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 4)
+    {
+      System.out.println("SharedTableTest");
+      System.out.println("USAGE  java SharedTableTest <file> <language> <state> <translators>");
+      System.exit(SUCCESS);
+    }
+
+    String inFilename = args[0];
+    String languageToUse = args[1];
+    int state = Integer.parseInt(args[2]);
+    int numberTranslators = Integer.parseInt(args[3]);
+
+    // Translators that each load the table themselves
+    Stopwatch timer = new Stopwatch();
+    timer.start();
+    Language256 own256 = new Language256(languageToUse);
+    LanguageInteger ownInteger = new LanguageInteger(languageToUse);
+    timer.stop();
+    System.out.println("2 translators loading their own table in " + timer.getTime() + "ms");
+    own256.setState(state);
+    ownInteger.setState(state);
+    String expected256 = turnIntoString(own256.translate(readIntArrayFromDisk(inFilename)));
+    String expectedInteger = turnIntoString(ownInteger.translate(readIntArrayFromDisk(inFilename)));
+
+    // Translators sharing one table
+    timer = new Stopwatch();
+    timer.start();
+    LegacyTable legacyTable = new LegacyTable(languageToUse);
+    Language[] shared = new Language[2 * numberTranslators];
+    for (int i = 0; i < numberTranslators; i++)
+    {
+      shared[2 * i] = new Language256(legacyTable);
+      shared[2 * i + 1] = new LanguageInteger(legacyTable);
+    }
+    timer.stop();
+    System.out.println(shared.length + " translators sharing one table in " + timer.getTime()
+      + "ms, " + legacyTable.getTableSize() + " ints of rules");
+
+    int wrong = 0;
+    for (int i = 0; i < shared.length; i++)
+    {
+      shared[i].setState(state);
+      String result = turnIntoString(shared[i].translate(readIntArrayFromDisk(inFilename)));
+      if (!result.equals((i % 2 == 0) ? expected256 : expectedInteger))
+        wrong++;
+      if (shared[i] instanceof LanguageInteger)
+        wrong += checkArrays((LanguageInteger) shared[i], readIntArrayFromDisk(inFilename));
+    }
+    System.out.println(wrong + " of " + shared.length + " translations wrong");
+    System.exit((wrong == 0) ? SUCCESS : UNKNOWN_ERROR);
+  }
+
+  private static int checkArrays(LanguageInteger language, int[] text)
+  // Translates the middle half of text with the int[] and char[] translate
+  // into arrays of the caller's, and returns the number of checks failed.
+  {
+    int offset = text.length / 4;
+    int length = text.length / 2;
+    int[] part = Arrays.copyOfRange(text, offset, offset + length);
+    int[] expected = language.translate(part);
+    int wrong = 0;
+
+    int[] input = new int[text.length + 2 * MARGIN];
+    Arrays.fill(input, UNUSED);
+    System.arraycopy(text, 0, input, MARGIN, text.length);
+    int[] inputBefore = input.clone();
+    int[] output = new int[expected.length + 2 * MARGIN];
+    Arrays.fill(output, UNUSED);
+    int written = language.translate(input, MARGIN + offset, length, output, MARGIN);
+    if (!Arrays.equals(input, inputBefore)
+      || (written != expected.length)
+      || !Arrays.equals(Arrays.copyOfRange(output, MARGIN, MARGIN + written), expected)
+      || !isUnused(output, 0, MARGIN)
+      || !isUnused(output, MARGIN + written, output.length))
+      wrong++;
+
+    char[] characters = new char[input.length];
+    for (int i = 0; i < characters.length; i++)
+      characters[i] = (char) input[i];
+    char[] charactersBefore = characters.clone();
+    char[] charOutput = new char[output.length];
+    Arrays.fill(charOutput, (char) UNUSED);
+    written = language.translate(characters, MARGIN + offset, length, charOutput, MARGIN);
+    boolean right = Arrays.equals(characters, charactersBefore) && (written == expected.length);
+    for (int i = 0; i < charOutput.length; i++)
+      if ((i < MARGIN) || (i >= MARGIN + written))
+        right = right && (charOutput[i] == (char) UNUSED);
+      else
+        right = right && (charOutput[i] == (char) expected[i - MARGIN]);
+    if (!right)
+      wrong++;
+
+    if (expected.length > 0)
+    {
+      try
+      {
+        language.translate(input, MARGIN + offset, length, new int[expected.length - 1], 0);
+        wrong++;
+      }
+      catch (ArrayIndexOutOfBoundsException e)
+      {
+        // ASSERTION: the translation does not fit
+      }
+    }
+    return wrong;
+  }
+
+  private static boolean isUnused(int[] array, int from, int to)
+  // Returns true if array holds UNUSED from from up to to.
+  {
+    for (int i = from; i < to; i++)
+      if (array[i] != UNUSED)
+        return false;
+    return true;
+  }
+}
@@ -0,0 +1,80 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.util.*;
+
+/*
+ * SnapshotTest
+ * Translates a file in chunks of random sizes with a ChunkTranslator, moving
+ * the translation between two registries, as between two processes, by a
+ * snapshot every few chunks.  Checks the result against translating the file
+ * in one piece.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class SnapshotTest extends Translator
+{
+  private static final int MAX_CHUNK = 500;
+  // characters in the largest chunk
+  private static final int CHUNKS_PER_MOVE = 3;
+  // chunks translated between moves, on average
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 4)
+    {
+      System.out.println("SnapshotTest");
+      System.out.println("USAGE  java SnapshotTest <languageDirectory> <language> <state> <file>");
+      System.exit(SUCCESS);
+    }
+
+    LanguageRegistry[] workers = new LanguageRegistry[] {
+      new LanguageRegistry(new File(args[0])), new LanguageRegistry(new File(args[0]))};
+    String languageName = args[1];
+    int state = Integer.parseInt(args[2]);
+    StringBuffer file = new StringBuffer();
+    BufferedReader in = new BufferedReader(new FileReader(args[3]));
+    String line;
+    while ((line = in.readLine()) != null)
+      file.append(line).append('\n');
+    in.close();
+    String text = file.toString();
+
+    Language language = new LanguageRegistry(new File(args[0])).getLanguage(languageName);
+    language.setState(state);
+    String expected = language.translate(text);
+
+    Random random = new Random(1);
+    int worker = 0;
+    ChunkTranslator translator = new ChunkTranslator(workers[worker].getLanguage(languageName),
+      state);
+    StringBuffer translated = new StringBuffer();
+    int moves = 0;
+    long snapshotBytes = 0;
+    int position = 0;
+    while (position < text.length())
+    {
+      int end = Math.min(text.length(), position + 1 + random.nextInt(MAX_CHUNK));
+      translated.append(translator.translate(text.substring(position, end)));
+      position = end;
+      if (random.nextInt(CHUNKS_PER_MOVE) == 0)
+      {
+        byte[] snapshot = translator.snapshot(languageName);
+        translator.abandon();
+        worker = 1 - worker;
+        translator = ChunkTranslator.resume(snapshot, workers[worker]);
+        moves++;
+        snapshotBytes += snapshot.length;
+      }
+    }
+    translated.append(translator.finish());
+
+    System.out.println(text.length() + " characters, " + moves + " moves, "
+      + ((moves == 0) ? 0 : snapshotBytes / moves) + " bytes per snapshot, "
+      + (translated.toString().equals(expected) ? "right" : "WRONG"));
+    System.exit(SUCCESS);
+  }
+}
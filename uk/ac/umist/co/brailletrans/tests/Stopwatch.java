@@ -0,0 +1,49 @@
+package uk.ac.umist.co.brailletrans.tests;
+
+/**
+ * Times the test translation tools.  Each <CODE>start</CODE> and
+ * <CODE>stop</CODE> adds the time between them to the total.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ * @author JavaBrailleTrans contributors
+ * @version 1.0 10/18/2026
+ */
+public class Stopwatch
+{
+  private long total;
+  // nanoseconds timed so far
+  private long started = -1;
+  // when start was called, or -1 if stopped
+
+  /**
+   * Starts timing.
+   */
+  public void start()
+  {
+    started = System.nanoTime();
+  }
+
+  /**
+   * Stops timing, adding the time since <CODE>start</CODE> to the total.
+   */
+  public void stop()
+  {
+    if (started != -1)
+    {
+      total += System.nanoTime() - started;
+      started = -1;
+    }
+  }
+
+  /**
+   * Returns the total time timed.
+   *
+   * @return The time in milliseconds.
+   */
+  public long getTime()
+  {
+    return total / 1000000;
+  }
+}
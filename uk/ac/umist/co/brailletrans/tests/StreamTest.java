@@ -0,0 +1,87 @@
+package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
+import java.io.*;
+import java.util.*;
+import java.util.stream.*;
+
+/*
+ * StreamTest
+ * Translates many copies of the lines of a file as a stream with each
+ * language in a directory, in every state, both through
+ * TranslationStreams.translate and through the toTranslatedList collector,
+ * on sequential and parallel streams.  Checks that each gives the
+ * translations of the lines, in order, that setState followed by translate
+ * gives.
+ *
+ * <p><small>Copyright 2026 the JavaBrailleTrans contributors. This program is
+ * free software under the terms of the GNU General Public License. </small>
+ *
+ */
+
+public class StreamTest extends Translator
+{
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length != 3)
+    {
+      System.out.println("StreamTest");
+      System.out.println("USAGE  java StreamTest <languageDirectory> <file> <copies>");
+      System.exit(SUCCESS);
+    }
+
+    Vector<String> lines = new Vector<String>();
+    BufferedReader in = new BufferedReader(new FileReader(args[1]));
+    String line;
+    while ((line = in.readLine()) != null)
+      lines.addElement(line);
+    in.close();
+    int copies = Integer.parseInt(args[2]);
+    Vector<String> texts = new Vector<String>();
+    for (int i = 0; i < copies; i++)
+      texts.addAll(lines);
+
+    int wrong = 0;
+    String[] names = readLanguageNames(args[0]);
+    for (int i = 0; i < names.length; i++)
+    {
+      Language language = readLanguage(args[0], names[i]);
+      int before = wrong;
+      for (int state = 1; state <= language.getPermittedStates(); state++)
+      {
+        Vector<String> expected = new Vector<String>();
+        for (int j = 0; j < texts.size(); j++)
+        {
+          language.setState(state);
+          expected.addElement(language.translate(texts.elementAt(j)));
+        }
+        if (!expected.equals(TranslationStreams.translate(texts.stream(), language,
+          state).collect(Collectors.toList())))
+          wrong++;
+        if (!expected.equals(TranslationStreams.translate(texts.parallelStream(), language,
+          state).collect(Collectors.toList())))
+          wrong++;
+        if (!expected.equals(texts.stream().collect(
+          TranslationStreams.toTranslatedList(language, state))))
+          wrong++;
+        if (!expected.equals(texts.parallelStream().collect(
+          TranslationStreams.toTranslatedList(language, state))))
+          wrong++;
+      }
+
+      try
+      // ASSERTION: a state not permitted is refused
+      {
+        TranslationStreams.translate(texts.stream(), language,
+          language.getPermittedStates() + 1);
+        wrong++;
+      }
+      catch (IllegalArgumentException e)
+      {
+      }
+      System.out.println(names[i] + ": " + (wrong - before) + " wrong");
+    }
+    System.out.println(texts.size() + " texts translated in every state of "
+      + names.length + " languages, " + wrong + " wrong");
+    System.exit((wrong == 0) ? SUCCESS : UNKNOWN_ERROR);
+  }
+}
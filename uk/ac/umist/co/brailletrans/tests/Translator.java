@@ -1,5 +1,10 @@
 package uk.ac.umist.co.brailletrans.tests;
+import uk.ac.umist.co.brailletrans.*;
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
 
 /**
  * Superclass of translation tools that use the Language programs.  Contains
@@ -42,6 +47,11 @@ public class Translator
     */
    public static final int SUCCESS = 0;
 
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // bytes and characters read from a file at a time
+  private static final ThreadLocal<Object[]> buffers = new ThreadLocal<Object[]>();
+  // each thread's reusable pair of byte and char buffers for reading files
+
   /**
    * Writes a <CODE>String</CODE> to a local file using <CODE>BufferedWriter</CODE>
    *
@@ -65,57 +75,142 @@ public class Translator
   }
 
   /**
-   * Reads text as a <CODE>String</CODE> from a local file using <CODE>java.io.BufferedReader</CODE>.
+   * Writes a <CODE>String</CODE> to a local file in an encoding, encoding it
+   * in one pass and writing it to the file's channel in bulk.
+   *
+   * @param filename String containing full path and name of file to write to.
+   * @param toWrite  String to be written to file in filename.
+   * @param encoding The encoding to write the file in.
+   */
+  static public void writeStringToDisk(String filename, String toWrite, Charset encoding)
+    throws IOException
+  {
+    try
+    {
+      writeBytes(filename, encoding.newEncoder().encode(CharBuffer.wrap(toWrite)));
+    }
+    catch (IOException e)
+    {
+      throw new IOException("Failed to write output file: " + e);
+    }
+  }
+
+  /**
+   * Reads text as a <CODE>String</CODE> from a local file in the platform's
+   * default encoding, with a space after each line in place of its line
+   * terminator.
    *
    * @param filename  <CODE>String</CODE> containing the full path and filename of the local file to read text from.
    * @return toReturn The <CODE>String</CODE> read from the local file.
    */
   static public String readStringFromDisk(String filename) throws FileNotFoundException, IOException
   {
-    BufferedReader inFile = null;
-    String toReturn = null;
-    // Open the input file
-	  try
+    return readStringFromDisk(filename, Charset.defaultCharset());
+  }
+
+  /**
+   * Reads text as a <CODE>String</CODE> from a local file in an encoding,
+   * with a space after each line in place of its line terminator.
+   *
+   * @param filename  <CODE>String</CODE> containing the full path and filename of the local file to read text from.
+   * @param encoding  The encoding of the file.
+   * @return toReturn The <CODE>String</CODE> read from the local file.
+   */
+  static public String readStringFromDisk(String filename, Charset encoding)
+    throws FileNotFoundException, IOException
+  {
+    String text = readTextFromDisk(filename, encoding);
+    StringBuilder toReturn = new StringBuilder(text.length() + 1);
+    int i = 0;
+    while (i < text.length())
     {
-      inFile = new BufferedReader(new FileReader(filename));
-    }
-	  catch (FileNotFoundException e)
-	  {
-      throw new FileNotFoundException("Unable to find file " + filename +
-       " \nReported error: " + e);
+      char c = text.charAt(i++);
+      if ((c == '\r') || (c == '\n'))
+      {
+        toReturn.append(' ');
+        if ((c == '\r') && (i < text.length()) && (text.charAt(i) == '\n'))
+          i++;
+      }
+      else
+        toReturn.append(c);
     }
+    // ASSERTION: every line but an unterminated last one has its space
+    if ((text.length() > 0) && !endsLine(text))
+      toReturn.append(' ');
+    return toReturn.toString();
+  }
 
-    // Get the file into toReturn
-	  try
+  /**
+   * Reads the whole of a local file as a <CODE>String</CODE>, exactly as it
+   * is, decoding it in bulk through a buffer reused by each thread.
+   *
+   * @param filename  <CODE>String</CODE> containing the full path and filename of the local file to read text from.
+   * @param encoding  The encoding of the file.
+   * @return toReturn The <CODE>String</CODE> read from the local file.
+   */
+  static public String readTextFromDisk(String filename, Charset encoding)
+    throws FileNotFoundException, IOException
+  {
+    FileInputStream inFile = openFile(filename);
+    try
     {
-      while (inFile.ready())
-        toReturn = toReturn + inFile.readLine() + " ";
+      FileChannel channel = inFile.getChannel();
+      Object[] pair = buffers.get();
+      if (pair == null)
+      {
+        pair = new Object[] {ByteBuffer.allocate(BUFFER_SIZE), CharBuffer.allocate(BUFFER_SIZE)};
+        buffers.set(pair);
+      }
+      ByteBuffer bytes = (ByteBuffer) pair[0];
+      CharBuffer chars = (CharBuffer) pair[1];
+      bytes.clear();
+      chars.clear();
+      CharsetDecoder decoder = encoding.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      StringBuilder toReturn = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 8,
+        channel.size()));
+      boolean ended = false;
+      while (!ended)
+      {
+        ended = (channel.read(bytes) == END_OF_FILE);
+        bytes.flip();
+        CoderResult result;
+        do
+        {
+          result = decoder.decode(bytes, chars, ended);
+          chars.flip();
+          toReturn.append(chars);
+          chars.clear();
+        }
+        while (result.isOverflow());
+        bytes.compact();
+      }
+      while (decoder.flush(chars).isOverflow())
+      {
+        chars.flip();
+        toReturn.append(chars);
+        chars.clear();
+      }
+      chars.flip();
+      toReturn.append(chars);
+      chars.clear();
+      return toReturn.toString();
     }
-	  catch (IOException e)
-	  {
+    catch (IOException e)
+    {
       throw new IOException("Error when reading from file " + filename +
        " \nReported error: " + e);
     }
-
-    // Close the input file
-	  try
+    finally
     {
       inFile.close();
     }
-	  catch (IOException e)
-	  {
-      throw new IOException("Unable to close file " + filename +
-       " \nReported error:" + e);
-    }
-    // since the wretched input stream puts a NULL at the beginning of each
-    // stream, hack it off the beginning of the string.
-    if (toReturn.substring(0,4).equalsIgnoreCase("null"))
-      toReturn = toReturn.substring(4, toReturn.length());
-    return toReturn;
-  }
+  }
 
   /**
-   * Reads an array of ints from a local file using <CODE>BufferedInputStream</CODE>.
+   * Reads an array of ints from a local file, one for each byte, reading the
+   * file in bulk.
    *
    * @param filename  <CODE>String</CODE> containing the full path and filename of the local file to read from.
    * @return toReturn An int[] containing ints read from file.
@@ -123,57 +218,24 @@ public class Translator
   static public int[] readIntArrayFromDisk(String filename)
     throws FileNotFoundException, IOException
   {
-    BufferedInputStream inFile = null;
-    int[] toReturn;
-    int[] gotFile = null;
-
-        // Open the input file
-	  try
+    byte[] gotFile;
+    FileInputStream inFile = openFile(filename);
+    try
     {
-      inFile = new BufferedInputStream(new FileInputStream(filename));
+      gotFile = inFile.readAllBytes();
     }
-	  catch (FileNotFoundException e)
-	  {
-      throw new FileNotFoundException("Unable to find file " + filename +
-       " \nReported error: " + e);
-    }
-
-    // Get the file into toReturn
-    int counter = 0;
-    // ASSERTION: counter=0, no bytes have been read
-	  try
+    catch (IOException e)
     {
-      gotFile = new int[inFile.available() + FILE_SIZE_ERROR_LEEWAY];
-
-      int got = inFile.read();
-      while (got != END_OF_FILE)
-      {
-        gotFile[counter] = got;
-        counter++;
-        // ASSERTION: one and only one byte has been written to gotFile, one and only
-        // one increment has been made to counter => counter==number of bytes
-        got = inFile.read();
-      }
-    }
-	  catch (IOException e)
-	  {
       throw new IOException("Error when reading from file " + filename +
        " \nReported error: " + e);
     }
-    // Close the input file
-	  try
+    finally
     {
       inFile.close();
     }
-	  catch (IOException e)
-	  {
-      throw new IOException("Unable to close file " + filename +
-       " \nReported error:" + e);
-    }
-    // can now declare correct toReturn size
-    toReturn = new int[counter];
-    // Copy array got to correct-size toReturn array
-    System.arraycopy(gotFile, 0, toReturn, 0, counter);
+    int[] toReturn = new int[gotFile.length];
+    for (int i = 0; i < gotFile.length; i++)
+      toReturn[i] = gotFile[i] & 0xff;
     return toReturn;
   }
 
@@ -199,10 +261,10 @@ public class Translator
    */
   public static String turnIntoString(int[] toConvert)
   {
-    String toReturn = "";
+    char[] toReturn = new char[toConvert.length];
     for (int i = 0; i < toConvert.length; i++)
-      toReturn += (char) toConvert[i];
-    return toReturn;
+      toReturn[i] = (char) toConvert[i];
+    return new String(toReturn);
   }
 
   /**
@@ -213,15 +275,16 @@ public class Translator
    */
   public static String turnIntoString(byte[] toConvert)
   {
-    String toReturn = "";
+    char[] toReturn = new char[toConvert.length];
     for (int i = 0; i < toConvert.length; i++)
-      toReturn += (char) toConvert[i];
-    return toReturn;
+      toReturn[i] = (char) toConvert[i];
+    return new String(toReturn);
   }
 
 
   /**
-   * Saves an array of integers to disk using FileOutputStream
+   * Saves an array of integers to disk, one byte for each, writing them to
+   * the file's channel in bulk.
    *
    * @param toWrite    Array of ints to write to disk.
    * @param filename   String holding the full path and filename to write to.
@@ -231,15 +294,92 @@ public class Translator
    {
      try
      {
-       BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(filename));
-       for (int i = 0; i < toWrite.length; i++)
-         out.write(toWrite[i]);
-       out.close();
+       writeBytes(filename, ByteBuffer.wrap(turnIntoByteArray(toWrite)));
      }
      catch (IOException e) { throw new IOException("Unable to write file: " +
        filename); }
 
   }
 
+  //***** PRIVATE METHODS ***********************************************
+  private static FileInputStream openFile(String filename) throws FileNotFoundException
+  // Opens filename to read, reporting which file could not be found.
+  {
+    try
+    {
+      return new FileInputStream(filename);
+    }
+    catch (FileNotFoundException e)
+    {
+      throw new FileNotFoundException("Unable to find file " + filename +
+       " \nReported error: " + e);
+    }
+  }
+
+  private static boolean endsLine(String text)
+  // Returns true if text ends with a line terminator.
+  {
+    char last = text.charAt(text.length() - 1);
+    return (last == '\r') || (last == '\n');
+  }
+
+  private static void writeBytes(String filename, ByteBuffer toWrite) throws IOException
+  // Writes toWrite to filename, replacing it, through its channel.
+  {
+    FileOutputStream outFile = new FileOutputStream(filename);
+    try
+    {
+      FileChannel channel = outFile.getChannel();
+      while (toWrite.hasRemaining())
+        channel.write(toWrite);
+    }
+    finally
+    {
+      outFile.close();
+    }
+  }
+
+  /**
+   * Returns the names of the languages in a directory, the filenames of its
+   * <CODE>LanguageUnicode</CODE> and legacy language files without their
+   * extensions, in alphabetical order.
+   *
+   * @param directory  The directory holding the language files.
+   * @return The names.
+   */
+  static public String[] readLanguageNames(String directory)
+  {
+    TreeSet<String> names = new TreeSet<String>();
+    String[] files = new File(directory).list();
+    for (int i = 0; (files != null) && (i < files.length); i++)
+    {
+      int delimiter = files[i].lastIndexOf(Language.FILE_EXTENSION_DELIMITER);
+      String extension = files[i].substring(delimiter + 1);
+      if ((delimiter > 0) && (extension.equals(LanguageUnicode.FILENAME_EXTENSION)
+        || extension.equals(LanguageInteger.FILENAME_EXTENSION)))
+        names.add(files[i].substring(0, delimiter));
+    }
+    return names.toArray(new String[names.size()]);
+  }
+
+  /**
+   * Loads a language from a directory: its <CODE>LanguageUnicode</CODE> file
+   * if there is one, otherwise its legacy file as a
+   * <CODE>LanguageInteger</CODE>.
+   *
+   * @param directory  The directory holding the language files.
+   * @param name  The name of the language, its filename without extension.
+   * @return The language.
+   */
+  static public Language readLanguage(String directory, String name)
+    throws IOException, ClassNotFoundException, LanguageLegacyDatafileFormatException
+  {
+    String filename = new File(directory, name).getPath();
+    if (new File(filename + Language.FILE_EXTENSION_DELIMITER
+      + LanguageUnicode.FILENAME_EXTENSION).isFile())
+      return new LanguageUnicode(filename);
+    return new LanguageInteger(filename);
+  }
+
 
-}
\ No newline at end of file
+}